@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The point in time by which a whole send must complete, covering connect, TLS, authentication and the message data, unlike socket timeouts which bound
+ * each operation.
+ * <p>
+ * Blocking I/O cannot be interrupted, so a connection is {@link #watch(Closeable) watched}: it is closed from a shared timer thread when the deadline
+ * passes, which fails the blocked read or write, and the failure is reported as an {@link EmailTimeoutException}. Timeouts of single operations are
+ * {@link #limit(Duration) limited} to the remaining time. Instances are immutable and thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class Deadline {
+
+    /**
+     * Holds the timer closing watched resources, created on first use.
+     */
+    private static final class Timer {
+
+        /** The timer. */
+        static final ScheduledThreadPoolExecutor INSTANCE = create();
+
+        private static ScheduledThreadPoolExecutor create() {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+                final Thread thread = new Thread(runnable, "Deadline");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Creates a deadline a timeout from now.
+     *
+     * @param timeout The timeout.
+     * @return a new deadline.
+     */
+    public static Deadline after(final Duration timeout) {
+        if (timeout.isNegative()) {
+            throw new IllegalArgumentException("Timeout must not be negative: " + timeout);
+        }
+        return new Deadline(timeout, System.nanoTime() + timeout.toNanos());
+    }
+
+    /** The timeout the deadline was created with. */
+    private final Duration timeout;
+
+    /** The deadline in {@link System#nanoTime()} units. */
+    private final long nanos;
+
+    private Deadline(final Duration timeout, final long nanos) {
+        this.timeout = timeout;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Throws if the deadline has passed.
+     *
+     * @throws EmailTimeoutException if the deadline has passed.
+     */
+    public void check() throws EmailTimeoutException {
+        if (isExpired()) {
+            throw timeout(null);
+        }
+    }
+
+    /**
+     * Gets the time left, zero once the deadline has passed.
+     *
+     * @return the remaining time.
+     */
+    public Duration getRemaining() {
+        return Duration.ofNanos(Math.max(0, nanos - System.nanoTime()));
+    }
+
+    /**
+     * Gets the timeout the deadline was created with.
+     *
+     * @return the timeout.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Tests whether the deadline has passed.
+     *
+     * @return whether the deadline has passed.
+     */
+    public boolean isExpired() {
+        return nanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Limits the timeout of a single operation to the remaining time, rounded up to whole milliseconds so that the operation does not time out before the
+     * deadline. The result is at least one millisecond, since a zero socket timeout means none.
+     *
+     * @param operationTimeout The timeout of the operation, zero or null for none.
+     * @return the shorter of the timeout and the remaining time.
+     */
+    public Duration limit(final Duration operationTimeout) {
+        final Duration remaining = Duration.ofMillis(Math.max(1, (getRemaining().toNanos() + 999_999) / 1_000_000));
+        return operationTimeout == null || operationTimeout.isZero() || operationTimeout.compareTo(remaining) > 0 ? remaining : operationTimeout;
+    }
+
+    /**
+     * Creates the exception reporting that the deadline has passed.
+     *
+     * @param cause The failure the aborted send caused, or null.
+     * @return a new exception.
+     */
+    public EmailTimeoutException timeout(final Throwable cause) {
+        return new EmailTimeoutException(timeout, cause);
+    }
+
+    /**
+     * Closes a resource when the deadline passes, unless the returned future is cancelled before.
+     *
+     * @param resource The resource, for example a connection.
+     * @return the future to cancel once the resource is closed otherwise.
+     */
+    public Future<?> watch(final Closeable resource) {
+        return Timer.INSTANCE.schedule(() -> {
+            try {
+                resource.close();
+            } catch (final IOException e) {
+                // the blocked operation fails anyway
+            }
+        }, Math.max(0, nanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+}
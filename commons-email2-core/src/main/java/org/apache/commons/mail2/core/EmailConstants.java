@@ -203,6 +203,46 @@ public final class EmailConstants {
      */
     public static final String MAIL_FROM = "mail.from";
 
+    /////////////////////////////////////////////////////////////////////////
+    // since 2.0.0-M2
+    /////////////////////////////////////////////////////////////////////////
+
+    /**
+     * If set to true and the server supports the 8BITMIME extension, text parts that would be encoded with quoted-printable or base64 are sent as 8bit
+     * instead.
+     *
+     * @since 2.0.0-M2
+     */
+    public static final String MAIL_SMTP_ALLOW_8BITMIME = "mail.smtp.allow8bitmime";
+
+    /**
+     * If set to true, UTF-8 strings are allowed in message headers and addresses, as used with the SMTPUTF8 extension (RFC 6531).
+     *
+     * @since 2.0.0-M2
+     */
+    public static final String MAIL_MIME_ALLOW_UTF8 = "mail.mime.allowutf8";
+
+    /**
+     * If set to a positive value and the server supports the CHUNKING extension, the message is sent with BDAT commands in chunks of this size.
+     *
+     * @since 2.0.0-M2
+     */
+    public static final String MAIL_SMTP_CHUNKSIZE = "mail.smtp.chunksize";
+
+    /**
+     * Specifies the {@link javax.net.SocketFactory} instance to create SMTP sockets, which takes precedence over {@link #MAIL_SMTP_SOCKET_FACTORY_CLASS}.
+     *
+     * @since 2.0.0-M2
+     */
+    public static final String MAIL_SMTP_SOCKET_FACTORY = "mail.smtp.socketFactory";
+
+    /**
+     * Specifies the {@link javax.net.ssl.SSLSocketFactory} instance to create SMTP SSL sockets, also used for STARTTLS.
+     *
+     * @since 2.0.0-M2
+     */
+    public static final String MAIL_SMTP_SSL_SOCKET_FACTORY = "mail.smtp.ssl.socketFactory";
+
     /** Hide constructor. */
     private EmailConstants() {
         // do nothing
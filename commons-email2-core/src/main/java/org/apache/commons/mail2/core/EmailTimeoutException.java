@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a send did not complete within its overall {@link Deadline}, whatever step it was in.
+ *
+ * @since 2.0.0-M2
+ */
+public class EmailTimeoutException extends EmailException {
+
+    /** Serializable version identifier. */
+    private static final long serialVersionUID = 1L;
+
+    /** The exceeded timeout. */
+    private final Duration timeout;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param timeout The exceeded timeout.
+     * @param cause   The failure the aborted send caused, or null.
+     */
+    public EmailTimeoutException(final Duration timeout, final Throwable cause) {
+        super("The email was not sent within " + timeout.toMillis() + " ms", cause);
+        this.timeout = timeout;
+    }
+
+    /**
+     * Gets the exceeded timeout.
+     *
+     * @return the timeout.
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+}
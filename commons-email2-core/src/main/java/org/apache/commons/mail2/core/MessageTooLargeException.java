@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core;
+
+/**
+ * Thrown before a message is sent when its size exceeds a configured limit or the limit a relay advertises with the SMTP SIZE extension.
+ *
+ * @since 2.0.0-M2
+ */
+public class MessageTooLargeException extends EmailException {
+
+    /** Serializable version identifier. */
+    private static final long serialVersionUID = 1L;
+
+    /** The exact or estimated message size in octets. */
+    private final long size;
+
+    /** The exceeded limit in octets. */
+    private final long limit;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param size   The exact or estimated message size in octets.
+     * @param limit  The exceeded limit in octets.
+     * @param source Describes where the limit comes from, for example the relay host.
+     */
+    public MessageTooLargeException(final long size, final long limit, final String source) {
+        super("The message size of " + size + " bytes exceeds the limit of " + limit + " bytes of " + source);
+        this.size = size;
+        this.limit = limit;
+    }
+
+    /**
+     * Gets the exceeded limit.
+     *
+     * @return the limit in octets.
+     */
+    public long getLimit() {
+        return limit;
+    }
+
+    /**
+     * Gets the exact or estimated message size.
+     *
+     * @return the size in octets.
+     */
+    public long getSize() {
+        return size;
+    }
+}
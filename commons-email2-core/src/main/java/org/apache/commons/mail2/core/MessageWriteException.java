@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core;
+
+/**
+ * Thrown when writing the message content fails while it is sent, for example because an attachment cannot be read, rather than the connection. Unlike a
+ * connection failure, it does not say anything about the relay, and sending the message to another relay would fail the same way.
+ *
+ * @since 2.0.0-M2
+ */
+public class MessageWriteException extends EmailException {
+
+    /** Serializable version identifier. */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param message The detail message.
+     * @param cause   The failure of the content writer.
+     */
+    public MessageWriteException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
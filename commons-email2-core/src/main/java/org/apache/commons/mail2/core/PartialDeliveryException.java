@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown when a message was delivered to some of its recipients but not to the others, for example because one of several routes failed. Retry the send
+ * with the {@linkplain #getFailedRecipients() failed recipients} only, so that the others do not receive the message twice.
+ *
+ * @since 2.0.0-M2
+ */
+public class PartialDeliveryException extends EmailException {
+
+    /** Serializable version identifier. */
+    private static final long serialVersionUID = 1L;
+
+    /** The recipients the message was delivered to. */
+    private final List<String> deliveredRecipients;
+
+    /** The recipients the message was not delivered to. */
+    private final List<String> failedRecipients;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param deliveredRecipients The recipients the message was delivered to.
+     * @param failedRecipients    The recipients the message was not delivered to.
+     * @param cause               The first failure, with the others suppressed.
+     */
+    public PartialDeliveryException(final List<String> deliveredRecipients, final List<String> failedRecipients, final Throwable cause) {
+        super("The email was delivered to " + deliveredRecipients + " but not to " + failedRecipients, cause);
+        this.deliveredRecipients = Collections.unmodifiableList(new ArrayList<>(deliveredRecipients));
+        this.failedRecipients = Collections.unmodifiableList(new ArrayList<>(failedRecipients));
+    }
+
+    /**
+     * Gets the recipients the message was delivered to.
+     *
+     * @return the delivered recipients, in envelope order of their routes.
+     */
+    public List<String> getDeliveredRecipients() {
+        return deliveredRecipients;
+    }
+
+    /**
+     * Gets the recipients the message was not delivered to.
+     *
+     * @return the failed recipients, in envelope order of their routes.
+     */
+    public List<String> getFailedRecipients() {
+        return failedRecipients;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core;
+
+import java.time.Duration;
+
+/**
+ * Thrown before a message is sent when a rate limit does not allow it now and the limiter does not wait.
+ *
+ * @since 2.0.0-M2
+ */
+public class RateLimitExceededException extends EmailException {
+
+    /** Serializable version identifier. */
+    private static final long serialVersionUID = 1L;
+
+    /** The key of the exceeded limit. */
+    private final String key;
+
+    /** The time until the message would be allowed, null if it never is. */
+    private final Duration retryAfter;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param key        The key of the exceeded limit, for example the relay host and port.
+     * @param retryAfter The time until the message would be allowed.
+     */
+    public RateLimitExceededException(final String key, final Duration retryAfter) {
+        super("The rate limit of " + key + " is exceeded, retry after " + retryAfter.toMillis() + " ms");
+        this.key = key;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Constructs a new instance for a message the limit never allows.
+     *
+     * @param message The detail message.
+     * @param key     The key of the exceeded limit, for example the relay host and port.
+     */
+    public RateLimitExceededException(final String message, final String key) {
+        super(message);
+        this.key = key;
+        this.retryAfter = null;
+    }
+
+    /**
+     * Gets the key of the exceeded limit.
+     *
+     * @return the key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the time until the message would be allowed, if no other message takes its place.
+     *
+     * @return the time to wait, null if the limit never allows the message.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Receives a copy of sent messages, for example for compliance archiving.
+ * <p>
+ * A copy is first written to a temporary file and only becomes visible in the sink when it is {@linkplain Entry#commit() committed}, which happens after
+ * the relay accepted the message. An entry that is closed without being committed is discarded.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public abstract class ArchiveSink {
+
+    /**
+     * A copy of one message being written.
+     */
+    public final class Entry implements Closeable {
+
+        /** The temporary file. */
+        private final Path tempFile;
+
+        /** Writes to the temporary file. */
+        private final OutputStream outputStream;
+
+        /** Whether the entry was committed. */
+        private boolean committed;
+
+        private Entry(final Path tempFile) throws IOException {
+            this.tempFile = tempFile;
+            this.outputStream = new PooledBufferedOutputStream(Files.newOutputStream(tempFile), BufferPool.getDefault(), BufferPool.DEFAULT_BUFFER_SIZE);
+        }
+
+        /**
+         * Discards the copy unless it was committed.
+         *
+         * @throws IOException if the temporary file cannot be deleted.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                try {
+                    outputStream.close();
+                } finally {
+                    Files.deleteIfExists(tempFile);
+                }
+            }
+        }
+
+        /**
+         * Completes the copy and publishes it in the sink.
+         *
+         * @throws IOException if the copy cannot be published.
+         */
+        public void commit() throws IOException {
+            outputStream.close();
+            ArchiveSink.this.commit(tempFile);
+            committed = true;
+        }
+
+        /**
+         * Gets the stream receiving the copy.
+         *
+         * @return the stream.
+         */
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+    }
+
+    /**
+     * Publishes each message as a new {@code .eml} file in a directory.
+     */
+    private static final class DirectorySink extends ArchiveSink {
+
+        /** Makes file names unique within this JVM. */
+        private static final AtomicLong COUNTER = new AtomicLong();
+
+        /** The directory. */
+        private final Path directory;
+
+        private DirectorySink(final Path directory) {
+            this.directory = Objects.requireNonNull(directory, "directory");
+        }
+
+        @Override
+        protected void commit(final Path tempFile) throws IOException {
+            move(tempFile, directory.resolve(System.currentTimeMillis() + "-" + COUNTER.incrementAndGet() + ".eml"));
+        }
+
+        @Override
+        protected Path getTempDirectory() {
+            return directory;
+        }
+    }
+
+    /**
+     * Replaces a file with each message.
+     */
+    private static final class FileSink extends ArchiveSink {
+
+        /** The file. */
+        private final Path file;
+
+        private FileSink(final Path file) {
+            this.file = Objects.requireNonNull(file, "file").toAbsolutePath();
+        }
+
+        @Override
+        protected void commit(final Path tempFile) throws IOException {
+            move(tempFile, file);
+        }
+
+        @Override
+        protected Path getTempDirectory() {
+            return file.getParent();
+        }
+    }
+
+    /**
+     * Appends each message to a channel.
+     */
+    private static final class ChannelSink extends ArchiveSink {
+
+        /** The channel. */
+        private final WritableByteChannel channel;
+
+        private ChannelSink(final WritableByteChannel channel) {
+            this.channel = Objects.requireNonNull(channel, "channel");
+        }
+
+        @Override
+        protected void commit(final Path tempFile) throws IOException {
+            try (FileChannel source = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+                synchronized (channel) {
+                    long position = 0;
+                    final long size = source.size();
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, channel);
+                    }
+                }
+            } finally {
+                Files.delete(tempFile);
+            }
+        }
+
+        @Override
+        protected Path getTempDirectory() {
+            return null;
+        }
+    }
+
+    /**
+     * Creates a sink that appends each message to a channel. Messages are spooled to a temporary file and copied to the channel when committed, so the
+     * channel never receives a message the relay rejected.
+     *
+     * @param channel The channel, not closed by the sink.
+     * @return a new sink.
+     */
+    public static ArchiveSink ofChannel(final WritableByteChannel channel) {
+        return new ChannelSink(channel);
+    }
+
+    /**
+     * Creates a sink that stores each message as a new {@code .eml} file in the given directory.
+     *
+     * @param directory The existing directory.
+     * @return a new sink.
+     */
+    public static ArchiveSink ofDirectory(final Path directory) {
+        return new DirectorySink(directory);
+    }
+
+    /**
+     * Creates a sink that replaces the given file with each message.
+     *
+     * @param file The file.
+     * @return a new sink.
+     */
+    public static ArchiveSink ofFile(final Path file) {
+        return new FileSink(file);
+    }
+
+    /**
+     * Moves a file atomically if the file system supports it.
+     *
+     * @param source The file to move.
+     * @param target The target file, replaced if it exists.
+     * @throws IOException if the file cannot be moved.
+     */
+    static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Publishes a completed copy.
+     *
+     * @param tempFile The temporary file holding the copy; it must be moved or deleted.
+     * @throws IOException if the copy cannot be published.
+     */
+    protected abstract void commit(Path tempFile) throws IOException;
+
+    /**
+     * Gets the directory for temporary files, ideally on the same file system as the target so that commits are atomic renames.
+     *
+     * @return the directory or null for the default temporary directory.
+     */
+    protected abstract Path getTempDirectory();
+
+    /**
+     * Starts a new copy.
+     *
+     * @return the new entry, to be committed or closed.
+     * @throws IOException if the temporary file cannot be created.
+     */
+    public Entry open() throws IOException {
+        final Path directory = getTempDirectory();
+        final Path tempFile = directory != null ? Files.createTempFile(directory, ".archive", ".tmp") : Files.createTempFile("archive", ".tmp");
+        try {
+            return new Entry(tempFile);
+        } catch (final IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of byte buffers in power of two size classes, used for the short-lived copy and encoding buffers of each send.
+ * <p>
+ * Each thread caches one buffer per size class; further released buffers go to a global pool that keeps at most a configured number of buffers per size
+ * class. Buffers that do not fit, because they are larger than the largest size class or the global pool is full, are left to the garbage collector and
+ * counted as overflows.
+ * </p>
+ * <p>
+ * A buffer must not be used after it was released. Buffers are not cleared, so they may contain data from a previous use.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class BufferPool {
+
+    /** The smallest size class in bytes. */
+    public static final int MIN_BUFFER_SIZE = 512;
+
+    /** The largest size class in bytes; larger buffers are not pooled. */
+    public static final int MAX_BUFFER_SIZE = 64 * 1024;
+
+    /** The default size of copy and stream buffers in bytes. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** The default number of buffers the global pool keeps per size class. */
+    public static final int DEFAULT_MAX_POOLED = 16;
+
+    /** The number of size classes. */
+    private static final int CLASS_COUNT = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+
+    /** The shared instance. */
+    private static final BufferPool DEFAULT = new BufferPool(DEFAULT_MAX_POOLED);
+
+    /**
+     * Gets the shared instance.
+     *
+     * @return the shared instance.
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Gets the size class index of a buffer size, rounding up.
+     */
+    private static int indexOf(final int size) {
+        return size <= MIN_BUFFER_SIZE ? 0 : 32 - Integer.numberOfLeadingZeros((size - 1) / MIN_BUFFER_SIZE);
+    }
+
+    /** The maximum number of buffers the global pool keeps per size class. */
+    private final int maxPooled;
+
+    /** The global pool, per size class. */
+    private final Queue<byte[]>[] pools;
+
+    /** The number of buffers in the global pool, per size class. */
+    private final AtomicInteger[] pooled;
+
+    /** The per thread cache, one buffer per size class. */
+    private final ThreadLocal<byte[][]> cache = ThreadLocal.withInitial(() -> new byte[CLASS_COUNT][]);
+
+    /** Counts buffers served from the pool. */
+    private final LongAdder hits = new LongAdder();
+
+    /** Counts buffers allocated because the pool had none. */
+    private final LongAdder misses = new LongAdder();
+
+    /** Counts buffers that did not fit in the pool. */
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param maxPooled The maximum number of buffers the global pool keeps per size class, in addition to the per thread caches.
+     * @throws IllegalArgumentException if the maximum is negative.
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(final int maxPooled) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("Maximum pooled buffers must not be negative: " + maxPooled);
+        }
+        this.maxPooled = maxPooled;
+        this.pools = (Queue<byte[]>[]) new Queue<?>[CLASS_COUNT];
+        this.pooled = new AtomicInteger[CLASS_COUNT];
+        for (int i = 0; i < CLASS_COUNT; i++) {
+            pools[i] = new ConcurrentLinkedQueue<>();
+            pooled[i] = new AtomicInteger();
+        }
+    }
+
+    /**
+     * Gets a buffer of at least the given size. The buffer is larger if the size is not a size class.
+     *
+     * @param size The minimum size in bytes.
+     * @return a buffer to {@linkplain #release(byte[]) release} after use.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public byte[] acquire(final int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Buffer size must not be negative: " + size);
+        }
+        if (size > MAX_BUFFER_SIZE) {
+            overflows.increment();
+            return new byte[size];
+        }
+        final int index = indexOf(size);
+        final byte[][] local = cache.get();
+        byte[] buffer = local[index];
+        if (buffer != null) {
+            local[index] = null;
+            hits.increment();
+            return buffer;
+        }
+        buffer = pools[index].poll();
+        if (buffer != null) {
+            pooled[index].decrementAndGet();
+            hits.increment();
+            return buffer;
+        }
+        misses.increment();
+        return new byte[MIN_BUFFER_SIZE << index];
+    }
+
+    /**
+     * Copies all bytes from a stream to another using a pooled buffer. Neither stream is closed.
+     *
+     * @param inputStream  The stream to read.
+     * @param outputStream The stream to write.
+     * @return the number of bytes copied.
+     * @throws IOException if an I/O error occurs.
+     */
+    public long copy(final InputStream inputStream, final OutputStream outputStream) throws IOException {
+        final byte[] buffer = acquire(DEFAULT_BUFFER_SIZE);
+        try {
+            long count = 0;
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, n);
+                count += n;
+            }
+            return count;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Gets the number of buffers served from the pool.
+     *
+     * @return the number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of buffers allocated because the pool had none of the requested size class.
+     *
+     * @return the number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of buffers that did not fit in the pool: requests larger than {@link #MAX_BUFFER_SIZE} and released buffers dropped because the global
+     * pool was full or their size is not a size class.
+     *
+     * @return the number of overflows.
+     */
+    public long getOverflows() {
+        return overflows.sum();
+    }
+
+    /**
+     * Gets the number of buffers in the global pool, excluding the per thread caches.
+     *
+     * @return the number of pooled buffers.
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (final AtomicInteger size : pooled) {
+            count += size.get();
+        }
+        return count;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buffer The buffer, obtained from {@link #acquire(int)}, or null.
+     */
+    public void release(final byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        final int length = buffer.length;
+        if (length < MIN_BUFFER_SIZE || length > MAX_BUFFER_SIZE || Integer.bitCount(length) != 1) {
+            overflows.increment();
+            return;
+        }
+        final int index = indexOf(length);
+        final byte[][] local = cache.get();
+        if (local[index] == null) {
+            local[index] = buffer;
+            return;
+        }
+        if (pooled[index].incrementAndGet() <= maxPooled) {
+            pools[index].offer(buffer);
+        } else {
+            pooled[index].decrementAndGet();
+            overflows.increment();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool [hits=" + getHits() + ", misses=" + getMisses() + ", overflows=" + getOverflows() + ", pooled=" + getPooledCount() + "]";
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that converts bare CR and bare LF line endings to CRLF, the canonical line ending of RFC 5322 and RFC 2045 text.
+ * <p>
+ * Runs of bytes without line endings are passed to the underlying stream in bulk.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class CrlfOutputStream extends FilterOutputStream {
+
+    /** Carriage return. */
+    private static final int CR = '\r';
+
+    /** Line feed. */
+    private static final int LF = '\n';
+
+    /** The canonical line ending. */
+    private static final byte[] CRLF = { CR, LF };
+
+    /** Whether the last byte written was a CR, so that a following LF belongs to the same line ending. */
+    private boolean pendingCr;
+
+    /** Whether the next byte starts a new line. */
+    private boolean lineStart = true;
+
+    /** Reused for single byte writes. */
+    private final byte[] single = new byte[1];
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param outputStream The stream to write to.
+     */
+    public CrlfOutputStream(final OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    /**
+     * Tests whether the next byte written starts a new line.
+     *
+     * @return whether the next byte written starts a new line.
+     */
+    protected boolean isLineStart() {
+        return lineStart;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        final int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            final byte c = b[i];
+            if (c == CR || c == LF) {
+                if (i > start) {
+                    writeSpan(b, start, i - start);
+                }
+                if (c == CR || !pendingCr) {
+                    writeLineEnd();
+                }
+                pendingCr = c == CR;
+                start = i + 1;
+            }
+        }
+        if (start < end) {
+            writeSpan(b, start, end - start);
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    /**
+     * Writes a canonical line ending.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void writeLineEnd() throws IOException {
+        out.write(CRLF);
+        lineStart = true;
+    }
+
+    /**
+     * Writes a run of bytes that contains no line ending.
+     *
+     * @param b   the data.
+     * @param off the start offset in the data.
+     * @param len the number of bytes to write, greater than zero.
+     * @throws IOException if an I/O error occurs.
+     */
+    protected void writeSpan(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        pendingCr = false;
+        lineStart = false;
+    }
+
+}
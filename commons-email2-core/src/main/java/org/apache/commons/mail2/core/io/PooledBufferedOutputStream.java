@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Buffers writes like {@link java.io.BufferedOutputStream} but borrows its buffer from a {@link BufferPool} and returns it when closed.
+ *
+ * @since 2.0.0-M2
+ */
+public class PooledBufferedOutputStream extends FilterOutputStream {
+
+    /** The pool the buffer came from. */
+    private final BufferPool bufferPool;
+
+    /** The buffer, null once released. */
+    private byte[] buffer;
+
+    /** The number of bytes in the buffer. */
+    private int count;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param outputStream The stream to write to.
+     * @param bufferPool   The pool to borrow the buffer from.
+     * @param bufferSize   The minimum buffer size.
+     */
+    public PooledBufferedOutputStream(final OutputStream outputStream, final BufferPool bufferPool, final int bufferSize) {
+        super(Objects.requireNonNull(outputStream, "outputStream"));
+        this.bufferPool = Objects.requireNonNull(bufferPool, "bufferPool");
+        this.buffer = bufferPool.acquire(bufferSize);
+    }
+
+    private byte[] checkOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+        return buffer;
+    }
+
+    /**
+     * Flushes and closes the stream, then returns the buffer to the pool.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+            out.close();
+        } finally {
+            bufferPool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    private void flushBuffer() throws IOException {
+        checkOpen();
+        if (count > 0) {
+            out.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (len >= checkOpen().length) {
+            flushBuffer();
+            out.write(b, off, len);
+            return;
+        }
+        if (len > buffer.length - count) {
+            flushBuffer();
+        }
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (count >= checkOpen().length) {
+            flushBuffer();
+        }
+        buffer[count++] = (byte) b;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * Writes everything to two streams, so that data produced once reaches both.
+ *
+ * @since 2.0.0-M2
+ */
+public class TeeOutputStream extends FilterOutputStream {
+
+    /** The second stream. */
+    private final OutputStream branch;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param outputStream The first stream.
+     * @param branch       The second stream.
+     */
+    public TeeOutputStream(final OutputStream outputStream, final OutputStream branch) {
+        super(Objects.requireNonNull(outputStream, "outputStream"));
+        this.branch = Objects.requireNonNull(branch, "branch");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            branch.close();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+        branch.flush();
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        out.write(b, off, len);
+        branch.write(b, off, len);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        out.write(b);
+        branch.write(b);
+    }
+}
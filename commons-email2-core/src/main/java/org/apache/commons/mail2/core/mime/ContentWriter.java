@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.mime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the raw, not yet transfer encoded, content of a MIME entity.
+ *
+ * @since 2.0.0-M2
+ */
+@FunctionalInterface
+public interface ContentWriter {
+
+    /**
+     * Writes the raw content to the given stream. Implementations must not close the stream.
+     *
+     * @param outputStream The stream to write to.
+     * @throws IOException if the content cannot be read or written.
+     */
+    void writeTo(OutputStream outputStream) throws IOException;
+
+}
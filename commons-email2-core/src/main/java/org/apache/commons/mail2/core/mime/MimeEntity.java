@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.mime;
+
+import java.nio.charset.Charset;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A MIME entity, a message or a body part, described by its headers and either a leaf content or a list of parts.
+ * <p>
+ * Header values are written as given, so they must already be encoded as required by RFC 2047 or RFC 6532. The Content-Type and Content-Transfer-Encoding
+ * headers are written by {@link MimeWriter} from {@link #getContentType()} and {@link #getTransferEncoding()} and must not be added as headers.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class MimeEntity {
+
+    /**
+     * Creates a leaf entity whose content is written by the given writer.
+     *
+     * @param contentType The Content-Type header value.
+     * @param writer      Writes the raw content.
+     * @return a new entity.
+     */
+    public static MimeEntity ofContent(final String contentType, final ContentWriter writer) {
+        return new MimeEntity(contentType, null, null, Objects.requireNonNull(writer, "writer"), null);
+    }
+
+    /**
+     * Creates a multipart entity without parts.
+     *
+     * @param subType The multipart subtype, for example {@code mixed} or {@code alternative}.
+     * @return a new entity.
+     */
+    public static MimeEntity ofMultipart(final String subType) {
+        return new MimeEntity("multipart/" + subType, null, null, null, new ArrayList<>());
+    }
+
+    /**
+     * Creates a text entity.
+     *
+     * @param text     The text.
+     * @param mimeType The MIME type without parameters, for example {@code text/plain}.
+     * @param charset  The charset used to encode the text, added as the charset parameter.
+     * @return a new entity.
+     */
+    public static MimeEntity ofText(final String text, final String mimeType, final Charset charset) {
+        return new MimeEntity(mimeType + "; charset=" + charset.name(), Objects.requireNonNull(text, "text"), charset, null, null);
+    }
+
+    /** The headers in the order they are written. */
+    private final List<Map.Entry<String, String>> headers = new ArrayList<>();
+
+    /** The Content-Type header value. */
+    private String contentType;
+
+    /** The transfer encoding or null to select one when written. */
+    private TransferEncoding transferEncoding;
+
+    /** The text content, if any. */
+    private final String text;
+
+    /** The charset of the text content, if any. */
+    private final Charset charset;
+
+    /** Writes the content, if any. */
+    private final ContentWriter writer;
+
+    /** The parts of a multipart entity, otherwise null. */
+    private final List<MimeEntity> parts;
+
+    private MimeEntity(final String contentType, final String text, final Charset charset, final ContentWriter writer, final List<MimeEntity> parts) {
+        this.contentType = Objects.requireNonNull(contentType, "contentType");
+        this.text = text;
+        this.charset = charset;
+        this.writer = writer;
+        this.parts = parts;
+    }
+
+    /**
+     * Adds a header.
+     *
+     * @param name  The header name.
+     * @param value The header value.
+     * @return {@code this} instance.
+     */
+    public MimeEntity addHeader(final String name, final String value) {
+        headers.add(new SimpleImmutableEntry<>(Objects.requireNonNull(name, "name"), Objects.requireNonNull(value, "value")));
+        return this;
+    }
+
+    /**
+     * Adds a part to this multipart entity.
+     *
+     * @param part The part.
+     * @return {@code this} instance.
+     * @throws IllegalStateException if this is not a multipart entity.
+     */
+    public MimeEntity addPart(final MimeEntity part) {
+        if (parts == null) {
+            throw new IllegalStateException("Not a multipart entity: " + contentType);
+        }
+        parts.add(Objects.requireNonNull(part, "part"));
+        return this;
+    }
+
+    /**
+     * Gets the charset of the text content.
+     *
+     * @return the charset or null if this is not a text entity.
+     */
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * Gets the Content-Type header value.
+     *
+     * @return the Content-Type header value.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Gets the content writer.
+     *
+     * @return the content writer or null if this is a text or multipart entity.
+     */
+    public ContentWriter getContentWriter() {
+        return writer;
+    }
+
+    /**
+     * Gets the headers in the order they are written.
+     *
+     * @return an unmodifiable list of name and value pairs.
+     */
+    public List<Map.Entry<String, String>> getHeaders() {
+        return Collections.unmodifiableList(headers);
+    }
+
+    /**
+     * Gets the parts of this multipart entity.
+     *
+     * @return an unmodifiable list of parts, empty if this is not a multipart entity.
+     */
+    public List<MimeEntity> getParts() {
+        return parts == null ? Collections.emptyList() : Collections.unmodifiableList(parts);
+    }
+
+    /**
+     * Gets the text content.
+     *
+     * @return the text or null if this is not a text entity.
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * Gets the transfer encoding.
+     *
+     * @return the transfer encoding or null to select one when written.
+     */
+    public TransferEncoding getTransferEncoding() {
+        return transferEncoding;
+    }
+
+    /**
+     * Tests whether this is a multipart entity.
+     *
+     * @return whether this is a multipart entity.
+     */
+    public boolean isMultipart() {
+        return parts != null;
+    }
+
+    /**
+     * Sets the Content-Type header value, for example to add parameters. The boundary parameter of a multipart entity is added when it is written.
+     *
+     * @param contentType The Content-Type header value.
+     * @return {@code this} instance.
+     */
+    public MimeEntity setContentType(final String contentType) {
+        this.contentType = Objects.requireNonNull(contentType, "contentType");
+        return this;
+    }
+
+    /**
+     * Sets the transfer encoding. By default the encoding is selected from the content when written.
+     *
+     * @param transferEncoding The transfer encoding or null to select one when written.
+     * @return {@code this} instance.
+     */
+    public MimeEntity setTransferEncoding(final TransferEncoding transferEncoding) {
+        this.transferEncoding = transferEncoding;
+        return this;
+    }
+}
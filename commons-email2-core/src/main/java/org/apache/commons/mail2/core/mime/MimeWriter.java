@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.mime;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.io.BufferPool;
+import org.apache.commons.mail2.core.io.CountingOutputStream;
+import org.apache.commons.mail2.core.io.PooledBufferedOutputStream;
+
+/**
+ * Serializes a {@link MimeEntity} as an RFC 2045 document directly to a stream or channel.
+ * <p>
+ * Unlike {@code MimeMessage.writeTo}, content is encoded while it is copied through a single buffer of {@link #getBufferSize()} bytes, so memory use does
+ * not depend on the size of the message or its attachments. The buffer, and the one used to encode text bodies, are borrowed from a {@link BufferPool}.
+ * </p>
+ * <p>
+ * Instances are thread-safe if they are not reconfigured while in use.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class MimeWriter {
+
+    /** The default buffer size. */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /** The line separator. */
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    /** The maximum header line length before it is folded. */
+    private static final int HEADER_LINE_LENGTH = TransferEncoding.ENCODED_LINE_LENGTH;
+
+    /** Makes generated boundaries unique within this JVM. */
+    private static final AtomicInteger PART_COUNTER = new AtomicInteger();
+
+    /**
+     * Generates a new multipart boundary.
+     *
+     * @return a new boundary.
+     */
+    static String createBoundary() {
+        return "----=_Part_" + PART_COUNTER.getAndIncrement() + "_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    /** The buffer size. */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /** The pool buffers are borrowed from. */
+    private BufferPool bufferPool = BufferPool.getDefault();
+
+    /** Whether text may be written as 8bit. */
+    private boolean allow8Bit;
+
+    /**
+     * Gets the pool buffers are borrowed from.
+     *
+     * @return the buffer pool.
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Gets the size of the buffer used while writing.
+     *
+     * @return the buffer size in bytes.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Tests whether text with non US-ASCII characters is written as 8bit instead of being encoded.
+     *
+     * @return whether 8bit text is allowed.
+     */
+    public boolean isAllow8Bit() {
+        return allow8Bit;
+    }
+
+    /**
+     * Selects the transfer encoding of a leaf entity that does not declare one.
+     *
+     * @param entity The leaf entity.
+     * @return the transfer encoding.
+     */
+    protected TransferEncoding selectTransferEncoding(final MimeEntity entity) {
+        if (entity.getTransferEncoding() != null) {
+            return entity.getTransferEncoding();
+        }
+        return entity.getText() != null ? TransferEncoding.forText(entity.getText(), allow8Bit) : TransferEncoding.forType(entity.getContentType());
+    }
+
+    /**
+     * Sets whether text with non US-ASCII characters and short enough lines is written as 8bit, skipping the quoted-printable or base64 encoding. Only
+     * enable it if the receiver accepts 8bit data, for example a relay that supports the 8BITMIME SMTP extension.
+     *
+     * @param allow8Bit Whether 8bit text is allowed.
+     * @return {@code this} instance.
+     */
+    public MimeWriter setAllow8Bit(final boolean allow8Bit) {
+        this.allow8Bit = allow8Bit;
+        return this;
+    }
+
+    /**
+     * Sets the pool buffers are borrowed from.
+     *
+     * @param bufferPool The buffer pool.
+     * @return {@code this} instance.
+     */
+    public MimeWriter setBufferPool(final BufferPool bufferPool) {
+        this.bufferPool = Objects.requireNonNull(bufferPool, "bufferPool");
+        return this;
+    }
+
+    /**
+     * Sets the size of the buffer used while writing.
+     *
+     * @param bufferSize The buffer size in bytes.
+     * @return {@code this} instance.
+     * @throws IllegalArgumentException if the size is not positive.
+     */
+    public MimeWriter setBufferSize(final int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Writes the entity to the given stream. The stream is flushed but not closed.
+     *
+     * @param entity       The entity to write.
+     * @param outputStream The stream to write to.
+     * @return the number of bytes written.
+     * @throws IOException if the content cannot be read or written.
+     */
+    public long write(final MimeEntity entity, final OutputStream outputStream) throws IOException {
+        final CountingOutputStream counting = new CountingOutputStream(outputStream);
+        try (OutputStream buffered = new PooledBufferedOutputStream(new CloseShieldOutputStream(counting), bufferPool, bufferSize)) {
+            writeEntity(entity, buffered);
+        }
+        return counting.getCount();
+    }
+
+    /**
+     * Writes the entity to the given channel. The channel is not closed.
+     *
+     * @param entity  The entity to write.
+     * @param channel The channel to write to.
+     * @return the number of bytes written.
+     * @throws IOException if the content cannot be read or written.
+     */
+    public long write(final MimeEntity entity, final WritableByteChannel channel) throws IOException {
+        return write(entity, Channels.newOutputStream(channel));
+    }
+
+    private void writeString(final OutputStream out, final String value) throws IOException {
+        out.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes the text of the entity in chunks through a pooled buffer rather than into one array as large as the text.
+     */
+    private void writeText(final MimeEntity entity, final OutputStream out) throws IOException {
+        final CharsetEncoder encoder = entity.getCharset().newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharBuffer text = CharBuffer.wrap(entity.getText());
+        final byte[] buffer = bufferPool.acquire(bufferSize);
+        try {
+            final ByteBuffer bytes = ByteBuffer.wrap(buffer);
+            CoderResult result;
+            do {
+                result = encoder.encode(text, bytes, true);
+                out.write(buffer, 0, bytes.position());
+                bytes.clear();
+            } while (result.isOverflow());
+            do {
+                result = encoder.flush(bytes);
+                out.write(buffer, 0, bytes.position());
+                bytes.clear();
+            } while (result.isOverflow());
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void writeContent(final MimeEntity entity, final TransferEncoding encoding, final OutputStream out) throws IOException {
+        try (OutputStream encoder = encoding.encode(out, TransferEncoding.isText(entity.getContentType()))) {
+            if (entity.getText() != null) {
+                writeText(entity, encoder);
+            } else {
+                entity.getContentWriter().writeTo(encoder);
+            }
+        }
+    }
+
+    private void writeEntity(final MimeEntity entity, final OutputStream out) throws IOException {
+        for (final Map.Entry<String, String> header : entity.getHeaders()) {
+            writeHeader(out, header.getKey(), header.getValue());
+        }
+        if (entity.isMultipart()) {
+            final String boundary = createBoundary();
+            writeHeader(out, "Content-Type", entity.getContentType() + "; boundary=\"" + boundary + "\"");
+            if (entity.getTransferEncoding() != null) {
+                writeHeader(out, "Content-Transfer-Encoding", entity.getTransferEncoding().getName());
+            }
+            out.write(CRLF);
+            for (final MimeEntity part : entity.getParts()) {
+                writeString(out, "--" + boundary);
+                out.write(CRLF);
+                writeEntity(part, out);
+                out.write(CRLF);
+            }
+            writeString(out, "--" + boundary + "--");
+            out.write(CRLF);
+        } else {
+            final TransferEncoding encoding = selectTransferEncoding(entity);
+            writeHeader(out, "Content-Type", entity.getContentType());
+            writeHeader(out, "Content-Transfer-Encoding", encoding.getName());
+            out.write(CRLF);
+            writeContent(entity, encoding, out);
+        }
+    }
+
+    /**
+     * Writes a header, folding it at whitespace if it is too long and not folded already. Non US-ASCII characters are written as UTF-8.
+     */
+    private void writeHeader(final OutputStream out, final String name, final String value) throws IOException {
+        final StringBuilder line = new StringBuilder(name.length() + value.length() + 4).append(name).append(": ");
+        if (line.length() + value.length() <= HEADER_LINE_LENGTH || value.indexOf('\r') >= 0 || value.indexOf('\n') >= 0) {
+            line.append(value);
+        } else {
+            int lineStart = 0;
+            int start = 0;
+            while (start < value.length()) {
+                int end = start + 1;
+                while (end < value.length() && value.charAt(end) != ' ' && value.charAt(end) != '\t') {
+                    end++;
+                }
+                if (start > 0 && line.length() - lineStart + end - start > HEADER_LINE_LENGTH) {
+                    line.append("\r\n");
+                    lineStart = line.length();
+                }
+                line.append(value, start, end);
+                start = end;
+            }
+        }
+        writeString(out, line.append("\r\n").toString());
+    }
+}
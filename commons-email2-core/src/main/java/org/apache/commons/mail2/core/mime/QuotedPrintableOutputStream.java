@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.mime;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes text as RFC 2045 Quoted-Printable while it is written.
+ * <p>
+ * Line breaks in the input, CR, LF or CRLF, are written as hard CRLF line breaks, encoded lines are wrapped with soft line breaks at 76 characters and
+ * whitespace at the end of a line is encoded so that it survives transport. Closing the stream does not write a trailing line break.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class QuotedPrintableOutputStream extends FilterOutputStream {
+
+    /** The maximum number of characters on an encoded line before the soft line break. */
+    private static final int MAX_CHARS = TransferEncoding.ENCODED_LINE_LENGTH - 1;
+
+    /** Hexadecimal digits. */
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+    /** The number of characters written on the current line. */
+    private int lineLength;
+
+    /** Whitespace waiting for the next character to decide if it must be encoded, or -1. */
+    private int pendingWhitespace = -1;
+
+    /** Whether the last byte was a CR, so that a following LF is part of the same line break. */
+    private boolean pendingCr;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param outputStream The stream to write the encoded data to.
+     */
+    public QuotedPrintableOutputStream(final OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pendingWhitespace >= 0) {
+            writeEncoded(pendingWhitespace);
+            pendingWhitespace = -1;
+        }
+        super.close();
+    }
+
+    private boolean isLiteral(final int b) {
+        return b >= 33 && b <= 126 && b != '=';
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        for (int i = off; i < off + len; i++) {
+            write(b[i]);
+        }
+    }
+
+    @Override
+    public void write(final int value) throws IOException {
+        final int b = value & 0xFF;
+        if (b == '\n' && pendingCr) {
+            pendingCr = false;
+            return;
+        }
+        pendingCr = b == '\r';
+        if (b == '\r' || b == '\n') {
+            if (pendingWhitespace >= 0) {
+                writeEncoded(pendingWhitespace);
+                pendingWhitespace = -1;
+            }
+            out.write('\r');
+            out.write('\n');
+            lineLength = 0;
+            return;
+        }
+        final int length = isLiteral(b) ? 1 : 3;
+        if (pendingWhitespace >= 0) {
+            if (lineLength + 1 + length <= MAX_CHARS) {
+                writeLiteral(pendingWhitespace);
+            } else {
+                writeEncoded(pendingWhitespace);
+            }
+            pendingWhitespace = -1;
+        }
+        if (b == ' ' || b == '\t') {
+            pendingWhitespace = b;
+        } else if (length == 1) {
+            writeLiteral(b);
+        } else {
+            writeEncoded(b);
+        }
+    }
+
+    private void writeEncoded(final int b) throws IOException {
+        wrap(3);
+        out.write('=');
+        out.write(HEX[b >> 4]);
+        out.write(HEX[b & 0x0F]);
+        lineLength += 3;
+    }
+
+    private void writeLiteral(final int b) throws IOException {
+        wrap(1);
+        out.write(b);
+        lineLength++;
+    }
+
+    private void wrap(final int length) throws IOException {
+        if (lineLength + length > MAX_CHARS) {
+            out.write('=');
+            out.write('\r');
+            out.write('\n');
+            lineLength = 0;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.mime;
+
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+import org.apache.commons.mail2.core.io.CrlfOutputStream;
+
+/**
+ * MIME Content-Transfer-Encodings as defined by RFC 2045.
+ *
+ * @since 2.0.0-M2
+ */
+public enum TransferEncoding {
+
+    /** Lines of at most 998 US-ASCII characters. */
+    SEVEN_BIT("7bit"),
+
+    /** Lines of at most 998 octets, requires the 8BITMIME SMTP extension. */
+    EIGHT_BIT("8bit"),
+
+    /** Arbitrary octets, requires the BINARYMIME SMTP extension. */
+    BINARY("binary"),
+
+    /** Quoted-Printable encoding for mostly US-ASCII text. */
+    QUOTED_PRINTABLE("quoted-printable"),
+
+    /** Base64 encoding for binary data. */
+    BASE64("base64");
+
+    /** The maximum line length in octets, excluding CRLF, allowed by RFC 5322. */
+    static final int MAX_LINE_LENGTH = 998;
+
+    /** The line length used when encoding. */
+    static final int ENCODED_LINE_LENGTH = 76;
+
+    /** The line separator used when encoding. */
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    /**
+     * Gets the encoding for the given Content-Transfer-Encoding header value.
+     *
+     * @param name The header value, case insensitive.
+     * @return The encoding.
+     * @throws IllegalArgumentException if the name is not a known encoding.
+     */
+    public static TransferEncoding forName(final String name) {
+        final String key = name.trim().toLowerCase(Locale.ROOT);
+        for (final TransferEncoding encoding : values()) {
+            if (encoding.name.equals(key)) {
+                return encoding;
+            }
+        }
+        throw new IllegalArgumentException("Unknown Content-Transfer-Encoding: " + name);
+    }
+
+    /**
+     * Selects an encoding for the given text, in the way JavaMail does: 7bit for short US-ASCII lines, quoted-printable for mostly US-ASCII text and base64
+     * otherwise.
+     *
+     * @param text The text to test.
+     * @return The encoding.
+     */
+    public static TransferEncoding forText(final CharSequence text) {
+        int ascii = 0;
+        int nonAscii = 0;
+        int lineLength = 0;
+        boolean longLines = false;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\r' || c == '\n') {
+                lineLength = 0;
+            } else if (++lineLength > MAX_LINE_LENGTH) {
+                longLines = true;
+            }
+            if (c < 0x80) {
+                ascii++;
+            } else {
+                nonAscii++;
+            }
+        }
+        if (nonAscii == 0) {
+            return longLines ? QUOTED_PRINTABLE : SEVEN_BIT;
+        }
+        return ascii > nonAscii ? QUOTED_PRINTABLE : BASE64;
+    }
+
+    /**
+     * Selects an encoding for the given text like {@link #forText(CharSequence)}, but selects 8bit instead of quoted-printable or base64 for text with non
+     * US-ASCII characters if allowed and no line can exceed 998 octets.
+     *
+     * @param text      The text to test.
+     * @param allow8Bit Whether the receiver accepts 8bit data, for example a relay supporting the 8BITMIME SMTP extension.
+     * @return The encoding.
+     */
+    public static TransferEncoding forText(final CharSequence text, final boolean allow8Bit) {
+        final TransferEncoding encoding = forText(text);
+        if (!allow8Bit || encoding == SEVEN_BIT) {
+            return encoding;
+        }
+        boolean nonAscii = false;
+        int lineOctets = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c == '\r' || c == '\n') {
+                lineOctets = 0;
+            } else if (c == 0) {
+                return encoding;
+            } else {
+                // at most 3 octets per char in UTF-8 and the other charsets used for mail
+                lineOctets += c < 0x80 ? 1 : 3;
+                nonAscii |= c >= 0x80;
+                if (lineOctets > MAX_LINE_LENGTH) {
+                    return encoding;
+                }
+            }
+        }
+        return nonAscii ? EIGHT_BIT : encoding;
+    }
+
+    /**
+     * Selects an encoding for content of the given type whose data is not known in advance: quoted-printable for text and base64 otherwise.
+     *
+     * @param contentType The content type.
+     * @return The encoding.
+     */
+    public static TransferEncoding forType(final String contentType) {
+        return isText(contentType) ? QUOTED_PRINTABLE : BASE64;
+    }
+
+    /**
+     * Tests whether the content type denotes text, which is written in canonical form with CRLF line endings.
+     *
+     * @param contentType The content type.
+     * @return whether the content type denotes text.
+     */
+    static boolean isText(final String contentType) {
+        return contentType != null && contentType.regionMatches(true, 0, "text/", 0, 5);
+    }
+
+    /** The header value. */
+    private final String name;
+
+    TransferEncoding(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Wraps the given stream with an encoder for this encoding. Closing the returned stream flushes the encoder but does not close the given stream.
+     *
+     * @param outputStream The stream to write the encoded data to.
+     * @param text         Whether the data is text that must be converted to canonical CRLF line endings.
+     * @return An encoding stream.
+     */
+    OutputStream encode(final OutputStream outputStream, final boolean text) {
+        final OutputStream shield = new CloseShieldOutputStream(outputStream);
+        switch (this) {
+        case BASE64:
+            final OutputStream base64 = Base64.getMimeEncoder(ENCODED_LINE_LENGTH, CRLF).wrap(shield);
+            return text ? new CrlfOutputStream(base64) : base64;
+        case QUOTED_PRINTABLE:
+            return new QuotedPrintableOutputStream(shield);
+        case BINARY:
+            return shield;
+        default:
+            return text ? new CrlfOutputStream(shield) : shield;
+        }
+    }
+
+    /**
+     * Estimates the encoded size of content without encoding it. Base64 is exact; quoted-printable assumes mostly US-ASCII content and only counts soft line
+     * breaks.
+     *
+     * @param length The size of the content in octets.
+     * @return The estimated encoded size in octets.
+     */
+    public long estimateSize(final long length) {
+        switch (this) {
+        case BASE64:
+            final long chars = (length + 2) / 3 * 4;
+            return chars + 2 * Math.max(0, (chars + ENCODED_LINE_LENGTH - 1) / ENCODED_LINE_LENGTH - 1);
+        case QUOTED_PRINTABLE:
+            return length + length / (ENCODED_LINE_LENGTH - 1) * 3;
+        default:
+            return length;
+        }
+    }
+
+    /**
+     * Estimates the encoded size of text in the given charset without encoding it. Line endings are counted as CRLF and, for quoted-printable, every octet
+     * that must be escaped is counted.
+     *
+     * @param text    The text.
+     * @param charset The charset the text is written in.
+     * @return The estimated encoded size in octets.
+     */
+    public long estimateSize(final CharSequence text, final Charset charset) {
+        final boolean utf8 = StandardCharsets.UTF_8.equals(charset);
+        final int maxBytesPerChar = utf8 ? 3 : (int) Math.ceil(charset.newEncoder().maxBytesPerChar());
+        long octets = 0;
+        long escaped = 0;
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            final int bytes;
+            if (c < 0x80) {
+                bytes = c == '\n' && previous != '\r' ? 2 : 1;
+                if (c == '=' || c < 0x20 && c != '\r' && c != '\n' && c != '\t') {
+                    escaped++;
+                }
+            } else if (utf8) {
+                bytes = c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+                escaped += bytes;
+            } else {
+                bytes = maxBytesPerChar;
+                escaped += bytes;
+            }
+            octets += bytes;
+            previous = c;
+        }
+        if (this == QUOTED_PRINTABLE) {
+            final long encoded = octets + 2 * escaped;
+            return encoded + encoded / (ENCODED_LINE_LENGTH - 1) * 3;
+        }
+        return estimateSize(octets);
+    }
+
+    /**
+     * Gets the Content-Transfer-Encoding header value.
+     *
+     * @return The header value.
+     */
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+/**
+ * The body type a message declares with the {@code BODY} parameter of {@code MAIL FROM}.
+ *
+ * @since 2.0.0-M2
+ */
+public enum BodyType {
+
+    /** US-ASCII lines only, the default if no {@code BODY} parameter is given. */
+    SEVEN_BIT("7BIT", null),
+
+    /** 8bit lines as defined by RFC 6152, requires the {@code 8BITMIME} extension. */
+    EIGHT_BIT_MIME("8BITMIME", "8BITMIME"),
+
+    /** Arbitrary octets as defined by RFC 3030, requires the {@code BINARYMIME} extension and sending with {@code BDAT}. */
+    BINARY_MIME("BINARYMIME", "BINARYMIME");
+
+    /** The parameter value. */
+    private final String value;
+
+    /** The extension the relay must announce, or null. */
+    private final String extension;
+
+    BodyType(final String value, final String extension) {
+        this.value = value;
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the EHLO keyword of the extension the relay must announce to accept this body type.
+     *
+     * @return the keyword, or null if every relay accepts it.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Gets the value of the {@code BODY} parameter.
+     *
+     * @return the value.
+     */
+    public String getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the {@code EHLO} capabilities of relays, so that extensions such as SIZE can be checked before a message is sent without a new connection each
+ * time.
+ * <p>
+ * Entries are keyed by host and port, or by the path of a Unix domain socket, and expire after a time to live, after which the relay is probed again. This
+ * class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class CapabilityCache {
+
+    /**
+     * Cached capabilities with their expiry.
+     */
+    private static final class Entry {
+
+        /** The capabilities. */
+        private final Map<String, String> capabilities;
+
+        /** When the entry expires, in {@link System#nanoTime()} units. */
+        private final long expiresNanos;
+
+        private Entry(final Map<String, String> capabilities, final long expiresNanos) {
+            this.capabilities = capabilities;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+    /** The default time to live of entries. */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+
+    /** The shared instance. */
+    private static final CapabilityCache DEFAULT = new CapabilityCache(DEFAULT_TIME_TO_LIVE);
+
+    /**
+     * Gets the shared instance.
+     *
+     * @return the shared instance.
+     */
+    public static CapabilityCache getDefault() {
+        return DEFAULT;
+    }
+
+    private static String key(final SmtpClient client) {
+        return client.getUnixSocket() != null ? client.getUnixSocket().toString() : client.getHost() + ":" + client.getPort();
+    }
+
+    /** The entries by host and port. */
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /** The time to live of entries in nanoseconds. */
+    private final long timeToLiveNanos;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param timeToLive How long entries are used before the relay is probed again.
+     */
+    public CapabilityCache(final Duration timeToLive) {
+        this.timeToLiveNanos = Objects.requireNonNull(timeToLive, "timeToLive").toNanos();
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Gets the cached capabilities of the relay of a client.
+     *
+     * @param client The client.
+     * @return an unmodifiable map of upper case keywords to their parameters, or null if none are cached or the entry expired.
+     */
+    public Map<String, String> get(final SmtpClient client) {
+        final String key = key(client);
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresNanos >= 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.capabilities;
+    }
+
+    /**
+     * Caches the capabilities of the relay of a client.
+     *
+     * @param client       The client.
+     * @param capabilities The capabilities announced in the last {@code EHLO} reply.
+     */
+    public void put(final SmtpClient client, final Map<String, String> capabilities) {
+        entries.put(key(client), new Entry(Collections.unmodifiableMap(new LinkedHashMap<>(capabilities)), System.nanoTime() + timeToLiveNanos));
+    }
+
+    /**
+     * Removes the entry of the relay of a client, for example after its configuration changed.
+     *
+     * @param client The client.
+     */
+    public void remove(final SmtpClient client) {
+        entries.remove(key(client));
+    }
+}
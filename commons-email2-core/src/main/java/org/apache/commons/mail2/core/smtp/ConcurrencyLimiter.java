@@ -0,0 +1,542 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.mail2.core.Deadline;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
+import org.apache.commons.mail2.core.MessageWriteException;
+
+/**
+ * Limits the sends in flight to each relay, adapting the limit to the capacity of the relay with additive increase and multiplicative decrease (AIMD).
+ * <p>
+ * Each relay has a {@link Limit}. A send takes a {@link Permit} before it connects and releases it with its outcome. While the latency of successful sends
+ * stays within the {@linkplain #setLatencyTolerance(double) tolerance} of the lowest latency seen, and at least half of the limit is in use, each success
+ * raises the limit by one over the limit, that is by about one per round of sends. A transient failure, such as a 4xx reply or 421, a connection that cannot
+ * be opened or breaks, or a send slower than the tolerance, cuts the limit by the {@linkplain #setBackoffRatio(double) backoff ratio}; sends that started
+ * before a cut do not cut it again. Permanent rejections leave the limit unchanged. The limit stays between the {@linkplain #setMinLimit(int) minimum} and
+ * the {@linkplain #setMaxLimit(int) maximum}.
+ * </p>
+ * <p>
+ * The latency of a send leaves out the time spent transferring the message content and waiting for its reply, see {@link Permit#release(Throwable, long)},
+ * so that it measures the round trips of the commands, which follow the load of the relay, and not the size of the message.
+ * </p>
+ * <p>
+ * Share one limiter between all senders of the relays; the limits are exposed with {@link #getLimits()} for monitoring. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class ConcurrencyLimiter {
+
+    /**
+     * The adaptive limit of a relay and its measurements.
+     */
+    public static final class Limit {
+
+        /** The key of the relay. */
+        private final String key;
+
+        /** The limit, fractional so that it grows by less than one per success. Guarded by this limit. */
+        private double limit;
+
+        /** The number of sends in flight. Guarded by this limit. */
+        private int inFlight;
+
+        /** The smoothed latency of successful sends in nanoseconds, 0 until the first one. Guarded by this limit. */
+        private long latencyNanos;
+
+        /** The lowest latency seen, slowly following the latency up, in nanoseconds; 0 until the first success. Guarded by this limit. */
+        private long baselineNanos;
+
+        /** Counts the cuts of the limit. Guarded by this limit. */
+        private long cuts;
+
+        /** The number of sends that failed transiently or were too slow. Guarded by this limit. */
+        private long drops;
+
+        Limit(final String key, final int limit) {
+            this.key = key;
+            this.limit = limit;
+        }
+
+        /**
+         * Gets the lowest latency seen, which slowly follows a lasting rise of the latency.
+         *
+         * @return the baseline latency, zero until the first success.
+         */
+        public synchronized Duration getBaselineLatency() {
+            return Duration.ofNanos(baselineNanos);
+        }
+
+        /**
+         * Gets the number of sends that failed transiently or were too slow.
+         *
+         * @return the number of drops.
+         */
+        public synchronized long getDrops() {
+            return drops;
+        }
+
+        /**
+         * Gets the number of sends in flight.
+         *
+         * @return the number of sends in flight.
+         */
+        public synchronized int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * Gets the key of the relay.
+         *
+         * @return the key.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Gets the smoothed latency of successful sends.
+         *
+         * @return the latency, zero until the first success.
+         */
+        public synchronized Duration getLatency() {
+            return Duration.ofNanos(latencyNanos);
+        }
+
+        /**
+         * Gets the current limit of sends in flight.
+         *
+         * @return the limit.
+         */
+        public synchronized int getLimit() {
+            return (int) limit;
+        }
+
+        @Override
+        public String toString() {
+            return key + " " + getInFlight() + "/" + getLimit();
+        }
+    }
+
+    /**
+     * A send in flight, released with its outcome.
+     */
+    public final class Permit {
+
+        /** The limit of the relay. */
+        private final Limit limit;
+
+        /** The cuts of the limit when the send started. */
+        private final long cuts;
+
+        /** When the send started, in {@link System#nanoTime()} units. */
+        private final long startNanos = System.nanoTime();
+
+        /** Whether the permit was released. Guarded by the limit. */
+        private boolean released;
+
+        Permit(final Limit limit) {
+            this.limit = limit;
+            this.cuts = limit.cuts;
+        }
+
+        /**
+         * Releases the permit without adapting the limit, for a send that says nothing about the relay, such as one on a connection the relay had already
+         * closed. Releasing a permit again does nothing.
+         */
+        public void cancel() {
+            synchronized (limit) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                limit.inFlight--;
+                limit.notifyAll();
+            }
+        }
+
+        /**
+         * Gets the limit of the relay.
+         *
+         * @return the limit.
+         */
+        public Limit getLimit() {
+            return limit;
+        }
+
+        /**
+         * Releases the permit, adapting the limit to the outcome of the send, for a send without message content or of a small message. Releasing a permit
+         * again does nothing.
+         *
+         * @param failure The failure of the send, null if it succeeded.
+         */
+        public void release(final Throwable failure) {
+            release(failure, 0);
+        }
+
+        /**
+         * Releases the permit, adapting the limit to the outcome of the send, with the time spent transferring the message content left out of the latency.
+         * Releasing a permit again does nothing.
+         *
+         * @param failure      The failure of the send, null if it succeeded.
+         * @param contentNanos The time spent transferring the message content and waiting for its reply in nanoseconds, see
+         *                     {@link SmtpConnection#getContentNanos()}.
+         */
+        public void release(final Throwable failure, final long contentNanos) {
+            final long sampleNanos = Math.max(0, System.nanoTime() - startNanos - contentNanos);
+            synchronized (limit) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                final int inFlight = limit.inFlight--;
+                boolean overload = failure != null && isOverload(failure);
+                if (failure == null) {
+                    limit.latencyNanos = limit.latencyNanos == 0 ? sampleNanos : limit.latencyNanos + (sampleNanos - limit.latencyNanos) / 5;
+                    if (limit.baselineNanos == 0 || sampleNanos < limit.baselineNanos) {
+                        limit.baselineNanos = sampleNanos;
+                    } else {
+                        limit.baselineNanos += (sampleNanos - limit.baselineNanos) / 100;
+                    }
+                    overload = sampleNanos > limit.baselineNanos * latencyTolerance;
+                }
+                if (overload) {
+                    limit.drops++;
+                    if (cuts == limit.cuts) {
+                        limit.limit = Math.max(minLimit, limit.limit * backoffRatio);
+                        limit.cuts++;
+                    }
+                } else if (failure == null && inFlight * 2 >= limit.limit) {
+                    limit.limit = Math.min(maxLimit, limit.limit + 1 / limit.limit);
+                }
+                limit.notifyAll();
+            }
+        }
+    }
+
+    /** The default initial limit of a relay. */
+    public static final int DEFAULT_INITIAL_LIMIT = 4;
+
+    /** The default maximum limit of a relay. */
+    public static final int DEFAULT_MAX_LIMIT = 64;
+
+    /** The default factor a transient failure multiplies the limit by. */
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    /** The default factor over the baseline latency a send may take before it cuts the limit. */
+    public static final double DEFAULT_LATENCY_TOLERANCE = 2;
+
+    /**
+     * Tests whether a failure signals that the relay is overloaded: a transient reply such as 421 or 451, or an I/O failure of the connection, anywhere in its
+     * causes. A {@link MessageWriteException}, the content of the message failing to write, does not.
+     *
+     * @param failure The failure.
+     * @return whether the failure is transient.
+     */
+    static boolean isOverload(final Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MessageWriteException) {
+                return false;
+            }
+            if (cause instanceof SmtpException && ((SmtpException) cause).getReply() != null) {
+                return ((SmtpException) cause).isTransient();
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static EmailException limitReached(final Limit limit, final String key) {
+        return new EmailException("The concurrency limit of " + (int) limit.limit + " sends to " + key + " was reached");
+    }
+
+    /** The limits by key. */
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    /** The limit of a relay seen for the first time. */
+    private volatile int initialLimit = DEFAULT_INITIAL_LIMIT;
+
+    /** The lowest limit. */
+    private volatile int minLimit = 1;
+
+    /** The highest limit. */
+    private volatile int maxLimit = DEFAULT_MAX_LIMIT;
+
+    /** The factor a transient failure multiplies the limit by. */
+    private volatile double backoffRatio = DEFAULT_BACKOFF_RATIO;
+
+    /** The factor over the baseline latency a send may take before it cuts the limit. */
+    private volatile double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+
+    /** The longest wait for a permit, null for no limit. */
+    private volatile Duration maxWait;
+
+    /**
+     * Takes a permit to send to the relay of a client, waiting while the relay has as many sends in flight as its limit.
+     *
+     * @param client The client, giving the relay.
+     * @return the permit, to release when the send completes.
+     * @throws EmailException if no permit is available within the maximum wait, or the thread is interrupted while waiting.
+     */
+    public Permit acquire(final SmtpClient client) throws EmailException {
+        return acquire(getKey(client));
+    }
+
+    /**
+     * Takes a permit to send to a relay, waiting while the relay has as many sends in flight as its limit.
+     *
+     * @param key The key of the relay.
+     * @return the permit, to release when the send completes.
+     * @throws EmailException if no permit is available within the maximum wait, or the thread is interrupted while waiting.
+     */
+    public Permit acquire(final String key) throws EmailException {
+        return acquire(key, null);
+    }
+
+    /**
+     * Takes a permit to send to a relay, waiting while the relay has as many sends in flight as its limit, but not past the deadline of the send.
+     *
+     * @param key      The key of the relay.
+     * @param deadline The deadline of the send, null for none.
+     * @return the permit, to release when the send completes.
+     * @throws EmailTimeoutException if no permit is available before the deadline.
+     * @throws EmailException        if no permit is available within the maximum wait, or the thread is interrupted while waiting.
+     */
+    public Permit acquire(final String key, final Deadline deadline) throws EmailException {
+        final Limit limit = getLimit(key);
+        final Duration wait = maxWait;
+        final long waitEnd = wait != null ? System.nanoTime() + wait.toNanos() : 0;
+        synchronized (limit) {
+            try {
+                while (limit.inFlight >= (int) limit.limit) {
+                    long remaining = wait != null ? waitEnd - System.nanoTime() : Long.MAX_VALUE;
+                    if (remaining <= 0) {
+                        throw limitReached(limit, key);
+                    }
+                    if (deadline != null) {
+                        if (deadline.isExpired()) {
+                            throw deadline.timeout(limitReached(limit, key));
+                        }
+                        remaining = Math.min(remaining, deadline.getRemaining().toNanos());
+                    }
+                    if (remaining == Long.MAX_VALUE) {
+                        limit.wait();
+                    } else {
+                        TimeUnit.NANOSECONDS.timedWait(limit, remaining);
+                    }
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EmailException("Interrupted while waiting for the concurrency limit of " + key, e);
+            }
+            limit.inFlight++;
+            return new Permit(limit);
+        }
+    }
+
+    /**
+     * Gets the factor a transient failure multiplies the limit by.
+     *
+     * @return the backoff ratio.
+     */
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * Gets the limit of a relay seen for the first time.
+     *
+     * @return the initial limit.
+     */
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    /**
+     * Gets the key of the relay of a client: its host and port, or its Unix domain socket.
+     *
+     * @param client The client.
+     * @return the key.
+     */
+    public String getKey(final SmtpClient client) {
+        return client.getUnixSocket() != null ? client.getUnixSocket().toString() : client.getHost() + ":" + client.getPort();
+    }
+
+    /**
+     * Gets the factor over the baseline latency a send may take before it cuts the limit.
+     *
+     * @return the latency tolerance.
+     */
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    /**
+     * Gets the limit of a relay, creating it with the initial limit on first use.
+     *
+     * @param key The key of the relay.
+     * @return the limit.
+     */
+    public Limit getLimit(final String key) {
+        return limits.computeIfAbsent(key, k -> new Limit(k, Math.min(maxLimit, Math.max(minLimit, initialLimit))));
+    }
+
+    /**
+     * Gets the limits of the relays seen so far.
+     *
+     * @return an unmodifiable view of the limits.
+     */
+    public Collection<Limit> getLimits() {
+        return Collections.unmodifiableCollection(limits.values());
+    }
+
+    /**
+     * Gets the highest limit.
+     *
+     * @return the maximum limit.
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Gets the longest wait for a permit.
+     *
+     * @return the maximum wait, null for no limit.
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Gets the lowest limit.
+     *
+     * @return the minimum limit.
+     */
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * Sets the factor a transient failure multiplies the limit by.
+     *
+     * @param backoffRatio The backoff ratio, greater than 0 and less than 1.
+     * @return {@code this} instance.
+     */
+    public ConcurrencyLimiter setBackoffRatio(final double backoffRatio) {
+        if (!(backoffRatio > 0 && backoffRatio < 1)) {
+            throw new IllegalArgumentException("Backoff ratio must be between 0 and 1: " + backoffRatio);
+        }
+        this.backoffRatio = backoffRatio;
+        return this;
+    }
+
+    /**
+     * Sets the limit of a relay seen for the first time.
+     *
+     * @param initialLimit The initial limit.
+     * @return {@code this} instance.
+     */
+    public ConcurrencyLimiter setInitialLimit(final int initialLimit) {
+        this.initialLimit = initialLimit;
+        return this;
+    }
+
+    /**
+     * Sets the factor over the baseline latency a send may take before it cuts the limit.
+     *
+     * @param latencyTolerance The latency tolerance, at least 1.
+     * @return {@code this} instance.
+     */
+    public ConcurrencyLimiter setLatencyTolerance(final double latencyTolerance) {
+        if (!(latencyTolerance >= 1)) {
+            throw new IllegalArgumentException("Latency tolerance must be at least 1: " + latencyTolerance);
+        }
+        this.latencyTolerance = latencyTolerance;
+        return this;
+    }
+
+    /**
+     * Sets the highest limit.
+     *
+     * @param maxLimit The maximum limit.
+     * @return {@code this} instance.
+     */
+    public ConcurrencyLimiter setMaxLimit(final int maxLimit) {
+        this.maxLimit = maxLimit;
+        return this;
+    }
+
+    /**
+     * Sets the longest wait for a permit; a send that would wait longer fails instead.
+     *
+     * @param maxWait The maximum wait, null for no limit.
+     * @return {@code this} instance.
+     */
+    public ConcurrencyLimiter setMaxWait(final Duration maxWait) {
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    /**
+     * Sets the lowest limit.
+     *
+     * @param minLimit The minimum limit, at least 1.
+     * @return {@code this} instance.
+     */
+    public ConcurrencyLimiter setMinLimit(final int minLimit) {
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("Minimum limit must be at least 1: " + minLimit);
+        }
+        this.minLimit = minLimit;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter" + limits.values();
+    }
+
+    /**
+     * Takes a permit to send to a relay if it has fewer sends in flight than its limit, without waiting.
+     *
+     * @param key The key of the relay.
+     * @return the permit, or null if the relay is at its limit.
+     */
+    public Permit tryAcquire(final String key) {
+        final Limit limit = getLimit(key);
+        synchronized (limit) {
+            if (limit.inFlight >= (int) limit.limit) {
+                return null;
+            }
+            limit.inFlight++;
+            return new Permit(limit);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.mail2.core.io.CrlfOutputStream;
+
+/**
+ * Writes message data for the SMTP {@code DATA} command: line endings are normalized to CRLF, lines starting with a dot get an extra dot (RFC 5321 section
+ * 4.5.2) and {@link #finish()} writes the terminating {@code CRLF.CRLF}.
+ *
+ * @since 2.0.0-M2
+ */
+public class DotStuffingOutputStream extends CrlfOutputStream {
+
+    /** The end of data indicator. */
+    private static final byte[] END_OF_DATA = { '.', '\r', '\n' };
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param outputStream The stream to write to.
+     */
+    public DotStuffingOutputStream(final OutputStream outputStream) {
+        super(outputStream);
+    }
+
+    /**
+     * Ends the last line and writes the end of data indicator. The underlying stream is flushed but not closed.
+     *
+     * @throws IOException if an I/O error occurs.
+     */
+    public void finish() throws IOException {
+        if (!isLineStart()) {
+            writeLineEnd();
+        }
+        out.write(END_OF_DATA);
+        out.flush();
+    }
+
+    @Override
+    protected void writeSpan(final byte[] b, final int off, final int len) throws IOException {
+        if (isLineStart() && b[off] == '.') {
+            out.write('.');
+        }
+        super.writeSpan(b, off, len);
+    }
+}
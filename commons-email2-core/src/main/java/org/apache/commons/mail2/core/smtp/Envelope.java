@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import org.apache.commons.mail2.core.EmailException;
+
+/**
+ * The SMTP envelope of a message: the reverse-path and body type given in {@code MAIL FROM} and the forward-paths given in {@code RCPT TO}.
+ * <p>
+ * The envelope is independent of the From, To, Cc and Bcc headers of the message. Instances are immutable.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class Envelope {
+
+    /**
+     * Creates an envelope.
+     *
+     * @param reversePath The reverse-path, an empty string for the null reverse-path {@code <>}.
+     * @param recipients  The recipient addresses.
+     * @return a new envelope.
+     * @throws EmailException if an address is invalid or there are no recipients.
+     */
+    public static Envelope of(final String reversePath, final String... recipients) throws EmailException {
+        return new Envelope(reversePath, Arrays.asList(EmailException.checkNonEmpty(recipients, () -> "At least one recipient required")));
+    }
+
+    private static String check(final String address) throws EmailException {
+        EmailException.checkNonNull(address, () -> "Address must not be null");
+        for (int i = 0; i < address.length(); i++) {
+            final char c = address.charAt(i);
+            if (c == '\r' || c == '\n' || c == '<' || c == '>' || Character.isWhitespace(c)) {
+                throw new EmailException("Invalid envelope address: " + address);
+            }
+        }
+        return address;
+    }
+
+    /** The reverse-path. */
+    private final String reversePath;
+
+    /** The recipients. */
+    private final List<String> recipients;
+
+    /** The declared body type. */
+    private final BodyType bodyType;
+
+    /** Whether the message is sent with the SMTPUTF8 extension. */
+    private final boolean smtpUtf8;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param reversePath The reverse-path, an empty string for the null reverse-path {@code <>}.
+     * @param recipients  The recipient addresses.
+     * @throws EmailException if an address is invalid or there are no recipients.
+     */
+    public Envelope(final String reversePath, final Collection<String> recipients) throws EmailException {
+        this.reversePath = check(reversePath);
+        EmailException.checkNonEmpty(recipients, () -> "At least one recipient required");
+        final List<String> list = new ArrayList<>(recipients.size());
+        for (final String recipient : recipients) {
+            if (check(recipient).isEmpty()) {
+                throw new EmailException("Empty recipient address");
+            }
+            list.add(recipient);
+        }
+        this.recipients = Collections.unmodifiableList(list);
+        this.bodyType = BodyType.SEVEN_BIT;
+        this.smtpUtf8 = false;
+    }
+
+    private Envelope(final Envelope envelope, final BodyType bodyType, final boolean smtpUtf8) {
+        this.reversePath = envelope.reversePath;
+        this.recipients = envelope.recipients;
+        this.bodyType = Objects.requireNonNull(bodyType, "bodyType");
+        this.smtpUtf8 = smtpUtf8;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof Envelope)) {
+            return false;
+        }
+        final Envelope other = (Envelope) obj;
+        return reversePath.equals(other.reversePath) && recipients.equals(other.recipients) && bodyType == other.bodyType && smtpUtf8 == other.smtpUtf8;
+    }
+
+    /**
+     * Gets the body type declared with the {@code BODY} parameter.
+     *
+     * @return the body type, {@link BodyType#SEVEN_BIT} by default.
+     */
+    public BodyType getBodyType() {
+        return bodyType;
+    }
+
+    /**
+     * Gets the recipient addresses.
+     *
+     * @return an unmodifiable list of addresses.
+     */
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * Gets the reverse-path.
+     *
+     * @return the reverse-path, empty for the null reverse-path.
+     */
+    public String getReversePath() {
+        return reversePath;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(reversePath, recipients, bodyType, smtpUtf8);
+    }
+
+    /**
+     * Tests whether the message is sent with the {@code SMTPUTF8} parameter, allowing UTF-8 in addresses and headers.
+     *
+     * @return whether SMTPUTF8 is required.
+     */
+    public boolean isSmtpUtf8() {
+        return smtpUtf8;
+    }
+
+    @Override
+    public String toString() {
+        return "Envelope [reversePath=" + reversePath + ", recipients=" + recipients + ", bodyType=" + bodyType + ", smtpUtf8=" + smtpUtf8 + "]";
+    }
+
+    /**
+     * Creates a copy of this envelope that declares the given body type.
+     *
+     * @param bodyType The body type.
+     * @return an envelope with the given body type.
+     */
+    public Envelope withBodyType(final BodyType bodyType) {
+        return bodyType == this.bodyType ? this : new Envelope(this, bodyType, smtpUtf8);
+    }
+
+    /**
+     * Creates a copy of this envelope that is sent with or without the {@code SMTPUTF8} parameter.
+     *
+     * @param smtpUtf8 Whether SMTPUTF8 is required.
+     * @return an envelope with the given setting.
+     */
+    public Envelope withSmtpUtf8(final boolean smtpUtf8) {
+        return smtpUtf8 == this.smtpUtf8 ? this : new Envelope(this, bodyType, smtpUtf8);
+    }
+}
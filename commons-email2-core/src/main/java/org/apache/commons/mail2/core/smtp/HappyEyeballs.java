@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connects to the first reachable of several addresses of a host, with staggered parallel attempts as described by RFC 8305 "Happy Eyeballs Version 2".
+ * <p>
+ * The addresses are tried alternating between IPv6 and IPv4, starting with the family of the first resolved address. An attempt is started when the
+ * previous one failed or did not succeed within the attempt delay, so that an address that drops packets costs the attempt delay rather than the whole
+ * connect timeout. The first socket to connect wins and the other attempts are cancelled by closing their sockets.
+ * </p>
+ * <p>
+ * The attempts run on a small pool of daemon threads shared by all connects; an attempt waits in its queue while all threads are busy.
+ * </p>
+ */
+final class HappyEyeballs {
+
+    /** The maximum number of threads running attempts. */
+    static final int THREADS = 16;
+
+    /** The threads running the attempts, which time out when idle. */
+    private static final ThreadPoolExecutor EXECUTOR;
+
+    static {
+        final AtomicInteger count = new AtomicInteger();
+        EXECUTOR = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "HappyEyeballs-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The outcome of an attempt.
+     */
+    private static final class Outcome {
+
+        /** The socket of the attempt. */
+        private final Socket socket;
+
+        /** The failure, null if connected. */
+        private final IOException failure;
+
+        Outcome(final Socket socket, final IOException failure) {
+            this.socket = socket;
+            this.failure = failure;
+        }
+    }
+
+    /**
+     * Connects to the first reachable address.
+     *
+     * @param addresses    The addresses in the order to try them.
+     * @param attemptDelay The delay before starting the next attempt while the previous ones are pending.
+     * @param timeout      The time all attempts together may take, zero for no limit.
+     * @return the connected socket.
+     * @throws IOException the failure of the first attempt, with those of the others suppressed, if no attempt succeeded.
+     */
+    static Socket connect(final List<InetSocketAddress> addresses, final Duration attemptDelay, final Duration timeout) throws IOException {
+        if (addresses.size() == 1) {
+            final Socket socket = new Socket();
+            try {
+                socket.connect(addresses.get(0), Math.toIntExact(timeout.toMillis()));
+                return socket;
+            } catch (final IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+        // a zero timeout means none
+        final long deadline = System.nanoTime() + (timeout.isZero() ? Long.MAX_VALUE / 4 : timeout.toNanos());
+        final BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        final List<Socket> sockets = new ArrayList<>(addresses.size());
+        IOException failure = null;
+        int failures = 0;
+        long nextAttempt = System.nanoTime();
+        Socket winner = null;
+        try {
+            while (winner == null) {
+                final long now = System.nanoTime();
+                if (sockets.size() < addresses.size() && (now - nextAttempt >= 0 || failures == sockets.size())) {
+                    start(addresses.get(sockets.size()), sockets, outcomes, deadline);
+                    nextAttempt = now + attemptDelay.toNanos();
+                    continue;
+                }
+                final long wait = sockets.size() < addresses.size() ? Math.min(nextAttempt, deadline) - now : deadline - now;
+                if (deadline - now <= 0) {
+                    throw new SocketTimeoutException("Connect timed out");
+                }
+                final Outcome outcome = outcomes.poll(wait, TimeUnit.NANOSECONDS);
+                if (outcome == null) {
+                    continue;
+                }
+                if (outcome.failure == null) {
+                    winner = outcome.socket;
+                } else {
+                    failures++;
+                    if (failure == null) {
+                        failure = outcome.failure;
+                    } else {
+                        failure.addSuppressed(outcome.failure);
+                    }
+                    if (failures == addresses.size()) {
+                        throw failure;
+                    }
+                }
+            }
+            return winner;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while connecting", e);
+        } finally {
+            synchronized (sockets) {
+                for (final Socket socket : sockets) {
+                    if (socket != winner) {
+                        try {
+                            socket.close();
+                        } catch (final IOException e) {
+                            // ignore
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Orders the addresses of a host alternating between address families, starting with the family of the first one, and keeps the order within a family.
+     *
+     * @param addresses The resolved addresses.
+     * @param port      The port.
+     * @return the socket addresses in the order to try them.
+     */
+    static List<InetSocketAddress> interleave(final InetAddress[] addresses, final int port) {
+        final Deque<InetAddress> first = new ArrayDeque<>();
+        final Deque<InetAddress> second = new ArrayDeque<>();
+        for (final InetAddress address : addresses) {
+            (address instanceof Inet6Address == addresses[0] instanceof Inet6Address ? first : second).add(address);
+        }
+        final List<InetSocketAddress> list = new ArrayList<>(addresses.length);
+        while (!first.isEmpty() || !second.isEmpty()) {
+            if (!first.isEmpty()) {
+                list.add(new InetSocketAddress(first.poll(), port));
+            }
+            if (!second.isEmpty()) {
+                list.add(new InetSocketAddress(second.poll(), port));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Starts an attempt on the shared threads. An attempt that only runs after the connect is over finds its socket closed and is skipped.
+     */
+    private static void start(final InetSocketAddress address, final List<Socket> sockets, final BlockingQueue<Outcome> outcomes, final long deadline) {
+        final Socket socket = new Socket();
+        synchronized (sockets) {
+            sockets.add(socket);
+        }
+        EXECUTOR.execute(() -> {
+            if (socket.isClosed()) {
+                return;
+            }
+            try {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                socket.connect(address, (int) Math.max(1, Math.min(Integer.MAX_VALUE, remaining)));
+                outcomes.add(new Outcome(socket, null));
+            } catch (final IOException e) {
+                outcomes.add(new Outcome(socket, e));
+            }
+        });
+    }
+
+    private HappyEyeballs() {
+        // no instances
+    }
+}
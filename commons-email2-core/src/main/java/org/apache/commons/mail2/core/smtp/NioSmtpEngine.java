@@ -0,0 +1,949 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import org.apache.commons.mail2.core.Deadline;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
+import org.apache.commons.mail2.core.MessageWriteException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+
+/**
+ * Sends messages over non-blocking connections, running many SMTP sessions on a few I/O threads.
+ * <p>
+ * Each worker thread multiplexes its sessions with a {@link Selector}. TLS, on connect or with STARTTLS, is done with an {@link SSLEngine} created from
+ * {@link #setSslContext(SSLContext) the SSL context} of the engine. The other settings of a send are taken from an {@link SmtpClient}: host, port,
+ * timeouts, TLS, authentication with PLAIN or LOGIN, the EHLO name and partial sends. If the relay supports PIPELINING (RFC 2920), {@code MAIL FROM} and
+ * all {@code RCPT TO} commands are sent in one batch. Every send uses its own connection. If the client has a {@link RateLimiter}, a message waiting for
+ * its tokens is held by its worker and connected when they are available; likewise, if the client has a {@link ConcurrencyLimiter}, a message is held
+ * while its relay has as many sends in flight as its limit.
+ * </p>
+ * <p>
+ * Instances are thread-safe and should be shared and {@link #close() closed} when no longer needed.
+ * </p>
+ * <p>
+ * Memory: a message is serialized and dot-stuffed into one byte array when it is submitted, and that array is kept until its future completes, including
+ * while the message waits for rate limiter tokens or a concurrency slot. The heap used by the engine is therefore the sum of the dot-stuffed sizes of all
+ * messages submitted and not yet completed, plus a second copy of the message being submitted. The engine does not bound it: callers sending many or
+ * large messages bound the number of uncompleted futures themselves, or use an {@link SmtpClient}, which streams the message.
+ * </p>
+ * <p>
+ * Name resolution: the relay host name is resolved to an address with a blocking {@link java.net.InetAddress} lookup in the thread that calls
+ * {@link #send(SmtpClient, Envelope, ContentWriter)}, which may take as long as the system resolver timeout; MX records are never looked up. A host name
+ * that cannot be resolved fails the future, not the call.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class NioSmtpEngine implements Closeable {
+
+    /**
+     * The steps of a session, each waiting for a reply.
+     */
+    private enum Step {
+        GREETING, EHLO, HELO, STARTTLS, HANDSHAKE, AUTH, ENVELOPE, DATA, CONTENT, QUIT
+    }
+
+    /**
+     * One SMTP session delivering one message.
+     */
+    private final class Session {
+
+        /** The settings. */
+        private final SmtpClient client;
+
+        /** The envelope. */
+        private final Envelope envelope;
+
+        /** The dot-stuffed message data including the end of data indicator. */
+        private final byte[] data;
+
+        /** The address of the relay. */
+        private final InetSocketAddress address;
+
+        /** Completed with the reply to the message data. */
+        private final CompletableFuture<SmtpReply> future;
+
+        /** When the session may connect, in {@link System#nanoTime()} units. */
+        private final long startNanos;
+
+        /** The capabilities of the relay. */
+        private final Map<String, String> capabilities = new LinkedHashMap<>();
+
+        /** Plain text waiting to be written. */
+        private final Queue<ByteBuffer> output = new ArrayDeque<>();
+
+        /** The lines of the reply being read. */
+        private final List<String> replyLines = new ArrayList<>();
+
+        /** The bytes of the line being read. */
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        /** The rejected recipients. */
+        private final List<SmtpReply> rejected = new ArrayList<>();
+
+        /** The channel. */
+        private SocketChannel channel;
+
+        /** The selection key. */
+        private SelectionKey key;
+
+        /** The current step. */
+        private Step step = Step.GREETING;
+
+        /** Plain text read and not yet parsed. */
+        private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+        /** The TLS engine, null before TLS is started. */
+        private SSLEngine sslEngine;
+
+        /** The time the TLS handshake started. */
+        private long handshakeStartMillis;
+
+        /** TLS records read and not yet unwrapped. */
+        private ByteBuffer netInput;
+
+        /** TLS records not yet written. */
+        private ByteBuffer netOutput;
+
+        /** Whether the TLS handshake is in progress. */
+        private boolean handshaking;
+
+        /** The number of replies received in the current step. */
+        private int replies;
+
+        /** When the session times out, in {@link System#nanoTime()} units. */
+        private long deadline;
+
+        /** When the message data started, in {@link System#nanoTime()} units. */
+        private long contentStartNanos;
+
+        /** The time spent transferring the message data and waiting for its reply, in nanoseconds. */
+        private long contentNanos;
+
+        Session(final SmtpClient client, final Envelope envelope, final byte[] data, final CompletableFuture<SmtpReply> future, final long startNanos) {
+            this.client = client;
+            this.envelope = envelope;
+            this.data = data;
+            this.future = future;
+            this.startNanos = startNanos;
+            this.address = new InetSocketAddress(client.getHost(), client.getPort());
+        }
+
+        private void authenticate() throws EmailException {
+            final String mechanisms = " " + capabilities.get("AUTH") + " ";
+            step = Step.AUTH;
+            replies = 0;
+            if (mechanisms.contains(" PLAIN ")) {
+                command("AUTH PLAIN " + encode("\0" + client.getUserName() + "\0" + client.getPassword()));
+            } else if (mechanisms.contains(" LOGIN ")) {
+                command("AUTH LOGIN");
+            } else {
+                throw new EmailException("No supported authentication mechanism offered by " + client.getHost() + ": " + capabilities.get("AUTH"));
+            }
+        }
+
+        /**
+         * Closes the channel; the future is completed with a failure unless it completed already.
+         */
+        private void close(final Throwable cause) {
+            if (channel != null && channel.isOpen()) {
+                activeSessions.decrementAndGet();
+                try {
+                    channel.close();
+                } catch (final IOException e) {
+                    // ignore
+                }
+            }
+            if (cause != null) {
+                future.completeExceptionally(cause instanceof EmailException ? cause
+                        : new EmailException("Sending the email to " + client.getHost() + ":" + client.getPort() + " failed", cause));
+            } else if (!future.isDone()) {
+                future.completeExceptionally(new EmailException("Connection to " + client.getHost() + ":" + client.getPort() + " closed"));
+            }
+        }
+
+        private void command(final String command) {
+            output.add(ByteBuffer.wrap((command + "\r\n").getBytes(StandardCharsets.UTF_8)));
+        }
+
+        private void ehlo() {
+            capabilities.clear();
+            step = Step.EHLO;
+            command("EHLO " + client.getLocalHost());
+        }
+
+        /**
+         * Writes pending plain text, wrapped in TLS records if TLS is on, as far as the channel accepts it.
+         */
+        private void flush() throws IOException {
+            boolean pending;
+            if (sslEngine == null) {
+                while (!output.isEmpty()) {
+                    final ByteBuffer buffer = output.peek();
+                    channel.write(buffer);
+                    if (buffer.hasRemaining()) {
+                        break;
+                    }
+                    output.poll();
+                }
+                pending = !output.isEmpty();
+            } else {
+                while (true) {
+                    netOutput.flip();
+                    channel.write(netOutput);
+                    pending = netOutput.hasRemaining();
+                    netOutput.compact();
+                    if (pending || handshaking || output.isEmpty()) {
+                        break;
+                    }
+                    final ByteBuffer buffer = output.peek();
+                    checkClosed(sslEngine.wrap(buffer, netOutput));
+                    if (!buffer.hasRemaining()) {
+                        output.poll();
+                    }
+                }
+            }
+            key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        /**
+         * Called on the worker thread when a selected operation is ready.
+         */
+        void handle() {
+            try {
+                if (key.isConnectable()) {
+                    channel.finishConnect();
+                    onConnected();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    if (handshaking) {
+                        handshake();
+                    }
+                    flush();
+                }
+                deadline = System.nanoTime() + client.getReadTimeout().toNanos();
+            } catch (final IOException | EmailException | RuntimeException e) {
+                // a failure fails this session only, not the worker
+                close(e);
+            }
+        }
+
+        /**
+         * Drives the TLS handshake as far as possible without blocking.
+         */
+        private void handshake() throws IOException, EmailException {
+            while (handshaking) {
+                switch (sslEngine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    Runnable task;
+                    while ((task = sslEngine.getDelegatedTask()) != null) {
+                        task.run();
+                    }
+                    break;
+                case NEED_WRAP:
+                    netOutput.flip();
+                    channel.write(netOutput);
+                    final boolean pending = netOutput.hasRemaining();
+                    netOutput.compact();
+                    if (pending) {
+                        return;
+                    }
+                    checkClosed(sslEngine.wrap(EMPTY, netOutput));
+                    break;
+                case FINISHED:
+                case NOT_HANDSHAKING:
+                    handshaking = false;
+                    if (tlsSessions != null) {
+                        tlsSessions.handshakeCompleted(sslEngine.getSession(), handshakeStartMillis);
+                    }
+                    if (step == Step.HANDSHAKE) {
+                        ehlo();
+                    }
+                    break;
+                default:
+                    if (!unwrap()) {
+                        return;
+                    }
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Handles one complete reply.
+         */
+        private void onReply(final SmtpReply reply) throws IOException, EmailException {
+            replies++;
+            switch (step) {
+            case GREETING:
+                if (reply.getCode() != 220) {
+                    throw new SmtpException("Connection rejected", reply);
+                }
+                ehlo();
+                break;
+            case EHLO:
+                if (!reply.isPositive()) {
+                    step = Step.HELO;
+                    command("HELO " + client.getLocalHost());
+                    break;
+                }
+                SmtpConnection.parseCapabilities(reply, capabilities);
+                onHello();
+                break;
+            case HELO:
+                if (!reply.isPositive()) {
+                    throw new SmtpException("HELO rejected", reply);
+                }
+                onHello();
+                break;
+            case STARTTLS:
+                if (reply.getCode() != 220) {
+                    throw new SmtpException("STARTTLS rejected", reply);
+                }
+                step = Step.HANDSHAKE;
+                startTls();
+                break;
+            case AUTH:
+                if (reply.isPositiveIntermediate() && replies == 1) {
+                    command(encode(client.getUserName()));
+                } else if (reply.isPositiveIntermediate() && replies == 2) {
+                    command(encode(client.getPassword()));
+                } else if (reply.isPositive()) {
+                    sendEnvelope();
+                } else {
+                    throw new SmtpException("Authentication failed", reply);
+                }
+                break;
+            case ENVELOPE:
+                onEnvelopeReply(reply);
+                break;
+            case DATA:
+                if (reply.getCode() != 354) {
+                    throw new SmtpException("DATA rejected", reply);
+                }
+                step = Step.CONTENT;
+                contentStartNanos = System.nanoTime();
+                output.add(ByteBuffer.wrap(data));
+                break;
+            case CONTENT:
+                if (!reply.isPositive()) {
+                    throw new SmtpException("Message rejected", reply);
+                }
+                contentNanos = System.nanoTime() - contentStartNanos;
+                future.complete(reply);
+                step = Step.QUIT;
+                command("QUIT");
+                break;
+            default:
+                close(null);
+                break;
+            }
+        }
+
+        private void onConnected() throws IOException {
+            deadline = System.nanoTime() + client.getReadTimeout().toNanos();
+            key.interestOps(SelectionKey.OP_READ);
+            if (client.isSslOnConnect()) {
+                startTls();
+                flush();
+            }
+        }
+
+        private void onEnvelopeReply(final SmtpReply reply) throws EmailException {
+            final List<String> recipients = envelope.getRecipients();
+            if (replies == 1) {
+                if (!reply.isPositive()) {
+                    throw new SmtpException("Sender rejected", reply);
+                }
+            } else if (!reply.isPositive()) {
+                rejected.add(reply);
+            }
+            if (replies <= recipients.size()) {
+                if (!capabilities.containsKey("PIPELINING")) {
+                    command("RCPT TO:<" + recipients.get(replies - 1) + ">");
+                }
+                return;
+            }
+            if (!rejected.isEmpty() && (!client.isSendPartial() || rejected.size() == recipients.size())) {
+                throw new SmtpException("Recipients rejected", rejected.get(0));
+            }
+            step = Step.DATA;
+            command("DATA");
+        }
+
+        private void onHello() throws EmailException {
+            if (sslEngine == null && (client.isStartTlsEnabled() || client.isStartTlsRequired())) {
+                if (capabilities.containsKey("STARTTLS")) {
+                    step = Step.STARTTLS;
+                    command("STARTTLS");
+                    return;
+                }
+                if (client.isStartTlsRequired()) {
+                    throw new EmailException("STARTTLS is required but not supported by " + client.getHost());
+                }
+            }
+            if (client.getUserName() != null) {
+                authenticate();
+            } else {
+                sendEnvelope();
+            }
+        }
+
+        /**
+         * Reads what is available and handles the complete replies.
+         */
+        private void read() throws IOException, EmailException {
+            final int n = channel.read(sslEngine == null ? input : netInput);
+            if (n < 0) {
+                throw new EOFException("Connection closed by " + client.getHost());
+            }
+            if (sslEngine != null) {
+                if (handshaking) {
+                    handshake();
+                }
+                while (!handshaking && unwrap()) {
+                    if (sslEngine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                        handshaking = true;
+                        handshake();
+                    }
+                }
+            }
+            // STARTTLS replaces the buffer; plain text after the 220 reply is discarded
+            final ByteBuffer plain = input;
+            plain.flip();
+            while (plain.hasRemaining() && plain == input) {
+                final byte b = plain.get();
+                if (b != '\n') {
+                    if (b != '\r') {
+                        if (line.size() >= MAX_LINE_LENGTH) {
+                            throw new IOException("Reply line too long from " + client.getHost());
+                        }
+                        line.write(b);
+                    }
+                    continue;
+                }
+                final String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+                line.reset();
+                if (text.length() < 3 || text.length() > 3 && text.charAt(3) != '-' && text.charAt(3) != ' ') {
+                    throw new IOException("Malformed reply from " + client.getHost() + ": " + text);
+                }
+                replyLines.add(text.length() > 4 ? text.substring(4) : "");
+                if (text.length() == 3 || text.charAt(3) == ' ') {
+                    final SmtpReply reply;
+                    try {
+                        reply = new SmtpReply(Integer.parseInt(text.substring(0, 3)), replyLines);
+                    } catch (final NumberFormatException e) {
+                        throw new IOException("Malformed reply from " + client.getHost() + ": " + text, e);
+                    }
+                    replyLines.clear();
+                    onReply(reply);
+                    if (!channel.isOpen()) {
+                        return;
+                    }
+                }
+            }
+            plain.clear();
+            flush();
+        }
+
+        private void sendEnvelope() throws EmailException {
+            final List<String> parameters = client.createMailParameters(envelope, data.length, capabilities, false);
+            final StringBuilder mail = new StringBuilder("MAIL FROM:<").append(envelope.getReversePath()).append('>');
+            for (final String parameter : parameters) {
+                mail.append(' ').append(parameter);
+            }
+            step = Step.ENVELOPE;
+            replies = 0;
+            command(mail.toString());
+            if (capabilities.containsKey("PIPELINING")) {
+                for (final String recipient : envelope.getRecipients()) {
+                    command("RCPT TO:<" + recipient + ">");
+                }
+            }
+        }
+
+        /**
+         * Opens the channel and registers it with the selector of the worker.
+         */
+        void start(final Selector selector) {
+            final Deadline sendDeadline = client.getDeadline();
+            if (sendDeadline != null && sendDeadline.isExpired()) {
+                close(sendDeadline.timeout(null));
+                return;
+            }
+            if (address.isUnresolved()) {
+                close(new EmailException("Cannot resolve " + client.getHost()));
+                return;
+            }
+            try {
+                channel = SocketChannel.open();
+                activeSessions.incrementAndGet();
+                channel.configureBlocking(false);
+                key = channel.register(selector, SelectionKey.OP_CONNECT, this);
+                deadline = System.nanoTime() + client.getConnectTimeout().toNanos();
+                if (channel.connect(address)) {
+                    onConnected();
+                }
+            } catch (final IOException | RuntimeException e) {
+                close(e);
+            }
+        }
+
+        private void startTls() throws IOException {
+            handshakeStartMillis = System.currentTimeMillis();
+            sslEngine = getSslContext().createSSLEngine(client.getHost(), client.getPort());
+            sslEngine.setUseClientMode(true);
+            if (client.isSslCheckServerIdentity()) {
+                final SSLParameters parameters = sslEngine.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                sslEngine.setSSLParameters(parameters);
+            }
+            final int packetSize = sslEngine.getSession().getPacketBufferSize();
+            netInput = ByteBuffer.allocate(packetSize);
+            netOutput = ByteBuffer.allocate(packetSize);
+            input = ByteBuffer.allocate(Math.max(BUFFER_SIZE, sslEngine.getSession().getApplicationBufferSize()));
+            sslEngine.beginHandshake();
+            handshaking = true;
+            try {
+                handshake();
+            } catch (final EmailException e) {
+                throw new IOException(e);
+            }
+        }
+
+        /**
+         * Fails the session if it is past the deadline of its step or of the send.
+         */
+        void checkTimeout(final long now) {
+            final Deadline sendDeadline = client.getDeadline();
+            if (sendDeadline != null && sendDeadline.isExpired()) {
+                close(sendDeadline.timeout(null));
+            } else if (now - deadline > 0) {
+                close(new EmailException("Timeout in " + step + " with " + client.getHost() + ":" + client.getPort()));
+            }
+        }
+
+        /**
+         * Unwraps one TLS record into the plain text input.
+         *
+         * @return whether a record was unwrapped, false if more data must be read first.
+         */
+        private boolean unwrap() throws IOException {
+            netInput.flip();
+            final SSLEngineResult result;
+            try {
+                result = sslEngine.unwrap(netInput, input);
+            } finally {
+                netInput.compact();
+            }
+            switch (result.getStatus()) {
+            case BUFFER_UNDERFLOW:
+                if (!netInput.hasRemaining()) {
+                    netInput = enlarge(netInput, sslEngine.getSession().getPacketBufferSize());
+                }
+                return false;
+            case BUFFER_OVERFLOW:
+                input = enlarge(input, sslEngine.getSession().getApplicationBufferSize());
+                return true;
+            case CLOSED:
+                throw new EOFException("TLS connection closed by " + client.getHost());
+            default:
+                return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+            }
+        }
+    }
+
+    /**
+     * A thread running sessions on one selector.
+     */
+    private final class Worker implements Runnable {
+
+        /** The selector. */
+        private final Selector selector;
+
+        /** Sessions waiting to be registered. */
+        private final Queue<Session> pending = new ConcurrentLinkedQueue<>();
+
+        /** Sessions waiting for their start time, only used by the worker thread. */
+        private final Queue<Session> delayed = new PriorityQueue<>((a, b) -> Long.compare(a.startNanos - b.startNanos, 0));
+
+        /** Due sessions waiting for a permit of their concurrency limiter, only used by the worker thread. */
+        private final Queue<Session> waiting = new ArrayDeque<>();
+
+        /** The thread. */
+        private final Thread thread;
+
+        Worker(final int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "NioSmtpEngine-" + index);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long nextTimeoutCheck = System.nanoTime();
+            try {
+                while (!closed) {
+                    selector.select(selectTimeout());
+                    waiting.removeIf(this::start);
+                    Session session;
+                    while ((session = pending.poll()) != null) {
+                        if (session.startNanos - System.nanoTime() > 0) {
+                            delayed.add(session);
+                        } else if (!start(session)) {
+                            waiting.add(session);
+                        }
+                    }
+                    while ((session = delayed.peek()) != null && session.startNanos - System.nanoTime() <= 0) {
+                        if (!start(delayed.remove())) {
+                            waiting.add(session);
+                        }
+                    }
+                    for (final SelectionKey key : selector.selectedKeys()) {
+                        ((Session) key.attachment()).handle();
+                    }
+                    selector.selectedKeys().clear();
+                    final long now = System.nanoTime();
+                    if (now - nextTimeoutCheck >= 0) {
+                        for (final SelectionKey key : selector.keys()) {
+                            ((Session) key.attachment()).checkTimeout(now);
+                        }
+                        nextTimeoutCheck = now + TimeUnit.MILLISECONDS.toNanos(SELECT_TIMEOUT_MILLIS);
+                    }
+                }
+            } catch (final IOException | RuntimeException e) {
+                // an engine with a dead worker would queue sends that never complete
+                closed = true;
+                for (final Worker worker : workers) {
+                    worker.selector.wakeup();
+                }
+                failAll(e);
+                return;
+            }
+            failAll(null);
+        }
+
+        private void failAll(final Exception cause) {
+            final EmailException failure = new EmailException("The SMTP engine was closed", cause);
+            Session session;
+            while ((session = pending.poll()) != null) {
+                session.future.completeExceptionally(failure);
+            }
+            while ((session = delayed.poll()) != null) {
+                session.future.completeExceptionally(failure);
+            }
+            while ((session = waiting.poll()) != null) {
+                session.future.completeExceptionally(failure);
+            }
+            for (final SelectionKey key : selector.keys()) {
+                ((Session) key.attachment()).close(failure);
+            }
+            try {
+                selector.close();
+            } catch (final IOException e) {
+                // ignore
+            }
+        }
+
+        /**
+         * Waits at most until the next timeout check, the start of the next delayed session or the next try of the waiting sessions.
+         */
+        private long selectTimeout() {
+            final Session next = delayed.peek();
+            final long timeout = waiting.isEmpty() ? SELECT_TIMEOUT_MILLIS : LIMIT_RETRY_MILLIS;
+            if (next == null) {
+                return timeout;
+            }
+            return Math.max(1, Math.min(timeout, TimeUnit.NANOSECONDS.toMillis(next.startNanos - System.nanoTime() + 999_999)));
+        }
+
+        /**
+         * Starts a due session, unless its relay is at the limit of its concurrency limiter.
+         *
+         * @return whether the session was started.
+         */
+        private boolean start(final Session session) {
+            final ConcurrencyLimiter limiter = session.client.getConcurrencyLimiter();
+            if (limiter != null) {
+                final ConcurrencyLimiter.Permit permit = limiter.tryAcquire(limiter.getKey(session.client));
+                if (permit == null) {
+                    return false;
+                }
+                session.future.whenComplete((reply, failure) -> permit.release(failure, session.contentNanos));
+            }
+            session.start(selector);
+            return true;
+        }
+
+        void submit(final Session session) {
+            pending.add(session);
+            selector.wakeup();
+            if (closed && pending.remove(session)) {
+                session.future.completeExceptionally(new EmailException("The SMTP engine is closed"));
+            }
+        }
+    }
+
+    /** The default number of I/O threads. */
+    public static final int DEFAULT_THREADS = 2;
+
+    /** The size of the plain text input buffer. */
+    private static final int BUFFER_SIZE = 4096;
+
+    /** The maximum length of a reply line we accept. */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /** How long a selector waits, which bounds the timeout accuracy. */
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+
+    /** How often sessions waiting for a concurrency permit try again, in milliseconds. */
+    private static final long LIMIT_RETRY_MILLIS = 10;
+
+    /** Nothing to wrap during the handshake. */
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private static void checkClosed(final SSLEngineResult result) throws SSLException {
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            throw new SSLException("TLS engine closed");
+        }
+    }
+
+    private static String encode(final String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ByteBuffer enlarge(final ByteBuffer buffer, final int minimumCapacity) {
+        final ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, minimumCapacity));
+        buffer.flip();
+        larger.put(buffer);
+        return larger;
+    }
+
+    /** The workers. */
+    private final Worker[] workers;
+
+    /** Picks the worker of the next session. */
+    private final AtomicInteger nextWorker = new AtomicInteger();
+
+    /** The number of open sessions. */
+    private final AtomicInteger activeSessions = new AtomicInteger();
+
+    /** Creates TLS engines, null for the default context. */
+    private volatile SSLContext sslContext;
+
+    /** Counts the TLS handshakes, null if not counted. */
+    private volatile TlsSessions tlsSessions;
+
+    /** Whether the engine is closed. */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new instance with {@link #DEFAULT_THREADS} I/O threads.
+     *
+     * @throws IOException if a selector cannot be opened.
+     */
+    public NioSmtpEngine() throws IOException {
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param threads The number of I/O threads.
+     * @throws IOException if a selector cannot be opened.
+     */
+    public NioSmtpEngine(final int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+        }
+        for (final Worker worker : workers) {
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Closes the engine: open sessions are failed and the I/O threads end.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final Worker worker : workers) {
+            worker.selector.wakeup();
+        }
+        for (final Worker worker : workers) {
+            try {
+                worker.thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of open sessions.
+     *
+     * @return the number of open sessions.
+     */
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+
+    /**
+     * Gets the SSL context TLS engines are created from.
+     *
+     * @return the SSL context.
+     * @throws IllegalStateException if no context was set and the default context is not available.
+     */
+    public SSLContext getSslContext() {
+        if (sslContext == null) {
+            try {
+                sslContext = SSLContext.getDefault();
+            } catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return sslContext;
+    }
+
+    /**
+     * Gets the TLS context that counts the handshakes of this engine.
+     *
+     * @return the TLS context, null if the handshakes are not counted.
+     */
+    public TlsSessions getTlsSessions() {
+        return tlsSessions;
+    }
+
+    /**
+     * Sends a message in one transaction on a new connection, without blocking on network I/O.
+     * <p>
+     * The message is written and dot-stuffed in the calling thread, which also resolves the relay host name and blocks while doing so. The returned future
+     * is completed by an I/O thread with the reply to the message data or with an {@link EmailException}, for example a {@link SmtpException} if the relay
+     * rejects the message or a {@link org.apache.commons.mail2.core.MessageTooLargeException} if the message exceeds the SIZE limit of the relay.
+     * </p>
+     * <p>
+     * If the client has a {@link RateLimiter}, the tokens of the message are reserved now and the connection is opened when they are available; no thread
+     * waits. A limiter in {@link RateLimiter.Mode#FAIL_FAST} completes the future with a {@link RateLimitExceededException} instead.
+     * </p>
+     *
+     * @param client   The settings of the relay.
+     * @param envelope The envelope.
+     * @param message  Writes the serialized message.
+     * @return the future reply of the relay to the message data.
+     */
+    public CompletableFuture<SmtpReply> send(final SmtpClient client, final Envelope envelope, final ContentWriter message) {
+        Objects.requireNonNull(envelope, "envelope");
+        final CompletableFuture<SmtpReply> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new EmailException("The SMTP engine is closed"));
+            return future;
+        }
+        if (client.isLmtp() || client.getUnixSocket() != null) {
+            future.completeExceptionally(new EmailException("The SMTP engine supports neither LMTP nor Unix domain sockets"));
+            return future;
+        }
+        Objects.requireNonNull(client.getHost(), "host");
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            final DotStuffingOutputStream data = new DotStuffingOutputStream(buffer);
+            message.writeTo(data);
+            data.finish();
+        } catch (final IOException e) {
+            future.completeExceptionally(new MessageWriteException("Writing the message failed", e));
+            return future;
+        }
+        long startNanos = System.nanoTime();
+        if (client.getRateLimiter() != null) {
+            try {
+                final RateLimiter rateLimiter = client.getRateLimiter();
+                startNanos += rateLimiter.reserve(rateLimiter.getKey(client), envelope.getRecipients().size(), client.getDeadline());
+            } catch (final RateLimitExceededException | EmailTimeoutException e) {
+                future.completeExceptionally(e);
+                return future;
+            }
+        }
+        final Session session = new Session(client, envelope, buffer.toByteArray(), future, startNanos);
+        workers[Math.floorMod(nextWorker.getAndIncrement(), workers.length)].submit(session);
+        return future;
+    }
+
+    /**
+     * Sets the SSL context TLS engines are created from. The SSL socket factory of the {@link SmtpClient} is not used by this engine.
+     *
+     * @param sslContext The SSL context, null for the default context.
+     * @return {@code this} instance.
+     */
+    public NioSmtpEngine setSslContext(final SSLContext sslContext) {
+        this.sslContext = sslContext;
+        this.tlsSessions = null;
+        return this;
+    }
+
+    /**
+     * Sets the TLS context shared by the connections of this engine, which resume earlier TLS sessions and are counted by the given instance. Replaces the
+     * {@link #setSslContext(SSLContext) SSL context}.
+     *
+     * @param tlsSessions The TLS context, null for the default SSL context.
+     * @return {@code this} instance.
+     */
+    public NioSmtpEngine setTlsSessions(final TlsSessions tlsSessions) {
+        this.sslContext = tlsSessions != null ? tlsSessions.getSslContext() : null;
+        this.tlsSessions = tlsSessions;
+        return this;
+    }
+}
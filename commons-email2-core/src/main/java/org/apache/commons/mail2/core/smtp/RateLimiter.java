@@ -0,0 +1,344 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.mail2.core.Deadline;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+
+/**
+ * Limits the messages and recipients sent per second, for relays and providers that throttle or ban senders above a rate.
+ * <p>
+ * Each relay or each account, see {@link Scope}, gets a {@link TokenBucket} for messages and one for recipients; a message takes one message token and one
+ * recipient token per envelope recipient. The buckets allow a burst of their capacity and use lock-free accounting. If the tokens are not available, the
+ * limiter either makes the sender wait, see {@link Mode#BLOCK}, or fails with a {@link RateLimitExceededException}, see {@link Mode#FAIL_FAST}. A message
+ * to more recipients than the recipient burst waits for the tokens it lacks in {@link Mode#BLOCK}, and fails at once in {@link Mode#FAIL_FAST}, since a
+ * full bucket could never take it.
+ * </p>
+ * <p>
+ * An {@link SmtpClient} with a limiter takes the tokens before it connects, so waiting senders hold no connection; on an open connection, before each
+ * transaction. The {@link NioSmtpEngine} reserves the tokens when a message is submitted and delays the connection in its I/O thread, so that no thread
+ * waits. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class RateLimiter {
+
+    /**
+     * What a limiter does when the tokens of a message are not available.
+     */
+    public enum Mode {
+
+        /** Waits until the tokens are available, up to the maximum wait. */
+        BLOCK,
+
+        /** Fails with a {@link RateLimitExceededException}. */
+        FAIL_FAST
+    }
+
+    /**
+     * Which sends share the buckets.
+     */
+    public enum Scope {
+
+        /** One bucket per relay host and port. */
+        RELAY,
+
+        /** One bucket per user name and relay; sends without authentication share the bucket of the relay. */
+        CREDENTIAL
+    }
+
+    /** The rate of messages per second, 0 for no limit. */
+    private final double messageRate;
+
+    /** The largest burst of messages. */
+    private final long messageBurst;
+
+    /** The rate of recipients per second, 0 for no limit. */
+    private final double recipientRate;
+
+    /** The largest burst of recipients. */
+    private final long recipientBurst;
+
+    /** The message buckets by key. */
+    private final ConcurrentMap<String, TokenBucket> messageBuckets = new ConcurrentHashMap<>();
+
+    /** The recipient buckets by key. */
+    private final ConcurrentMap<String, TokenBucket> recipientBuckets = new ConcurrentHashMap<>();
+
+    /** What to do when the tokens are not available. */
+    private volatile Mode mode = Mode.BLOCK;
+
+    /** Which sends share the buckets. */
+    private volatile Scope scope = Scope.RELAY;
+
+    /** The longest wait in {@link Mode#BLOCK}, null for no limit. */
+    private volatile Duration maxWait;
+
+    /**
+     * Constructs a new instance with bursts of one second of each rate.
+     *
+     * @param messageRate   The messages per second, 0 for no limit.
+     * @param recipientRate The recipients per second, 0 for no limit.
+     */
+    public RateLimiter(final double messageRate, final double recipientRate) {
+        this(messageRate, (long) Math.ceil(messageRate), recipientRate, (long) Math.ceil(recipientRate));
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param messageRate    The messages per second, 0 for no limit.
+     * @param messageBurst   The largest burst of messages.
+     * @param recipientRate  The recipients per second, 0 for no limit.
+     * @param recipientBurst The largest burst of recipients.
+     */
+    public RateLimiter(final double messageRate, final long messageBurst, final double recipientRate, final long recipientBurst) {
+        if (messageRate < 0 || recipientRate < 0) {
+            throw new IllegalArgumentException("Rates must not be negative: " + messageRate + ", " + recipientRate);
+        }
+        this.messageRate = messageRate;
+        this.messageBurst = Math.max(1, messageBurst);
+        this.recipientRate = recipientRate;
+        this.recipientBurst = Math.max(1, recipientBurst);
+    }
+
+    /**
+     * Takes the tokens of a message, waiting for them in {@link Mode#BLOCK}.
+     *
+     * @param client     The client sending the message, giving the key.
+     * @param recipients The number of envelope recipients.
+     * @throws RateLimitExceededException if the tokens are not available in {@link Mode#FAIL_FAST}, or not within the maximum wait.
+     * @throws EmailException             if the thread is interrupted while waiting.
+     */
+    public void acquire(final SmtpClient client, final int recipients) throws EmailException {
+        acquire(getKey(client), recipients);
+    }
+
+    /**
+     * Takes the tokens of a message, waiting for them in {@link Mode#BLOCK}.
+     *
+     * @param key        The key of the buckets.
+     * @param recipients The number of envelope recipients.
+     * @throws RateLimitExceededException if the tokens are not available in {@link Mode#FAIL_FAST}, or not within the maximum wait.
+     * @throws EmailException             if the thread is interrupted while waiting.
+     */
+    public void acquire(final String key, final int recipients) throws EmailException {
+        acquire(key, recipients, null);
+    }
+
+    /**
+     * Takes the tokens of a message, waiting for them in {@link Mode#BLOCK} but not past the deadline of the send: a message whose tokens would only be
+     * available after the deadline fails at once and takes none.
+     *
+     * @param key        The key of the buckets.
+     * @param recipients The number of envelope recipients.
+     * @param deadline   The deadline of the send, null for none.
+     * @throws RateLimitExceededException if the tokens are not available in {@link Mode#FAIL_FAST}, or not within the maximum wait.
+     * @throws EmailTimeoutException      if the tokens are not available before the deadline.
+     * @throws EmailException             if the thread is interrupted while waiting.
+     */
+    public void acquire(final String key, final int recipients, final Deadline deadline) throws EmailException {
+        final long waitNanos = reserve(key, recipients, deadline);
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                refund(key, recipients);
+                throw new EmailException("Interrupted while waiting for the rate limit of " + key, e);
+            }
+        }
+    }
+
+    /**
+     * Gets the key of the buckets of a client according to the {@link Scope}.
+     *
+     * @param client The client.
+     * @return the key.
+     */
+    public String getKey(final SmtpClient client) {
+        final String relay = client.getUnixSocket() != null ? client.getUnixSocket().toString() : client.getHost() + ":" + client.getPort();
+        return scope == Scope.CREDENTIAL && client.getUserName() != null ? client.getUserName() + "@" + relay : relay;
+    }
+
+    /**
+     * Gets the longest wait in {@link Mode#BLOCK}.
+     *
+     * @return the maximum wait, null for no limit.
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Gets the bucket of messages of a key.
+     *
+     * @param key The key.
+     * @return the bucket, null if messages are not limited.
+     */
+    public TokenBucket getMessageBucket(final String key) {
+        return messageRate > 0 ? messageBuckets.computeIfAbsent(key, k -> new TokenBucket(messageRate, messageBurst)) : null;
+    }
+
+    /**
+     * Gets what the limiter does when the tokens of a message are not available.
+     *
+     * @return the mode.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the bucket of recipients of a key.
+     *
+     * @param key The key.
+     * @return the bucket, null if recipients are not limited.
+     */
+    public TokenBucket getRecipientBucket(final String key) {
+        return recipientRate > 0 ? recipientBuckets.computeIfAbsent(key, k -> new TokenBucket(recipientRate, recipientBurst)) : null;
+    }
+
+    /**
+     * Gets which sends share the buckets.
+     *
+     * @return the scope.
+     */
+    public Scope getScope() {
+        return scope;
+    }
+
+    private void refund(final String key, final int recipients) {
+        final TokenBucket messages = getMessageBucket(key);
+        if (messages != null) {
+            messages.refund(1);
+        }
+        final TokenBucket recipientTokens = getRecipientBucket(key);
+        if (recipientTokens != null) {
+            recipientTokens.refund(recipients);
+        }
+    }
+
+    /**
+     * Takes the tokens of a message without waiting, for a caller that delays the send itself.
+     *
+     * @param client     The client sending the message, giving the key.
+     * @param recipients The number of envelope recipients.
+     * @return the time to wait before sending in nanoseconds, 0 to send now.
+     * @throws RateLimitExceededException if the tokens are not available in {@link Mode#FAIL_FAST}, or not within the maximum wait.
+     */
+    public long reserve(final SmtpClient client, final int recipients) throws RateLimitExceededException {
+        return reserve(getKey(client), recipients);
+    }
+
+    /**
+     * Takes the tokens of a message without waiting, for a caller that delays the send itself.
+     *
+     * @param key        The key of the buckets.
+     * @param recipients The number of envelope recipients.
+     * @return the time to wait before sending in nanoseconds, 0 to send now.
+     * @throws RateLimitExceededException if the tokens are not available in {@link Mode#FAIL_FAST}, or not within the maximum wait.
+     */
+    public long reserve(final String key, final int recipients) throws RateLimitExceededException {
+        final TokenBucket messages = getMessageBucket(key);
+        final TokenBucket recipientTokens = getRecipientBucket(key);
+        if (mode == Mode.FAIL_FAST) {
+            if (recipientTokens != null && recipients > recipientBurst) {
+                throw new RateLimitExceededException("A message to " + recipients + " recipients exceeds the recipient burst of " + recipientBurst + " of "
+                        + key + " and is never allowed without waiting", key);
+            }
+            if (messages != null && !messages.tryAcquire(1)) {
+                throw new RateLimitExceededException(key, Duration.ofNanos(messages.getWaitNanos(1)));
+            }
+            if (recipientTokens != null && !recipientTokens.tryAcquire(recipients)) {
+                if (messages != null) {
+                    messages.refund(1);
+                }
+                throw new RateLimitExceededException(key, Duration.ofNanos(recipientTokens.getWaitNanos(recipients)));
+            }
+            return 0;
+        }
+        final long waitNanos = Math.max(messages != null ? messages.reserve(1) : 0, recipientTokens != null ? recipientTokens.reserve(recipients) : 0);
+        final Duration limit = maxWait;
+        if (limit != null && waitNanos > limit.toNanos()) {
+            refund(key, recipients);
+            throw new RateLimitExceededException(key, Duration.ofNanos(waitNanos));
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Takes the tokens of a message without waiting, for a caller that delays the send itself, unless the wait would pass the deadline of the send.
+     *
+     * @param key        The key of the buckets.
+     * @param recipients The number of envelope recipients.
+     * @param deadline   The deadline of the send, null for none.
+     * @return the time to wait before sending in nanoseconds, 0 to send now.
+     * @throws RateLimitExceededException if the tokens are not available in {@link Mode#FAIL_FAST}, or not within the maximum wait.
+     * @throws EmailTimeoutException      if the tokens are not available before the deadline; none are taken then.
+     */
+    public long reserve(final String key, final int recipients, final Deadline deadline) throws RateLimitExceededException, EmailTimeoutException {
+        final long waitNanos = reserve(key, recipients);
+        if (deadline != null && waitNanos > deadline.getRemaining().toNanos()) {
+            refund(key, recipients);
+            throw deadline.timeout(new RateLimitExceededException(key, Duration.ofNanos(waitNanos)));
+        }
+        return waitNanos;
+    }
+
+    /**
+     * Sets the longest wait in {@link Mode#BLOCK}; a message that would wait longer fails with a {@link RateLimitExceededException} instead.
+     *
+     * @param maxWait The maximum wait, null for no limit.
+     * @return {@code this} instance.
+     */
+    public RateLimiter setMaxWait(final Duration maxWait) {
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    /**
+     * Sets what the limiter does when the tokens of a message are not available.
+     *
+     * @param mode The mode.
+     * @return {@code this} instance.
+     */
+    public RateLimiter setMode(final Mode mode) {
+        this.mode = Objects.requireNonNull(mode, "mode");
+        return this;
+    }
+
+    /**
+     * Sets which sends share the buckets.
+     *
+     * @param scope The scope.
+     * @return {@code this} instance.
+     */
+    public RateLimiter setScope(final Scope scope) {
+        this.scope = Objects.requireNonNull(scope, "scope");
+        return this;
+    }
+}
@@ -0,0 +1,489 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.MessageWriteException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+
+/**
+ * Spreads messages over several weighted SMTP relays and fails over between them.
+ * <p>
+ * Each send picks an available relay with the {@link Selection} strategy and connects to the next address of its host name, so that the load is also spread
+ * across every address record. Host names are resolved once per {@linkplain #setDnsTimeToLive(Duration) time to live}; if resolution fails, the previous
+ * addresses are used. If the relay cannot be reached, the connection breaks or the relay closes the session with 421, the relay counts a failure and the
+ * message is sent to another relay. A relay that fails {@linkplain #setFailureThreshold(int) several times in a row} is ejected for the
+ * {@linkplain #setEjectDuration(Duration) eject duration}, then given one more chance; a success re-admits it. If every relay is ejected, they are tried
+ * anyway. Rejections of the sender, recipients or message are not failed over.
+ * </p>
+ * <p>
+ * A connection that breaks after the message data was sent is failed over too, so a message can reach more than one relay. The message writer may be
+ * called once per attempt. The connection settings other than the host and port come from the {@link SmtpClient} passed to each send. Share one group
+ * between all senders of the relays, so that their health and load are tracked in one place. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class RelayGroup {
+
+    /**
+     * A relay of the group with its load and health.
+     */
+    public static final class Relay {
+
+        /** The host name or address. */
+        private final String host;
+
+        /** The port. */
+        private final int port;
+
+        /** The weight. */
+        private final int weight;
+
+        /** The number of sends in progress. */
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        /** The smoothed duration of successful sends in nanoseconds, 0 until the first one. Guarded by this relay. */
+        private long latencyNanos;
+
+        /** The number of consecutive failures. Guarded by this relay. */
+        private int failures;
+
+        /** Whether the relay was ejected. Guarded by this relay. */
+        private boolean ejected;
+
+        /** When the ejection ends, in {@link System#nanoTime()} units. Guarded by this relay. */
+        private long ejectedUntilNanos;
+
+        /** The resolved addresses, null until the first send. Guarded by this relay. */
+        private InetAddress[] addresses;
+
+        /** When the addresses were resolved, in {@link System#nanoTime()} units. Guarded by this relay. */
+        private long resolvedNanos;
+
+        /** The index of the next address. Guarded by this relay. */
+        private int nextAddress;
+
+        /** The current weight of the smooth weighted round-robin. Guarded by the group. */
+        private long currentWeight;
+
+        private Relay(final String host, final int port, final int weight) {
+            this.host = Objects.requireNonNull(host, "host");
+            this.port = port;
+            this.weight = weight;
+        }
+
+        private synchronized void failed(final long nowNanos, final int threshold, final Duration ejectDuration) {
+            if (++failures >= threshold) {
+                ejected = true;
+                ejectedUntilNanos = nowNanos + ejectDuration.toNanos();
+            }
+        }
+
+        /**
+         * Gets the host name or address.
+         *
+         * @return the host.
+         */
+        public String getHost() {
+            return host;
+        }
+
+        /**
+         * Gets the smoothed duration of the successful sends.
+         *
+         * @return the latency, zero if no send succeeded yet.
+         */
+        public synchronized Duration getLatency() {
+            return Duration.ofNanos(latencyNanos);
+        }
+
+        /**
+         * Gets the number of sends in progress.
+         *
+         * @return the number of outstanding sends.
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * Gets the port.
+         *
+         * @return the port.
+         */
+        public int getPort() {
+            return port;
+        }
+
+        /**
+         * Gets the weight.
+         *
+         * @return the weight.
+         */
+        public int getWeight() {
+            return weight;
+        }
+
+        private synchronized boolean isAvailable(final long nowNanos) {
+            return !ejected || nowNanos - ejectedUntilNanos >= 0;
+        }
+
+        /**
+         * Tests whether the relay is ejected after consecutive failures.
+         *
+         * @return whether the relay is ejected.
+         */
+        public boolean isEjected() {
+            return !isAvailable(System.nanoTime());
+        }
+
+        private synchronized InetAddress nextAddress(final long nowNanos, final Duration timeToLive) throws UnknownHostException {
+            if (addresses == null || nowNanos - resolvedNanos >= timeToLive.toNanos()) {
+                try {
+                    addresses = InetAddress.getAllByName(host);
+                } catch (final UnknownHostException e) {
+                    if (addresses == null) {
+                        throw e;
+                    }
+                }
+                resolvedNanos = nowNanos;
+            }
+            return addresses[Math.floorMod(nextAddress++, addresses.length)];
+        }
+
+        private synchronized void succeeded(final long latency) {
+            failures = 0;
+            ejected = false;
+            if (latency > 0) {
+                latencyNanos = latencyNanos == 0 ? latency : latencyNanos + (latency - latencyNanos) / 8;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return host + ":" + port;
+        }
+    }
+
+    /**
+     * How a relay is picked among the available ones.
+     */
+    public enum Selection {
+
+        /** Takes the relays in turn, each as often as its weight, interleaved. */
+        ROUND_ROBIN,
+
+        /** Takes the relay with the fewest sends in progress for its weight. */
+        LEAST_OUTSTANDING,
+
+        /** Takes the relay with the shortest smoothed latency, scaled by its sends in progress and weight; relays without a latency are tried first. */
+        LATENCY
+    }
+
+    /** The default number of consecutive failures that eject a relay. */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /** The default duration of an ejection. */
+    public static final Duration DEFAULT_EJECT_DURATION = Duration.ofSeconds(30);
+
+    /** The default time to live of resolved addresses. */
+    public static final Duration DEFAULT_DNS_TIME_TO_LIVE = Duration.ofMinutes(1);
+
+    private static double cost(final Relay relay) {
+        return (double) relay.getLatency().toNanos() * (relay.getOutstanding() + 1) / relay.weight;
+    }
+
+    /**
+     * Tests whether a send failed because of the connection rather than a rejection or the message: the relay could not be reached, the connection broke, or
+     * the relay closes the session with 421. A {@link MessageWriteException}, the content of the message failing to write, is not a connection failure.
+     *
+     * @param e The failure.
+     * @return whether another relay should be tried.
+     */
+    static boolean isConnectionFailure(final EmailException e) {
+        if (e instanceof MessageWriteException) {
+            return false;
+        }
+        if (e instanceof SmtpException) {
+            return ((SmtpException) e).getReply() != null && ((SmtpException) e).getReply().getCode() == 421;
+        }
+        return e.getCause() instanceof IOException;
+    }
+
+    private static EmailException suppress(final EmailException failure, final EmailException previous) {
+        if (previous != null) {
+            failure.addSuppressed(previous);
+        }
+        return failure;
+    }
+
+    /** The relays. */
+    private final List<Relay> relays = new CopyOnWriteArrayList<>();
+
+    /** The selection strategy. */
+    private volatile Selection selection = Selection.ROUND_ROBIN;
+
+    /** The number of consecutive failures that eject a relay. */
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+
+    /** The duration of an ejection. */
+    private volatile Duration ejectDuration = DEFAULT_EJECT_DURATION;
+
+    /** The time to live of resolved addresses. */
+    private volatile Duration dnsTimeToLive = DEFAULT_DNS_TIME_TO_LIVE;
+
+    /**
+     * Adds a relay with weight 1.
+     *
+     * @param host The host name or address.
+     * @param port The port.
+     * @return {@code this} instance.
+     */
+    public RelayGroup addRelay(final String host, final int port) {
+        return addRelay(host, port, 1);
+    }
+
+    /**
+     * Adds a relay.
+     *
+     * @param host   The host name or address.
+     * @param port   The port.
+     * @param weight The share of the messages the relay gets relative to the other relays, at least 1.
+     * @return {@code this} instance.
+     */
+    public RelayGroup addRelay(final String host, final int port, final int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("Weight must be positive: " + weight);
+        }
+        relays.add(new Relay(host, port, weight));
+        return this;
+    }
+
+    /**
+     * Runs a transaction on a new connection to one of the relays, failing over to the others if the connection fails, see
+     * {@link SmtpClient#execute(int, SmtpClient.Transaction)}. The transaction is run once per relay tried.
+     *
+     * @param <T>         The result type.
+     * @param client      The client giving the connection settings; it is copied for each relay and not changed.
+     * @param recipients  The number of recipients of the message, for the rate limiter of the client.
+     * @param transaction The transaction.
+     * @return the result of the transaction.
+     * @throws EmailException if the group has no relays, the transaction fails other than by a connection failure, or no relay can be reached.
+     */
+    public <T> T execute(final SmtpClient client, final int recipients, final SmtpClient.Transaction<T> transaction) throws EmailException {
+        final List<Relay> tried = new ArrayList<>(relays.size());
+        EmailException failure = null;
+        Relay relay;
+        while ((relay = select(tried)) != null) {
+            tried.add(relay);
+            final long start = System.nanoTime();
+            relay.outstanding.incrementAndGet();
+            try {
+                final InetAddress address = relay.nextAddress(start, dnsTimeToLive);
+                final T result = new SmtpClient(client).setHost(relay.host).setPort(relay.port).setAddress(address).execute(recipients, transaction);
+                relay.succeeded(System.nanoTime() - start);
+                return result;
+            } catch (final UnknownHostException e) {
+                relay.failed(System.nanoTime(), failureThreshold, ejectDuration);
+                failure = suppress(new EmailException("Cannot resolve " + relay.host, e), failure);
+            } catch (final EmailException e) {
+                if (!isConnectionFailure(e)) {
+                    // the relay is up and answered
+                    relay.succeeded(0);
+                    throw e;
+                }
+                relay.failed(System.nanoTime(), failureThreshold, ejectDuration);
+                failure = suppress(e, failure);
+            } finally {
+                relay.outstanding.decrementAndGet();
+            }
+        }
+        throw failure != null ? failure : new EmailException("No relays configured");
+    }
+
+    /**
+     * Gets the time to live of resolved addresses.
+     *
+     * @return the time to live.
+     */
+    public Duration getDnsTimeToLive() {
+        return dnsTimeToLive;
+    }
+
+    /**
+     * Gets the duration of an ejection.
+     *
+     * @return the eject duration.
+     */
+    public Duration getEjectDuration() {
+        return ejectDuration;
+    }
+
+    /**
+     * Gets the number of consecutive failures that eject a relay.
+     *
+     * @return the failure threshold.
+     */
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    /**
+     * Gets the relays.
+     *
+     * @return an unmodifiable list of the relays in the order they were added.
+     */
+    public List<Relay> getRelays() {
+        return Collections.unmodifiableList(relays);
+    }
+
+    /**
+     * Gets the selection strategy.
+     *
+     * @return the selection strategy.
+     */
+    public Selection getSelection() {
+        return selection;
+    }
+
+    /**
+     * Picks a relay that was not tried yet, preferring the available ones.
+     *
+     * @param tried The relays already tried for the message.
+     * @return the relay, null if all were tried.
+     */
+    private Relay select(final List<Relay> tried) {
+        final long now = System.nanoTime();
+        final List<Relay> candidates = new ArrayList<>(relays.size());
+        for (final Relay relay : relays) {
+            if (!tried.contains(relay) && relay.isAvailable(now)) {
+                candidates.add(relay);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (final Relay relay : relays) {
+                if (!tried.contains(relay)) {
+                    candidates.add(relay);
+                }
+            }
+            if (candidates.isEmpty()) {
+                return null;
+            }
+        }
+        switch (selection) {
+        case LEAST_OUTSTANDING:
+            return Collections.min(candidates, (a, b) -> Long.compare((long) a.getOutstanding() * b.weight, (long) b.getOutstanding() * a.weight));
+        case LATENCY:
+            return Collections.min(candidates, (a, b) -> Double.compare(cost(a), cost(b)));
+        default:
+            return selectRoundRobin(candidates);
+        }
+    }
+
+    /**
+     * Picks a relay with the smooth weighted round-robin of nginx, which interleaves the relays instead of sending bursts to the heaviest.
+     */
+    private synchronized Relay selectRoundRobin(final List<Relay> candidates) {
+        long total = 0;
+        Relay best = null;
+        for (final Relay relay : candidates) {
+            relay.currentWeight += relay.weight;
+            total += relay.weight;
+            if (best == null || relay.currentWeight > best.currentWeight) {
+                best = relay;
+            }
+        }
+        best.currentWeight -= total;
+        return best;
+    }
+
+    /**
+     * Sends a message of known size to one of the relays, failing over to the others if the connection fails, see {@link SmtpClient#send(Envelope,
+     * ContentWriter, long)}.
+     *
+     * @param client   The client giving the connection settings; it is copied for each relay and not changed.
+     * @param envelope The envelope.
+     * @param message  Writes the serialized message, possibly once per relay tried.
+     * @param size     The exact or estimated size of the message in octets, or -1 if unknown.
+     * @return the reply of the relay to the message data.
+     * @throws EmailException if the group has no relays, a relay rejects the message, or no relay can be reached.
+     */
+    public SmtpReply send(final SmtpClient client, final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        // the tokens are taken when the connection is opened, not again for the message
+        final SmtpClient sender = new SmtpClient(client).setRateLimiter(null);
+        return execute(client, envelope.getRecipients().size(), connection -> sender.send(connection, envelope, message, size));
+    }
+
+    /**
+     * Sets the time to live of resolved addresses.
+     *
+     * @param dnsTimeToLive The time to live.
+     * @return {@code this} instance.
+     */
+    public RelayGroup setDnsTimeToLive(final Duration dnsTimeToLive) {
+        this.dnsTimeToLive = Objects.requireNonNull(dnsTimeToLive, "dnsTimeToLive");
+        return this;
+    }
+
+    /**
+     * Sets how long a relay is ejected after {@linkplain #setFailureThreshold(int) consecutive failures}.
+     *
+     * @param ejectDuration The eject duration.
+     * @return {@code this} instance.
+     */
+    public RelayGroup setEjectDuration(final Duration ejectDuration) {
+        this.ejectDuration = Objects.requireNonNull(ejectDuration, "ejectDuration");
+        return this;
+    }
+
+    /**
+     * Sets the number of consecutive failures that eject a relay.
+     *
+     * @param failureThreshold The failure threshold, at least 1.
+     * @return {@code this} instance.
+     */
+    public RelayGroup setFailureThreshold(final int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be positive: " + failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the selection strategy.
+     *
+     * @param selection The selection strategy.
+     * @return {@code this} instance.
+     */
+    public RelayGroup setSelection(final Selection selection) {
+        this.selection = Objects.requireNonNull(selection, "selection");
+        return this;
+    }
+}
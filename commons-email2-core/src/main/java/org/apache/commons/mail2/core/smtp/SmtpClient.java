@@ -0,0 +1,1120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnknownHostException;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.mail2.core.Deadline;
+import org.apache.commons.mail2.core.EmailConstants;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
+import org.apache.commons.mail2.core.MessageTooLargeException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.apache.commons.mail2.core.io.CrlfOutputStream;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+
+/**
+ * Sends serialized messages to an SMTP relay without JavaMail.
+ * <p>
+ * The message bytes are streamed to the relay as they are, apart from the dot-stuffing and line ending normalization that the {@code DATA} command
+ * requires; they are never parsed. If a chunk size is set and the relay supports the CHUNKING extension, the message is sent with {@code BDAT} instead,
+ * without dot-stuffing. The configuration mirrors the session properties used by {@code Email}. Instances are thread-safe if they are not
+ * reconfigured while in use; every {@link #send(Envelope, ContentWriter)} opens its own connection.
+ * </p>
+ * <p>
+ * The client can also speak LMTP (RFC 2033) and connect through a Unix domain socket on Java 16 or later, for a co-located MTA. As an
+ * {@link org.apache.commons.mail2.core.transport.EmailTransport}, {@code client::send}, it plugs into {@code Email.send()}.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class SmtpClient {
+
+    /**
+     * A transaction on a new connection, see {@link SmtpClient#execute(int, Transaction)}.
+     *
+     * @param <T> The result type.
+     */
+    @FunctionalInterface
+    public interface Transaction<T> {
+
+        /**
+         * Runs the transaction.
+         *
+         * @param connection The open connection, closed when the transaction returns.
+         * @return the result.
+         * @throws EmailException if the transaction fails.
+         */
+        T run(SmtpConnection connection) throws EmailException;
+    }
+
+    /** The default SMTP port. */
+    public static final int DEFAULT_PORT = 25;
+
+    /** The default delay between connection attempts to the addresses of a relay, 250 milliseconds as recommended by RFC 8305. */
+    public static final Duration DEFAULT_CONNECT_ATTEMPT_DELAY = Duration.ofMillis(250);
+
+    /** The host name or address of the relay. */
+    private String host;
+
+    /** The port of the relay. */
+    private int port = DEFAULT_PORT;
+
+    /** The address of the relay to connect to, null to resolve the host name. */
+    private InetAddress address;
+
+    /** The connect timeout. */
+    private Duration connectTimeout = EmailConstants.SOCKET_TIMEOUT;
+
+    /** The delay between connection attempts to the addresses of the relay, null to connect to the first address only. */
+    private Duration connectAttemptDelay = DEFAULT_CONNECT_ATTEMPT_DELAY;
+
+    /** The read timeout. */
+    private Duration readTimeout = EmailConstants.SOCKET_TIMEOUT;
+
+    /** Whether to use TLS from the start. */
+    private boolean sslOnConnect;
+
+    /** Whether to upgrade the connection with STARTTLS if the relay supports it. */
+    private boolean startTlsEnabled;
+
+    /** Whether to fail if the relay does not support STARTTLS. */
+    private boolean startTlsRequired;
+
+    /** Whether to verify that the certificate of the relay matches its host name. */
+    private boolean sslCheckServerIdentity;
+
+    /** Creates TLS sockets, null for the default factory. */
+    private SSLSocketFactory sslSocketFactory;
+
+    /** The user name, null for no authentication. */
+    private String userName;
+
+    /** The password. */
+    private String password;
+
+    /** The name sent with EHLO, null for the local host name. */
+    private String localHost;
+
+    /** Whether to send the message to the accepted recipients if some are rejected. */
+    private boolean sendPartial;
+
+    /** Remembers the capabilities of relays, null for none. */
+    private CapabilityCache capabilityCache;
+
+    /** The BDAT chunk size, 0 to always use DATA. */
+    private int chunkSize;
+
+    /** The path of the Unix domain socket of the server, null to connect with TCP. */
+    private Path unixSocket;
+
+    /** Whether to speak LMTP instead of SMTP. */
+    private boolean lmtp;
+
+    /** Limits the messages and recipients per second, null for no limit. */
+    private RateLimiter rateLimiter;
+
+    /** Limits the sends in flight to the relay, null for no limit. */
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    /** The deadline of the sends, null for none. */
+    private Deadline deadline;
+
+    /**
+     * Constructs a new instance.
+     */
+    public SmtpClient() {
+    }
+
+    /**
+     * Constructs a new instance with the configuration of another client, for example to send to another relay with the same settings.
+     *
+     * @param client The client to copy.
+     */
+    public SmtpClient(final SmtpClient client) {
+        host = client.host;
+        port = client.port;
+        address = client.address;
+        connectTimeout = client.connectTimeout;
+        connectAttemptDelay = client.connectAttemptDelay;
+        readTimeout = client.readTimeout;
+        sslOnConnect = client.sslOnConnect;
+        startTlsEnabled = client.startTlsEnabled;
+        startTlsRequired = client.startTlsRequired;
+        sslCheckServerIdentity = client.sslCheckServerIdentity;
+        sslSocketFactory = client.sslSocketFactory;
+        userName = client.userName;
+        password = client.password;
+        localHost = client.localHost;
+        sendPartial = client.sendPartial;
+        capabilityCache = client.capabilityCache;
+        chunkSize = client.chunkSize;
+        unixSocket = client.unixSocket;
+        lmtp = client.lmtp;
+        rateLimiter = client.rateLimiter;
+        concurrencyLimiter = client.concurrencyLimiter;
+        deadline = client.deadline;
+    }
+
+    /**
+     * Takes the rate limit tokens of a message, if a limiter is set, waiting no longer than the deadline allows.
+     */
+    private void acquire(final int recipients) throws EmailException {
+        if (rateLimiter != null) {
+            rateLimiter.acquire(rateLimiter.getKey(this), recipients, deadline);
+        }
+    }
+
+    /**
+     * Checks the LMTP replies to the message data, one for each accepted recipient.
+     *
+     * @param replies The replies.
+     * @return the last positive reply.
+     * @throws SmtpException if all recipients failed, or some failed and partial sends are not allowed.
+     */
+    private SmtpReply checkDelivery(final List<SmtpReply> replies) throws SmtpException {
+        SmtpReply delivered = null;
+        SmtpReply failed = null;
+        for (final SmtpReply reply : replies) {
+            if (reply.isPositive()) {
+                delivered = reply;
+            } else if (failed == null) {
+                failed = reply;
+            }
+        }
+        if (failed != null && (delivered == null || !sendPartial)) {
+            throw new SmtpException("Message rejected", failed);
+        }
+        return delivered;
+    }
+
+    /**
+     * Opens a connection: reads the greeting, sends EHLO, upgrades to TLS and authenticates as configured.
+     *
+     * @return the open connection, ready for {@code MAIL FROM}.
+     * @throws EmailException if the relay cannot be reached or rejects the session.
+     */
+    public SmtpConnection connect() throws EmailException {
+        if (deadline != null) {
+            deadline.check();
+        }
+        final SmtpConnection connection;
+        if (unixSocket != null) {
+            try {
+                connection = createConnection(openUnixSocket());
+            } catch (final IOException e) {
+                throw connectFailed(unixSocket.toString(), e);
+            }
+        } else {
+            Objects.requireNonNull(host, "host");
+            try {
+                connection = createConnection(openSocket());
+            } catch (final IOException e) {
+                throw connectFailed(host + ":" + port, e);
+            }
+        }
+        boolean success = false;
+        try {
+            if (deadline != null) {
+                connection.setDeadline(deadline);
+            }
+            open(connection);
+            if (capabilityCache != null) {
+                capabilityCache.put(this, connection.getCapabilities());
+            }
+            success = true;
+            return connection;
+        } finally {
+            if (!success) {
+                connection.quit();
+            }
+        }
+    }
+
+    private EmailException connectFailed(final String target, final IOException cause) {
+        return deadline != null && deadline.isExpired() ? deadline.timeout(cause) : new EmailException("Connecting to " + target + " failed", cause);
+    }
+
+    /**
+     * Creates the connection object for a connected channel, a Unix domain socket. Subclasses may return a subclass of {@link SmtpConnection}.
+     *
+     * @param channel The connected channel.
+     * @return a new connection.
+     * @throws IOException if the connection cannot be created.
+     */
+    protected SmtpConnection createConnection(final ByteChannel channel) throws IOException {
+        return new SmtpConnection(channel, host != null ? host : unixSocket.toString());
+    }
+
+    /**
+     * Creates the connection object for a connected socket. Subclasses may return a subclass of {@link SmtpConnection}.
+     *
+     * @param socket The connected socket.
+     * @return a new connection.
+     * @throws IOException if the streams of the socket cannot be opened.
+     */
+    protected SmtpConnection createConnection(final Socket socket) throws IOException {
+        return new SmtpConnection(socket, host);
+    }
+
+    /**
+     * Gets the address of the relay to connect to.
+     *
+     * @return the address, null if the host name is resolved when connecting.
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Gets the cache that remembers the capabilities of relays.
+     *
+     * @return the cache or null for none.
+     */
+    public CapabilityCache getCapabilityCache() {
+        return capabilityCache;
+    }
+
+    /**
+     * Gets the {@code EHLO} capabilities of the relay, from the {@linkplain #getCapabilityCache() cache} if possible and otherwise by connecting to the
+     * relay. The capabilities are those announced after STARTTLS.
+     *
+     * @return an unmodifiable map of upper case keywords to their parameters.
+     * @throws EmailException if the relay cannot be reached.
+     */
+    public Map<String, String> getCapabilities() throws EmailException {
+        if (capabilityCache != null) {
+            final Map<String, String> capabilities = capabilityCache.get(this);
+            if (capabilities != null) {
+                return capabilities;
+            }
+        }
+        final SmtpConnection connection = connect();
+        try {
+            return connection.getCapabilities();
+        } finally {
+            connection.quit();
+        }
+    }
+
+    /**
+     * Gets the maximum message size the relay announces with the SIZE extension, see {@link #getCapabilities()}.
+     *
+     * @return the limit in octets, or 0 if the relay announces none.
+     * @throws EmailException if the relay cannot be reached.
+     */
+    public long getSizeLimit() throws EmailException {
+        return SmtpConnection.getSizeLimit(getCapabilities());
+    }
+
+    /**
+     * Creates the parameters of {@code MAIL FROM} for an envelope, checking the size limit and the extensions the envelope requires.
+     *
+     * @param envelope     The envelope.
+     * @param size         The exact or estimated size of the message in octets, or -1 if unknown.
+     * @param capabilities The capabilities of the relay.
+     * @param chunking     Whether the message is sent with {@code BDAT}.
+     * @return the parameters.
+     * @throws MessageTooLargeException if the size exceeds the limit the relay announces.
+     * @throws EmailException           if the relay does not support the body type or SMTPUTF8.
+     */
+    List<String> createMailParameters(final Envelope envelope, final long size, final Map<String, String> capabilities, final boolean chunking)
+            throws EmailException {
+        final List<String> parameters = new ArrayList<>(3);
+        if (size >= 0 && capabilities.containsKey("SIZE")) {
+            final long limit = SmtpConnection.getSizeLimit(capabilities);
+            if (limit > 0 && size > limit) {
+                throw new MessageTooLargeException(size, limit, host + ":" + port);
+            }
+            parameters.add("SIZE=" + size);
+        }
+        final BodyType bodyType = envelope.getBodyType();
+        if (bodyType == BodyType.BINARY_MIME && !chunking) {
+            throw new EmailException("BINARYMIME requires BDAT, which is disabled or not supported by " + host + ":" + port);
+        }
+        if (bodyType.getExtension() != null) {
+            if (!capabilities.containsKey(bodyType.getExtension())) {
+                throw new EmailException(host + ":" + port + " does not support " + bodyType.getExtension());
+            }
+            parameters.add("BODY=" + bodyType.getValue());
+        }
+        if (envelope.isSmtpUtf8()) {
+            if (!capabilities.containsKey("SMTPUTF8")) {
+                throw new EmailException(host + ":" + port + " does not support SMTPUTF8");
+            }
+            parameters.add("SMTPUTF8");
+        }
+        return parameters;
+    }
+
+    /**
+     * Delivers a message on a new connection and reports the outcome for each recipient, see
+     * {@link #deliver(SmtpConnection, Envelope, ContentWriter, long)}.
+     *
+     * @param envelope The envelope.
+     * @param message  Writes the serialized message.
+     * @param size     The exact or estimated size of the message in octets, or -1 if unknown.
+     * @return the reply for each recipient, in envelope order.
+     * @throws MessageTooLargeException   if the size exceeds the limit the relay announces.
+     * @throws RateLimitExceededException if the rate limiter does not allow the message.
+     * @throws EmailException             if the relay cannot be reached, or rejects the sender or the message data.
+     */
+    public Map<String, SmtpReply> deliver(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        return execute(envelope.getRecipients().size(), connection -> deliverTransaction(connection, envelope, message, size));
+    }
+
+    /**
+     * Delivers a message in one transaction on an open connection and reports the outcome for each recipient.
+     * <p>
+     * Unlike {@link #send(SmtpConnection, Envelope, ContentWriter, long)}, a recipient that fails does not fail the call: the message is sent to every
+     * accepted recipient, whatever {@link #isSendPartial()} says. The reply of a recipient is its rejection of {@code RCPT TO}, or else its reply after
+     * the message data. With LMTP every recipient has its own reply, so the outcome of a final delivery is known for each mailbox; with SMTP all accepted
+     * recipients share the reply to the data. If no recipient is accepted, the transaction is reset without sending the data.
+     * </p>
+     *
+     * @param connection The open connection.
+     * @param envelope   The envelope.
+     * @param message    Writes the serialized message.
+     * @param size       The exact or estimated size of the message in octets, or -1 if unknown.
+     * @return an unmodifiable map of each recipient to its reply, in envelope order.
+     * @throws MessageTooLargeException   if the size exceeds the limit the relay announces.
+     * @throws RateLimitExceededException if the rate limiter does not allow the message.
+     * @throws EmailException             if the relay does not support the body type or SMTPUTF8, or rejects the sender or, with SMTP, the message data.
+     */
+    public Map<String, SmtpReply> deliver(final SmtpConnection connection, final Envelope envelope, final ContentWriter message, final long size)
+            throws EmailException {
+        acquire(envelope.getRecipients().size());
+        return deliverTransaction(connection, envelope, message, size);
+    }
+
+    private Map<String, SmtpReply> deliverTransaction(final SmtpConnection connection, final Envelope envelope, final ContentWriter message, final long size)
+            throws EmailException {
+        final Map<String, SmtpReply> replies = new LinkedHashMap<>();
+        final boolean chunking = isChunking(connection);
+        final List<String> accepted = startTransaction(connection, envelope, size, chunking, replies);
+        if (accepted.isEmpty()) {
+            connection.rset();
+        } else {
+            final List<SmtpReply> dataReplies = transferData(connection, envelope, message, accepted.size(), chunking);
+            for (int i = 0; i < accepted.size(); i++) {
+                replies.put(accepted.get(i), dataReplies.get(lmtp ? i : 0));
+            }
+        }
+        return Collections.unmodifiableMap(replies);
+    }
+
+    /**
+     * Runs a transaction on a new connection, after taking the rate limit tokens of the message and then a permit of the concurrency limiter, if any, so
+     * that a sender waiting for the rate holds no permit. The connection is closed and the permit released when the transaction returns; the time the
+     * transaction spent writing message content is not counted in the latency sample of the permit.
+     *
+     * @param <T>         The result type.
+     * @param recipients  The number of recipients of the message, for the rate limiter.
+     * @param transaction The transaction, for example sending a message with {@link #send(SmtpConnection, Envelope, ContentWriter, long)}.
+     * @return the result of the transaction.
+     * @throws RateLimitExceededException if the rate limiter does not allow the message.
+     * @throws EmailTimeoutException      if the deadline passes, waiting for the limiters included.
+     * @throws EmailException             if the relay cannot be reached or rejects the session, or the transaction fails.
+     */
+    public <T> T execute(final int recipients, final Transaction<T> transaction) throws EmailException {
+        acquire(recipients);
+        final ConcurrencyLimiter.Permit permit = concurrencyLimiter != null ? concurrencyLimiter.acquire(concurrencyLimiter.getKey(this), deadline) : null;
+        Throwable failure = null;
+        SmtpConnection connection = null;
+        try {
+            connection = connect();
+            return transaction.run(connection);
+        } catch (final Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (connection != null) {
+                connection.quit();
+            }
+            if (permit != null) {
+                permit.release(failure, connection != null ? connection.getContentNanos() : 0);
+            }
+        }
+    }
+
+    /**
+     * Gets the BDAT chunk size.
+     *
+     * @return the chunk size in octets, 0 if BDAT is not used.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Gets the limiter of the sends in flight to the relay.
+     *
+     * @return the concurrency limiter, null for no limit.
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Gets the delay between connection attempts to the addresses of the relay.
+     *
+     * @return the delay, null if only the first address is tried.
+     */
+    public Duration getConnectAttemptDelay() {
+        return connectAttemptDelay;
+    }
+
+    /**
+     * Gets the connect timeout.
+     *
+     * @return the connect timeout.
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Gets the deadline of the sends.
+     *
+     * @return the deadline, null for none.
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Gets the host name or address of the relay.
+     *
+     * @return the host.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the name sent with EHLO: the configured name, or the canonical local host name or an address literal.
+     *
+     * @return the EHLO name.
+     */
+    public String getLocalHost() {
+        if (localHost != null) {
+            return localHost;
+        }
+        try {
+            final InetAddress address = InetAddress.getLocalHost();
+            final String name = address.getCanonicalHostName();
+            if (!name.equals(address.getHostAddress())) {
+                return name;
+            }
+            return "[" + address.getHostAddress() + "]";
+        } catch (final UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * Gets the limiter of the messages and recipients per second.
+     *
+     * @return the rate limiter, null for no limit.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Gets the password used to authenticate.
+     *
+     * @return the password.
+     */
+    String getPassword() {
+        return password;
+    }
+
+    /**
+     * Gets the port of the relay.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Gets the read timeout.
+     *
+     * @return the read timeout.
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Gets the factory for TLS sockets.
+     *
+     * @return the configured factory or the default one.
+     */
+    public SSLSocketFactory getSslSocketFactory() {
+        return sslSocketFactory != null ? sslSocketFactory : (SSLSocketFactory) SSLSocketFactory.getDefault();
+    }
+
+    /**
+     * Gets the path of the Unix domain socket of the server.
+     *
+     * @return the path, null if the client connects with TCP.
+     */
+    public Path getUnixSocket() {
+        return unixSocket;
+    }
+
+    /**
+     * Gets the user name used to authenticate.
+     *
+     * @return the user name, or null for no authentication.
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Tests whether the client speaks LMTP instead of SMTP.
+     *
+     * @return whether LMTP is used.
+     */
+    public boolean isLmtp() {
+        return lmtp;
+    }
+
+    /**
+     * Tests whether the message is sent to the accepted recipients if some are rejected.
+     *
+     * @return whether partial sends are allowed.
+     */
+    public boolean isSendPartial() {
+        return sendPartial;
+    }
+
+    /**
+     * Tests whether the certificate of the relay must match its host name.
+     *
+     * @return whether the server identity is checked.
+     */
+    public boolean isSslCheckServerIdentity() {
+        return sslCheckServerIdentity;
+    }
+
+    /**
+     * Tests whether TLS is used from the start.
+     *
+     * @return whether TLS is used from the start.
+     */
+    public boolean isSslOnConnect() {
+        return sslOnConnect;
+    }
+
+    /**
+     * Tests whether the connection is upgraded with STARTTLS if the relay supports it.
+     *
+     * @return whether STARTTLS is enabled.
+     */
+    public boolean isStartTlsEnabled() {
+        return startTlsEnabled;
+    }
+
+    /**
+     * Tests whether sending fails if the relay does not support STARTTLS.
+     *
+     * @return whether STARTTLS is required.
+     */
+    public boolean isStartTlsRequired() {
+        return startTlsRequired;
+    }
+
+    private boolean isChunking(final SmtpConnection connection) {
+        return chunkSize > 0 && !lmtp && connection.supports("CHUNKING");
+    }
+
+    private void hello(final SmtpConnection connection, final String name) throws EmailException {
+        if (lmtp) {
+            connection.lhlo(name);
+        } else {
+            connection.ehlo(name);
+        }
+    }
+
+    /**
+     * Limits a timeout to the time left before the deadline, if any.
+     */
+    private Duration limit(final Duration timeout) {
+        return deadline != null ? deadline.limit(timeout) : timeout;
+    }
+
+    /**
+     * Performs the session setup on a new connection: greeting, EHLO, STARTTLS and authentication.
+     *
+     * @param connection The new connection.
+     * @throws EmailException if the relay rejects the session.
+     */
+    protected void open(final SmtpConnection connection) throws EmailException {
+        connection.readGreeting();
+        final String ehloName = getLocalHost();
+        hello(connection, ehloName);
+        if (unixSocket == null && !connection.isSecure() && (startTlsEnabled || startTlsRequired)) {
+            if (connection.supports("STARTTLS")) {
+                connection.startTls(getSslSocketFactory(), sslCheckServerIdentity);
+                hello(connection, ehloName);
+            } else if (startTlsRequired) {
+                throw new EmailException("STARTTLS is required but not supported by " + host);
+            }
+        }
+        if (userName != null) {
+            connection.authenticate(userName, password);
+        }
+    }
+
+    /**
+     * Opens the socket to the relay, with TLS if {@link #isSslOnConnect()}.
+     *
+     * @return the connected socket.
+     * @throws IOException if the relay cannot be reached.
+     */
+    protected Socket openSocket() throws IOException {
+        final List<InetSocketAddress> addresses;
+        if (address != null) {
+            addresses = Collections.singletonList(new InetSocketAddress(address, port));
+        } else if (connectAttemptDelay == null) {
+            addresses = Collections.singletonList(new InetSocketAddress(host, port));
+        } else {
+            addresses = HappyEyeballs.interleave(InetAddress.getAllByName(host), port);
+        }
+        final Socket socket = HappyEyeballs.connect(addresses, connectAttemptDelay, limit(connectTimeout));
+        try {
+            socket.setSoTimeout(Math.toIntExact(limit(readTimeout).toMillis()));
+            return sslOnConnect ? SmtpConnection.upgrade(getSslSocketFactory(), socket, host, sslCheckServerIdentity) : socket;
+        } catch (final IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a Unix domain socket to the server. The {@code UnixDomainSocketAddress} API of Java 16 is used by reflection, since this library runs on
+     * Java 8.
+     *
+     * @return the connected blocking channel.
+     * @throws IOException if the server cannot be reached or Unix domain sockets are not supported.
+     */
+    protected SocketChannel openUnixSocket() throws IOException {
+        final SocketAddress address;
+        final SocketChannel channel;
+        try {
+            address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, unixSocket);
+            channel = (SocketChannel) SocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null, StandardProtocolFamily.valueOf("UNIX"));
+        } catch (final InvocationTargetException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (final ReflectiveOperationException | IllegalArgumentException e) {
+            throw new IOException("Unix domain sockets require Java 16 or later", e);
+        }
+        try {
+            channel.connect(address);
+            return channel;
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a message in one transaction on a new connection.
+     *
+     * @param envelope The envelope.
+     * @param message  Writes the serialized message.
+     * @return the reply of the relay to the message data.
+     * @throws EmailException if the relay cannot be reached or rejects the message.
+     */
+    public SmtpReply send(final Envelope envelope, final ContentWriter message) throws EmailException {
+        return send(envelope, message, -1);
+    }
+
+    /**
+     * Sends a message of known size in one transaction on a new connection, see {@link #send(SmtpConnection, Envelope, ContentWriter, long)}.
+     *
+     * @param envelope The envelope.
+     * @param message  Writes the serialized message.
+     * @param size     The exact or estimated size of the message in octets, or -1 if unknown.
+     * @return the reply of the relay to the message data.
+     * @throws MessageTooLargeException   if the size exceeds the limit the relay announces.
+     * @throws RateLimitExceededException if the rate limiter does not allow the message.
+     * @throws EmailException             if the relay cannot be reached or rejects the message.
+     */
+    public SmtpReply send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        return execute(envelope.getRecipients().size(), connection -> sendTransaction(connection, envelope, message, size));
+    }
+
+    /**
+     * Sends a message in one transaction on an open connection.
+     *
+     * @param connection The open connection.
+     * @param envelope   The envelope.
+     * @param message    Writes the serialized message.
+     * @return the reply of the relay to the message data.
+     * @throws EmailException if the relay rejects the message.
+     */
+    public SmtpReply send(final SmtpConnection connection, final Envelope envelope, final ContentWriter message) throws EmailException {
+        return send(connection, envelope, message, -1);
+    }
+
+    /**
+     * Sends a message of known size in one transaction on an open connection.
+     * <p>
+     * If the relay announces a SIZE limit that the size exceeds, no transaction is started. Otherwise the size is declared with the {@code SIZE} parameter
+     * of {@code MAIL FROM}, so that the relay can reject the message before its data is sent. A body type other than 7bit is declared with the
+     * {@code BODY} parameter and requires the relay to support its extension, as does an envelope requiring {@code SMTPUTF8}.
+     * </p>
+     * <p>
+     * If a chunk size is set and the relay supports CHUNKING, the data is sent with {@code BDAT}: line endings are normalized but no line is dot-stuffed,
+     * and data of the BINARYMIME body type is sent unchanged.
+     * </p>
+     *
+     * @param connection The open connection.
+     * @param envelope   The envelope.
+     * @param message    Writes the serialized message.
+     * @param size       The exact or estimated size of the message in octets, or -1 if unknown.
+     * @return the reply of the relay to the message data.
+     * @throws MessageTooLargeException   if the size exceeds the limit the relay announces.
+     * @throws RateLimitExceededException if the rate limiter does not allow the message.
+     * @throws EmailException             if the relay does not support the body type or SMTPUTF8, or rejects the message.
+     */
+    public SmtpReply send(final SmtpConnection connection, final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        acquire(envelope.getRecipients().size());
+        return sendTransaction(connection, envelope, message, size);
+    }
+
+    private SmtpReply sendTransaction(final SmtpConnection connection, final Envelope envelope, final ContentWriter message, final long size)
+            throws EmailException {
+        final Map<String, SmtpReply> replies = new LinkedHashMap<>();
+        final boolean chunking = isChunking(connection);
+        final List<String> accepted = startTransaction(connection, envelope, size, chunking, replies);
+        if (accepted.size() < envelope.getRecipients().size() && (!sendPartial || accepted.isEmpty())) {
+            connection.rset();
+            throw new SmtpException("Recipients rejected", replies.values().stream().filter(reply -> !reply.isPositive()).findFirst().orElse(null));
+        }
+        final List<SmtpReply> dataReplies = transferData(connection, envelope, message, accepted.size(), chunking);
+        return lmtp ? checkDelivery(dataReplies) : dataReplies.get(0);
+    }
+
+    private List<String> startTransaction(final SmtpConnection connection, final Envelope envelope, final long size, final boolean chunking,
+            final Map<String, SmtpReply> replies) throws EmailException {
+        final List<String> parameters = createMailParameters(envelope, size, connection.getCapabilities(), chunking);
+        connection.mail(envelope.getReversePath(), parameters.toArray(new String[0]));
+        final List<String> accepted = new ArrayList<>();
+        for (final String recipient : envelope.getRecipients()) {
+            final SmtpReply reply = connection.rcpt(recipient);
+            replies.put(recipient, reply);
+            if (reply.isPositive()) {
+                accepted.add(recipient);
+            }
+        }
+        return accepted;
+    }
+
+    private List<SmtpReply> transferData(final SmtpConnection connection, final Envelope envelope, final ContentWriter message, final int accepted,
+            final boolean chunking) throws EmailException {
+        if (lmtp) {
+            return connection.data(message, accepted);
+        }
+        if (!chunking) {
+            return Collections.singletonList(connection.data(message));
+        }
+        if (envelope.getBodyType() == BodyType.BINARY_MIME) {
+            return Collections.singletonList(connection.bdat(message, chunkSize));
+        }
+        return Collections.singletonList(connection.bdat(out -> message.writeTo(new CrlfOutputStream(out)), chunkSize));
+    }
+
+    /**
+     * Sets the address of the relay to connect to, for a caller that resolved the host name itself. The host name is still sent in TLS and checked against
+     * the certificate of the relay.
+     *
+     * @param address The address, null to resolve the host name when connecting.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setAddress(final InetAddress address) {
+        this.address = address;
+        return this;
+    }
+
+    /**
+     * Sets the user name and password used to authenticate with AUTH PLAIN or AUTH LOGIN.
+     *
+     * @param userName The user name, null for no authentication.
+     * @param password The password.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setAuthentication(final String userName, final String password) {
+        this.userName = userName;
+        this.password = password;
+        return this;
+    }
+
+    /**
+     * Sets the cache that remembers the capabilities of relays. Each connection updates it.
+     *
+     * @param capabilityCache The cache or null for none.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setCapabilityCache(final CapabilityCache capabilityCache) {
+        this.capabilityCache = capabilityCache;
+        return this;
+    }
+
+    /**
+     * Sets the size of the chunks sent with {@code BDAT} if the relay supports the CHUNKING extension (RFC 3030). Chunks up to
+     * {@link org.apache.commons.mail2.core.io.BufferPool#MAX_BUFFER_SIZE} use pooled buffers.
+     *
+     * @param chunkSize The chunk size in octets, 0 to always use {@code DATA}.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setChunkSize(final int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("Chunk size must not be negative: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the limiter of the sends in flight to the relay, which adapts its limit to the latency and transient failures of the relay. A send on a new
+     * connection takes a permit before connecting and releases it with its outcome; sends on an open connection are not limited.
+     *
+     * @param concurrencyLimiter The concurrency limiter, null for no limit.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setConcurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
+    /**
+     * Sets the delay between connection attempts to the addresses of the relay, if its host name resolves to several. As described by RFC 8305, the
+     * addresses are tried alternating between IPv6 and IPv4; the next attempt starts when the previous ones failed or are still pending after the delay,
+     * and the first connection wins. An address that drops packets then costs the delay instead of the connect timeout, which bounds all attempts
+     * together. Not used if an {@link #setAddress(InetAddress) address} is set.
+     * <p>
+     * Only connections opened by this client use the staggered attempts; sends through the JavaMail {@code Transport}, for example by
+     * {@code Email.send()} without a client, connect to the first resolved address of the relay.
+     * </p>
+     *
+     * @param connectAttemptDelay The delay, null to connect to the first address only.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setConnectAttemptDelay(final Duration connectAttemptDelay) {
+        this.connectAttemptDelay = connectAttemptDelay;
+        return this;
+    }
+
+    /**
+     * Sets the connect timeout.
+     *
+     * @param connectTimeout The connect timeout.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setConnectTimeout(final Duration connectTimeout) {
+        this.connectTimeout = Objects.requireNonNull(connectTimeout, "connectTimeout");
+        return this;
+    }
+
+    /**
+     * Sets the deadline by which the sends of this client must complete, connect, TLS, authentication and message data included. Connect and read timeouts
+     * are limited to the remaining time, and a connection is closed when the deadline passes; the send then fails with an
+     * {@link org.apache.commons.mail2.core.EmailTimeoutException}. A deadline is meant for a client used by one send, see
+     * {@link #SmtpClient(SmtpClient)}.
+     *
+     * @param deadline The deadline, null for none.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setDeadline(final Deadline deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * Sets the host name or address of the relay.
+     *
+     * @param host The host.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setHost(final String host) {
+        this.host = host;
+        return this;
+    }
+
+    /**
+     * Sets the name sent with EHLO.
+     *
+     * @param localHost The EHLO name, null for the local host name.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setLocalHost(final String localHost) {
+        this.localHost = localHost;
+        return this;
+    }
+
+    /**
+     * Sets the port of the relay.
+     *
+     * @param port The port.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setPort(final int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Sets the limiter of the messages and recipients per second. A send on a new connection takes its tokens before connecting, a send on an open
+     * connection before its transaction.
+     *
+     * @param rateLimiter The rate limiter, null for no limit.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setRateLimiter(final RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Sets the read timeout.
+     *
+     * @param readTimeout The read timeout.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setReadTimeout(final Duration readTimeout) {
+        this.readTimeout = Objects.requireNonNull(readTimeout, "readTimeout");
+        return this;
+    }
+
+    /**
+     * Sets whether the client speaks LMTP (RFC 2033) instead of SMTP: it greets with {@code LHLO}, never uses {@code BDAT} and reads a reply for each
+     * accepted recipient after the message data. If any recipient fails, the send fails, unless partial sends are allowed and some recipient succeeded.
+     *
+     * @param lmtp whether to use LMTP.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setLmtp(final boolean lmtp) {
+        this.lmtp = lmtp;
+        return this;
+    }
+
+    /**
+     * Sets whether the message is sent to the accepted recipients if some are rejected.
+     *
+     * @param sendPartial whether partial sends are allowed.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setSendPartial(final boolean sendPartial) {
+        this.sendPartial = sendPartial;
+        return this;
+    }
+
+    /**
+     * Sets whether the certificate of the relay must match its host name.
+     *
+     * @param sslCheckServerIdentity whether the server identity is checked.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setSslCheckServerIdentity(final boolean sslCheckServerIdentity) {
+        this.sslCheckServerIdentity = sslCheckServerIdentity;
+        return this;
+    }
+
+    /**
+     * Sets whether TLS is used from the start.
+     *
+     * @param sslOnConnect whether TLS is used from the start.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setSslOnConnect(final boolean sslOnConnect) {
+        this.sslOnConnect = sslOnConnect;
+        return this;
+    }
+
+    /**
+     * Sets the factory for TLS sockets. Share the {@link TlsSessions#getSocketFactory() factory of a TlsSessions} between the clients of a relay to resume
+     * TLS sessions across connections.
+     *
+     * @param sslSocketFactory The factory, null for the default factory.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setSslSocketFactory(final SSLSocketFactory sslSocketFactory) {
+        this.sslSocketFactory = sslSocketFactory;
+        return this;
+    }
+
+    /**
+     * Sets whether the connection is upgraded with STARTTLS if the relay supports it.
+     *
+     * @param startTlsEnabled whether STARTTLS is enabled.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setStartTlsEnabled(final boolean startTlsEnabled) {
+        this.startTlsEnabled = startTlsEnabled;
+        return this;
+    }
+
+    /**
+     * Sets whether sending fails if the relay does not support STARTTLS.
+     *
+     * @param startTlsRequired whether STARTTLS is required.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setStartTlsRequired(final boolean startTlsRequired) {
+        this.startTlsRequired = startTlsRequired;
+        return this;
+    }
+
+    /**
+     * Sets the path of the Unix domain socket of the server, to connect to a co-located MTA without TCP, requires Java 16 or later. The host name is then
+     * only used in messages and for the capability cache; TLS, STARTTLS and the read timeout do not apply.
+     *
+     * @param unixSocket the path, null to connect with TCP.
+     * @return {@code this} instance.
+     */
+    public SmtpClient setUnixSocket(final Path unixSocket) {
+        this.unixSocket = unixSocket;
+        return this;
+    }
+}
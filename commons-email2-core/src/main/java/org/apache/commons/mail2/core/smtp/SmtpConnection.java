@@ -0,0 +1,707 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.commons.mail2.core.Deadline;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.MessageWriteException;
+import org.apache.commons.mail2.core.io.BufferPool;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+
+/**
+ * An open SMTP or LMTP session on a socket or a channel, such as a Unix domain socket.
+ * <p>
+ * Instances are created by {@link SmtpClient#connect()} and are not thread-safe. Commands that the server rejects throw {@link SmtpException}, I/O failures
+ * throw {@link EmailException} with the {@link IOException} as cause, and failures of the writer of the message content throw
+ * {@link MessageWriteException}.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class SmtpConnection implements Closeable {
+
+    /**
+     * Collects message data and sends it in {@code BDAT} chunks.
+     */
+    private final class ChunkingOutputStream extends OutputStream {
+
+        /** The chunk buffer. */
+        private final byte[] buffer;
+
+        /** The chunk size. */
+        private final int chunkSize;
+
+        /** The number of bytes in the buffer. */
+        private int count;
+
+        /** The reply that rejected a chunk, or null. */
+        private SmtpReply rejected;
+
+        /** Whether sending a chunk failed, as opposed to the writer of the content. */
+        private boolean failed;
+
+        ChunkingOutputStream(final byte[] buffer, final int chunkSize) {
+            this.buffer = buffer;
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * Sends the remaining data as the last chunk.
+         *
+         * @return the reply to the last chunk.
+         * @throws IOException if an I/O error occurs or the server rejects the chunk.
+         */
+        SmtpReply finish() throws IOException {
+            return sendChunk(true);
+        }
+
+        private SmtpReply sendChunk(final boolean last) throws IOException {
+            failed = true;
+            output.write(("BDAT " + count + (last ? " LAST\r\n" : "\r\n")).getBytes(StandardCharsets.US_ASCII));
+            output.write(buffer, 0, count);
+            output.flush();
+            count = 0;
+            final SmtpReply reply = readReply();
+            if (!reply.isPositive()) {
+                rejected = reply;
+                throw new IOException("BDAT rejected: " + reply);
+            }
+            failed = false;
+            return reply;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                final int n = Math.min(remaining, chunkSize - count);
+                System.arraycopy(b, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                remaining -= n;
+                if (count == chunkSize) {
+                    sendChunk(false);
+                }
+            }
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            buffer[count++] = (byte) b;
+            if (count == chunkSize) {
+                sendChunk(false);
+            }
+        }
+    }
+
+    /**
+     * Writes message data to the connection and remembers whether a write failed, telling failures of the connection from failures of the content writer.
+     */
+    private static final class WireOutputStream extends FilterOutputStream {
+
+        /** Whether a write to the connection failed. */
+        private boolean failed;
+
+        WireOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            failed = true;
+            out.flush();
+            failed = false;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            failed = true;
+            out.write(b, off, len);
+            failed = false;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            failed = true;
+            out.write(b);
+            failed = false;
+        }
+    }
+
+    /** The maximum length of a reply line we accept. */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /** The socket, null for a connection on a channel. */
+    private Socket socket;
+
+    /** Closes the connection. */
+    private volatile Closeable transport;
+
+    /** Reads replies. */
+    private InputStream input;
+
+    /** Writes commands and data. */
+    private OutputStream output;
+
+    /** The host name or address of the server, used for messages and TLS host name verification. */
+    private final String host;
+
+    /** The EHLO keywords in upper case mapped to their parameters. */
+    private final Map<String, String> capabilities = new LinkedHashMap<>();
+
+    /** The time spent transferring message content and reading its replies, in nanoseconds. */
+    private long contentNanos;
+
+    /** The deadline of the send, null for none. */
+    private Deadline deadline;
+
+    /** Closes the connection at the deadline. */
+    private Future<?> watch;
+
+    /**
+     * Constructs a new instance on a connected socket. The greeting is not read.
+     *
+     * @param socket The connected socket.
+     * @param host   The host name or address of the server.
+     * @throws IOException if the streams of the socket cannot be opened.
+     */
+    protected SmtpConnection(final Socket socket, final String host) throws IOException {
+        this.host = host;
+        setSocket(socket);
+    }
+
+    /**
+     * Constructs a new instance on a connected blocking channel, for example a Unix domain socket. The greeting is not read. Such a connection cannot be
+     * upgraded with STARTTLS and has no read timeout.
+     *
+     * @param channel The connected channel.
+     * @param host    The name of the server, used for messages.
+     */
+    protected SmtpConnection(final ByteChannel channel, final String host) {
+        this.host = host;
+        this.transport = channel;
+        this.input = new BufferedInputStream(Channels.newInputStream(channel));
+        this.output = new BufferedOutputStream(Channels.newOutputStream(channel));
+    }
+
+    /**
+     * Authenticates with the first mechanism the server supports, PLAIN or LOGIN.
+     *
+     * @param userName The user name.
+     * @param password The password.
+     * @throws EmailException if the server supports neither mechanism or rejects the credentials.
+     */
+    public void authenticate(final String userName, final String password) throws EmailException {
+        final String mechanisms = " " + getCapability("AUTH") + " ";
+        if (mechanisms.contains(" PLAIN ")) {
+            final String token = encode("\0" + userName + "\0" + password);
+            check(command("AUTH PLAIN " + token, "AUTH PLAIN ***"), "Authentication failed");
+        } else if (mechanisms.contains(" LOGIN ")) {
+            SmtpReply reply = command("AUTH LOGIN");
+            if (reply.isPositiveIntermediate()) {
+                reply = command(encode(userName));
+            }
+            if (reply.isPositiveIntermediate()) {
+                reply = command(encode(password), "***");
+            }
+            check(reply, "Authentication failed");
+        } else {
+            throw new EmailException("No supported authentication mechanism offered by " + host + ": " + getCapability("AUTH"));
+        }
+    }
+
+    /**
+     * Sends the message data with {@code BDAT} commands (RFC 3030) in chunks of the given size, the last one with {@code LAST}. Unlike
+     * {@link #data(ContentWriter)}, the data is sent as is, without dot-stuffing or line ending conversion, so the writer must produce CRLF line endings
+     * unless the body type is BINARYMIME. The server must support the CHUNKING extension.
+     *
+     * @param writer    Writes the message.
+     * @param chunkSize The maximum number of octets per chunk.
+     * @return the reply to the last chunk.
+     * @throws EmailException if the server rejects a chunk or an I/O error occurs, or a {@link MessageWriteException} if the writer fails.
+     */
+    public SmtpReply bdat(final ContentWriter writer, final int chunkSize) throws EmailException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        final BufferPool pool = BufferPool.getDefault();
+        final byte[] buffer = pool.acquire(chunkSize);
+        final ChunkingOutputStream chunks = new ChunkingOutputStream(buffer, chunkSize);
+        final long startNanos = System.nanoTime();
+        try {
+            try {
+                writer.writeTo(chunks);
+            } catch (final IOException e) {
+                if (!chunks.failed) {
+                    throw contentFailure(e);
+                }
+                throw e;
+            }
+            return chunks.finish();
+        } catch (final IOException e) {
+            if (chunks.rejected != null) {
+                throw new SmtpException("Message rejected", chunks.rejected);
+            }
+            throw failure("Sending the message data to " + host + " failed", e);
+        } finally {
+            contentNanos += System.nanoTime() - startNanos;
+            pool.release(buffer);
+        }
+    }
+
+    private SmtpReply check(final SmtpReply reply, final String message) throws SmtpException {
+        if (!reply.isPositive()) {
+            throw new SmtpException(message, reply);
+        }
+        return reply;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watch != null) {
+            watch.cancel(false);
+        }
+        transport.close();
+    }
+
+    /**
+     * Sends a command and reads the reply.
+     *
+     * @param command The command without line ending.
+     * @return the reply.
+     * @throws EmailException if an I/O error occurs.
+     */
+    public SmtpReply command(final String command) throws EmailException {
+        return command(command, command);
+    }
+
+    private SmtpReply command(final String command, final String description) throws EmailException {
+        try {
+            output.write(command.getBytes(StandardCharsets.UTF_8));
+            output.write('\r');
+            output.write('\n');
+            output.flush();
+            return readReply();
+        } catch (final IOException e) {
+            throw failure("Sending " + description + " to " + host + " failed", e);
+        }
+    }
+
+    /**
+     * Sends the message data with the {@code DATA} command, dot-stuffed and with normalized line endings.
+     *
+     * @param writer Writes the message.
+     * @return the positive reply to the data.
+     * @throws EmailException if the server rejects the data or an I/O error occurs.
+     */
+    public SmtpReply data(final ContentWriter writer) throws EmailException {
+        return check(data(writer, 1).get(0), "Message rejected");
+    }
+
+    /**
+     * Sends the message data with the {@code DATA} command, dot-stuffed and with normalized line endings, and reads the given number of replies. An LMTP
+     * server replies once for each accepted recipient, in the order of the {@code RCPT TO} commands (RFC 2033 section 4.2).
+     *
+     * @param writer  Writes the message.
+     * @param replies The number of replies to read.
+     * @return the replies, positive or not.
+     * @throws EmailException if the server rejects the {@code DATA} command or an I/O error occurs, or a {@link MessageWriteException} if the writer fails.
+     */
+    public List<SmtpReply> data(final ContentWriter writer, final int replies) throws EmailException {
+        final SmtpReply reply = command("DATA");
+        if (reply.getCode() != 354) {
+            throw new SmtpException("DATA rejected", reply);
+        }
+        final long startNanos = System.nanoTime();
+        try {
+            final WireOutputStream wire = new WireOutputStream(output);
+            final DotStuffingOutputStream data = new DotStuffingOutputStream(wire);
+            try {
+                writer.writeTo(data);
+            } catch (final IOException e) {
+                if (!wire.failed) {
+                    throw contentFailure(e);
+                }
+                throw e;
+            }
+            data.finish();
+            final List<SmtpReply> list = new ArrayList<>(replies);
+            for (int i = 0; i < replies; i++) {
+                list.add(readReply());
+            }
+            return list;
+        } catch (final IOException e) {
+            throw failure("Sending the message data to " + host + " failed", e);
+        } finally {
+            contentNanos += System.nanoTime() - startNanos;
+        }
+    }
+
+    /**
+     * Sends {@code EHLO} and records the capabilities, falling back to {@code HELO} if the server does not support ESMTP.
+     *
+     * @param domain The domain or address literal of the client.
+     * @return the positive reply.
+     * @throws EmailException if the server rejects both commands or an I/O error occurs.
+     */
+    public SmtpReply ehlo(final String domain) throws EmailException {
+        capabilities.clear();
+        final SmtpReply reply = command("EHLO " + domain);
+        if (!reply.isPositive()) {
+            return check(command("HELO " + domain), "HELO rejected");
+        }
+        parseCapabilities(reply, capabilities);
+        return reply;
+    }
+
+    /**
+     * Creates the failure of the writer of the message content, which the connection is not to blame for.
+     *
+     * @param cause the failure of the writer.
+     * @return the exception to throw.
+     */
+    private MessageWriteException contentFailure(final IOException cause) {
+        return new MessageWriteException("Writing the message data for " + host + " failed", cause);
+    }
+
+    private String encode(final String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates the exception of a failed operation: an {@link org.apache.commons.mail2.core.EmailTimeoutException} if the deadline has passed, since the
+     * operation then failed because the connection was closed.
+     */
+    private EmailException failure(final String message, final IOException cause) {
+        return deadline != null && deadline.isExpired() ? deadline.timeout(cause) : new EmailException(message, cause);
+    }
+
+    /**
+     * Gets the capabilities announced in the last {@code EHLO} reply.
+     *
+     * @return an unmodifiable map of upper case keywords to their parameters.
+     */
+    public Map<String, String> getCapabilities() {
+        return Collections.unmodifiableMap(capabilities);
+    }
+
+    /**
+     * Gets the parameters of a capability announced in the last {@code EHLO} reply.
+     *
+     * @param keyword The keyword, for example {@code SIZE}.
+     * @return the parameters, an empty string if there are none, or null if the capability is not supported.
+     */
+    public String getCapability(final String keyword) {
+        return capabilities.get(keyword.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Gets the time spent transferring message content with {@code DATA} or {@code BDAT} and reading its replies, over the life of the connection. Unlike
+     * the round trips of the commands, it grows with the size of the messages.
+     *
+     * @return the content time in nanoseconds.
+     */
+    public long getContentNanos() {
+        return contentNanos;
+    }
+
+    /**
+     * Gets the host name or address of the server.
+     *
+     * @return the host name or address.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the stream that writes to the server, for subclasses that implement other data commands.
+     *
+     * @return the output stream.
+     */
+    protected OutputStream getOutputStream() {
+        return output;
+    }
+
+    /**
+     * Gets the maximum message size the server announced with the SIZE extension in the last {@code EHLO} reply.
+     *
+     * @return the limit in octets, or 0 if the server announced none.
+     */
+    public long getSizeLimit() {
+        return getSizeLimit(capabilities);
+    }
+
+    /**
+     * Parses the capabilities of an {@code EHLO} reply: the lines after the first one, each a keyword and optional parameters.
+     *
+     * @param reply        The positive {@code EHLO} reply.
+     * @param capabilities Receives the upper case keywords mapped to their parameters.
+     */
+    static void parseCapabilities(final SmtpReply reply, final Map<String, String> capabilities) {
+        final List<String> lines = reply.getLines();
+        for (int i = 1; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            final int space = line.indexOf(' ');
+            final String keyword = (space < 0 ? line : line.substring(0, space)).toUpperCase(Locale.ROOT);
+            capabilities.put(keyword, space < 0 ? "" : line.substring(space + 1).trim());
+        }
+    }
+
+    /**
+     * Gets the maximum message size announced with the SIZE extension.
+     *
+     * @param capabilities The capabilities of an {@code EHLO} reply.
+     * @return the limit in octets, or 0 if none was announced.
+     */
+    static long getSizeLimit(final Map<String, String> capabilities) {
+        final String size = capabilities.get("SIZE");
+        if (size == null || size.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(size.trim()));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Tests whether the underlying socket uses TLS.
+     *
+     * @return whether the underlying socket uses TLS.
+     */
+    public boolean isSecure() {
+        return socket instanceof SSLSocket;
+    }
+
+    /**
+     * Sends the LMTP {@code LHLO} and records the capabilities (RFC 2033 section 4.1).
+     *
+     * @param domain The domain or address literal of the client.
+     * @return the positive reply.
+     * @throws EmailException if the server rejects the command or an I/O error occurs.
+     */
+    public SmtpReply lhlo(final String domain) throws EmailException {
+        capabilities.clear();
+        final SmtpReply reply = check(command("LHLO " + domain), "LHLO rejected");
+        parseCapabilities(reply, capabilities);
+        return reply;
+    }
+
+    /**
+     * Sends {@code MAIL FROM}.
+     *
+     * @param reversePath The reverse-path, empty for the null reverse-path.
+     * @param parameters  Optional ESMTP parameters, for example {@code SIZE=1024}.
+     * @return the positive reply.
+     * @throws EmailException if the server rejects the sender or an I/O error occurs.
+     */
+    public SmtpReply mail(final String reversePath, final String... parameters) throws EmailException {
+        final StringBuilder command = new StringBuilder("MAIL FROM:<").append(reversePath).append('>');
+        for (final String parameter : parameters) {
+            command.append(' ').append(parameter);
+        }
+        return check(command(command.toString()), "Sender rejected");
+    }
+
+    /**
+     * Sends {@code QUIT} and closes the connection, ignoring failures.
+     */
+    public void quit() {
+        try {
+            command("QUIT");
+        } catch (final EmailException e) {
+            // the connection is closed anyway
+        }
+        try {
+            close();
+        } catch (final IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Sends {@code RCPT TO}.
+     *
+     * @param forwardPath The recipient address.
+     * @return the reply, positive or not.
+     * @throws EmailException if an I/O error occurs.
+     */
+    public SmtpReply rcpt(final String forwardPath) throws EmailException {
+        return command("RCPT TO:<" + forwardPath + ">");
+    }
+
+    /**
+     * Reads a possibly multiline reply.
+     *
+     * @return the reply.
+     * @throws IOException if an I/O error occurs or the reply is malformed.
+     */
+    protected SmtpReply readReply() throws IOException {
+        final List<String> lines = new ArrayList<>();
+        while (true) {
+            final String line = readLine();
+            if (line.length() < 3 || line.length() > 3 && line.charAt(3) != '-' && line.charAt(3) != ' ') {
+                throw new IOException("Malformed reply from " + host + ": " + line);
+            }
+            lines.add(line.length() > 4 ? line.substring(4) : "");
+            if (line.length() == 3 || line.charAt(3) == ' ') {
+                try {
+                    return new SmtpReply(Integer.parseInt(line.substring(0, 3)), lines);
+                } catch (final NumberFormatException e) {
+                    throw new IOException("Malformed reply from " + host + ": " + line, e);
+                }
+            }
+        }
+    }
+
+    private String readLine() throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = input.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("Connection to " + host + " closed");
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Reply line from " + host + " too long");
+            }
+            line.write(b);
+        }
+        final byte[] bytes = line.toByteArray();
+        final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the server greeting.
+     *
+     * @return the positive greeting.
+     * @throws EmailException if the server refuses the connection or an I/O error occurs.
+     */
+    public SmtpReply readGreeting() throws EmailException {
+        try {
+            return check(readReply(), "Connection refused");
+        } catch (final IOException e) {
+            throw failure("Reading the greeting of " + host + " failed", e);
+        }
+    }
+
+    /**
+     * Closes the connection when a deadline passes, failing the blocked operation; the connection is not watched otherwise.
+     *
+     * @param deadline The deadline of the send.
+     */
+    void setDeadline(final Deadline deadline) {
+        this.deadline = deadline;
+        this.watch = deadline.watch(this);
+    }
+
+    /**
+     * Sends {@code RSET} to abort the current transaction, ignoring the reply.
+     *
+     * @throws EmailException if an I/O error occurs.
+     */
+    public void rset() throws EmailException {
+        command("RSET");
+    }
+
+    private void setSocket(final Socket socket) throws IOException {
+        this.socket = socket;
+        this.transport = socket;
+        this.input = new BufferedInputStream(socket.getInputStream());
+        this.output = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    /**
+     * Sends {@code STARTTLS} and upgrades the connection. {@link #ehlo(String)} must be sent again afterwards.
+     *
+     * @param socketFactory       Creates the TLS socket.
+     * @param checkServerIdentity Whether to verify that the certificate matches the host name.
+     * @throws EmailException if the server rejects the command or the handshake fails.
+     */
+    public void startTls(final SSLSocketFactory socketFactory, final boolean checkServerIdentity) throws EmailException {
+        if (socket == null) {
+            throw new EmailException("STARTTLS is not supported on the connection to " + host);
+        }
+        check(command("STARTTLS"), "STARTTLS rejected");
+        try {
+            setSocket(upgrade(socketFactory, socket, host, checkServerIdentity));
+        } catch (final IOException e) {
+            throw failure("TLS handshake with " + host + " failed", e);
+        }
+        capabilities.clear();
+    }
+
+    /**
+     * Tests whether the server announced the given extension in the last {@code EHLO} reply.
+     *
+     * @param keyword The keyword, for example {@code PIPELINING}.
+     * @return whether the extension is supported.
+     */
+    public boolean supports(final String keyword) {
+        return getCapability(keyword) != null;
+    }
+
+    /**
+     * Layers TLS over a connected socket and performs the handshake.
+     *
+     * @param socketFactory       Creates the TLS socket.
+     * @param socket              The connected socket.
+     * @param host                The host name of the server.
+     * @param checkServerIdentity Whether to verify that the certificate matches the host name.
+     * @return the TLS socket.
+     * @throws IOException if the handshake fails.
+     */
+    static SSLSocket upgrade(final SSLSocketFactory socketFactory, final Socket socket, final String host, final boolean checkServerIdentity)
+            throws IOException {
+        final SSLSocket sslSocket = (SSLSocket) socketFactory.createSocket(socket, host, socket.getPort(), true);
+        if (checkServerIdentity) {
+            final SSLParameters parameters = sslSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslSocket.setSSLParameters(parameters);
+        }
+        sslSocket.startHandshake();
+        return sslSocket;
+    }
+}
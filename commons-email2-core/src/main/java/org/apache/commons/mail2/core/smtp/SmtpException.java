@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import org.apache.commons.mail2.core.EmailException;
+
+/**
+ * Thrown when an SMTP server rejects a command.
+ *
+ * @since 2.0.0-M2
+ */
+public class SmtpException extends EmailException {
+
+    /** Serializable version identifier. */
+    private static final long serialVersionUID = 1L;
+
+    /** The rejecting reply. */
+    private final transient SmtpReply reply;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param message The detail message.
+     * @param reply   The rejecting reply.
+     */
+    public SmtpException(final String message, final SmtpReply reply) {
+        super(message + ": " + reply);
+        this.reply = reply;
+    }
+
+    /**
+     * Gets the rejecting reply.
+     *
+     * @return the reply, null after deserialization.
+     */
+    public SmtpReply getReply() {
+        return reply;
+    }
+
+    /**
+     * Tests whether the failure is transient, so that the message may be sent again later.
+     *
+     * @return whether the failure is transient.
+     */
+    public boolean isTransient() {
+        return reply != null && reply.isTransient();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A reply of an SMTP server: a three digit code and one or more lines of text.
+ *
+ * @since 2.0.0-M2
+ */
+public final class SmtpReply {
+
+    /** The reply code. */
+    private final int code;
+
+    /** The text lines without the code. */
+    private final List<String> lines;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param code  The reply code.
+     * @param lines The text lines without the code.
+     */
+    public SmtpReply(final int code, final List<String> lines) {
+        this.code = code;
+        this.lines = Collections.unmodifiableList(new ArrayList<>(lines));
+    }
+
+    /**
+     * Gets the reply code.
+     *
+     * @return the reply code.
+     */
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * Gets the text lines without the code.
+     *
+     * @return an unmodifiable list of lines.
+     */
+    public List<String> getLines() {
+        return lines;
+    }
+
+    /**
+     * Gets the text of the reply, lines separated by a space.
+     *
+     * @return the text.
+     */
+    public String getText() {
+        return String.join(" ", lines);
+    }
+
+    /**
+     * Tests whether this is a positive completion reply, 2yz.
+     *
+     * @return whether this is a positive completion reply.
+     */
+    public boolean isPositive() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * Tests whether this is a positive intermediate reply, 3yz.
+     *
+     * @return whether this is a positive intermediate reply.
+     */
+    public boolean isPositiveIntermediate() {
+        return code >= 300 && code < 400;
+    }
+
+    /**
+     * Tests whether this is a transient negative reply, 4yz, after which the command may be retried later.
+     *
+     * @return whether this is a transient negative reply.
+     */
+    public boolean isTransient() {
+        return code >= 400 && code < 500;
+    }
+
+    @Override
+    public String toString() {
+        return code + " " + getText();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A TLS context shared by the connections to a relay, so that a new connection resumes the TLS session of an earlier one with an abbreviated handshake
+ * instead of a full one with certificate verification and key exchange.
+ * <p>
+ * Set the {@link #getSocketFactory() socket factory} on each {@link SmtpClient} of the relay, or the instance on an email or a {@link NioSmtpEngine}. The
+ * client session cache of the {@link #getSslContext() SSL context} keeps the sessions by host and port; its size and timeout can be configured. The handshakes
+ * of the sockets created by the factory are counted as full or resumed. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class TlsSessions {
+
+    /**
+     * Counts the handshakes of the sockets it creates.
+     */
+    private final class CountingSocketFactory extends SSLSocketFactory {
+
+        /** Creates the sockets. */
+        private final SSLSocketFactory delegate = sslContext.getSocketFactory();
+
+        @Override
+        public Socket createSocket() throws IOException {
+            return watch(delegate.createSocket());
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress host, final int port) throws IOException {
+            return watch(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress, final int localPort) throws IOException {
+            return watch(delegate.createSocket(address, port, localAddress, localPort));
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket, final InputStream consumed, final boolean autoClose) throws IOException {
+            return watch(delegate.createSocket(socket, consumed, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final Socket socket, final String host, final int port, final boolean autoClose) throws IOException {
+            return watch(delegate.createSocket(socket, host, port, autoClose));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port) throws IOException {
+            return watch(delegate.createSocket(host, port));
+        }
+
+        @Override
+        public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort) throws IOException {
+            return watch(delegate.createSocket(host, port, localHost, localPort));
+        }
+
+        @Override
+        public String[] getDefaultCipherSuites() {
+            return delegate.getDefaultCipherSuites();
+        }
+
+        @Override
+        public String[] getSupportedCipherSuites() {
+            return delegate.getSupportedCipherSuites();
+        }
+
+        /**
+         * Counts the handshake of a socket once it completes.
+         */
+        private Socket watch(final Socket socket) {
+            if (socket instanceof SSLSocket) {
+                final long startMillis = System.currentTimeMillis();
+                ((SSLSocket) socket).addHandshakeCompletedListener(event -> handshakeCompleted(event.getSession(), startMillis));
+            }
+            return socket;
+        }
+    }
+
+    /** The SSL context. */
+    private final SSLContext sslContext;
+
+    /** Creates the sockets and counts their handshakes. */
+    private final SSLSocketFactory socketFactory;
+
+    /** Counts the handshakes that created a new session. */
+    private final LongAdder fullHandshakes = new LongAdder();
+
+    /** Counts the handshakes that resumed a cached session. */
+    private final LongAdder resumedHandshakes = new LongAdder();
+
+    /**
+     * Constructs a new instance with a new SSL context of the default key and trust managers, so that its session cache is not shared with other users of
+     * the default context.
+     *
+     * @throws IllegalStateException if TLS is not available.
+     */
+    public TlsSessions() {
+        this(newSslContext());
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param sslContext The SSL context, for example with the trust managers of a private certificate authority.
+     */
+    public TlsSessions(final SSLContext sslContext) {
+        this.sslContext = Objects.requireNonNull(sslContext, "sslContext");
+        this.socketFactory = new CountingSocketFactory();
+    }
+
+    /**
+     * Creates an SSL context with the default key and trust managers.
+     */
+    private static SSLContext newSslContext() {
+        try {
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            return sslContext;
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets the number of handshakes that created a new session.
+     *
+     * @return the number of full handshakes.
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.sum();
+    }
+
+    /**
+     * Gets the number of handshakes that resumed a cached session.
+     *
+     * @return the number of resumed handshakes.
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    /**
+     * Gets the maximum number of sessions the client session cache keeps.
+     *
+     * @return the size, zero for no limit.
+     */
+    public int getSessionCacheSize() {
+        return sslContext.getClientSessionContext().getSessionCacheSize();
+    }
+
+    /**
+     * Gets the time a cached session can be resumed.
+     *
+     * @return the timeout, zero for no limit.
+     */
+    public Duration getSessionTimeout() {
+        return Duration.ofSeconds(sslContext.getClientSessionContext().getSessionTimeout());
+    }
+
+    /**
+     * Gets the socket factory, which counts the handshakes of its sockets.
+     *
+     * @return the socket factory.
+     */
+    public SSLSocketFactory getSocketFactory() {
+        return socketFactory;
+    }
+
+    /**
+     * Gets the SSL context.
+     *
+     * @return the SSL context.
+     */
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Counts a completed handshake. A resumed session was created before the handshake started, while a full handshake creates a new one.
+     *
+     * @param session     The session of the handshake.
+     * @param startMillis The time the handshake started.
+     */
+    void handshakeCompleted(final SSLSession session, final long startMillis) {
+        (session.getCreationTime() < startMillis ? resumedHandshakes : fullHandshakes).increment();
+    }
+
+    /**
+     * Sets the maximum number of sessions the client session cache keeps.
+     *
+     * @param sessionCacheSize The size, zero for no limit.
+     * @return {@code this} instance.
+     * @throws IllegalArgumentException if the size is negative.
+     */
+    public TlsSessions setSessionCacheSize(final int sessionCacheSize) {
+        sslContext.getClientSessionContext().setSessionCacheSize(sessionCacheSize);
+        return this;
+    }
+
+    /**
+     * Sets the time a cached session can be resumed. Servers may limit the lifetime of their session tickets further.
+     *
+     * @param sessionTimeout The timeout, zero for no limit.
+     * @return {@code this} instance.
+     * @throws IllegalArgumentException if the timeout is negative.
+     */
+    public TlsSessions setSessionTimeout(final Duration sessionTimeout) {
+        sslContext.getClientSessionContext().setSessionTimeout(Math.toIntExact(sessionTimeout.getSeconds()));
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "TlsSessions [fullHandshakes=" + getFullHandshakes() + ", resumedHandshakes=" + getResumedHandshakes() + "]";
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket with lock-free accounting.
+ * <p>
+ * The bucket holds up to its capacity of tokens and refills at its rate. Instead of a token count refilled by a timer, it keeps one number, the time at
+ * which the bucket would be full again (the theoretical arrival time of the generic cell rate algorithm), updated with compare-and-set; taking tokens moves
+ * that time forward. So threads never block each other, and a reservation that overdraws the bucket tells the caller how long to wait. The bucket starts
+ * full. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class TokenBucket {
+
+    /** The rate in tokens per second. */
+    private final double rate;
+
+    /** The capacity in tokens. */
+    private final long capacity;
+
+    /** The time to refill one token in nanoseconds. */
+    private final long intervalNanos;
+
+    /** The time to refill the whole bucket in nanoseconds. */
+    private final long toleranceNanos;
+
+    /** When the bucket is full again, in {@link System#nanoTime()} units; a time in the past means full. */
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param rate     The rate in tokens per second.
+     * @param capacity The capacity, the largest burst of tokens.
+     */
+    public TokenBucket(final double rate, final long capacity) {
+        if (!(rate > 0)) {
+            throw new IllegalArgumentException("Rate must be positive: " + rate);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.rate = rate;
+        this.capacity = capacity;
+        this.intervalNanos = Math.max(1, Math.round(1e9 / rate));
+        this.toleranceNanos = capacity * intervalNanos;
+    }
+
+    /**
+     * Gets the number of tokens available now.
+     *
+     * @return the available tokens.
+     */
+    public long getAvailableTokens() {
+        return Math.max(0, (toleranceNanos - Math.max(0, fullAt.get() - System.nanoTime())) / intervalNanos);
+    }
+
+    /**
+     * Gets the capacity.
+     *
+     * @return the largest burst of tokens.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the rate.
+     *
+     * @return the rate in tokens per second.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Gets the time until a number of tokens is available, without taking them.
+     *
+     * @param tokens The number of tokens.
+     * @return the time to wait in nanoseconds, 0 if the tokens are available now.
+     */
+    public long getWaitNanos(final long tokens) {
+        final long now = System.nanoTime();
+        final long current = fullAt.get();
+        return Math.max(0, (current - now > 0 ? current : now) + tokens * intervalNanos - now - toleranceNanos);
+    }
+
+    /**
+     * Returns tokens taken for a message that was not sent.
+     *
+     * @param tokens The number of tokens.
+     */
+    public void refund(final long tokens) {
+        fullAt.addAndGet(-tokens * intervalNanos);
+    }
+
+    /**
+     * Takes tokens, overdrawing the bucket if needed, and tells how long the caller must wait before using them.
+     *
+     * @param tokens The number of tokens.
+     * @return the time to wait in nanoseconds, 0 if the tokens were available.
+     */
+    public long reserve(final long tokens) {
+        while (true) {
+            final long now = System.nanoTime();
+            final long current = fullAt.get();
+            final long next = (current - now > 0 ? current : now) + tokens * intervalNanos;
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, next - now - toleranceNanos);
+            }
+        }
+    }
+
+    /**
+     * Takes tokens if they are available now.
+     *
+     * @param tokens The number of tokens.
+     * @return whether the tokens were taken.
+     */
+    public boolean tryAcquire(final long tokens) {
+        while (true) {
+            final long now = System.nanoTime();
+            final long current = fullAt.get();
+            final long next = (current - now > 0 ? current : now) + tokens * intervalNanos;
+            if (next - now > toleranceNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+}
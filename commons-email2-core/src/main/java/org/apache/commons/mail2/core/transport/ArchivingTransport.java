@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.io.ArchiveSink;
+import org.apache.commons.mail2.core.io.TeeOutputStream;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+
+/**
+ * A transport that copies the messages another transport delivers to an {@link ArchiveSink}, for example for compliance archiving.
+ * <p>
+ * The bytes the delegate writes are teed to a new archive entry, so that the message is serialized once for both. The copy is committed after the delegate
+ * delivered the message and discarded if it failed. If the delegate writes the message more than once, for example to retry, each write starts a new copy;
+ * if it never writes it, nothing is archived.
+ * </p>
+ * <p>
+ * Instances are thread-safe if the delegate and the sink are.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class ArchivingTransport implements EmailTransport {
+
+    /** The transport delivering the messages. */
+    private final EmailTransport delegate;
+
+    /** The sink receiving the copies. */
+    private final ArchiveSink archiveSink;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param delegate    The transport delivering the messages.
+     * @param archiveSink The sink receiving the copies.
+     */
+    public ArchivingTransport(final EmailTransport delegate, final ArchiveSink archiveSink) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.archiveSink = Objects.requireNonNull(archiveSink, "archiveSink");
+    }
+
+    /**
+     * Gets the sink receiving the copies.
+     *
+     * @return the archive sink.
+     */
+    public ArchiveSink getArchiveSink() {
+        return archiveSink;
+    }
+
+    /**
+     * Gets the transport delivering the messages.
+     *
+     * @return the delegate.
+     */
+    public EmailTransport getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        final AtomicReference<ArchiveSink.Entry> entry = new AtomicReference<>();
+        try {
+            delegate.send(envelope, out -> {
+                final ArchiveSink.Entry copy = archiveSink.open();
+                final ArchiveSink.Entry previous = entry.getAndSet(copy);
+                if (previous != null) {
+                    previous.close();
+                }
+                message.writeTo(new TeeOutputStream(out, copy.getOutputStream()));
+            }, size);
+            final ArchiveSink.Entry copy = entry.get();
+            if (copy != null) {
+                try {
+                    copy.commit();
+                } catch (final IOException e) {
+                    throw new EmailException("The message was sent but archiving it failed", e);
+                }
+            }
+        } finally {
+            final ArchiveSink.Entry copy = entry.get();
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (final IOException e) {
+                    // the copy is discarded
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the answers of another resolver for a time to live, so that messages to the same domains do not wait for DNS each time.
+ * <p>
+ * The records of DNS carry their own time to live, which the JNDI and {@link InetAddress} lookups do not expose; this cache applies one time to live to all
+ * answers instead. Failed lookups are not cached. A cache that reaches {@link #getMaxEntries()} answers drops the expired ones, and if that is not enough, a
+ * quarter of the others. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class CachingDnsResolver implements DnsResolver {
+
+    /**
+     * A cached answer with its expiry.
+     */
+    private static final class Entry<T> {
+
+        /** The answer. */
+        private final List<T> values;
+
+        /** When the entry expires, in {@link System#nanoTime()} units. */
+        private final long expiresNanos;
+
+        private Entry(final List<T> values, final long expiresNanos) {
+            this.values = values;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+
+    /**
+     * Looks up an answer of the delegate.
+     */
+    @FunctionalInterface
+    private interface Lookup<T> {
+        List<T> lookup(String name) throws IOException;
+    }
+
+    /** The default time to live of answers. */
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    /** The default number of answers kept of each kind. */
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+    /** The resolver asked on a cache miss. */
+    private final DnsResolver delegate;
+
+    /** The time to live of answers in nanoseconds. */
+    private final long timeToLiveNanos;
+
+    /** The number of answers kept of each kind. */
+    private final int maxEntries;
+
+    /** The MX records by domain. */
+    private final ConcurrentMap<String, Entry<MxRecord>> mxRecords = new ConcurrentHashMap<>();
+
+    /** The addresses by host name. */
+    private final ConcurrentMap<String, Entry<InetAddress>> addresses = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new instance with the {@link #DEFAULT_TIME_TO_LIVE}.
+     *
+     * @param delegate The resolver asked on a cache miss.
+     */
+    public CachingDnsResolver(final DnsResolver delegate) {
+        this(delegate, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param delegate   The resolver asked on a cache miss.
+     * @param timeToLive The time to live of answers.
+     */
+    public CachingDnsResolver(final DnsResolver delegate, final Duration timeToLive) {
+        this(delegate, timeToLive, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param delegate   The resolver asked on a cache miss.
+     * @param timeToLive The time to live of answers.
+     * @param maxEntries The number of answers kept of each kind.
+     */
+    public CachingDnsResolver(final DnsResolver delegate, final Duration timeToLive, final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("Maximum entries must be positive: " + maxEntries);
+        }
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Removes all answers.
+     */
+    public void clear() {
+        mxRecords.clear();
+        addresses.clear();
+    }
+
+    private <T> List<T> get(final ConcurrentMap<String, Entry<T>> cache, final String name, final Lookup<T> lookup) throws IOException {
+        final String key = name.toLowerCase(Locale.ROOT);
+        final Entry<T> entry = cache.get(key);
+        final long now = System.nanoTime();
+        if (entry != null && now - entry.expiresNanos < 0) {
+            return entry.values;
+        }
+        final List<T> values = Collections.unmodifiableList(new ArrayList<>(lookup.lookup(name)));
+        if (entry == null && cache.size() >= maxEntries) {
+            prune(cache, now);
+        }
+        cache.put(key, new Entry<>(values, now + timeToLiveNanos));
+        return values;
+    }
+
+    /**
+     * Gets the number of answers kept of each kind.
+     *
+     * @return the maximum number of entries.
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @Override
+    public List<InetAddress> lookupAddresses(final String host) throws IOException {
+        return get(addresses, host, delegate::lookupAddresses);
+    }
+
+    @Override
+    public List<MxRecord> lookupMx(final String domain) throws IOException {
+        return get(mxRecords, domain, delegate::lookupMx);
+    }
+
+    /**
+     * Drops the expired answers of a full cache, and if that leaves it more than three quarters full, arbitrary answers down to that size.
+     */
+    private <T> void prune(final ConcurrentMap<String, Entry<T>> cache, final long now) {
+        cache.values().removeIf(entry -> now - entry.expiresNanos >= 0);
+        final int keep = maxEntries - 1 - maxEntries / 4;
+        for (final Iterator<Entry<T>> i = cache.values().iterator(); i.hasNext() && cache.size() > keep;) {
+            i.next();
+            i.remove();
+        }
+    }
+}
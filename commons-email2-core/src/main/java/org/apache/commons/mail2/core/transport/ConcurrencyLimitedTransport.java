@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.ConcurrencyLimiter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+
+/**
+ * A transport that holds a permit of a {@link ConcurrencyLimiter} while another transport delivers a message, so that the sends in flight to a relay adapt
+ * to its latency and transient failures. The permits are taken for a fixed key, for example the relay the delegate sends to as given by
+ * {@link ConcurrencyLimiter#getKey}.
+ * <p>
+ * The time the delegate spends writing the message is left out of the latency sample of the permit, so that large messages do not look like a slow relay.
+ * Instances are thread-safe if the delegate is.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class ConcurrencyLimitedTransport implements EmailTransport {
+
+    /** The transport delivering the messages. */
+    private final EmailTransport delegate;
+
+    /** The concurrency limiter. */
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    /** The key of the permits. */
+    private final String key;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param delegate           The transport delivering the messages.
+     * @param concurrencyLimiter The concurrency limiter, shared with the other senders to the same relay.
+     * @param key                The key of the permits.
+     */
+    public ConcurrencyLimitedTransport(final EmailTransport delegate, final ConcurrencyLimiter concurrencyLimiter, final String key) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.concurrencyLimiter = Objects.requireNonNull(concurrencyLimiter, "concurrencyLimiter");
+        this.key = Objects.requireNonNull(key, "key");
+    }
+
+    /**
+     * Gets the concurrency limiter.
+     *
+     * @return the concurrency limiter.
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Gets the transport delivering the messages.
+     *
+     * @return the delegate.
+     */
+    public EmailTransport getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Gets the key of the permits.
+     *
+     * @return the key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Waits for a permit and then delivers the message with the delegate, releasing the permit with the outcome.
+     *
+     * @throws EmailException if no permit is available within the maximum wait, or the delegate fails.
+     */
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        final ConcurrencyLimiter.Permit permit = concurrencyLimiter.acquire(key);
+        final AtomicLong contentNanos = new AtomicLong();
+        Throwable failure = null;
+        try {
+            delegate.send(envelope, out -> {
+                final long start = System.nanoTime();
+                try {
+                    message.writeTo(out);
+                } finally {
+                    contentNanos.addAndGet(System.nanoTime() - start);
+                }
+            }, size);
+        } catch (final Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            permit.release(failure, contentNanos.get());
+        }
+    }
+}
@@ -0,0 +1,747 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.io.BufferPool;
+import org.apache.commons.mail2.core.io.PooledBufferedOutputStream;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.BodyType;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.SmtpException;
+
+/**
+ * Delivers messages at a later time through another transport, and retries deliveries that failed transiently, for example greylisted with a 451 reply.
+ * <p>
+ * The pending deliveries are held in a hierarchical timing wheel driven by one thread, so that scheduling, cancelling and expiring a delivery take constant
+ * time however many are pending, and no thread or timer is used per delivery. Scheduling and cancelling hand the delivery to that thread through lock-free
+ * queues, which it drains once per tick; the delivery time is thus rounded up to the next tick. Due deliveries are sent by the threads of the scheduler, or
+ * on another {@link Executor}.
+ * </p>
+ * <p>
+ * A message is serialized when it is scheduled. If a spool directory is set, it is written there instead of memory, with the delivery time and attempt in
+ * the file name, so that the pending deliveries survive a restart and are scheduled again with {@link #recover()}; deliveries this scheduler already holds
+ * are not scheduled again. Instances are thread-safe and should be {@link #close() closed} when no longer needed.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class DeliveryScheduler implements Closeable {
+
+    /**
+     * A scheduled delivery.
+     */
+    public final class Delivery {
+
+        /** The unique id, kept in the spool file name across retries. */
+        private final String id;
+
+        /** The envelope. */
+        private final Envelope envelope;
+
+        /** The size passed to the transport. */
+        private final long size;
+
+        /** Completed when the message was delivered. */
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /** {@link #PENDING}, {@link #SENDING} or {@link #DONE}. */
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        /** The serialized message if held in memory. */
+        private byte[] data;
+
+        /** The spool file if spooled. */
+        private volatile Path file;
+
+        /** The offset of the message in the spool file. */
+        private long offset;
+
+        /** When the message is to be delivered. */
+        private volatile Instant deliveryTime;
+
+        /** The number of attempts made. */
+        private volatile int attempts;
+
+        /** The node in the wheel. Used by the worker thread only. */
+        private TimingWheel.Node<Delivery> node;
+
+        private Delivery(final String id, final Envelope envelope, final long size, final Instant deliveryTime, final int attempts) {
+            this.id = id;
+            this.envelope = envelope;
+            this.size = size;
+            this.deliveryTime = deliveryTime;
+            this.attempts = attempts;
+        }
+
+        /**
+         * Cancels the delivery unless it is being sent or done, and deletes its spool file.
+         *
+         * @return whether the delivery was cancelled.
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, DONE)) {
+                return false;
+            }
+            cancelled.add(this);
+            finish();
+            future.cancel(false);
+            return true;
+        }
+
+        private void finish() {
+            // the file goes first, so that recover() does not read the file of a delivery no longer pending
+            if (file != null) {
+                delete(file);
+            }
+            pending.remove(id, this);
+        }
+
+        /**
+         * Gets the number of attempts made.
+         *
+         * @return the attempts.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Gets when the message is to be delivered, or retried.
+         *
+         * @return the delivery time.
+         */
+        public Instant getDeliveryTime() {
+            return deliveryTime;
+        }
+
+        /**
+         * Gets the envelope.
+         *
+         * @return the envelope.
+         */
+        public Envelope getEnvelope() {
+            return envelope;
+        }
+
+        /**
+         * Gets the future completed when the message was delivered, or with the {@link EmailException} of the last attempt.
+         *
+         * @return the future.
+         */
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+
+        private void writeTo(final OutputStream out) throws IOException {
+            if (data != null) {
+                out.write(data);
+            } else {
+                try (InputStream in = Files.newInputStream(file)) {
+                    skip(in, offset);
+                    copy(in, out);
+                }
+            }
+        }
+    }
+
+    /** The default tick, 100 milliseconds. */
+    public static final Duration DEFAULT_TICK = Duration.ofMillis(100);
+
+    /** The default number of threads sending the due messages. */
+    public static final int DEFAULT_THREADS = 4;
+
+    /** The default number of attempts, 5. */
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    /** The default delay before the first retry, 5 minutes. */
+    public static final Duration DEFAULT_RETRY_DELAY = Duration.ofMinutes(5);
+
+    /** The state of a delivery waiting for its time. */
+    private static final int PENDING = 0;
+
+    /** The state of a delivery being sent. */
+    private static final int SENDING = 1;
+
+    /** The state of a delivered, failed or cancelled delivery. */
+    private static final int DONE = 2;
+
+    /** The extension of spool files. */
+    private static final String SPOOL_SUFFIX = ".msg";
+
+    /** The extension of spool files being written. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static void copy(final InputStream in, final OutputStream out) throws IOException {
+        final byte[] buffer = new byte[BufferPool.DEFAULT_BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            // ignore
+        }
+    }
+
+    /**
+     * Tests whether a failure is worth retrying: a transient reply or an I/O error.
+     */
+    private static boolean isTransient(final Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SmtpException && ((SmtpException) cause).getReply() != null) {
+                return ((SmtpException) cause).isTransient();
+            }
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads a header line of a spool file, terminated by CRLF.
+     *
+     * @return the line, or null at the end of the stream.
+     */
+    private static String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) {
+                return null;
+            }
+            if (c != '\r') {
+                line.write(c);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void skip(final InputStream in, final long bytes) throws IOException {
+        long remaining = bytes;
+        while (remaining > 0) {
+            final long n = in.skip(remaining);
+            if (n <= 0) {
+                throw new IOException("Truncated spool file");
+            }
+            remaining -= n;
+        }
+    }
+
+    /**
+     * Gets the delivery id in the name of a spool file or of one being written, null if the name is not one.
+     */
+    private static String spoolId(final String name) {
+        String base = name.endsWith(TEMP_SUFFIX) ? name.substring(0, name.length() - TEMP_SUFFIX.length()) : name;
+        if (!base.endsWith(SPOOL_SUFFIX)) {
+            return null;
+        }
+        base = base.substring(0, base.length() - SPOOL_SUFFIX.length());
+        final String[] parts = base.split("-", 3);
+        return parts.length == 3 ? parts[2] : null;
+    }
+
+    /** Delivers the messages. */
+    private final EmailTransport transport;
+
+    /** The duration of a tick in nanoseconds. */
+    private final long tickNanos;
+
+    /** The pending deliveries by time. Used by the worker thread only. */
+    private final TimingWheel<Delivery> wheel = new TimingWheel<>();
+
+    /** The deliveries to add to the wheel. */
+    private final Queue<Delivery> added = new ConcurrentLinkedQueue<>();
+
+    /** The deliveries to remove from the wheel. */
+    private final Queue<Delivery> cancelled = new ConcurrentLinkedQueue<>();
+
+    /** The deliveries not done yet by id. */
+    private final ConcurrentMap<String, Delivery> pending = new ConcurrentHashMap<>();
+
+    /** When the wheel started, in {@link System#nanoTime()} units. */
+    private final long startNanos = System.nanoTime();
+
+    /** The thread driving the wheel. */
+    private final Thread worker;
+
+    /** Whether the scheduler was closed. */
+    private volatile boolean closed;
+
+    /** The threads of this scheduler, the default executor. */
+    private final ThreadPoolExecutor ownExecutor;
+
+    /** Sends the due messages. */
+    private volatile Executor executor;
+
+    /** The number of attempts before a delivery fails. */
+    private volatile int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    /** The delay before the first retry, doubled for each further one. */
+    private volatile Duration retryDelay = DEFAULT_RETRY_DELAY;
+
+    /** The spool directory, null to hold the messages in memory. */
+    private volatile Path spoolDirectory;
+
+    /**
+     * Constructs a new instance with the {@link #DEFAULT_TICK default tick} and starts its thread.
+     *
+     * @param transport Delivers the messages.
+     */
+    public DeliveryScheduler(final EmailTransport transport) {
+        this(transport, DEFAULT_TICK);
+    }
+
+    /**
+     * Constructs a new instance and starts its thread.
+     *
+     * @param transport Delivers the messages.
+     * @param tick      The resolution of delivery times.
+     */
+    public DeliveryScheduler(final EmailTransport transport, final Duration tick) {
+        this(transport, tick, DEFAULT_THREADS);
+    }
+
+    /**
+     * Constructs a new instance and starts its thread.
+     *
+     * @param transport Delivers the messages.
+     * @param tick      The resolution of delivery times.
+     * @param threads   The number of threads sending the due messages, unless another executor is set.
+     * @throws IllegalArgumentException if the tick or the number of threads is not positive.
+     */
+    public DeliveryScheduler(final EmailTransport transport, final Duration tick, final int threads) {
+        this.transport = Objects.requireNonNull(transport, "transport");
+        this.tickNanos = tick.toNanos();
+        if (tickNanos < 1 || threads < 1) {
+            throw new IllegalArgumentException("Tick and threads must be positive: " + tick + ", " + threads);
+        }
+        final AtomicInteger count = new AtomicInteger();
+        ownExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "DeliveryScheduler-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ownExecutor.allowCoreThreadTimeOut(true);
+        executor = ownExecutor;
+        this.worker = new Thread(this::run, "DeliveryScheduler");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Stops the thread and fails the pending deliveries; their spool files are kept for {@link #recover()}. The threads of the scheduler end once the
+     * deliveries being sent are done; an executor set with {@link #setExecutor(Executor)} is not shut down.
+     *
+     * @throws IOException if interrupted while stopping.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(worker);
+        try {
+            worker.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while stopping the delivery scheduler", e);
+        } finally {
+            ownExecutor.shutdown();
+        }
+        for (final Delivery delivery : pending.values()) {
+            if (delivery.state.compareAndSet(PENDING, DONE)) {
+                pending.remove(delivery.id, delivery);
+                delivery.future.completeExceptionally(new EmailException("The delivery scheduler is closed"));
+            }
+        }
+    }
+
+    private void deliver(final Delivery delivery) {
+        delivery.attempts++;
+        try {
+            transport.send(delivery.envelope, delivery::writeTo, delivery.size);
+            delivery.state.set(DONE);
+            delivery.finish();
+            delivery.future.complete(null);
+        } catch (final EmailException e) {
+            if (delivery.attempts < maxAttempts && isTransient(e)) {
+                retry(delivery, e);
+            } else {
+                fail(delivery, e);
+            }
+        } catch (final RuntimeException e) {
+            fail(delivery, e);
+        }
+    }
+
+    private void expire(final Delivery delivery) {
+        delivery.node = null;
+        if (delivery.state.compareAndSet(PENDING, SENDING)) {
+            try {
+                executor.execute(() -> deliver(delivery));
+            } catch (final RejectedExecutionException e) {
+                fail(delivery, new EmailException("The executor rejected the delivery", e));
+            }
+        }
+    }
+
+    private void fail(final Delivery delivery, final Exception e) {
+        delivery.state.set(DONE);
+        delivery.finish();
+        delivery.future.completeExceptionally(e);
+    }
+
+    /**
+     * Gets the executor sending the due messages.
+     *
+     * @return the executor.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the number of attempts before a delivery fails.
+     *
+     * @return the maximum attempts.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Gets the number of deliveries not done yet, including those being sent.
+     *
+     * @return the number of pending deliveries.
+     */
+    public int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * Gets the delay before the first retry.
+     *
+     * @return the retry delay.
+     */
+    public Duration getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * Gets the spool directory.
+     *
+     * @return the spool directory, null if the messages are held in memory.
+     */
+    public Path getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    private Delivery read(final Path file) throws IOException, EmailException {
+        final String name = file.getFileName().toString();
+        final String[] parts = name.substring(0, name.length() - SPOOL_SUFFIX.length()).split("-", 3);
+        if (parts.length != 3) {
+            throw new IOException("Invalid spool file name: " + name);
+        }
+        final Instant deliveryTime;
+        final int attempts;
+        try {
+            deliveryTime = Instant.ofEpochMilli(Long.parseLong(parts[0]));
+            attempts = Integer.parseInt(parts[1]);
+        } catch (final NumberFormatException e) {
+            throw new IOException("Invalid spool file name: " + name, e);
+        }
+        String reversePath = null;
+        final List<String> recipients = new ArrayList<>();
+        BodyType bodyType = BodyType.SEVEN_BIT;
+        boolean smtpUtf8 = false;
+        long size = -1;
+        long offset = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                offset += line.getBytes(StandardCharsets.UTF_8).length + 2;
+                if (line.startsWith("MAIL ")) {
+                    reversePath = line.substring(5);
+                } else if (line.startsWith("RCPT ")) {
+                    recipients.add(line.substring(5));
+                } else if (line.startsWith("BODY ")) {
+                    bodyType = BodyType.valueOf(line.substring(5));
+                } else if (line.startsWith("SIZE ")) {
+                    size = Long.parseLong(line.substring(5));
+                } else if (line.equals("SMTPUTF8")) {
+                    smtpUtf8 = true;
+                }
+            }
+            if (line == null || reversePath == null) {
+                throw new IOException("Truncated spool file: " + name);
+            }
+            offset += 2;
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("Invalid spool file: " + name, e);
+        }
+        final Delivery delivery = new Delivery(parts[2], new Envelope(reversePath, recipients).withBodyType(bodyType).withSmtpUtf8(smtpUtf8), size,
+                deliveryTime, attempts);
+        delivery.file = file;
+        delivery.offset = offset;
+        return delivery;
+    }
+
+    /**
+     * Schedules the deliveries found in the spool directory, for example after a restart; deliveries that are overdue are sent at once. Deliveries this
+     * scheduler holds already, scheduled or recovered before, are skipped, so that calling this method on a running scheduler sends no message twice.
+     *
+     * @return the recovered deliveries.
+     * @throws EmailException if no spool directory is set, the scheduler is closed, or a spool file cannot be read.
+     */
+    public synchronized List<Delivery> recover() throws EmailException {
+        final Path directory = EmailException.checkNonNull(spoolDirectory, () -> "No spool directory set");
+        final List<Delivery> deliveries = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                final String id = spoolId(name);
+                if (id == null || pending.containsKey(id)) {
+                    // not a spool file, or a delivery this scheduler holds, possibly still being written
+                    continue;
+                }
+                if (name.endsWith(TEMP_SUFFIX)) {
+                    // left over from an interrupted schedule()
+                    delete(file);
+                } else {
+                    try {
+                        deliveries.add(read(file));
+                    } catch (final NoSuchFileException e) {
+                        // delivered meanwhile
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            throw new EmailException("Reading the spool directory failed", e);
+        }
+        for (final Delivery delivery : deliveries) {
+            submit(delivery);
+        }
+        return deliveries;
+    }
+
+    private void retry(final Delivery delivery, final EmailException failure) {
+        final Duration delay = retryDelay.multipliedBy(1L << Math.min(delivery.attempts - 1, 30));
+        delivery.deliveryTime = Instant.now().plus(delay);
+        final Path file = delivery.file;
+        if (file != null) {
+            try {
+                delivery.file = Files.move(file, file.resolveSibling(spoolName(delivery)), StandardCopyOption.ATOMIC_MOVE);
+            } catch (final IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        if (closed) {
+            // keep the spool file for recover()
+            pending.remove(delivery.id, delivery);
+            delivery.state.set(DONE);
+            delivery.future.completeExceptionally(failure);
+            return;
+        }
+        delivery.state.set(PENDING);
+        added.add(delivery);
+    }
+
+    private void run() {
+        while (!closed) {
+            final long elapsedTicks = (System.nanoTime() - startNanos) / tickNanos;
+            Delivery delivery;
+            while ((delivery = cancelled.poll()) != null) {
+                if (delivery.node != null) {
+                    wheel.remove(delivery.node);
+                    delivery.node = null;
+                }
+            }
+            while ((delivery = added.poll()) != null) {
+                if (delivery.state.get() == PENDING) {
+                    delivery.node = wheel.add(delivery, ticks(delivery.deliveryTime));
+                }
+            }
+            while (wheel.getTick() < elapsedTicks) {
+                wheel.advance(this::expire);
+            }
+            LockSupport.parkNanos(this, startNanos + (elapsedTicks + 1) * tickNanos - System.nanoTime());
+        }
+    }
+
+    /**
+     * Schedules a message, serializing it now.
+     *
+     * @param envelope     The envelope.
+     * @param message      Writes the serialized message, once.
+     * @param size         The exact or estimated size of the message in octets, or -1 if unknown.
+     * @param deliveryTime When to deliver the message; a past time delivers it at the next tick.
+     * @return the delivery.
+     * @throws EmailException if the scheduler is closed or the message cannot be written.
+     */
+    public Delivery schedule(final Envelope envelope, final ContentWriter message, final long size, final Instant deliveryTime) throws EmailException {
+        Objects.requireNonNull(envelope, "envelope");
+        Objects.requireNonNull(deliveryTime, "deliveryTime");
+        final Delivery delivery = new Delivery(UUID.randomUUID().toString(), envelope, size, deliveryTime, 0);
+        final Path directory = spoolDirectory;
+        try {
+            if (directory == null) {
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.min(Math.max(0, size) + 1024, Integer.MAX_VALUE - 8));
+                message.writeTo(buffer);
+                delivery.data = buffer.toByteArray();
+            } else {
+                // held before its file is written, so that recover() leaves the file alone
+                pending.put(delivery.id, delivery);
+                spool(delivery, directory, message);
+            }
+        } catch (final IOException e) {
+            pending.remove(delivery.id, delivery);
+            throw new EmailException("Writing the message to the delivery scheduler failed", e);
+        }
+        submit(delivery);
+        return delivery;
+    }
+
+    /**
+     * Sets the executor sending the due messages.
+     *
+     * @param executor The executor.
+     * @return {@code this} instance.
+     */
+    public DeliveryScheduler setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+        return this;
+    }
+
+    /**
+     * Sets how transiently failed deliveries are retried; the delay doubles after each retry.
+     *
+     * @param maxAttempts The number of attempts before a delivery fails, 1 for no retry.
+     * @param retryDelay  The delay before the first retry.
+     * @return {@code this} instance.
+     */
+    public DeliveryScheduler setRetry(final int maxAttempts, final Duration retryDelay) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Attempts must be positive: " + maxAttempts);
+        }
+        this.retryDelay = Objects.requireNonNull(retryDelay, "retryDelay");
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    /**
+     * Sets the directory where scheduled messages are written, so that they survive a restart.
+     *
+     * @param spoolDirectory The spool directory, null to hold the messages in memory.
+     * @return {@code this} instance.
+     */
+    public DeliveryScheduler setSpoolDirectory(final Path spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+        return this;
+    }
+
+    /**
+     * Writes a message with a header of its envelope to a new spool file, atomically.
+     */
+    private void spool(final Delivery delivery, final Path directory, final ContentWriter message) throws IOException {
+        final StringBuilder header = new StringBuilder();
+        header.append("MAIL ").append(delivery.envelope.getReversePath()).append("\r\n");
+        for (final String recipient : delivery.envelope.getRecipients()) {
+            header.append("RCPT ").append(recipient).append("\r\n");
+        }
+        header.append("BODY ").append(delivery.envelope.getBodyType().name()).append("\r\n");
+        if (delivery.envelope.isSmtpUtf8()) {
+            header.append("SMTPUTF8\r\n");
+        }
+        header.append("SIZE ").append(delivery.size).append("\r\n\r\n");
+        final byte[] bytes = header.toString().getBytes(StandardCharsets.UTF_8);
+        final String name = spoolName(delivery);
+        final Path temp = directory.resolve(name + TEMP_SUFFIX);
+        try {
+            try (OutputStream out = new PooledBufferedOutputStream(Files.newOutputStream(temp), BufferPool.getDefault(), BufferPool.DEFAULT_BUFFER_SIZE)) {
+                out.write(bytes);
+                message.writeTo(out);
+            }
+            delivery.file = Files.move(temp, directory.resolve(name), StandardCopyOption.ATOMIC_MOVE);
+            delivery.offset = bytes.length;
+        } finally {
+            delete(temp);
+        }
+    }
+
+    /**
+     * Gets the spool file name of a delivery: its time in epoch milliseconds, its attempts and its id.
+     */
+    private String spoolName(final Delivery delivery) {
+        return delivery.deliveryTime.toEpochMilli() + "-" + delivery.attempts + "-" + delivery.id + SPOOL_SUFFIX;
+    }
+
+    private void submit(final Delivery delivery) throws EmailException {
+        if (closed) {
+            pending.remove(delivery.id, delivery);
+            throw new EmailException("The delivery scheduler is closed");
+        }
+        pending.put(delivery.id, delivery);
+        added.add(delivery);
+    }
+
+    /**
+     * Converts a delivery time to a tick of the wheel, rounding up.
+     */
+    private long ticks(final Instant deliveryTime) {
+        final long delayNanos;
+        try {
+            delayNanos = Duration.between(Instant.now(), deliveryTime).toNanos();
+        } catch (final ArithmeticException e) {
+            return Long.MAX_VALUE / 2;
+        }
+        return (System.nanoTime() - startNanos + Math.max(0, delayNanos) + tickNanos - 1) / tickNanos;
+    }
+}
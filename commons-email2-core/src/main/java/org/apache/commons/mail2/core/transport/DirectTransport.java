@@ -0,0 +1,523 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.PartialDeliveryException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.ConcurrencyLimiter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.SmtpClient;
+import org.apache.commons.mail2.core.smtp.SmtpConnection;
+import org.apache.commons.mail2.core.smtp.SmtpException;
+import org.apache.commons.mail2.core.smtp.SmtpReply;
+
+/**
+ * A transport that delivers messages directly to the mail exchangers of the recipient domains instead of through a relay.
+ * <p>
+ * Each send groups the recipients by domain and looks up the MX records of each domain with the {@link DnsResolver}, by default the DNS servers of the
+ * system behind a {@link CachingDnsResolver}. The exchangers are tried in order of preference, those of equal preference in random order, and every address
+ * of an exchanger in turn; a domain without MX records is its own exchanger (RFC 5321 section 5.1), and a domain with a null MX (RFC 7505) accepts no mail.
+ * The next exchanger is tried if one cannot be reached, the connection breaks or it answers with a transient 4xx reply; a permanent rejection ends the
+ * delivery to the domain.
+ * </p>
+ * <p>
+ * After a successful transaction the connection is kept for the next message to the same exchanger, up to {@link #setMaxIdleConnections(int)} connections
+ * per exchanger for {@link #setIdleTimeout(Duration)}, so that domains sharing an exchanger and bursts of messages to a domain use one session. A
+ * background thread ends the sessions of the connections idle for longer, and a kept connection that turns out to be closed is replaced by a new one.
+ * {@link #close()} ends the kept sessions.
+ * </p>
+ * <p>
+ * The connection settings come from the {@link SmtpClient} given to the constructor, apart from its host and port; its EHLO name should be the fully
+ * qualified name of the sending host, which receiving servers check. Its {@link ConcurrencyLimiter}, if any, limits the transactions in flight per
+ * exchanger, on kept and new connections alike. If some domains fail, the others still receive the message and the send fails with the first failure, the
+ * others suppressed; if any domain received it, the failure is a {@link PartialDeliveryException} listing the delivered and failed recipients, so that a
+ * retry does not send the message twice. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class DirectTransport implements EmailTransport, Closeable {
+
+    /**
+     * A kept connection.
+     */
+    private static final class Idle {
+
+        /** The connection. */
+        private final SmtpConnection connection;
+
+        /** When the connection was released, in {@link System#nanoTime()} units. */
+        private final long sinceNanos;
+
+        private Idle(final SmtpConnection connection, final long sinceNanos) {
+            this.connection = connection;
+            this.sinceNanos = sinceNanos;
+        }
+    }
+
+    /** The default time a connection is kept. */
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+    /** The default number of connections kept per exchanger. */
+    public static final int DEFAULT_MAX_IDLE_CONNECTIONS = 2;
+
+    /**
+     * Tests whether the next exchanger should be tried after a failure: the exchanger could not be reached, the connection broke, or it answered with a
+     * transient reply.
+     */
+    private static boolean isRetryable(final EmailException e) {
+        if (e instanceof SmtpException) {
+            return ((SmtpException) e).getReply() != null && ((SmtpException) e).getReply().isTransient();
+        }
+        return e.getCause() instanceof IOException;
+    }
+
+    /**
+     * Orders MX records by preference, shuffling records of equal preference.
+     */
+    private static List<String> order(final List<MxRecord> records) {
+        final List<MxRecord> shuffled = new ArrayList<>(records);
+        Collections.shuffle(shuffled, ThreadLocalRandom.current());
+        Collections.sort(shuffled);
+        final List<String> hosts = new ArrayList<>(shuffled.size());
+        for (final MxRecord record : shuffled) {
+            hosts.add(record.getHost());
+        }
+        return hosts;
+    }
+
+    /**
+     * Releases a permit of the concurrency limiter, if any, leaving the content time of a transaction on a connection out of the latency.
+     */
+    private static void release(final ConcurrencyLimiter.Permit permit, final Throwable failure, final SmtpConnection connection, final long contentNanos) {
+        if (permit != null) {
+            permit.release(failure, connection.getContentNanos() - contentNanos);
+        }
+    }
+
+    private static EmailException suppress(final EmailException failure, final EmailException next) {
+        if (failure == null) {
+            return next;
+        }
+        failure.addSuppressed(next);
+        return failure;
+    }
+
+    /** Gives the connection settings. */
+    private final SmtpClient client;
+
+    /** Looks up the exchangers and their addresses. */
+    private volatile DnsResolver resolver = new CachingDnsResolver(new JndiDnsResolver());
+
+    /** The port of the exchangers. */
+    private volatile int port = SmtpClient.DEFAULT_PORT;
+
+    /** The time a connection is kept. */
+    private volatile Duration idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /** The number of connections kept per exchanger. */
+    private volatile int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+
+    /** The kept connections by exchanger, each deque guarded by itself. */
+    private final ConcurrentMap<String, Deque<Idle>> idle = new ConcurrentHashMap<>();
+
+    /** Ends the sessions of expired kept connections; its thread ends when no connection is kept. */
+    private final ScheduledThreadPoolExecutor sweeper;
+
+    /** Whether a sweep of the kept connections is scheduled. */
+    private final AtomicBoolean sweepScheduled = new AtomicBoolean();
+
+    /** Whether {@link #close()} was called. */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param client The client giving the connection settings; it is copied for each exchanger and not changed.
+     */
+    public DirectTransport(final SmtpClient client) {
+        this.client = Objects.requireNonNull(client, "client");
+        final AtomicInteger count = new AtomicInteger();
+        sweeper = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "DirectTransport-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.setKeepAliveTime(60, TimeUnit.SECONDS);
+        sweeper.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Takes a permit of the concurrency limiter of the client, if any.
+     */
+    private ConcurrencyLimiter.Permit acquire(final SmtpClient hostClient) throws EmailException {
+        final ConcurrencyLimiter limiter = hostClient.getConcurrencyLimiter();
+        return limiter != null ? limiter.acquire(hostClient) : null;
+    }
+
+    /**
+     * Takes a kept connection to an exchanger, closing the expired ones.
+     */
+    private SmtpConnection borrow(final String host) {
+        final Deque<Idle> connections = idle.get(host);
+        if (connections == null) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        while (true) {
+            final Idle entry;
+            synchronized (connections) {
+                entry = connections.pollFirst();
+            }
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.sinceNanos < idleTimeout.toNanos()) {
+                return entry.connection;
+            }
+            entry.connection.quit();
+        }
+    }
+
+    /**
+     * Ends the sessions of the kept connections. Connections in use are ended when their send completes.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        sweeper.shutdownNow();
+        for (final Deque<Idle> connections : idle.values()) {
+            final List<Idle> entries;
+            synchronized (connections) {
+                entries = new ArrayList<>(connections);
+                connections.clear();
+            }
+            for (final Idle entry : entries) {
+                entry.connection.quit();
+            }
+        }
+    }
+
+    /**
+     * Delivers a message to one exchanger, on a kept connection if there is one.
+     */
+    private void deliver(final String host, final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        final SmtpConnection kept = borrow(host);
+        if (kept != null) {
+            final SmtpClient hostClient = new SmtpClient(client).setHost(host).setPort(port);
+            final ConcurrencyLimiter.Permit permit = acquire(hostClient);
+            final long contentNanos = kept.getContentNanos();
+            try {
+                hostClient.send(kept, envelope, message, size);
+                release(host, kept);
+                release(permit, null, kept, contentNanos);
+                return;
+            } catch (final EmailException e) {
+                kept.quit();
+                final SmtpReply reply = e instanceof SmtpException ? ((SmtpException) e).getReply() : null;
+                if (e instanceof SmtpException && (reply == null || reply.getCode() != 421)) {
+                    release(permit, e, kept, contentNanos);
+                    throw e;
+                }
+                // the exchanger closed the kept connection, connect again; a stale session says nothing about the load of the exchanger
+                if (permit != null) {
+                    permit.cancel();
+                }
+            } catch (final RuntimeException e) {
+                kept.quit();
+                release(permit, e, kept, contentNanos);
+                throw e;
+            }
+        }
+        final List<InetAddress> addresses;
+        try {
+            addresses = resolver.lookupAddresses(host);
+        } catch (final IOException e) {
+            throw new EmailException("Cannot resolve the exchanger " + host, e);
+        }
+        EmailException failure = null;
+        for (final InetAddress address : addresses) {
+            final SmtpClient hostClient = new SmtpClient(client).setHost(host).setPort(port).setAddress(address);
+            final ConcurrencyLimiter.Permit permit = acquire(hostClient);
+            final SmtpConnection connection;
+            try {
+                connection = hostClient.connect();
+            } catch (final EmailException e) {
+                if (permit != null) {
+                    permit.release(e);
+                }
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                failure = suppress(failure, e);
+                continue;
+            }
+            Throwable sendFailure = null;
+            try {
+                hostClient.send(connection, envelope, message, size);
+            } catch (final EmailException | RuntimeException e) {
+                sendFailure = e;
+                throw e;
+            } finally {
+                if (sendFailure == null) {
+                    release(host, connection);
+                } else {
+                    connection.quit();
+                }
+                release(permit, sendFailure, connection, 0);
+            }
+            return;
+        }
+        throw failure != null ? failure : new EmailException("The exchanger " + host + " has no addresses");
+    }
+
+    /**
+     * Gets the time a connection is kept after a send.
+     *
+     * @return the idle timeout.
+     */
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Gets the number of connections kept per exchanger.
+     *
+     * @return the maximum number of idle connections.
+     */
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Gets the port of the exchangers.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Gets the resolver looking up the exchangers and their addresses.
+     *
+     * @return the resolver.
+     */
+    public DnsResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * Keeps a connection after a successful transaction, or ends its session if enough are kept.
+     */
+    private void release(final String host, final SmtpConnection connection) {
+        while (!closed && maxIdleConnections > 0) {
+            final Deque<Idle> connections = idle.computeIfAbsent(host, k -> new ArrayDeque<>());
+            synchronized (connections) {
+                if (idle.get(host) != connections) {
+                    // the sweep removed the empty deque meanwhile
+                    continue;
+                }
+                if (connections.size() >= maxIdleConnections) {
+                    break;
+                }
+                connections.addFirst(new Idle(connection, System.nanoTime()));
+            }
+            scheduleSweep(idleTimeout.toNanos());
+            return;
+        }
+        connection.quit();
+    }
+
+    /**
+     * Schedules a sweep of the kept connections unless one is scheduled.
+     */
+    private void scheduleSweep(final long delayNanos) {
+        if (!closed && sweepScheduled.compareAndSet(false, true)) {
+            try {
+                sweeper.schedule(this::sweep, delayNanos, TimeUnit.NANOSECONDS);
+            } catch (final RejectedExecutionException e) {
+                // closed meanwhile
+                sweepScheduled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        final Map<String, List<String>> domains = new LinkedHashMap<>();
+        for (final String recipient : envelope.getRecipients()) {
+            domains.computeIfAbsent(recipient.substring(recipient.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT), k -> new ArrayList<>()).add(recipient);
+        }
+        final List<String> delivered = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        EmailException failure = null;
+        for (final Map.Entry<String, List<String>> domain : domains.entrySet()) {
+            final Envelope domainEnvelope = domains.size() == 1 ? envelope
+                    : new Envelope(envelope.getReversePath(), domain.getValue()).withBodyType(envelope.getBodyType()).withSmtpUtf8(envelope.isSmtpUtf8());
+            try {
+                send(domain.getKey(), domainEnvelope, message, size);
+                delivered.addAll(domain.getValue());
+            } catch (final EmailException e) {
+                failed.addAll(domain.getValue());
+                failure = suppress(failure, e);
+            }
+        }
+        if (failure != null) {
+            // a retry must not send the message again to the domains that received it
+            throw delivered.isEmpty() ? failure : new PartialDeliveryException(delivered, failed, failure);
+        }
+    }
+
+    /**
+     * Delivers a message to the exchangers of one domain.
+     */
+    private void send(final String domain, final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        final List<MxRecord> records;
+        try {
+            records = resolver.lookupMx(domain);
+        } catch (final IOException e) {
+            throw new EmailException("MX lookup of " + domain + " failed", e);
+        }
+        if (records.size() == 1 && records.get(0).isNull()) {
+            throw new EmailException(domain + " does not accept mail (null MX)");
+        }
+        final List<String> hosts = records.isEmpty() ? Collections.singletonList(domain) : order(records);
+        EmailException failure = null;
+        for (final String host : hosts) {
+            try {
+                deliver(host, envelope, message, size);
+                return;
+            } catch (final EmailException e) {
+                if (!isRetryable(e)) {
+                    if (failure != null) {
+                        e.addSuppressed(failure);
+                    }
+                    throw e;
+                }
+                failure = suppress(failure, e);
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Ends the sessions of the expired kept connections, forgets the exchangers without kept connections, and schedules the next sweep when the oldest of
+     * the remaining connections expires.
+     */
+    private void sweep() {
+        sweepScheduled.set(false);
+        final long timeoutNanos = idleTimeout.toNanos();
+        final List<Idle> expired = new ArrayList<>();
+        long nextNanos = Long.MAX_VALUE;
+        final long now = System.nanoTime();
+        for (final Map.Entry<String, Deque<Idle>> entry : idle.entrySet()) {
+            final Deque<Idle> connections = entry.getValue();
+            synchronized (connections) {
+                for (final Iterator<Idle> i = connections.iterator(); i.hasNext();) {
+                    final Idle next = i.next();
+                    if (now - next.sinceNanos >= timeoutNanos) {
+                        expired.add(next);
+                        i.remove();
+                    } else {
+                        nextNanos = Math.min(nextNanos, next.sinceNanos + timeoutNanos - now);
+                    }
+                }
+                if (connections.isEmpty()) {
+                    idle.remove(entry.getKey(), connections);
+                }
+            }
+        }
+        for (final Idle entry : expired) {
+            entry.connection.quit();
+        }
+        if (nextNanos != Long.MAX_VALUE) {
+            scheduleSweep(nextNanos);
+        }
+    }
+
+    /**
+     * Sets the time a connection is kept after a send. Servers close idle sessions after a few minutes at the earliest.
+     *
+     * @param idleTimeout The idle timeout.
+     * @return {@code this} instance.
+     */
+    public DirectTransport setIdleTimeout(final Duration idleTimeout) {
+        this.idleTimeout = Objects.requireNonNull(idleTimeout, "idleTimeout");
+        return this;
+    }
+
+    /**
+     * Sets the number of connections kept per exchanger.
+     *
+     * @param maxIdleConnections The maximum number of idle connections, 0 to end each session after its send.
+     * @return {@code this} instance.
+     */
+    public DirectTransport setMaxIdleConnections(final int maxIdleConnections) {
+        if (maxIdleConnections < 0) {
+            throw new IllegalArgumentException("Maximum idle connections must not be negative: " + maxIdleConnections);
+        }
+        this.maxIdleConnections = maxIdleConnections;
+        return this;
+    }
+
+    /**
+     * Sets the port of the exchangers, by default 25.
+     *
+     * @param port The port.
+     * @return {@code this} instance.
+     */
+    public DirectTransport setPort(final int port) {
+        this.port = port;
+        return this;
+    }
+
+    /**
+     * Sets the resolver looking up the exchangers and their addresses.
+     *
+     * @param resolver The resolver.
+     * @return {@code this} instance.
+     */
+    public DirectTransport setResolver(final DnsResolver resolver) {
+        this.resolver = Objects.requireNonNull(resolver, "resolver");
+        return this;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Looks up the DNS records needed to deliver mail directly to the mail exchangers of a domain, the service provider interface of {@link DirectTransport}.
+ * <p>
+ * {@link JndiDnsResolver} queries the DNS servers of the system; {@link CachingDnsResolver} remembers the answers of another resolver. Tests can supply a
+ * resolver pointing every domain to a local server. Implementations must be thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+@FunctionalInterface
+public interface DnsResolver {
+
+    /**
+     * Looks up the addresses of a host, by default with {@link InetAddress#getAllByName(String)}.
+     *
+     * @param host The host name.
+     * @return the addresses, not empty.
+     * @throws IOException if the host has no addresses or the lookup fails.
+     */
+    default List<InetAddress> lookupAddresses(final String host) throws IOException {
+        return Arrays.asList(InetAddress.getAllByName(host));
+    }
+
+    /**
+     * Looks up the MX records of a domain.
+     *
+     * @param domain The domain.
+     * @return the records in any order, empty if the domain has none.
+     * @throws IOException if the domain does not exist or the lookup fails.
+     */
+    List<MxRecord> lookupMx(String domain) throws IOException;
+}
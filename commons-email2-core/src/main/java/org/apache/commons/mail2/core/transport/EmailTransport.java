@@ -0,0 +1,67 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.util.ServiceLoader;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+
+/**
+ * Delivers serialized messages, the service provider interface behind {@code Email.sendMimeMessage()}.
+ * <p>
+ * A transport receives the envelope and a writer of the message bytes with canonical CRLF line endings, not yet dot-stuffed. It can be set for one email
+ * with {@code Email.setTransport(EmailTransport)} or for all emails by naming an implementation with a public no-argument constructor in
+ * {@code META-INF/services/org.apache.commons.mail2.core.transport.EmailTransport}; see {@link #getDefault()}. Without either, emails are sent with the
+ * JavaMail transport as before.
+ * </p>
+ * <p>
+ * An {@code SmtpClient} can be used as a transport with a method reference, {@code client::send}. Implementations must be thread-safe.
+ * </p>
+ * <p>
+ * Features that apply to any transport are decorators, for example {@link RateLimitedTransport}, {@link ConcurrencyLimitedTransport} and
+ * {@link ArchivingTransport}; {@code Email} wraps its transport in those its settings ask for.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+@FunctionalInterface
+public interface EmailTransport {
+
+    /**
+     * Gets the first transport registered with the {@link ServiceLoader} mechanism. The lookup is done once, with the context class loader of the first calling
+     * thread.
+     *
+     * @return the registered transport, null if there is none.
+     * @throws EmailException if the registered transport cannot be loaded, for example because it is not a public class with a public no-argument
+     *                        constructor; the failure is kept and thrown on every call.
+     */
+    static EmailTransport getDefault() throws EmailException {
+        return ServiceTransport.get();
+    }
+
+    /**
+     * Delivers a message.
+     *
+     * @param envelope The envelope, giving the reverse path and the recipients.
+     * @param message  Writes the serialized message; a transport may call it more than once, for example to retry.
+     * @param size     The exact or estimated size of the message in octets, or -1 if unknown.
+     * @throws EmailException if the message cannot be delivered.
+     */
+    void send(Envelope envelope, ContentWriter message, long size) throws EmailException;
+}
@@ -0,0 +1,337 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.BodyType;
+import org.apache.commons.mail2.core.smtp.Envelope;
+
+/**
+ * A transport that serializes each message completely but never opens a connection, for load tests, dry runs and integration tests.
+ * <p>
+ * Each send validates the envelope as a relay would, writes the message, counts its bytes and records it in a ring buffer holding the most recent
+ * messages. A capacity of 0 records nothing, so that only the cost of building and serializing messages is measured, for example
+ * {@code email.setTransport(new InMemoryTransport(0))}. An optional latency simulates the time a relay takes to accept a message.
+ * </p>
+ * <p>
+ * Instances are thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class InMemoryTransport implements EmailTransport {
+
+    /**
+     * A recorded message.
+     */
+    public static final class Message {
+
+        /** The envelope. */
+        private final Envelope envelope;
+
+        /** The serialized message. */
+        private final byte[] data;
+
+        private Message(final Envelope envelope, final byte[] data) {
+            this.envelope = envelope;
+            this.data = data;
+        }
+
+        /**
+         * Gets the serialized message.
+         *
+         * @return a copy of the message bytes.
+         */
+        public byte[] getData() {
+            return data.clone();
+        }
+
+        /**
+         * Gets the serialized message decoded as UTF-8.
+         *
+         * @return the message.
+         */
+        public String getDataAsString() {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Gets the envelope.
+         *
+         * @return the envelope.
+         */
+        public Envelope getEnvelope() {
+            return envelope;
+        }
+
+        /**
+         * Gets the size of the serialized message.
+         *
+         * @return the size in octets.
+         */
+        public int getSize() {
+            return data.length;
+        }
+    }
+
+    /**
+     * Counts the bytes written, checks the line length and optionally keeps the bytes.
+     */
+    private static final class CheckingOutputStream extends OutputStream {
+
+        /** The bytes, null if they are not kept. */
+        private final ByteArrayOutputStream buffer;
+
+        /** Whether lines longer than {@link #MAX_LINE_LENGTH} are rejected. */
+        private final boolean checkLines;
+
+        /** The number of bytes written. */
+        private long count;
+
+        /** The length of the current line. */
+        private int lineLength;
+
+        CheckingOutputStream(final ByteArrayOutputStream buffer, final boolean checkLines) {
+            this.buffer = buffer;
+            this.checkLines = checkLines;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                check(b[i]);
+            }
+            count += len;
+            if (buffer != null) {
+                buffer.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            check((byte) b);
+            count++;
+            if (buffer != null) {
+                buffer.write(b);
+            }
+        }
+
+        private void check(final byte b) throws IOException {
+            if (b == '\n') {
+                lineLength = 0;
+            } else if (b != '\r' && ++lineLength > MAX_LINE_LENGTH && checkLines) {
+                throw new IOException("Line longer than " + MAX_LINE_LENGTH + " octets");
+            }
+        }
+    }
+
+    /** The default number of recorded messages. */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    /** The maximum length of a line without CRLF, RFC 5322 section 2.1.1. */
+    private static final int MAX_LINE_LENGTH = 998;
+
+    /** The maximum length of a local part, RFC 5321 section 4.5.3.1.1. */
+    private static final int MAX_LOCAL_PART_LENGTH = 64;
+
+    /** The maximum length of a domain, RFC 5321 section 4.5.3.1.2. */
+    private static final int MAX_DOMAIN_LENGTH = 255;
+
+    private static void checkAddress(final String address, final boolean smtpUtf8) throws EmailException {
+        final int at = address.lastIndexOf('@');
+        if (at <= 0 || at == address.length() - 1) {
+            throw new EmailException("Invalid envelope address, not a mailbox: " + address);
+        }
+        if (!smtpUtf8 && address.chars().anyMatch(c -> c >= 0x80)) {
+            throw new EmailException("Non US-ASCII envelope address without SMTPUTF8: " + address);
+        }
+        if (address.substring(0, at).getBytes(StandardCharsets.UTF_8).length > MAX_LOCAL_PART_LENGTH) {
+            throw new EmailException("Local part longer than " + MAX_LOCAL_PART_LENGTH + " octets: " + address);
+        }
+        if (address.substring(at + 1).getBytes(StandardCharsets.UTF_8).length > MAX_DOMAIN_LENGTH) {
+            throw new EmailException("Domain longer than " + MAX_DOMAIN_LENGTH + " octets: " + address);
+        }
+    }
+
+    /** The recorded messages, null if none are recorded. */
+    private final AtomicReferenceArray<Message> ring;
+
+    /** The number of messages sent, which also gives the next slot of the ring. */
+    private final AtomicLong messageCount = new AtomicLong();
+
+    /** The number of bytes sent. */
+    private final LongAdder byteCount = new LongAdder();
+
+    /** The number of recipients sent to. */
+    private final LongAdder recipientCount = new LongAdder();
+
+    /** The simulated time to accept a message. */
+    private volatile Duration latency = Duration.ZERO;
+
+    /**
+     * Constructs a new instance recording the last {@link #DEFAULT_CAPACITY} messages.
+     */
+    public InMemoryTransport() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param capacity The number of most recent messages recorded, 0 to only count them.
+     */
+    public InMemoryTransport(final int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative: " + capacity);
+        }
+        this.ring = capacity > 0 ? new AtomicReferenceArray<>(capacity) : null;
+    }
+
+    /**
+     * Forgets the recorded messages and resets the counters.
+     */
+    public void clear() {
+        if (ring != null) {
+            for (int i = 0; i < ring.length(); i++) {
+                ring.set(i, null);
+            }
+        }
+        messageCount.set(0);
+        byteCount.reset();
+        recipientCount.reset();
+    }
+
+    /**
+     * Gets the number of bytes of all messages sent.
+     *
+     * @return the number of bytes.
+     */
+    public long getByteCount() {
+        return byteCount.sum();
+    }
+
+    /**
+     * Gets the simulated time to accept a message.
+     *
+     * @return the latency.
+     */
+    public Duration getLatency() {
+        return latency;
+    }
+
+    /**
+     * Gets the number of messages sent.
+     *
+     * @return the number of messages.
+     */
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    /**
+     * Gets the recorded messages, oldest first. While messages are sent concurrently, the snapshot may miss messages that are being recorded.
+     *
+     * @return a new list of at most the capacity most recent messages.
+     */
+    public List<Message> getMessages() {
+        final List<Message> messages = new ArrayList<>();
+        if (ring != null) {
+            final long end = messageCount.get();
+            for (long i = Math.max(0, end - ring.length()); i < end; i++) {
+                final Message message = ring.get((int) (i % ring.length()));
+                if (message != null) {
+                    messages.add(message);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Gets the number of recipients of all messages sent.
+     *
+     * @return the number of recipients.
+     */
+    public long getRecipientCount() {
+        return recipientCount.sum();
+    }
+
+    /**
+     * Validates the envelope and serializes the message; lines longer than 998 octets are rejected unless the body type is
+     * {@link BodyType#BINARY_MIME}.
+     */
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        Objects.requireNonNull(envelope, "envelope");
+        if (!envelope.getReversePath().isEmpty()) {
+            checkAddress(envelope.getReversePath(), envelope.isSmtpUtf8());
+        }
+        for (final String recipient : envelope.getRecipients()) {
+            checkAddress(recipient, envelope.isSmtpUtf8());
+        }
+        final ByteArrayOutputStream buffer = ring != null ? new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 32) : null;
+        final CheckingOutputStream out = new CheckingOutputStream(buffer, envelope.getBodyType() != BodyType.BINARY_MIME);
+        try {
+            message.writeTo(out);
+        } catch (final IOException e) {
+            throw new EmailException("Writing the message failed", e);
+        }
+        final Duration delay = latency;
+        if (!delay.isZero()) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay.toNanos());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EmailException("Interrupted while simulating latency", e);
+            }
+        }
+        final long index = messageCount.getAndIncrement();
+        if (ring != null) {
+            ring.set((int) (index % ring.length()), new Message(envelope, buffer.toByteArray()));
+        }
+        byteCount.add(out.count);
+        recipientCount.add(envelope.getRecipients().size());
+    }
+
+    /**
+     * Sets the simulated time to accept a message; the sending thread sleeps that long after serializing the message.
+     *
+     * @param latency the latency, {@link Duration#ZERO} for none.
+     * @return {@code this} instance.
+     */
+    public InMemoryTransport setLatency(final Duration latency) {
+        if (latency.isNegative()) {
+            throw new IllegalArgumentException("Latency must not be negative: " + latency);
+        }
+        this.latency = latency;
+        return this;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+
+/**
+ * Looks up MX records with the DNS service provider of JNDI, which ships with the JDK. Addresses are looked up with {@link java.net.InetAddress}, so that
+ * the resolver of the system and its cache apply.
+ *
+ * @since 2.0.0-M2
+ */
+public class JndiDnsResolver implements DnsResolver {
+
+    /** The JNDI environment. */
+    private final Hashtable<String, String> environment = new Hashtable<>();
+
+    /**
+     * Constructs a new instance querying the DNS servers of the system.
+     */
+    public JndiDnsResolver() {
+        this(null);
+    }
+
+    /**
+     * Constructs a new instance querying the given DNS server.
+     *
+     * @param server The host name or address of the DNS server, optionally with a port, null for the DNS servers of the system.
+     */
+    public JndiDnsResolver(final String server) {
+        environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+        environment.put(Context.PROVIDER_URL, server != null ? "dns://" + server : "dns:");
+    }
+
+    @Override
+    public List<MxRecord> lookupMx(final String domain) throws IOException {
+        try {
+            final DirContext context = new InitialDirContext(environment);
+            try {
+                final Attribute attribute = context.getAttributes(domain, new String[] { "MX" }).get("MX");
+                if (attribute == null) {
+                    return Collections.emptyList();
+                }
+                final List<MxRecord> records = new ArrayList<>(attribute.size());
+                final NamingEnumeration<?> values = attribute.getAll();
+                while (values.hasMore()) {
+                    records.add(MxRecord.parse(values.next().toString()));
+                }
+                return records;
+            } finally {
+                context.close();
+            }
+        } catch (final NameNotFoundException e) {
+            final UnknownHostException exception = new UnknownHostException("Domain not found: " + domain);
+            exception.initCause(e);
+            throw exception;
+        } catch (final NamingException | IllegalArgumentException e) {
+            throw new IOException("MX lookup of " + domain + " failed", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A mail exchanger (MX) record of a domain: the host accepting mail for the domain and its preference.
+ *
+ * @since 2.0.0-M2
+ */
+public final class MxRecord implements Comparable<MxRecord> {
+
+    /**
+     * Parses the data of an MX record in the presentation format, for example {@code 10 mx.example.com.}.
+     *
+     * @param data The record data.
+     * @return the record.
+     * @throws IllegalArgumentException if the data is malformed.
+     */
+    public static MxRecord parse(final String data) {
+        final String[] fields = data.trim().split("\\s+");
+        if (fields.length != 2) {
+            throw new IllegalArgumentException("Malformed MX record: " + data);
+        }
+        try {
+            return new MxRecord(Integer.parseInt(fields[0]), fields[1]);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed MX record: " + data, e);
+        }
+    }
+
+    /** The preference, lower values are tried first. */
+    private final int preference;
+
+    /** The host name, lower case without the trailing dot, empty for a null MX. */
+    private final String host;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param preference The preference, lower values are tried first.
+     * @param host       The host name, with or without the trailing dot; {@code .} for a null MX.
+     */
+    public MxRecord(final int preference, final String host) {
+        this.preference = preference;
+        final String name = Objects.requireNonNull(host, "host").toLowerCase(Locale.ROOT);
+        this.host = name.endsWith(".") ? name.substring(0, name.length() - 1) : name;
+    }
+
+    @Override
+    public int compareTo(final MxRecord other) {
+        return Integer.compare(preference, other.preference);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MxRecord)) {
+            return false;
+        }
+        final MxRecord other = (MxRecord) obj;
+        return preference == other.preference && host.equals(other.host);
+    }
+
+    /**
+     * Gets the host name.
+     *
+     * @return the host name in lower case without the trailing dot, empty for a null MX.
+     */
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * Gets the preference.
+     *
+     * @return the preference, lower values are tried first.
+     */
+    public int getPreference() {
+        return preference;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(preference, host);
+    }
+
+    /**
+     * Tests whether this is a null MX (RFC 7505), by which a domain declares that it accepts no mail.
+     *
+     * @return whether the host is {@code .}.
+     */
+    public boolean isNull() {
+        return host.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return preference + " " + host + ".";
+    }
+}
@@ -0,0 +1,635 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.io.BufferPool;
+import org.apache.commons.mail2.core.io.PooledBufferedOutputStream;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+
+/**
+ * An in-process queue of outbound messages, delivered in priority order by its own threads through another transport.
+ * <p>
+ * A message is serialized when it is enqueued, so that the queue holds its bytes rather than the objects it was built from. The bytes held in memory are
+ * bounded by a budget; a message is admitted with its estimated size and then accounted with its actual size, and a message of unknown size is
+ * admitted with its serialized size. A message larger than the whole budget is admitted when no other message is held in memory. When the budget is used
+ * up, the {@link Admission} policy decides: the producer waits, the message is rejected, or it is spilled to a file and read back when it is delivered.
+ * </p>
+ * <p>
+ * Messages of a higher {@link Priority} are delivered first, messages of the same priority in the order they were enqueued. The depth and the age of the
+ * oldest message are exposed for monitoring. Instances are thread-safe and should be {@link #close() closed} when no longer needed; closing waits for the
+ * queued messages up to the {@linkplain #setCloseTimeout(Duration) close timeout}.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class OutboundQueue implements Closeable {
+
+    /**
+     * What the queue does with a message that does not fit in the memory budget.
+     */
+    public enum Admission {
+
+        /** The producer waits until enough messages were delivered, up to the maximum wait. */
+        BLOCK,
+
+        /** The message is rejected with an {@link EmailException}. */
+        REJECT,
+
+        /** The message is written to a file in the spill directory instead of memory. */
+        SPILL
+    }
+
+    /**
+     * The priority of a message, from the highest.
+     */
+    public enum Priority {
+
+        /** Delivered first, for example password resets. */
+        HIGH,
+
+        /** The default. */
+        NORMAL,
+
+        /** Delivered last, for example newsletters. */
+        LOW
+    }
+
+    /**
+     * A queued message.
+     */
+    private static final class Entry {
+
+        /** The envelope. */
+        private final Envelope envelope;
+
+        /** The size passed to the transport. */
+        private final long size;
+
+        /** When the message was enqueued, in {@link System#nanoTime()} units. */
+        private final long enqueuedNanos = System.nanoTime();
+
+        /** Completed when the message was delivered. */
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        /** The serialized message if held in memory. */
+        private byte[] data;
+
+        /** The file of the serialized message if spilled. */
+        private Path file;
+
+        /** The bytes accounted against the memory budget. */
+        private long reserved;
+
+        Entry(final Envelope envelope, final long size) {
+            this.envelope = envelope;
+            this.size = size;
+        }
+
+        private void writeTo(final OutputStream out) throws IOException {
+            if (data != null) {
+                out.write(data);
+            } else {
+                Files.copy(file, out);
+            }
+        }
+    }
+
+    /** The default memory budget, 64 MiB. */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+
+    /** The default longest wait of {@link #close()} for the queued messages. */
+    public static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofMinutes(1);
+
+    private static void delete(final Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (final IOException e) {
+            // ignore
+        }
+    }
+
+    /** Delivers the messages. */
+    private final EmailTransport transport;
+
+    /** The bytes of messages that may be held in memory. */
+    private final long memoryBudget;
+
+    /** Guards the queues and the memory accounting. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signaled when a message is enqueued. */
+    private final Condition notEmpty = lock.newCondition();
+
+    /** Signaled when memory is released. */
+    private final Condition notFull = lock.newCondition();
+
+    /** The messages by priority. Guarded by the lock. */
+    private final Map<Priority, ArrayDeque<Entry>> queues = new EnumMap<>(Priority.class);
+
+    /** The number of queued messages. Guarded by the lock. */
+    private int depth;
+
+    /** The bytes held in memory by queued and sending messages. Guarded by the lock. */
+    private long memoryUsed;
+
+    /** The threads delivering the messages. */
+    private final Thread[] threads;
+
+    /** The number of messages spilled to files. */
+    private final AtomicLong spilled = new AtomicLong();
+
+    /** The number of messages rejected because the queue was full. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Whether the queue was closed. */
+    private volatile boolean closed;
+
+    /** What to do with a message that does not fit in the memory budget. */
+    private volatile Admission admission = Admission.BLOCK;
+
+    /** The longest wait of a producer with {@link Admission#BLOCK}, null for no limit. */
+    private volatile Duration maxWait;
+
+    /** The directory of spilled messages, null for the temporary directory. */
+    private volatile Path spillDirectory;
+
+    /** The longest wait of {@link #close()} for the queued messages. */
+    private volatile Duration closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+
+    /**
+     * Constructs a new instance and starts its threads.
+     *
+     * @param transport    Delivers the messages.
+     * @param memoryBudget The bytes of messages that may be held in memory.
+     * @param threads      The number of threads delivering the messages.
+     */
+    public OutboundQueue(final EmailTransport transport, final long memoryBudget, final int threads) {
+        if (memoryBudget < 1 || threads < 1) {
+            throw new IllegalArgumentException("Memory budget and threads must be positive: " + memoryBudget + ", " + threads);
+        }
+        this.transport = Objects.requireNonNull(transport, "transport");
+        this.memoryBudget = memoryBudget;
+        for (final Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+        }
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            this.threads[i] = new Thread(this::deliverAll, "OutboundQueue-" + (i + 1));
+            this.threads[i].setDaemon(true);
+            this.threads[i].start();
+        }
+    }
+
+    /**
+     * Stops accepting messages, waits up to the close timeout for the queued messages to be delivered and stops the threads. Messages still queued at the
+     * timeout are not delivered and their futures fail; messages being delivered at the timeout complete in the background.
+     *
+     * @throws IOException if interrupted while waiting, or if messages were not delivered within the close timeout.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        lock.lock();
+        try {
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        final Duration timeout = closeTimeout;
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        for (final Thread thread : threads) {
+            try {
+                TimeUnit.NANOSECONDS.timedJoin(thread, Math.max(1, deadline - System.nanoTime()));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while delivering the queued messages", e);
+            }
+        }
+        for (final Thread thread : threads) {
+            if (thread.isAlive()) {
+                final int dropped = drain();
+                throw new IOException("The outbound queue did not deliver its messages within " + timeout + ", " + dropped + " messages were dropped");
+            }
+        }
+    }
+
+    private void deliver(final Entry entry) {
+        try {
+            transport.send(entry.envelope, entry::writeTo, entry.size);
+            entry.future.complete(null);
+        } catch (final EmailException | RuntimeException e) {
+            entry.future.completeExceptionally(e);
+        } finally {
+            if (entry.file != null) {
+                delete(entry.file);
+            }
+            release(entry.reserved);
+        }
+    }
+
+    private void deliverAll() {
+        Entry entry;
+        while ((entry = take()) != null) {
+            deliver(entry);
+        }
+    }
+
+    /**
+     * Enqueues a message, serializing it now.
+     *
+     * @param priority The priority.
+     * @param envelope The envelope.
+     * @param message  Writes the serialized message, once.
+     * @param size     The exact or estimated size of the message in octets, or -1 if unknown.
+     * @return the future completed when the transport delivered the message, or with its {@link EmailException}.
+     * @throws EmailException if the queue is full with {@link Admission#REJECT} or beyond the maximum wait, is closed, or the message cannot be written.
+     */
+    public CompletableFuture<Void> enqueue(final Priority priority, final Envelope envelope, final ContentWriter message, final long size)
+            throws EmailException {
+        Objects.requireNonNull(priority, "priority");
+        Objects.requireNonNull(envelope, "envelope");
+        final Entry entry = new Entry(envelope, size);
+        try {
+            if (size < 0) {
+                // without an estimate the message is admitted with its serialized size
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                message.writeTo(buffer);
+                final byte[] data = buffer.toByteArray();
+                if (reserve(data.length)) {
+                    entry.reserved = data.length;
+                    entry.data = data;
+                } else {
+                    spill(entry, out -> out.write(data));
+                }
+            } else if (reserve(size)) {
+                entry.reserved = size;
+                final ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.min(size + 1024, Integer.MAX_VALUE - 8));
+                message.writeTo(buffer);
+                entry.data = buffer.toByteArray();
+                reserve(entry, entry.data.length);
+            } else {
+                spill(entry, message);
+            }
+        } catch (final IOException e) {
+            discard(entry);
+            throw new EmailException("Writing the message to the outbound queue failed", e);
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                discard(entry);
+                throw new EmailException("The outbound queue is closed");
+            }
+            queues.get(priority).add(entry);
+            depth++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+        return entry.future;
+    }
+
+    /**
+     * Removes the queued messages, failing their futures.
+     *
+     * @return the number of removed messages.
+     */
+    private int drain() {
+        final List<Entry> entries = new ArrayList<>();
+        lock.lock();
+        try {
+            for (final ArrayDeque<Entry> queue : queues.values()) {
+                entries.addAll(queue);
+                queue.clear();
+            }
+            depth = 0;
+        } finally {
+            lock.unlock();
+        }
+        for (final Entry entry : entries) {
+            discard(entry);
+            entry.future.completeExceptionally(new EmailException("The outbound queue was closed before the message was delivered"));
+        }
+        return entries.size();
+    }
+
+    private void discard(final Entry entry) {
+        if (entry.file != null) {
+            delete(entry.file);
+        }
+        release(entry.reserved);
+    }
+
+    /**
+     * Gets what the queue does with a message that does not fit in the memory budget.
+     *
+     * @return the admission policy.
+     */
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    /**
+     * Gets the longest wait of {@link #close()} for the queued messages.
+     *
+     * @return the close timeout.
+     */
+    public Duration getCloseTimeout() {
+        return closeTimeout;
+    }
+
+    /**
+     * Gets the number of queued messages, not counting those being delivered.
+     *
+     * @return the depth.
+     */
+    public int getDepth() {
+        lock.lock();
+        try {
+            return depth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of queued messages of a priority.
+     *
+     * @param priority The priority.
+     * @return the depth.
+     */
+    public int getDepth(final Priority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the longest wait of a producer with {@link Admission#BLOCK}.
+     *
+     * @return the maximum wait, null for no limit.
+     */
+    public Duration getMaxWait() {
+        return maxWait;
+    }
+
+    /**
+     * Gets the bytes of messages that may be held in memory.
+     *
+     * @return the memory budget.
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Gets the bytes held in memory by queued messages and messages being delivered.
+     *
+     * @return the memory used.
+     */
+    public long getMemoryUsed() {
+        lock.lock();
+        try {
+            return memoryUsed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets how long the oldest queued message has waited.
+     *
+     * @return the age of the oldest message, zero if the queue is empty.
+     */
+    public Duration getOldestAge() {
+        final long now = System.nanoTime();
+        long age = 0;
+        lock.lock();
+        try {
+            for (final ArrayDeque<Entry> queue : queues.values()) {
+                final Entry head = queue.peek();
+                if (head != null) {
+                    age = Math.max(age, now - head.enqueuedNanos);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return Duration.ofNanos(age);
+    }
+
+    /**
+     * Gets the number of messages rejected because the queue was full.
+     *
+     * @return the number of rejected messages.
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the directory of spilled messages.
+     *
+     * @return the spill directory, null for the temporary directory.
+     */
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Gets the number of messages spilled to files.
+     *
+     * @return the number of spilled messages.
+     */
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    private void release(final long bytes) {
+        if (bytes > 0) {
+            lock.lock();
+            try {
+                memoryUsed -= bytes;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Accounts the actual size of a message held in memory instead of its estimate.
+     */
+    private void reserve(final Entry entry, final long bytes) {
+        lock.lock();
+        try {
+            memoryUsed += bytes - entry.reserved;
+            if (bytes < entry.reserved) {
+                notFull.signalAll();
+            }
+            entry.reserved = bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes bytes of the memory budget according to the admission policy.
+     *
+     * @return true if the message may be held in memory, false if it is to be spilled.
+     */
+    private boolean reserve(final long bytes) throws EmailException {
+        final Duration wait = maxWait;
+        long remaining = wait != null ? wait.toNanos() : 0;
+        lock.lock();
+        try {
+            while (memoryUsed > 0 && memoryUsed + bytes > memoryBudget) {
+                if (closed) {
+                    throw new EmailException("The outbound queue is closed");
+                }
+                final Admission policy = admission;
+                if (policy == Admission.SPILL) {
+                    return false;
+                }
+                if (policy == Admission.REJECT || wait != null && remaining <= 0) {
+                    rejected.incrementAndGet();
+                    throw new EmailException("The outbound queue is full: " + memoryUsed + " of " + memoryBudget + " bytes used");
+                }
+                if (wait != null) {
+                    remaining = notFull.awaitNanos(remaining);
+                } else {
+                    notFull.await();
+                }
+            }
+            memoryUsed += bytes;
+            return true;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmailException("Interrupted while waiting for the outbound queue", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets what the queue does with a message that does not fit in the memory budget.
+     *
+     * @param admission The admission policy.
+     * @return {@code this} instance.
+     */
+    public OutboundQueue setAdmission(final Admission admission) {
+        this.admission = Objects.requireNonNull(admission, "admission");
+        return this;
+    }
+
+    /**
+     * Sets the longest wait of {@link #close()} for the queued messages.
+     *
+     * @param closeTimeout The close timeout.
+     * @return {@code this} instance.
+     */
+    public OutboundQueue setCloseTimeout(final Duration closeTimeout) {
+        this.closeTimeout = Objects.requireNonNull(closeTimeout, "closeTimeout");
+        return this;
+    }
+
+    /**
+     * Sets the longest wait of a producer with {@link Admission#BLOCK}; a message that would wait longer is rejected.
+     *
+     * @param maxWait The maximum wait, null for no limit.
+     * @return {@code this} instance.
+     */
+    public OutboundQueue setMaxWait(final Duration maxWait) {
+        this.maxWait = maxWait;
+        return this;
+    }
+
+    /**
+     * Sets the directory of spilled messages.
+     *
+     * @param spillDirectory The spill directory, null for the temporary directory.
+     * @return {@code this} instance.
+     */
+    public OutboundQueue setSpillDirectory(final Path spillDirectory) {
+        this.spillDirectory = spillDirectory;
+        return this;
+    }
+
+    /**
+     * Writes a message to a file in the spill directory.
+     */
+    private void spill(final Entry entry, final ContentWriter message) throws IOException {
+        final Path directory = spillDirectory;
+        entry.file = directory != null ? Files.createTempFile(directory, "outbound", ".eml") : Files.createTempFile("outbound", ".eml");
+        try (OutputStream out = new PooledBufferedOutputStream(Files.newOutputStream(entry.file), BufferPool.getDefault(), BufferPool.DEFAULT_BUFFER_SIZE)) {
+            message.writeTo(out);
+        }
+        spilled.incrementAndGet();
+    }
+
+    /**
+     * Takes the next message, waiting while the queue is empty.
+     *
+     * @return the message with the highest priority, or null if the queue is closed and empty.
+     */
+    private Entry take() {
+        lock.lock();
+        try {
+            while (depth == 0) {
+                if (closed) {
+                    return null;
+                }
+                notEmpty.awaitUninterruptibly();
+            }
+            for (final ArrayDeque<Entry> queue : queues.values()) {
+                final Entry entry = queue.poll();
+                if (entry != null) {
+                    depth--;
+                    return entry;
+                }
+            }
+            throw new IllegalStateException("Queue depth out of sync");
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.io.BufferPool;
+import org.apache.commons.mail2.core.io.PooledBufferedOutputStream;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+
+/**
+ * A transport that hands messages to a local MTA through its pickup directory.
+ * <p>
+ * Each message is written to a temporary file, named with a leading dot and a {@code .tmp} extension in the same directory, and then renamed, so the MTA
+ * never sees a partial message. The envelope is passed as configured with {@link #setEnvelopeFormat(EnvelopeFormat)}. With {@link #setSync(boolean) sync}
+ * enabled, the default, the file is forced to storage before the rename and the directory after it; concurrent senders share the directory sync, so that
+ * one sync covers all renames done meanwhile.
+ * </p>
+ * <p>
+ * With {@link #setShards(int) shards}, messages are spread over numbered subdirectories by sending thread, so many threads do not contend on one
+ * directory; the MTA must then read each of them. Instances are thread-safe if they are not reconfigured while in use.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class PickupDirectoryTransport implements EmailTransport {
+
+    /**
+     * How the envelope is passed to the MTA.
+     */
+    public enum EnvelopeFormat {
+
+        /**
+         * {@code X-Sender} and {@code X-Receiver} headers are prepended to the message, one {@code X-Receiver} per recipient, as pickup directories of many
+         * Windows MTAs expect.
+         */
+        HEADERS,
+
+        /**
+         * The envelope is not passed; the MTA takes it from the message headers.
+         */
+        NONE,
+
+        /**
+         * A sidecar file with the same name and the extension {@code .env} holds {@code MAIL FROM:<reverse-path>} and one {@code RCPT TO:<address>} line
+         * per recipient. It is published before the message.
+         */
+        SIDECAR
+    }
+
+    /**
+     * A directory messages are published in, syncing it for a group of renames at once.
+     */
+    private static final class Directory {
+
+        /** The directory. */
+        private final Path path;
+
+        /** Whether the directory is known to exist. */
+        private volatile boolean created;
+
+        /** The number of syncs requested. */
+        private long requested;
+
+        /** The number of requested syncs that are done. */
+        private long completed;
+
+        /** Whether a thread is syncing. */
+        private boolean syncing;
+
+        Directory(final Path path) {
+            this.path = path;
+        }
+
+        Path get() throws IOException {
+            if (!created) {
+                Files.createDirectories(path);
+                created = true;
+            }
+            return path;
+        }
+
+        /**
+         * Makes the renames done so far durable. The calling thread either syncs the directory itself, covering all requests made until it starts, or waits
+         * for the sync in progress and possibly the next one.
+         */
+        void sync() throws IOException {
+            final long target;
+            synchronized (this) {
+                final long ticket = ++requested;
+                while (syncing) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while syncing " + path);
+                    }
+                }
+                if (completed >= ticket) {
+                    return;
+                }
+                syncing = true;
+                target = requested;
+            }
+            boolean done = false;
+            try {
+                force(path);
+                done = true;
+            } finally {
+                synchronized (this) {
+                    syncing = false;
+                    if (done) {
+                        completed = target;
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /** Makes file names unique within this JVM. */
+    private static final AtomicLong COUNTER = new AtomicLong();
+
+    /** Makes file names unique across JVMs writing to the same directory. */
+    private static final String PREFIX = Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+
+    /**
+     * Forces a directory to storage. File systems that cannot open directories, like NTFS, are skipped.
+     */
+    private static void force(final Path directory) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (final IOException e) {
+            return;
+        }
+        try (FileChannel c = channel) {
+            c.force(true);
+        }
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(source, target);
+        }
+    }
+
+    private static void writeEnvelope(final OutputStream out, final String senderPrefix, final String senderSuffix, final String recipientPrefix,
+            final String recipientSuffix, final Envelope envelope) throws IOException {
+        final StringBuilder builder = new StringBuilder(senderPrefix).append(envelope.getReversePath()).append(senderSuffix).append("\r\n");
+        for (final String recipient : envelope.getRecipients()) {
+            builder.append(recipientPrefix).append(recipient).append(recipientSuffix).append("\r\n");
+        }
+        out.write(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** The pickup directory. */
+    private final Path directory;
+
+    /** The directories messages are published in: the pickup directory or its shards. */
+    private volatile Directory[] directories;
+
+    /** How the envelope is passed. */
+    private EnvelopeFormat envelopeFormat = EnvelopeFormat.HEADERS;
+
+    /** The extension of message files. */
+    private String extension = ".eml";
+
+    /** Whether files and directories are forced to storage. */
+    private boolean sync = true;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param directory The pickup directory, created if needed.
+     */
+    public PickupDirectoryTransport(final Path directory) {
+        this.directory = Objects.requireNonNull(directory, "directory");
+        this.directories = new Directory[] { new Directory(directory) };
+    }
+
+    /**
+     * Gets the pickup directory.
+     *
+     * @return the directory.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Gets how the envelope is passed to the MTA.
+     *
+     * @return the envelope format.
+     */
+    public EnvelopeFormat getEnvelopeFormat() {
+        return envelopeFormat;
+    }
+
+    /**
+     * Gets the extension of message files.
+     *
+     * @return the extension including the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Gets the number of shard subdirectories.
+     *
+     * @return the number of shards, 0 if messages are written to the pickup directory itself.
+     */
+    public int getShards() {
+        final Directory[] current = directories;
+        return current.length == 1 && current[0].path.equals(directory) ? 0 : current.length;
+    }
+
+    /**
+     * Tests whether files and directories are forced to storage.
+     *
+     * @return whether sync is enabled.
+     */
+    public boolean isSync() {
+        return sync;
+    }
+
+    private void publish(final Path target, final ContentWriter content) throws IOException {
+        final Path tempFile = target.resolveSibling("." + target.getFileName() + ".tmp");
+        boolean published = false;
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                try (OutputStream out = new PooledBufferedOutputStream(Channels.newOutputStream(channel), BufferPool.getDefault(),
+                        BufferPool.DEFAULT_BUFFER_SIZE)) {
+                    content.writeTo(out);
+                    out.flush();
+                    if (sync) {
+                        channel.force(false);
+                    }
+                }
+            }
+            move(tempFile, target);
+            published = true;
+        } finally {
+            if (!published) {
+                Files.deleteIfExists(tempFile);
+            }
+        }
+    }
+
+    /**
+     * Writes the message and its envelope to a new file in the pickup directory, or in the shard of the calling thread.
+     */
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        Objects.requireNonNull(envelope, "envelope");
+        final Directory[] current = directories;
+        final Directory target = current[(int) (Thread.currentThread().getId() % current.length)];
+        final String name = PREFIX + "-" + System.currentTimeMillis() + "-" + COUNTER.incrementAndGet();
+        final EnvelopeFormat format = envelopeFormat;
+        try {
+            final Path path = target.get();
+            if (format == EnvelopeFormat.SIDECAR) {
+                publish(path.resolve(name + ".env"), out -> writeEnvelope(out, "MAIL FROM:<", ">", "RCPT TO:<", ">", envelope));
+            }
+            publish(path.resolve(name + extension), out -> {
+                if (format == EnvelopeFormat.HEADERS) {
+                    writeEnvelope(out, "X-Sender: ", "", "X-Receiver: ", "", envelope);
+                }
+                message.writeTo(out);
+            });
+            if (sync) {
+                target.sync();
+            }
+        } catch (final IOException e) {
+            throw new EmailException("Writing the message to the pickup directory " + target.path + " failed", e);
+        }
+    }
+
+    /**
+     * Sets how the envelope is passed to the MTA.
+     *
+     * @param envelopeFormat the envelope format, {@link EnvelopeFormat#HEADERS} by default.
+     * @return {@code this} instance.
+     */
+    public PickupDirectoryTransport setEnvelopeFormat(final EnvelopeFormat envelopeFormat) {
+        this.envelopeFormat = Objects.requireNonNull(envelopeFormat, "envelopeFormat");
+        return this;
+    }
+
+    /**
+     * Sets the extension of message files.
+     *
+     * @param extension the extension including the dot, {@code .eml} by default.
+     * @return {@code this} instance.
+     */
+    public PickupDirectoryTransport setExtension(final String extension) {
+        this.extension = Objects.requireNonNull(extension, "extension");
+        return this;
+    }
+
+    /**
+     * Sets the number of shard subdirectories, named {@code 0} to {@code shards - 1}. Each sending thread always writes to the same shard.
+     *
+     * @param shards the number of shards, 0 to write to the pickup directory itself.
+     * @return {@code this} instance.
+     */
+    public PickupDirectoryTransport setShards(final int shards) {
+        if (shards < 0) {
+            throw new IllegalArgumentException("Shards must not be negative: " + shards);
+        }
+        final Directory[] shardDirectories = new Directory[Math.max(shards, 1)];
+        for (int i = 0; i < shardDirectories.length; i++) {
+            shardDirectories[i] = new Directory(shards == 0 ? directory : directory.resolve(Integer.toString(i)));
+        }
+        this.directories = shardDirectories;
+        return this;
+    }
+
+    /**
+     * Sets whether files and directories are forced to storage, so that a message handed to the MTA survives a crash.
+     *
+     * @param sync whether to sync, true by default.
+     * @return {@code this} instance.
+     */
+    public PickupDirectoryTransport setSync(final boolean sync) {
+        this.sync = sync;
+        return this;
+    }
+}
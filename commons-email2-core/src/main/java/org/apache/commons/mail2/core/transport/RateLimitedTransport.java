@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.util.Objects;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.RateLimiter;
+
+/**
+ * A transport that takes the tokens of each message from a {@link RateLimiter} before another transport delivers it: one message and one token per
+ * recipient of the envelope, from the buckets of a fixed key, for example the relay the delegate sends to as given by {@link RateLimiter#getKey}.
+ * <p>
+ * Instances are thread-safe if the delegate is.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class RateLimitedTransport implements EmailTransport {
+
+    /** The transport delivering the messages. */
+    private final EmailTransport delegate;
+
+    /** The rate limiter. */
+    private final RateLimiter rateLimiter;
+
+    /** The key of the buckets. */
+    private final String key;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param delegate    The transport delivering the messages.
+     * @param rateLimiter The rate limiter, shared with the other senders to the same relay.
+     * @param key         The key of the buckets.
+     */
+    public RateLimitedTransport(final EmailTransport delegate, final RateLimiter rateLimiter, final String key) {
+        this.delegate = Objects.requireNonNull(delegate, "delegate");
+        this.rateLimiter = Objects.requireNonNull(rateLimiter, "rateLimiter");
+        this.key = Objects.requireNonNull(key, "key");
+    }
+
+    /**
+     * Gets the transport delivering the messages.
+     *
+     * @return the delegate.
+     */
+    public EmailTransport getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Gets the key of the buckets.
+     *
+     * @return the key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the rate limiter.
+     *
+     * @return the rate limiter.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Takes the tokens of the message, waiting or failing as the mode of the limiter says, and then delivers it with the delegate.
+     *
+     * @throws RateLimitExceededException if the rate limiter does not allow the message.
+     */
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        rateLimiter.acquire(key, envelope.getRecipients().size());
+        delegate.send(envelope, message, size);
+    }
+}
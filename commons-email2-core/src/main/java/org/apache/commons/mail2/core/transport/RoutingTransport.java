@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.PartialDeliveryException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+
+/**
+ * A transport that routes the recipients of a message by their domain to other transports, for example dedicated relays for large mailbox providers and a
+ * shared relay for everything else.
+ * <p>
+ * A route matches a domain by one of these patterns, from the most to the least specific: the domain itself, such as {@code example.com}; a wildcard
+ * {@code *.example.com} matching every subdomain of {@code example.com}, the longest wildcard first; or {@code *}, the default route. Domains are compared
+ * ignoring case.
+ * </p>
+ * <p>
+ * Each send groups the recipients by the transport of their route, in envelope order, and sends one envelope to each transport with the same reverse path,
+ * body type and SMTPUTF8 flag. If there is more than one, the message is serialized once into memory and the transports are called in parallel with the
+ * executor, the last one in the calling thread. If some transports fail, the others still deliver the message; a runtime exception of a transport, or an
+ * executor rejecting its send, counts as a failure of its route, wrapped in an {@link EmailException}. If no transport delivered it, the send fails
+ * with the first failure, the others suppressed; otherwise it fails with a {@link PartialDeliveryException} naming the recipients that received the
+ * message, so that a retry can leave them out.
+ * </p>
+ * <p>
+ * By default the parallel sends run on a few threads of the transport, which end when idle; {@link #close()} stops them. Instances are thread-safe; routes
+ * can be changed while messages are sent.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class RoutingTransport implements EmailTransport, Closeable {
+
+    /** The pattern of the default route. */
+    public static final String DEFAULT_ROUTE = "*";
+
+    /** The default number of threads running the parallel sends. */
+    public static final int DEFAULT_THREADS = 4;
+
+    private static String domain(final String recipient) {
+        return recipient.substring(recipient.lastIndexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // a runtime exception of one route fails only the recipients of that route
+    private static void sendRoute(final EmailTransport transport, final Envelope envelope, final ContentWriter message, final long size)
+            throws EmailException {
+        try {
+            transport.send(envelope, message, size);
+        } catch (final RuntimeException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    private static EmailException suppress(final EmailException failure, final EmailException next) {
+        if (failure == null) {
+            return next;
+        }
+        failure.addSuppressed(next);
+        return failure;
+    }
+
+    /** The transports by pattern, lower case. */
+    private final Map<String, EmailTransport> routes = new ConcurrentHashMap<>();
+
+    /** The threads of this transport, the default executor. */
+    private final ThreadPoolExecutor ownExecutor;
+
+    /** Runs the sends to all but one transport. */
+    private volatile Executor executor;
+
+    /** Whether the transport is closed. */
+    private volatile boolean closed;
+
+    /**
+     * Constructs a new instance with {@link #DEFAULT_THREADS} threads.
+     */
+    public RoutingTransport() {
+        this(DEFAULT_THREADS);
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param threads The number of threads running the parallel sends, unless another executor is set.
+     * @throws IllegalArgumentException if the number of threads is not positive.
+     */
+    public RoutingTransport(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        final AtomicInteger count = new AtomicInteger();
+        ownExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            final Thread thread = new Thread(runnable, "RoutingTransport-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ownExecutor.allowCoreThreadTimeOut(true);
+        executor = ownExecutor;
+    }
+
+    /**
+     * Adds or replaces a route.
+     *
+     * @param pattern   The domain, {@code *.}domain for its subdomains or {@link #DEFAULT_ROUTE}.
+     * @param transport The transport of the matching recipients.
+     * @return {@code this} instance.
+     */
+    public RoutingTransport addRoute(final String pattern, final EmailTransport transport) {
+        routes.put(pattern.toLowerCase(Locale.ROOT), Objects.requireNonNull(transport, "transport"));
+        return this;
+    }
+
+    /**
+     * Closes the transport: later sends fail and the threads of the transport end once their sends are done. An executor set with
+     * {@link #setExecutor(Executor)} is not shut down.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ownExecutor.shutdown();
+    }
+
+    /**
+     * Gets the executor running the sends in parallel.
+     *
+     * @return the executor.
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Gets the transport of the most specific route matching the domain of a recipient.
+     *
+     * @param recipient The recipient address.
+     * @return the transport, null if no route matches.
+     */
+    public EmailTransport getRoute(final String recipient) {
+        final String domain = domain(recipient);
+        EmailTransport transport = routes.get(domain);
+        for (int dot = domain.indexOf('.'); transport == null && dot >= 0; dot = domain.indexOf('.', dot + 1)) {
+            transport = routes.get("*" + domain.substring(dot));
+        }
+        return transport != null ? transport : routes.get(DEFAULT_ROUTE);
+    }
+
+    /**
+     * Removes a route.
+     *
+     * @param pattern The pattern of the route.
+     * @return {@code this} instance.
+     */
+    public RoutingTransport removeRoute(final String pattern) {
+        routes.remove(pattern.toLowerCase(Locale.ROOT));
+        return this;
+    }
+
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        if (closed) {
+            throw new EmailException("The routing transport is closed");
+        }
+        final Map<EmailTransport, List<String>> recipients = new LinkedHashMap<>();
+        for (final String recipient : envelope.getRecipients()) {
+            final EmailTransport transport = getRoute(recipient);
+            if (transport == null) {
+                throw new EmailException("No route for " + recipient);
+            }
+            recipients.computeIfAbsent(transport, k -> new ArrayList<>()).add(recipient);
+        }
+        if (recipients.size() == 1) {
+            final Map.Entry<EmailTransport, List<String>> route = recipients.entrySet().iterator().next();
+            sendRoute(route.getKey(), envelope, message, size);
+            return;
+        }
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 8192);
+        try {
+            message.writeTo(buffer);
+        } catch (final IOException e) {
+            throw new EmailException(e);
+        }
+        final byte[] data = buffer.toByteArray();
+        final ContentWriter body = out -> out.write(data);
+        final List<CompletableFuture<Void>> sends = new ArrayList<>(recipients.size());
+        int remaining = recipients.size();
+        for (final Map.Entry<EmailTransport, List<String>> route : recipients.entrySet()) {
+            final Envelope routeEnvelope = new Envelope(envelope.getReversePath(), route.getValue()).withBodyType(envelope.getBodyType())
+                    .withSmtpUtf8(envelope.isSmtpUtf8());
+            if (--remaining > 0) {
+                try {
+                    sends.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            sendRoute(route.getKey(), routeEnvelope, body, data.length);
+                        } catch (final EmailException e) {
+                            throw new CompletionException(e);
+                        }
+                    }, executor));
+                } catch (final RejectedExecutionException e) {
+                    final CompletableFuture<Void> rejected = new CompletableFuture<>();
+                    rejected.completeExceptionally(new EmailException(e));
+                    sends.add(rejected);
+                }
+            } else {
+                final CompletableFuture<Void> last = new CompletableFuture<>();
+                try {
+                    sendRoute(route.getKey(), routeEnvelope, body, data.length);
+                    last.complete(null);
+                } catch (final EmailException e) {
+                    last.completeExceptionally(e);
+                }
+                sends.add(last);
+            }
+        }
+        final List<String> delivered = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        EmailException failure = null;
+        int index = 0;
+        for (final List<String> routeRecipients : recipients.values()) {
+            try {
+                sends.get(index++).join();
+                delivered.addAll(routeRecipients);
+            } catch (final CompletionException e) {
+                failed.addAll(routeRecipients);
+                failure = suppress(failure, e.getCause() instanceof EmailException ? (EmailException) e.getCause() : new EmailException(e.getCause()));
+            }
+        }
+        if (failure != null) {
+            // a retry must not send the message again to the routes that delivered it
+            throw delivered.isEmpty() ? failure : new PartialDeliveryException(delivered, failed, failure);
+        }
+    }
+
+    /**
+     * Sets the executor running the sends in parallel instead of the threads of this transport. The executor is not shut down by {@link #close()}.
+     *
+     * @param executor The executor.
+     * @return {@code this} instance.
+     */
+    public RoutingTransport setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "executor");
+        return this;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.smtp.RateLimiter;
+
+/**
+ * A named lane of sends with its own threads, queue bound and rate limit, isolating a class of traffic from the others; see {@link SendLanes}.
+ * <p>
+ * The threads of a lane bound the connections it opens, since every send uses one connection at a time. A send submitted while all threads are busy waits
+ * in the queue of the lane; if the queue is full, the send fails at once. Before it runs, a send waits while a lane of higher priority has sends queued,
+ * then for the tokens of the rate limiter of the lane, if any, keyed by the lane name. This class is thread-safe.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public final class SendLane {
+
+    /**
+     * A send run by a lane.
+     *
+     * @param <T> The result type.
+     */
+    @FunctionalInterface
+    public interface SendTask<T> {
+
+        /**
+         * Sends.
+         *
+         * @return the result.
+         * @throws EmailException if the send fails.
+         */
+        T send() throws EmailException;
+    }
+
+    /** The lanes this lane belongs to. */
+    private final SendLanes lanes;
+
+    /** The name. */
+    private final String name;
+
+    /** The priority, higher runs first. */
+    private final int priority;
+
+    /** The number of threads. */
+    private final int threads;
+
+    /** The number of sends that may wait for a thread. */
+    private final int queueCapacity;
+
+    /** Runs the sends. */
+    private final ThreadPoolExecutor executor;
+
+    /** The number of sends waiting for a thread. */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /** The number of sends running. */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /** The number of sends rejected because the queue was full. */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Limits the messages and recipients of the lane, null for no limit. */
+    private volatile RateLimiter rateLimiter;
+
+    SendLane(final SendLanes lanes, final String name, final int priority, final int threads, final int queueCapacity) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive: " + threads);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + queueCapacity);
+        }
+        this.lanes = lanes;
+        this.name = name;
+        this.priority = priority;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            final Thread thread = new Thread(runnable, "SendLane-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the number of sends running, including those waiting for a lane of higher priority or for the rate limiter.
+     *
+     * @return the number of active sends.
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Gets the name.
+     *
+     * @return the name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the priority; sends of a lane wait while a lane of higher priority has sends queued.
+     *
+     * @return the priority.
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * Gets the number of sends waiting for a thread.
+     *
+     * @return the queue depth.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    /**
+     * Gets the number of sends that may wait for a thread.
+     *
+     * @return the queue capacity.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Gets the limiter of the messages and recipients of the lane.
+     *
+     * @return the rate limiter, null for no limit.
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Gets the number of sends rejected because the queue was full.
+     *
+     * @return the number of rejected sends.
+     */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * Gets the number of threads, which bounds the connections of the lane.
+     *
+     * @return the number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    private <T> void run(final int recipients, final SendTask<T> task, final CompletableFuture<T> future) {
+        queued.decrementAndGet();
+        lanes.signal();
+        active.incrementAndGet();
+        try {
+            // a send whose caller gave up is skipped
+            if (future.isDone()) {
+                return;
+            }
+            lanes.awaitTurn(this);
+            final RateLimiter limiter = rateLimiter;
+            if (limiter != null && !future.isDone()) {
+                limiter.acquire(name, recipients);
+            }
+            if (!future.isDone()) {
+                future.complete(task.send());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new EmailException("Interrupted while waiting in the send lane " + name, e));
+        } catch (final Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sets the limiter of the messages and recipients of the lane, keyed by the lane name. Unlike a limiter of the SMTP client, it is shared by all the
+     * relays the lane sends to.
+     *
+     * @param rateLimiter The rate limiter, null for no limit.
+     * @return {@code this} instance.
+     */
+    public SendLane setRateLimiter(final RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Submits a send to the lane.
+     *
+     * @param <T>        The result type.
+     * @param recipients The number of envelope recipients, for the rate limiter.
+     * @param task       The send.
+     * @return the future result of the send, failed with an {@link EmailException} if the queue of the lane is full or the lanes are closed. Cancelling it
+     *         skips the send unless it already started; a running send is not interrupted.
+     */
+    public <T> CompletableFuture<T> submit(final int recipients, final SendTask<T> task) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        queued.incrementAndGet();
+        try {
+            executor.execute(() -> run(recipients, task, future));
+        } catch (final RejectedExecutionException e) {
+            queued.decrementAndGet();
+            lanes.signal();
+            if (executor.isShutdown()) {
+                future.completeExceptionally(new EmailException("The send lane " + name + " is closed", e));
+            } else {
+                rejected.incrementAndGet();
+                future.completeExceptionally(new EmailException("The queue of the send lane " + name + " is full", e));
+            }
+        }
+        return future;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [priority=" + priority + ", queued=" + queued + ", active=" + active + "]";
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Named {@link SendLane lanes} of sends, so that a flood of one class of traffic, such as a marketing campaign, cannot delay another, such as password
+ * resets.
+ * <p>
+ * Each lane has its own threads and queue, so a full lane neither blocks nor queues the sends of the others. Lanes also have a priority: while a lane has
+ * sends queued, lanes of lower priority start no new sends, leaving the relays to it. Give transactional mail a higher priority and enough threads that it
+ * rarely queues. Running sends are not interrupted.
+ * </p>
+ * <p>
+ * Instances are thread-safe and should be shared and {@link #close() closed} when no longer needed, which lets the sends already submitted complete.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class SendLanes implements Closeable {
+
+    /** The lanes by name. */
+    private final Map<String, SendLane> lanes = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a lane.
+     *
+     * @param name          The name.
+     * @param priority      The priority, higher runs first.
+     * @param threads       The number of threads, which bounds the connections of the lane.
+     * @param queueCapacity The number of sends that may wait for a thread.
+     * @return the new lane.
+     * @throws IllegalArgumentException if a lane has the name already.
+     */
+    public SendLane addLane(final String name, final int priority, final int threads, final int queueCapacity) {
+        Objects.requireNonNull(name, "name");
+        final SendLane lane = new SendLane(this, name, priority, threads, queueCapacity);
+        if (lanes.putIfAbsent(name, lane) != null) {
+            lane.shutdown();
+            throw new IllegalArgumentException("Duplicate send lane: " + name);
+        }
+        return lane;
+    }
+
+    /**
+     * Waits while a lane of higher priority than a lane has sends queued.
+     */
+    synchronized void awaitTurn(final SendLane lane) throws InterruptedException {
+        while (isPreempted(lane)) {
+            wait();
+        }
+    }
+
+    /**
+     * Stops accepting sends; the sends already submitted still complete.
+     */
+    @Override
+    public void close() {
+        lanes.values().forEach(SendLane::shutdown);
+    }
+
+    /**
+     * Gets a lane.
+     *
+     * @param name The name.
+     * @return the lane, or null if none has the name.
+     */
+    public SendLane getLane(final String name) {
+        return lanes.get(name);
+    }
+
+    /**
+     * Gets the lanes.
+     *
+     * @return an unmodifiable view of the lanes.
+     */
+    public Collection<SendLane> getLanes() {
+        return Collections.unmodifiableCollection(lanes.values());
+    }
+
+    private boolean isPreempted(final SendLane lane) {
+        for (final SendLane other : lanes.values()) {
+            if (other.getPriority() > lane.getPriority() && other.getQueued() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wakes the sends waiting for their turn after the queue of a lane changed.
+     */
+    synchronized void signal() {
+        notifyAll();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.util.Iterator;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+import org.apache.commons.mail2.core.EmailException;
+
+/**
+ * Holds the transport registered with the {@link ServiceLoader}, loaded on first use.
+ */
+final class ServiceTransport {
+
+    /** The registered transport, null if there is none or it cannot be loaded. */
+    private static final EmailTransport INSTANCE;
+
+    /** The failure to load the registered transport, null if none. */
+    private static final ServiceConfigurationError FAILURE;
+
+    static {
+        EmailTransport transport = null;
+        ServiceConfigurationError failure = null;
+        try {
+            final Iterator<EmailTransport> iterator = ServiceLoader.load(EmailTransport.class).iterator();
+            transport = iterator.hasNext() ? iterator.next() : null;
+        } catch (final ServiceConfigurationError e) {
+            failure = e;
+        }
+        INSTANCE = transport;
+        FAILURE = failure;
+    }
+
+    /**
+     * Gets the registered transport.
+     *
+     * @return the transport, null if there is none.
+     * @throws EmailException if the registered transport cannot be loaded.
+     */
+    static EmailTransport get() throws EmailException {
+        if (FAILURE != null) {
+            throw new EmailException("Cannot load the registered " + EmailTransport.class.getName(), FAILURE);
+        }
+        return INSTANCE;
+    }
+
+    private ServiceTransport() {
+        // no instances
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import java.util.function.Consumer;
+
+/**
+ * A hierarchical timing wheel of values due at a tick, with constant time insertion, removal and expiry per tick.
+ * <p>
+ * Each of the {@value #LEVELS} levels has {@value #SLOTS} slots; a slot of level {@code n} spans {@code SLOTS^n} ticks. A value is linked into the slot of
+ * the lowest level whose span covers its delay. When the slots of a level wrap around, the next slot of the level above is cascaded: its values are linked
+ * into the lower levels again, so that each value moves at most once per level. Values due later than the wheel can hold go round the top level again.
+ * </p>
+ * <p>
+ * This class is not thread-safe; it is driven by one thread.
+ * </p>
+ *
+ * @param <T> The value type.
+ */
+final class TimingWheel<T> {
+
+    /**
+     * A value linked into a slot.
+     *
+     * @param <T> The value type.
+     */
+    static final class Node<T> {
+
+        /** The value. */
+        private final T value;
+
+        /** The tick the value is due at. */
+        private long deadline;
+
+        /** The level of the slot, -1 if not linked. */
+        private int level = -1;
+
+        /** The index of the slot. */
+        private int slot;
+
+        /** The previous node in the slot. */
+        private Node<T> previous;
+
+        /** The next node in the slot. */
+        private Node<T> next;
+
+        Node(final T value) {
+            this.value = value;
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+
+        T getValue() {
+            return value;
+        }
+    }
+
+    /** The bits of a slot index. */
+    private static final int BITS = 8;
+
+    /** The slots per level. */
+    static final int SLOTS = 1 << BITS;
+
+    /** The number of levels. */
+    static final int LEVELS = 4;
+
+    /** The largest delay in ticks. */
+    static final long MAX_DELAY = (1L << BITS * LEVELS) - 1;
+
+    /** The mask of a slot index. */
+    private static final int MASK = SLOTS - 1;
+
+    /** The first node of each slot, by level. */
+    @SuppressWarnings("unchecked")
+    private final Node<T>[][] slots = (Node<T>[][]) new Node<?>[LEVELS][SLOTS];
+
+    /** The current tick. */
+    private long tick;
+
+    /** The number of linked values. */
+    private int size;
+
+    /**
+     * Adds a value.
+     *
+     * @param value    The value.
+     * @param deadline The tick the value is due at; a tick not after the current one is due at the next tick.
+     * @return the node, to remove the value.
+     */
+    Node<T> add(final T value, final long deadline) {
+        final Node<T> node = new Node<>(value);
+        node.deadline = Math.max(deadline, tick + 1);
+        link(node);
+        size++;
+        return node;
+    }
+
+    /**
+     * Advances the wheel by one tick.
+     *
+     * @param expired Receives the values due at the new tick.
+     */
+    void advance(final Consumer<T> expired) {
+        tick++;
+        int wrapped = 0;
+        while (wrapped + 1 < LEVELS && (tick & (1L << BITS * (wrapped + 1)) - 1) == 0) {
+            wrapped++;
+        }
+        for (int level = wrapped; level > 0; level--) {
+            Node<T> node = unlinkAll(level, (int) (tick >>> BITS * level) & MASK);
+            while (node != null) {
+                final Node<T> next = node.next;
+                link(node);
+                node = next;
+            }
+        }
+        Node<T> node = unlinkAll(0, (int) tick & MASK);
+        while (node != null) {
+            final Node<T> next = node.next;
+            if (node.deadline > tick) {
+                link(node);
+            } else {
+                node.next = null;
+                size--;
+                expired.accept(node.value);
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Gets the current tick.
+     *
+     * @return the tick.
+     */
+    long getTick() {
+        return tick;
+    }
+
+    /**
+     * Tests whether no value is linked.
+     *
+     * @return whether the wheel is empty.
+     */
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    private void link(final Node<T> node) {
+        final long delay = Math.min(MAX_DELAY, node.deadline - tick);
+        final long deadline = tick + delay;
+        int level = 0;
+        while (level + 1 < LEVELS && delay >= 1L << BITS * (level + 1)) {
+            level++;
+        }
+        final int slot = (int) (deadline >>> BITS * level) & MASK;
+        node.level = level;
+        node.slot = slot;
+        node.previous = null;
+        node.next = slots[level][slot];
+        if (node.next != null) {
+            node.next.previous = node;
+        }
+        slots[level][slot] = node;
+    }
+
+    /**
+     * Removes a value before it expires.
+     *
+     * @param node The node of the value.
+     * @return whether the value was linked.
+     */
+    boolean remove(final Node<T> node) {
+        if (node.level < 0) {
+            return false;
+        }
+        if (node.previous != null) {
+            node.previous.next = node.next;
+        } else {
+            slots[node.level][node.slot] = node.next;
+        }
+        if (node.next != null) {
+            node.next.previous = node.previous;
+        }
+        node.level = -1;
+        node.previous = null;
+        node.next = null;
+        size--;
+        return true;
+    }
+
+    /**
+     * Gets the number of linked values.
+     *
+     * @return the size.
+     */
+    int size() {
+        return size;
+    }
+
+    private Node<T> unlinkAll(final int level, final int slot) {
+        final Node<T> first = slots[level][slot];
+        slots[level][slot] = null;
+        for (Node<T> node = first; node != null; node = node.next) {
+            node.level = -1;
+            node.previous = null;
+        }
+        return first;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link Deadline}.
+ */
+class DeadlineTest {
+
+    @Test
+    void testExpired() {
+        final Deadline deadline = Deadline.after(Duration.ZERO);
+        assertTrue(deadline.isExpired());
+        assertEquals(Duration.ZERO, deadline.getRemaining());
+        assertEquals(Duration.ofMillis(1), deadline.limit(Duration.ofSeconds(60)));
+        final EmailTimeoutException e = assertThrows(EmailTimeoutException.class, deadline::check);
+        assertEquals(Duration.ZERO, e.getTimeout());
+        assertThrows(IllegalArgumentException.class, () -> Deadline.after(Duration.ofMillis(-1)));
+    }
+
+    @Test
+    void testLimit() throws EmailException {
+        final Deadline deadline = Deadline.after(Duration.ofSeconds(60));
+        deadline.check();
+        assertFalse(deadline.isExpired());
+        assertEquals(Duration.ofSeconds(5), deadline.limit(Duration.ofSeconds(5)));
+        assertTrue(deadline.limit(Duration.ofSeconds(120)).compareTo(Duration.ofSeconds(60)) <= 0);
+        assertTrue(deadline.limit(Duration.ZERO).compareTo(Duration.ofSeconds(59)) > 0);
+        assertEquals(Duration.ofSeconds(60), deadline.getTimeout());
+    }
+
+    @Test
+    void testWatch() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        final Closeable resource = closed::countDown;
+        Deadline.after(Duration.ofMillis(50)).watch(resource);
+        assertTrue(closed.await(10, TimeUnit.SECONDS));
+
+        final CountDownLatch kept = new CountDownLatch(1);
+        assertTrue(Deadline.after(Duration.ofMillis(50)).watch(kept::countDown).cancel(false));
+        assertFalse(kept.await(200, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link ArchiveSink}.
+ */
+class ArchiveSinkTest {
+
+    private static final byte[] MESSAGE = "Subject: test\r\n\r\nbody\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static long count(final Path directory) throws IOException {
+        try (Stream<Path> list = Files.list(directory)) {
+            return list.count();
+        }
+    }
+
+    private static void write(final ArchiveSink sink, final boolean commit) throws IOException {
+        try (ArchiveSink.Entry entry = sink.open()) {
+            entry.getOutputStream().write(MESSAGE);
+            if (commit) {
+                entry.commit();
+            }
+        }
+    }
+
+    @Test
+    void testChannel() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ArchiveSink sink = ArchiveSink.ofChannel(Channels.newChannel(out));
+        write(sink, false);
+        assertEquals(0, out.size());
+        write(sink, true);
+        write(sink, true);
+        assertEquals(2 * MESSAGE.length, out.size());
+    }
+
+    @Test
+    void testDirectory(@TempDir final Path directory) throws IOException {
+        final ArchiveSink sink = ArchiveSink.ofDirectory(directory);
+        write(sink, false);
+        assertEquals(0, count(directory));
+        write(sink, true);
+        write(sink, true);
+        assertEquals(2, count(directory));
+        try (Stream<Path> list = Files.list(directory)) {
+            list.forEach(file -> assertTrue(file.toString().endsWith(".eml")));
+        }
+    }
+
+    @Test
+    void testFile(@TempDir final Path directory) throws IOException {
+        final Path file = directory.resolve("sent.eml");
+        final ArchiveSink sink = ArchiveSink.ofFile(file);
+        write(sink, false);
+        assertEquals(0, count(directory));
+        write(sink, true);
+        assertArrayEquals(MESSAGE, Files.readAllBytes(file));
+        assertEquals(1, count(directory));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link BufferPool}.
+ */
+class BufferPoolTest {
+
+    @Test
+    void testAcquireRoundsUpToSizeClass() {
+        final BufferPool pool = new BufferPool(1);
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquire(0).length);
+        assertEquals(BufferPool.MIN_BUFFER_SIZE, pool.acquire(BufferPool.MIN_BUFFER_SIZE).length);
+        assertEquals(2 * BufferPool.MIN_BUFFER_SIZE, pool.acquire(BufferPool.MIN_BUFFER_SIZE + 1).length);
+        assertEquals(BufferPool.MAX_BUFFER_SIZE, pool.acquire(BufferPool.MAX_BUFFER_SIZE).length);
+        assertEquals(4, pool.getMisses());
+        assertEquals(BufferPool.MAX_BUFFER_SIZE + 1, pool.acquire(BufferPool.MAX_BUFFER_SIZE + 1).length);
+        assertEquals(1, pool.getOverflows());
+    }
+
+    @Test
+    void testCopy() throws IOException {
+        final BufferPool pool = new BufferPool(1);
+        final byte[] data = new byte[20_000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        for (int i = 0; i < 3; i++) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(data.length, pool.copy(new ByteArrayInputStream(data), out));
+            assertArrayEquals(data, out.toByteArray());
+        }
+        assertEquals(1, pool.getMisses());
+        assertEquals(2, pool.getHits());
+    }
+
+    @Test
+    void testPooledBufferedOutputStream() throws IOException {
+        final BufferPool pool = new BufferPool(1);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream buffered = new PooledBufferedOutputStream(out, pool, 16)) {
+            buffered.write('a');
+            buffered.write(new byte[1000]);
+            buffered.write(new byte[100], 0, 10);
+        }
+        assertEquals(1011, out.size());
+        pool.acquire(16);
+        assertEquals(1, pool.getHits());
+    }
+
+    @Test
+    void testReleaseKeepsBoundedNumber() {
+        final BufferPool pool = new BufferPool(1);
+        final byte[] first = pool.acquire(1024);
+        final byte[] second = pool.acquire(1024);
+        final byte[] third = pool.acquire(1024);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        pool.release(new byte[1000]);
+        assertEquals(1, pool.getPooledCount());
+        assertEquals(2, pool.getOverflows());
+        assertSame(first, pool.acquire(1024));
+        assertSame(second, pool.acquire(1024));
+        assertNotSame(third, pool.acquire(1024));
+        assertEquals(2, pool.getHits());
+        assertEquals(4, pool.getMisses());
+    }
+}
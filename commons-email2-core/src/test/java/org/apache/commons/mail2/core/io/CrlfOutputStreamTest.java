@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link CrlfOutputStream}.
+ */
+class CrlfOutputStreamTest {
+
+    private static String convert(final String text) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CrlfOutputStream crlf = new CrlfOutputStream(out)) {
+            crlf.write(text.getBytes(StandardCharsets.US_ASCII));
+        }
+        return out.toString("US-ASCII");
+    }
+
+    @Test
+    void testLineEndings() throws IOException {
+        assertEquals("a\r\nb\r\nc\r\nd", convert("a\nb\r\nc\rd"));
+        assertEquals("\r\n\r\n", convert("\n\r"));
+        assertEquals("a\r\n", convert("a\r"));
+    }
+
+    @Test
+    void testSingleBytes() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (CrlfOutputStream crlf = new CrlfOutputStream(out)) {
+            for (final byte b : "x\ny\r\n".getBytes(StandardCharsets.US_ASCII)) {
+                crlf.write(b);
+            }
+        }
+        assertEquals("x\r\ny\r\n", out.toString("US-ASCII"));
+    }
+}
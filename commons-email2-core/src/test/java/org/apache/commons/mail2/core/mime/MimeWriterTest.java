@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.mime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link MimeWriter}.
+ */
+class MimeWriterTest {
+
+    private static String write(final MimeEntity entity) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long count = new MimeWriter().setBufferSize(16).write(entity, out);
+        assertEquals(out.size(), count);
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    void testAllow8Bit() throws IOException {
+        final MimeEntity entity = MimeEntity.ofText("caf\u00e9\n\u3053\u3093", "text/plain", StandardCharsets.UTF_8);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new MimeWriter().setAllow8Bit(true).write(entity, out);
+        assertEquals("Content-Type: text/plain; charset=UTF-8\r\nContent-Transfer-Encoding: 8bit\r\n\r\ncaf\u00e9\r\n\u3053\u3093", out.toString("UTF-8"));
+
+        assertEquals(TransferEncoding.EIGHT_BIT, TransferEncoding.forText("caf\u00e9", true));
+        assertEquals(TransferEncoding.SEVEN_BIT, TransferEncoding.forText("plain ASCII", true));
+        final StringBuilder longLine = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            longLine.append('\u00e9');
+        }
+        assertEquals(TransferEncoding.BASE64, TransferEncoding.forText(longLine, true));
+    }
+
+    @Test
+    void testBase64Content() throws IOException {
+        final byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        final String written = write(MimeEntity.ofContent("application/octet-stream", out -> out.write(data)));
+        assertTrue(written.startsWith("Content-Type: application/octet-stream\r\nContent-Transfer-Encoding: base64\r\n\r\n"), written);
+        final String body = written.substring(written.indexOf("\r\n\r\n") + 4);
+        for (final String line : body.split("\r\n")) {
+            assertTrue(line.length() <= 76, line);
+        }
+        assertEquals(Base64.getEncoder().encodeToString(data), body.replace("\r\n", ""));
+    }
+
+    @Test
+    void testFoldsLongHeaders() throws IOException {
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 30; i++) {
+            value.append("word").append(i).append(' ');
+        }
+        final MimeEntity entity = MimeEntity.ofText("", "text/plain", StandardCharsets.US_ASCII).addHeader("Subject", value.toString().trim());
+        final String written = write(entity);
+        final String header = written.substring(0, written.indexOf("\r\nContent-Type"));
+        for (final String line : header.split("\r\n")) {
+            assertTrue(line.length() <= 76, line);
+        }
+        assertEquals("Subject: " + value.toString().trim(), header.replace("\r\n", ""));
+    }
+
+    @Test
+    void testLongText() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            text.append('\u3053');
+        }
+        final String written = write(MimeEntity.ofText(text.toString(), "text/plain", StandardCharsets.UTF_8));
+        final String body = written.substring(written.indexOf("\r\n\r\n") + 4);
+        assertEquals(text.toString(), new String(Base64.getMimeDecoder().decode(body), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testMultipart() throws IOException {
+        final MimeEntity entity = MimeEntity.ofMultipart("mixed").addHeader("MIME-Version", "1.0")
+                .addPart(MimeEntity.ofText("Hello\nWorld", "text/plain", StandardCharsets.US_ASCII))
+                .addPart(MimeEntity.ofText("<p>Hello</p>", "text/html", StandardCharsets.UTF_8).setTransferEncoding(TransferEncoding.QUOTED_PRINTABLE));
+        final String written = write(entity);
+        assertTrue(written.startsWith("MIME-Version: 1.0\r\nContent-Type: multipart/mixed; boundary=\""), written);
+        final int start = written.indexOf("boundary=\"") + 10;
+        final String boundary = written.substring(start, written.indexOf('"', start));
+        final String expected = "--" + boundary + "\r\n"
+                + "Content-Type: text/plain; charset=US-ASCII\r\nContent-Transfer-Encoding: 7bit\r\n\r\nHello\r\nWorld\r\n"
+                + "--" + boundary + "\r\n"
+                + "Content-Type: text/html; charset=UTF-8\r\nContent-Transfer-Encoding: quoted-printable\r\n\r\n<p>Hello</p>\r\n"
+                + "--" + boundary + "--\r\n";
+        assertEquals(expected, written.substring(written.indexOf("\r\n\r\n") + 4));
+    }
+
+    @Test
+    void testSelectsTextEncoding() {
+        assertEquals(TransferEncoding.SEVEN_BIT, TransferEncoding.forText("plain ASCII"));
+        assertEquals(TransferEncoding.QUOTED_PRINTABLE, TransferEncoding.forText("caf\u00e9 au lait"));
+        assertEquals(TransferEncoding.BASE64, TransferEncoding.forText("\u3053\u3093\u306b\u3061\u306f"));
+        assertEquals(TransferEncoding.QUOTED_PRINTABLE, TransferEncoding.forType("text/calendar"));
+        assertEquals(TransferEncoding.BASE64, TransferEncoding.forType("image/png"));
+        assertEquals(TransferEncoding.BASE64, TransferEncoding.forName(" Base64 "));
+        assertThrows(IllegalArgumentException.class, () -> TransferEncoding.forName("x-unknown"));
+    }
+
+    @Test
+    void testWriteChannel() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long count = new MimeWriter().write(MimeEntity.ofText("Hi", "text/plain", StandardCharsets.US_ASCII), Channels.newChannel(out));
+        assertEquals("Content-Type: text/plain; charset=US-ASCII\r\nContent-Transfer-Encoding: 7bit\r\n\r\nHi", out.toString("US-ASCII"));
+        assertEquals(out.size(), count);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.mime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link QuotedPrintableOutputStream}.
+ */
+class QuotedPrintableOutputStreamTest {
+
+    private static String encode(final String text) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (QuotedPrintableOutputStream qp = new QuotedPrintableOutputStream(out)) {
+            qp.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toString("US-ASCII");
+    }
+
+    @Test
+    void testEncodesSpecialCharacters() throws IOException {
+        assertEquals("a=3Db", encode("a=b"));
+        assertEquals("caf=C3=A9", encode("caf\u00e9"));
+    }
+
+    @Test
+    void testLineBreaks() throws IOException {
+        assertEquals("a\r\nb\r\nc\r\nd", encode("a\nb\r\nc\rd"));
+    }
+
+    @Test
+    void testSoftLineBreaks() throws IOException {
+        final String line = "x";
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            text.append(line);
+        }
+        final String encoded = encode(text.toString());
+        for (final String encodedLine : encoded.split("\r\n")) {
+            assertEquals(true, encodedLine.length() <= 76, encodedLine);
+        }
+        assertEquals(text.toString(), encoded.replace("=\r\n", ""));
+    }
+
+    @Test
+    void testTrailingWhitespace() throws IOException {
+        assertEquals("a b=20\r\nc=09", encode("a b \nc\t"));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.MessageWriteException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ConcurrencyLimiter}.
+ */
+class ConcurrencyLimiterTest {
+
+    private static SmtpException reply(final int code) {
+        return new SmtpException("Relay replied", new SmtpReply(code, Collections.singletonList("Try again later")));
+    }
+
+    @Test
+    void testAdditiveIncrease() throws EmailException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setInitialLimit(2).setLatencyTolerance(Double.POSITIVE_INFINITY);
+        final ConcurrencyLimiter.Limit limit = limiter.getLimit("relay");
+        for (int round = 0; round < 10; round++) {
+            final List<ConcurrencyLimiter.Permit> permits = new ArrayList<>();
+            for (int i = 0; i < limit.getLimit(); i++) {
+                permits.add(limiter.acquire("relay"));
+            }
+            assertNull(limiter.tryAcquire("relay"));
+            permits.forEach(permit -> permit.release(null));
+        }
+        assertTrue(limit.getLimit() > 5, limit::toString);
+        assertEquals(0, limit.getInFlight());
+        assertTrue(limit.getLatency().toNanos() > 0);
+
+        // an idle relay does not grow its limit
+        final int idle = limit.getLimit();
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire("relay").release(null);
+        }
+        assertEquals(idle, limit.getLimit());
+    }
+
+    @Test
+    void testLatency() throws EmailException, InterruptedException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setInitialLimit(10).setLatencyTolerance(5);
+        for (int i = 0; i < 3; i++) {
+            final ConcurrencyLimiter.Permit permit = limiter.acquire("relay");
+            Thread.sleep(5);
+            permit.release(null);
+        }
+        final ConcurrencyLimiter.Permit slow = limiter.acquire("relay");
+        Thread.sleep(200);
+        slow.release(null);
+        final ConcurrencyLimiter.Limit limit = limiter.getLimit("relay");
+        assertEquals(9, limit.getLimit());
+        assertEquals(1, limit.getDrops());
+        assertTrue(limit.getBaselineLatency().toMillis() < 50);
+    }
+
+    @Test
+    void testMaxWait() throws EmailException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setInitialLimit(1).setMaxWait(Duration.ofMillis(50));
+        final ConcurrencyLimiter.Permit permit = limiter.acquire("relay");
+        assertThrows(EmailException.class, () -> limiter.acquire("relay"));
+        permit.release(null);
+        permit.release(reply(421));
+        assertEquals(0, limiter.getLimit("relay").getDrops());
+        assertNotNull(limiter.tryAcquire("relay"));
+        assertThrows(IllegalArgumentException.class, () -> limiter.setBackoffRatio(1));
+    }
+
+    @Test
+    void testMixedSizes() throws EmailException, InterruptedException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setInitialLimit(10).setLatencyTolerance(5);
+        for (int i = 0; i < 6; i++) {
+            final ConcurrencyLimiter.Permit permit = limiter.acquire("relay");
+            // the command round trips
+            Thread.sleep(20);
+            // the content of every other message takes twenty times as long
+            final long contentStart = System.nanoTime();
+            Thread.sleep(i % 2 == 0 ? 0 : 400);
+            permit.release(null, i % 2 == 0 ? 0 : System.nanoTime() - contentStart);
+        }
+        final ConcurrencyLimiter.Limit limit = limiter.getLimit("relay");
+        assertEquals(10, limit.getLimit());
+        assertEquals(0, limit.getDrops());
+        assertTrue(limit.getLatency().toMillis() < 200, limit::toString);
+
+        // a cancelled permit neither counts as in flight nor adapts the limit
+        limiter.acquire("relay").cancel();
+        assertEquals(0, limit.getInFlight());
+        assertEquals(10, limit.getLimit());
+    }
+
+    @Test
+    void testMultiplicativeDecrease() throws EmailException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setInitialLimit(20).setBackoffRatio(0.5).setMinLimit(2);
+        final ConcurrencyLimiter.Limit limit = limiter.getLimit("relay");
+        final ConcurrencyLimiter.Permit first = limiter.acquire("relay");
+        final ConcurrencyLimiter.Permit second = limiter.acquire("relay");
+        first.release(reply(421));
+        assertEquals(10, limit.getLimit());
+        // sent before the cut, so it does not cut again
+        second.release(new EmailException(new ConnectException("Connection refused")));
+        assertEquals(10, limit.getLimit());
+        assertEquals(2, limit.getDrops());
+
+        limiter.acquire("relay").release(reply(550));
+        assertEquals(10, limit.getLimit());
+        // the content failed to write, not the relay
+        limiter.acquire("relay").release(new MessageWriteException("Writing failed", new IOException("Attachment unreadable")));
+        assertEquals(10, limit.getLimit());
+        limiter.acquire("relay").release(new EmailException("Sending failed", new IOException("Broken pipe")));
+        assertEquals(5, limit.getLimit());
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire("relay").release(reply(451));
+        }
+        assertEquals(2, limit.getLimit());
+        assertEquals(limit, limiter.getLimits().iterator().next());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link HappyEyeballs}.
+ */
+class HappyEyeballsTest {
+
+    /** The sockets to close after each test. */
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+
+    /**
+     * Creates an address that accepts no connection and does not refuse either, by filling the backlog of a server socket that never accepts.
+     */
+    private InetSocketAddress blackhole() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        closeables.add(serverSocket);
+        for (int i = 0; i < 2; i++) {
+            final Socket socket = new Socket();
+            closeables.add(socket);
+            socket.connect(serverSocket.getLocalSocketAddress(), 1000);
+        }
+        return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Creates an address that refuses connections.
+     */
+    private InetSocketAddress refused() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return (InetSocketAddress) serverSocket.getLocalSocketAddress();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (final AutoCloseable closeable : closeables) {
+            closeable.close();
+        }
+    }
+
+    @Test
+    void testConnectFailed() throws IOException {
+        final IOException e = assertThrows(IOException.class,
+                () -> HappyEyeballs.connect(Arrays.asList(refused(), refused(), refused()), Duration.ofSeconds(10), Duration.ofSeconds(10)));
+        assertEquals(2, e.getSuppressed().length);
+    }
+
+    @Test
+    void testConnectSkipsUnreachable() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        closeables.add(serverSocket);
+        final long start = System.nanoTime();
+        try (Socket socket = HappyEyeballs.connect(Arrays.asList(blackhole(), (InetSocketAddress) serverSocket.getLocalSocketAddress()),
+                Duration.ofMillis(100), Duration.ofSeconds(30))) {
+            assertEquals(serverSocket.getLocalPort(), socket.getPort());
+        }
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(10)) < 0);
+    }
+
+    @Test
+    void testConnectSharesThreads() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        closeables.add(serverSocket);
+        for (int i = 0; i < HappyEyeballs.THREADS * 2; i++) {
+            try (Socket socket = HappyEyeballs.connect(Arrays.asList(refused(), (InetSocketAddress) serverSocket.getLocalSocketAddress()),
+                    Duration.ofSeconds(20), Duration.ofSeconds(30))) {
+                assertEquals(serverSocket.getLocalPort(), socket.getPort());
+            }
+        }
+        final long threads = Thread.getAllStackTraces().keySet().stream().filter(thread -> thread.getName().startsWith("HappyEyeballs-")).count();
+        assertTrue(threads <= HappyEyeballs.THREADS, () -> threads + " threads");
+    }
+
+    @Test
+    void testConnectStartsNextOnFailure() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        closeables.add(serverSocket);
+        final long start = System.nanoTime();
+        // the refused attempt does not wait for the attempt delay
+        try (Socket socket = HappyEyeballs.connect(Arrays.asList(refused(), (InetSocketAddress) serverSocket.getLocalSocketAddress()),
+                Duration.ofSeconds(20), Duration.ofSeconds(30))) {
+            assertEquals(serverSocket.getLocalPort(), socket.getPort());
+        }
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(10)) < 0);
+    }
+
+    @Test
+    void testConnectTimeout() {
+        assertThrows(SocketTimeoutException.class,
+                () -> HappyEyeballs.connect(Arrays.asList(blackhole(), blackhole()), Duration.ofMillis(50), Duration.ofMillis(300)));
+    }
+
+    @Test
+    void testInterleave() throws IOException {
+        final InetAddress v6a = InetAddress.getByAddress(new byte[] { 32, 1, 13, -72, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1 });
+        final InetAddress v6b = InetAddress.getByAddress(new byte[] { 32, 1, 13, -72, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2 });
+        final InetAddress v6c = InetAddress.getByAddress(new byte[] { 32, 1, 13, -72, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 3 });
+        final InetAddress v4a = InetAddress.getByAddress(new byte[] { (byte) 192, 0, 2, 1 });
+        final InetAddress v4b = InetAddress.getByAddress(new byte[] { (byte) 192, 0, 2, 2 });
+        assertEquals(Arrays.asList(new InetSocketAddress(v6a, 25), new InetSocketAddress(v4a, 25), new InetSocketAddress(v6b, 25),
+                new InetSocketAddress(v4b, 25), new InetSocketAddress(v6c, 25)),
+                HappyEyeballs.interleave(new InetAddress[] { v6a, v6b, v6c, v4a, v4b }, 25));
+        assertEquals(Arrays.asList(new InetSocketAddress(v4a, 25), new InetSocketAddress(v6a, 25), new InetSocketAddress(v4b, 25)),
+                HappyEyeballs.interleave(new InetAddress[] { v4a, v4b, v6a }, 25));
+    }
+}
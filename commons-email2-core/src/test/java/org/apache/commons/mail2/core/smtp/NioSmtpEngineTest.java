@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.mail2.core.Deadline;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link NioSmtpEngine}.
+ */
+class NioSmtpEngineTest {
+
+    private SmtpStandIn server;
+
+    private SmtpClient client;
+
+    private NioSmtpEngine engine;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new SmtpStandIn("PIPELINING", "AUTH PLAIN LOGIN", "8BITMIME");
+        client = new SmtpClient().setHost("127.0.0.1").setPort(server.getPort()).setLocalHost("client.example.com");
+        engine = new NioSmtpEngine();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        engine.close();
+        server.close();
+    }
+
+    @Test
+    void testAuthentication() throws Exception {
+        client.setAuthentication("user", "secret");
+        engine.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS);
+        assertTrue(server.getCommands().contains("AUTH PLAIN AHVzZXIAc2VjcmV0"));
+    }
+
+    @Test
+    void testConcurrencyLimit() throws Exception {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setInitialLimit(1).setMaxLimit(1);
+        client.setConcurrencyLimiter(limiter);
+        final List<CompletableFuture<SmtpReply>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(engine.send(client, Envelope.of("from@example.com", "to" + i + "@example.com"), out -> out.write('x')));
+            assertTrue(limiter.getLimit(limiter.getKey(client)).getInFlight() <= 1);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(5, server.getMessages().size());
+        assertEquals(0, limiter.getLimit(limiter.getKey(client)).getInFlight());
+    }
+
+    @Test
+    void testConcurrentSends() throws Exception {
+        final List<CompletableFuture<SmtpReply>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final String body = "message " + i;
+            final Envelope envelope = Envelope.of("from@example.com", "to" + i + "@example.com");
+            futures.add(engine.send(client, envelope, out -> out.write(body.getBytes(StandardCharsets.US_ASCII))));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        assertEquals(100, server.getMessages().size());
+        for (final SmtpStandIn.Received message : server.getMessages()) {
+            assertEquals("message " + message.getRecipients().get(0).replaceAll("\\D", "") + "\r\n", message.getDataAsString());
+        }
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        try (ServerSocket slow = SmtpClientTest.trickle()) {
+            client.setPort(slow.getLocalPort()).setReadTimeout(Duration.ofSeconds(60)).setDeadline(Deadline.after(Duration.ofMillis(300)));
+            final ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> engine.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(EmailTimeoutException.class, e.getCause());
+        }
+    }
+
+    @Test
+    void testRateLimit() throws Exception {
+        client.setRateLimiter(new RateLimiter(10, 1, 0, 0));
+        final long start = System.nanoTime();
+        final List<CompletableFuture<SmtpReply>> futures = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            futures.add(engine.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(180));
+        assertEquals(3, server.getMessages().size());
+
+        client.setRateLimiter(new RateLimiter(0.5, 1, 0, 0).setMode(RateLimiter.Mode.FAIL_FAST));
+        engine.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS);
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> engine.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(RateLimitExceededException.class, e.getCause());
+    }
+
+    @Test
+    void testRejectedRecipient() throws Exception {
+        server.reject("bad@example.com");
+        final Envelope envelope = Envelope.of("from@example.com", "bad@example.com", "good@example.com");
+        final ExecutionException e = assertThrows(ExecutionException.class,
+                () -> engine.send(client, envelope, out -> out.write('x')).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(SmtpException.class, e.getCause());
+        assertTrue(server.getMessages().isEmpty());
+        client.setSendPartial(true);
+        engine.send(client, envelope, out -> out.write('x')).get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("good@example.com"), server.getMessages().get(0).getRecipients());
+    }
+
+    @Test
+    void testSend() throws Exception {
+        final SmtpReply reply = engine.send(client, Envelope.of("from@example.com", "a@example.com", "b@example.com"),
+                out -> out.write(".leading dot\r\nline\r\n".getBytes(StandardCharsets.US_ASCII))).get(10, TimeUnit.SECONDS);
+        assertEquals(250, reply.getCode());
+        final List<String> commands = new ArrayList<>(server.getCommands());
+        assertEquals(Arrays.asList("EHLO client.example.com", "MAIL FROM:<from@example.com>", "RCPT TO:<a@example.com>", "RCPT TO:<b@example.com>", "DATA"),
+                commands.subList(0, 5));
+        assertEquals(".leading dot\r\nline\r\n", server.getMessages().get(0).getDataAsString());
+        for (int i = 0; i < 50 && engine.getActiveSessions() > 0; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, engine.getActiveSessions());
+    }
+
+    @Test
+    void testUnresolvableHost() throws Exception {
+        try (NioSmtpEngine single = new NioSmtpEngine(1)) {
+            final SmtpClient unresolvable = new SmtpClient(client).setHost("no-such-host.invalid");
+            final ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> single.send(unresolvable, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(EmailException.class, e.getCause());
+            // the worker survives and sends the next message
+            single.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, server.getMessages().size());
+    }
+
+    @Test
+    void testTimeout() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            client.setPort(silent.getLocalPort()).setReadTimeout(Duration.ofMillis(300));
+            final ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> engine.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS));
+            assertInstanceOf(EmailException.class, e.getCause());
+        }
+    }
+}
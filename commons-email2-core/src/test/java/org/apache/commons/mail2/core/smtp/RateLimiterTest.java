@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link RateLimiter} and {@link TokenBucket}.
+ */
+class RateLimiterTest {
+
+    @Test
+    void testBlock() throws EmailException {
+        final RateLimiter limiter = new RateLimiter(20, 1, 0, 0);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            limiter.acquire("relay", 1);
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertNull(limiter.getRecipientBucket("relay"));
+    }
+
+    @Test
+    void testBucket() {
+        final TokenBucket bucket = new TokenBucket(1, 3);
+        assertEquals(3, bucket.getAvailableTokens());
+        assertTrue(bucket.tryAcquire(2));
+        assertFalse(bucket.tryAcquire(2));
+        assertEquals(1, bucket.getAvailableTokens());
+        assertTrue(bucket.getWaitNanos(2) > TimeUnit.MILLISECONDS.toNanos(900));
+        bucket.refund(2);
+        assertEquals(3, bucket.getAvailableTokens());
+        assertEquals(0, bucket.reserve(3));
+        assertTrue(bucket.reserve(1) > TimeUnit.MILLISECONDS.toNanos(900));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+    }
+
+    @Test
+    void testConcurrentAcquire() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(0.001, 100);
+        final AtomicInteger granted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 50; j++) {
+                    if (bucket.tryAcquire(1)) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(100, granted.get());
+    }
+
+    @Test
+    void testFailFast() throws EmailException {
+        final RateLimiter limiter = new RateLimiter(1, 2, 1, 3).setMode(RateLimiter.Mode.FAIL_FAST);
+        limiter.acquire("relay", 2);
+        final RateLimitExceededException e = assertThrows(RateLimitExceededException.class, () -> limiter.acquire("relay", 2));
+        assertEquals("relay", e.getKey());
+        assertTrue(e.getRetryAfter().toMillis() > 500);
+        // the message token of the failed acquire is given back
+        assertEquals(1, limiter.getMessageBucket("relay").getAvailableTokens());
+        limiter.acquire("relay", 1);
+        limiter.acquire("other", 3);
+    }
+
+    @Test
+    void testFailFastBeyondBurst() {
+        final RateLimiter limiter = new RateLimiter(1, 2, 1, 3).setMode(RateLimiter.Mode.FAIL_FAST);
+        final RateLimitExceededException e = assertThrows(RateLimitExceededException.class, () -> limiter.acquire("relay", 4));
+        assertEquals("relay", e.getKey());
+        assertNull(e.getRetryAfter());
+        assertTrue(e.getMessage().contains("recipient burst of 3"), e.getMessage());
+        // no token is taken
+        assertEquals(2, limiter.getMessageBucket("relay").getAvailableTokens());
+        assertEquals(3, limiter.getRecipientBucket("relay").getAvailableTokens());
+    }
+
+    @Test
+    void testMaxWait() throws EmailException {
+        final RateLimiter limiter = new RateLimiter(1, 1, 0, 0).setMaxWait(Duration.ofMillis(100));
+        limiter.acquire("relay", 1);
+        assertThrows(RateLimitExceededException.class, () -> limiter.acquire("relay", 1));
+        assertTrue(limiter.getMessageBucket("relay").getWaitNanos(1) <= TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    void testScope() {
+        final SmtpClient client = new SmtpClient().setHost("relay.example.com").setPort(587).setAuthentication("user", "secret");
+        final RateLimiter limiter = new RateLimiter(1, 1);
+        assertEquals("relay.example.com:587", limiter.getKey(client));
+        limiter.setScope(RateLimiter.Scope.CREDENTIAL);
+        assertEquals("user@relay.example.com:587", limiter.getKey(client));
+        assertEquals("relay.example.com:25", limiter.getKey(new SmtpClient().setHost("relay.example.com")));
+    }
+}
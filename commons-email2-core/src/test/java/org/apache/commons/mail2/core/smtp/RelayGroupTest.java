@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.MessageWriteException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link RelayGroup}.
+ */
+class RelayGroupTest {
+
+    private static int unusedPort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private SmtpStandIn first;
+
+    private SmtpStandIn second;
+
+    private final SmtpClient client = new SmtpClient().setLocalHost("client.example.com").setConnectTimeout(Duration.ofSeconds(2));
+
+    private Envelope envelope;
+
+    @BeforeEach
+    public void setUp() throws IOException, EmailException {
+        first = new SmtpStandIn();
+        second = new SmtpStandIn();
+        envelope = Envelope.of("from@example.com", "to@example.com");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        first.close();
+        second.close();
+    }
+
+    @Test
+    void testExecute() throws EmailException, IOException {
+        first.setLmtp(true);
+        final SmtpClient lmtpClient = new SmtpClient(client).setLmtp(true);
+        final RelayGroup group = new RelayGroup().addRelay("127.0.0.1", unusedPort()).addRelay("127.0.0.1", first.getPort());
+        final AtomicInteger transactions = new AtomicInteger();
+        final Map<String, SmtpReply> replies = group.execute(lmtpClient, 1, connection -> {
+            transactions.incrementAndGet();
+            return lmtpClient.deliver(connection, envelope, out -> out.write('x'), 1);
+        });
+        // the transaction only runs on the relay that could be reached
+        assertEquals(1, transactions.get());
+        assertEquals(250, replies.get("to@example.com").getCode());
+        assertEquals(1, first.getMessages().size());
+        assertEquals(0, group.getRelays().get(0).getOutstanding());
+    }
+
+    @Test
+    void testFailover() throws EmailException, IOException, InterruptedException {
+        final RelayGroup group = new RelayGroup().setFailureThreshold(1).setEjectDuration(Duration.ofMillis(200));
+        group.addRelay("127.0.0.1", unusedPort()).addRelay("127.0.0.1", first.getPort());
+        final RelayGroup.Relay down = group.getRelays().get(0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(250, group.send(client, envelope, out -> out.write('x'), 1).getCode());
+        }
+        assertEquals(3, first.getMessages().size());
+        assertTrue(down.isEjected());
+        assertEquals(0, down.getOutstanding());
+        Thread.sleep(300);
+        assertFalse(down.isEjected());
+
+        final RelayGroup unreachable = new RelayGroup().addRelay("127.0.0.1", unusedPort());
+        final EmailException e = assertThrows(EmailException.class, () -> unreachable.send(client, envelope, out -> out.write('x'), 1));
+        assertTrue(RelayGroup.isConnectionFailure(e));
+        assertThrows(EmailException.class, () -> new RelayGroup().send(client, envelope, out -> out.write('x'), 1));
+    }
+
+    @Test
+    void testLatencySelection() throws EmailException {
+        final RelayGroup group = new RelayGroup().setSelection(RelayGroup.Selection.LATENCY);
+        group.addRelay("127.0.0.1", first.getPort()).addRelay("127.0.0.1", second.getPort());
+        group.send(client, envelope, out -> out.write('x'), 1);
+        group.send(client, envelope, out -> out.write('x'), 1);
+        // relays without a latency are tried first
+        assertEquals(1, first.getMessages().size());
+        assertEquals(1, second.getMessages().size());
+        for (final RelayGroup.Relay relay : group.getRelays()) {
+            assertFalse(relay.getLatency().isZero());
+        }
+    }
+
+    @Test
+    void testRejectionIsNotFailedOver() throws EmailException {
+        first.reject("to@example.com");
+        final RelayGroup group = new RelayGroup().addRelay("127.0.0.1", first.getPort()).addRelay("127.0.0.1", second.getPort());
+        final SmtpException e = assertThrows(SmtpException.class, () -> group.send(client, envelope, out -> out.write('x'), 1));
+        assertEquals(550, e.getReply().getCode());
+        assertTrue(second.getMessages().isEmpty());
+        assertFalse(group.getRelays().get(0).isEjected());
+    }
+
+    @Test
+    void testWriteFailureIsNotFailedOver() throws EmailException {
+        final RelayGroup group = new RelayGroup().setFailureThreshold(1);
+        group.addRelay("127.0.0.1", first.getPort()).addRelay("127.0.0.1", second.getPort());
+        assertThrows(MessageWriteException.class, () -> group.send(client, envelope, out -> {
+            out.write('x');
+            throw new IOException("Attachment unreadable");
+        }, 1));
+        assertTrue(first.getMessages().isEmpty());
+        assertTrue(second.getMessages().isEmpty());
+        assertFalse(group.getRelays().get(0).isEjected());
+    }
+
+    @Test
+    void testWeightedRoundRobin() throws EmailException {
+        final RelayGroup group = new RelayGroup().addRelay("127.0.0.1", first.getPort(), 2).addRelay("127.0.0.1", second.getPort());
+        for (int i = 0; i < 6; i++) {
+            group.send(client, envelope, out -> out.write('x'), 1);
+        }
+        assertEquals(4, first.getMessages().size());
+        assertEquals(2, second.getMessages().size());
+    }
+}
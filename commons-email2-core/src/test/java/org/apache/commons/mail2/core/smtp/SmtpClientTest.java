@@ -0,0 +1,332 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.commons.mail2.core.Deadline;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
+import org.apache.commons.mail2.core.MessageTooLargeException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link SmtpClient}.
+ */
+class SmtpClientTest {
+
+    /**
+     * Accepts one connection and sends a long greeting one byte every 50 milliseconds, like a relay that answers slowly but steadily.
+     */
+    static ServerSocket trickle() throws IOException {
+        final ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        final Thread thread = new Thread(() -> {
+            try (Socket socket = serverSocket.accept(); OutputStream out = socket.getOutputStream()) {
+                for (final byte b : "220 slow.example.com ESMTP ready, eventually, after a while\r\n".getBytes(StandardCharsets.US_ASCII)) {
+                    out.write(b);
+                    out.flush();
+                    Thread.sleep(50);
+                }
+            } catch (final IOException | InterruptedException e) {
+                // the client gave up
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return serverSocket;
+    }
+
+    private SmtpStandIn server;
+
+    private SmtpClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new SmtpStandIn("PIPELINING", "AUTH PLAIN LOGIN", "8BITMIME");
+        client = new SmtpClient().setHost("127.0.0.1").setPort(server.getPort()).setLocalHost("client.example.com");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void testBodyType() throws EmailException, IOException {
+        final Envelope envelope = Envelope.of("from@example.com", "to@example.com").withBodyType(BodyType.EIGHT_BIT_MIME);
+        client.send(envelope, out -> out.write("caf\u00e9".getBytes(StandardCharsets.UTF_8)));
+        assertEquals("BODY=8BITMIME", server.getMessages().get(0).getMailParameters());
+        assertEquals("caf\u00e9\r\n", server.getMessages().get(0).getDataAsString());
+        try (SmtpStandIn plain = new SmtpStandIn()) {
+            client.setPort(plain.getPort());
+            assertThrows(EmailException.class, () -> client.send(envelope, out -> out.write('x')));
+            assertTrue(plain.getCommands().stream().noneMatch(command -> command.startsWith("MAIL")));
+        }
+    }
+
+    @Test
+    void testCapabilities() throws EmailException {
+        try (SmtpConnection connection = client.connect()) {
+            assertTrue(connection.supports("pipelining"));
+            assertEquals("PLAIN LOGIN", connection.getCapability("AUTH"));
+            assertNull(connection.getCapability("SIZE"));
+        } catch (final IOException e) {
+            throw new EmailException(e);
+        }
+        assertEquals("EHLO client.example.com", server.getCommands().get(0));
+    }
+
+    @Test
+    void testCapabilityCache() throws EmailException {
+        client.setCapabilityCache(new CapabilityCache(Duration.ofMinutes(1)));
+        assertTrue(client.getCapabilities().containsKey("8BITMIME"));
+        assertEquals(0, client.getSizeLimit());
+        client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write('x'));
+        assertTrue(client.getCapabilities().containsKey("PIPELINING"));
+        // one probe and one send, the later lookups are served from the cache
+        assertEquals(2, server.getCommands().stream().filter(command -> command.startsWith("EHLO")).count());
+    }
+
+    @Test
+    void testChunking() throws EmailException, IOException {
+        try (SmtpStandIn chunking = new SmtpStandIn("CHUNKING", "BINARYMIME", "8BITMIME")) {
+            client.setPort(chunking.getPort()).setChunkSize(4);
+            final Envelope envelope = Envelope.of("from@example.com", "to@example.com");
+            client.send(envelope, out -> out.write("Subject: x\n\n.dot".getBytes(StandardCharsets.US_ASCII)));
+            // line endings are normalized, the dot line is not stuffed
+            assertEquals("Subject: x\r\n\r\n.dot", chunking.getMessages().get(0).getDataAsString());
+            assertEquals(Arrays.asList("BDAT 4", "BDAT 4", "BDAT 4", "BDAT 4", "BDAT 2 LAST"),
+                    chunking.getCommands().stream().filter(command -> command.startsWith("BDAT")).collect(Collectors.toList()));
+
+            final byte[] binary = { 0, '\n', '.', '\r', (byte) 0xff };
+            client.send(envelope.withBodyType(BodyType.BINARY_MIME), out -> out.write(binary));
+            assertArrayEquals(binary, chunking.getMessages().get(1).getData());
+            assertEquals("BODY=BINARYMIME", chunking.getMessages().get(1).getMailParameters());
+        }
+        // the stand-in of the other tests supports neither CHUNKING nor BINARYMIME
+        client.setPort(server.getPort());
+        client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write('x'));
+        assertTrue(server.getCommands().contains("DATA"));
+        assertThrows(EmailException.class,
+                () -> client.send(Envelope.of("from@example.com", "to@example.com").withBodyType(BodyType.BINARY_MIME), out -> out.write('x')));
+    }
+
+    @Test
+    void testConcurrencyLimit() throws EmailException, IOException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+        client.setConcurrencyLimiter(limiter);
+        client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write('x'));
+        final ConcurrencyLimiter.Limit limit = limiter.getLimit(limiter.getKey(client));
+        assertEquals(0, limit.getInFlight());
+        assertTrue(limit.getLatency().toNanos() > 0);
+
+        try (ServerSocket unused = new ServerSocket(0)) {
+            client.setPort(unused.getLocalPort());
+        }
+        final ConcurrencyLimiter.Limit down = limiter.getLimit(limiter.getKey(client));
+        assertThrows(EmailException.class, () -> client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')));
+        assertEquals(0, down.getInFlight());
+        assertEquals(1, down.getDrops());
+        assertEquals(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT - 1, down.getLimit());
+    }
+
+    @Test
+    void testDeadline() throws Exception {
+        try (ServerSocket slow = trickle()) {
+            client.setPort(slow.getLocalPort()).setReadTimeout(Duration.ofSeconds(60)).setDeadline(Deadline.after(Duration.ofMillis(300)));
+            final long start = System.nanoTime();
+            final EmailTimeoutException e = assertThrows(EmailTimeoutException.class,
+                    () -> client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')));
+            assertEquals(Duration.ofMillis(300), e.getTimeout());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        }
+        assertThrows(EmailTimeoutException.class, client::connect);
+    }
+
+    @Test
+    void testDeadlineBoundsLimiterWaits() throws EmailException {
+        final Envelope envelope = Envelope.of("from@example.com", "to@example.com");
+        // one message every ten seconds, and the token is taken
+        final RateLimiter rateLimiter = new RateLimiter(0.1, 1, 0, 0);
+        rateLimiter.acquire(rateLimiter.getKey(client), 1);
+        client.setRateLimiter(rateLimiter).setDeadline(Deadline.after(Duration.ofSeconds(1)));
+        long start = System.nanoTime();
+        assertThrows(EmailTimeoutException.class, () -> client.send(envelope, out -> out.write('x')));
+        // fails at once rather than waiting past the deadline
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+
+        final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter().setInitialLimit(1).setMaxLimit(1);
+        final ConcurrencyLimiter.Permit held = concurrencyLimiter.acquire(concurrencyLimiter.getKey(client));
+        client.setRateLimiter(null).setConcurrencyLimiter(concurrencyLimiter).setDeadline(Deadline.after(Duration.ofMillis(300)));
+        start = System.nanoTime();
+        assertThrows(EmailTimeoutException.class, () -> client.send(envelope, out -> out.write('x')));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        held.release(null);
+        assertEquals(0, concurrencyLimiter.getLimit(concurrencyLimiter.getKey(client)).getInFlight());
+        assertTrue(server.getMessages().isEmpty());
+    }
+
+    @Test
+    void testDeliver() throws EmailException {
+        server.setLmtp(true).reject("bad@example.com").failDelivery("full@example.com");
+        client.setLmtp(true);
+        final Envelope envelope = Envelope.of("from@example.com", "a@example.com", "bad@example.com", "full@example.com", "b@example.com");
+        final Map<String, SmtpReply> replies = client.deliver(envelope, out -> out.write('x'), 1);
+        assertEquals(envelope.getRecipients(), new ArrayList<>(replies.keySet()));
+        assertEquals(Arrays.asList(250, 550, 550, 250), replies.values().stream().map(SmtpReply::getCode).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("a@example.com", "full@example.com", "b@example.com"), server.getMessages().get(0).getRecipients());
+
+        final Envelope rejected = Envelope.of("from@example.com", "bad@example.com");
+        assertEquals(550, client.deliver(rejected, out -> out.write('x'), 1).get("bad@example.com").getCode());
+        assertEquals(1, server.getMessages().size());
+        assertTrue(server.getCommands().contains("RSET"));
+
+        server.setLmtp(false);
+        final Map<String, SmtpReply> smtp = client.setLmtp(false).deliver(envelope, out -> out.write('x'), 1);
+        assertEquals(Arrays.asList(250, 550, 250, 250), smtp.values().stream().map(SmtpReply::getCode).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testDotStuffingAndLineEndings() throws EmailException {
+        final String message = "Subject: dots\n\n.leading dot\r\n..two dots\rlast line without end";
+        client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write(message.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("Subject: dots\r\n\r\n.leading dot\r\n..two dots\r\nlast line without end\r\n", server.getMessages().get(0).getDataAsString());
+    }
+
+    @Test
+    void testEnvelope() throws EmailException {
+        client.setAuthentication("user", "secret");
+        final SmtpReply reply = client.send(Envelope.of("bounce@example.com", "a@example.com", "b@example.com"), out -> out.write('x'));
+        assertEquals(250, reply.getCode());
+        final SmtpStandIn.Received received = server.getMessages().get(0);
+        assertEquals("bounce@example.com", received.getReversePath());
+        assertEquals(Arrays.asList("a@example.com", "b@example.com"), received.getRecipients());
+        assertTrue(server.getCommands().contains("AUTH PLAIN AHVzZXIAc2VjcmV0"));
+    }
+
+    @Test
+    void testInvalidEnvelope() {
+        assertThrows(EmailException.class, () -> Envelope.of("from@example.com"));
+        assertThrows(EmailException.class, () -> Envelope.of("from@example.com", "to@example.com>\r\nDATA"));
+    }
+
+    @Test
+    void testLmtp() throws EmailException {
+        server.setLmtp(true).failDelivery("full@example.com");
+        client.setLmtp(true).setChunkSize(4);
+        final Envelope envelope = Envelope.of("from@example.com", "a@example.com", "full@example.com");
+        final SmtpException e = assertThrows(SmtpException.class, () -> client.send(envelope, out -> out.write('x')));
+        assertEquals(550, e.getReply().getCode());
+        assertEquals("LHLO client.example.com", server.getCommands().get(0));
+
+        final SmtpReply reply = client.setSendPartial(true).send(envelope, out -> out.write('x'));
+        assertEquals(250, reply.getCode());
+        assertEquals("x\r\n", server.getMessages().get(1).getDataAsString());
+        assertTrue(server.getCommands().stream().noneMatch(command -> command.startsWith("BDAT")));
+    }
+
+    @Test
+    void testRelaySizeLimit() throws EmailException, IOException {
+        try (SmtpStandIn limited = new SmtpStandIn("SIZE 100")) {
+            client.setPort(limited.getPort());
+            assertEquals(100, client.getSizeLimit());
+            final Envelope envelope = Envelope.of("from@example.com", "to@example.com");
+            final MessageTooLargeException e = assertThrows(MessageTooLargeException.class, () -> client.send(envelope, out -> out.write(new byte[101]), 101));
+            assertEquals(101, e.getSize());
+            assertEquals(100, e.getLimit());
+            assertTrue(limited.getMessages().isEmpty());
+            assertTrue(limited.getCommands().stream().noneMatch(command -> command.startsWith("MAIL")));
+
+            client.send(envelope, out -> out.write(new byte[10]), 10);
+            assertEquals("SIZE=10", limited.getMessages().get(0).getMailParameters());
+        }
+    }
+
+    @Test
+    void testRateLimit() throws EmailException {
+        client.setRateLimiter(new RateLimiter(1, 1, 0, 0).setMode(RateLimiter.Mode.FAIL_FAST));
+        final Envelope envelope = Envelope.of("from@example.com", "to@example.com");
+        client.send(envelope, out -> out.write('x'));
+        final int commands = server.getCommands().size();
+        assertThrows(RateLimitExceededException.class, () -> client.send(envelope, out -> out.write('x')));
+        assertEquals(commands, server.getCommands().size());
+        assertEquals(1, server.getMessages().size());
+    }
+
+    @Test
+    void testRejectedRecipients() throws EmailException {
+        server.reject("bad@example.com");
+        final Envelope envelope = Envelope.of("", "good@example.com", "bad@example.com");
+        final SmtpException e = assertThrows(SmtpException.class, () -> client.send(envelope, out -> out.write('x')));
+        assertEquals(550, e.getReply().getCode());
+        assertTrue(server.getMessages().isEmpty());
+
+        client.setSendPartial(true).send(envelope, out -> out.write('x'));
+        assertEquals(Arrays.asList("good@example.com"), server.getMessages().get(0).getRecipients());
+        assertEquals("", server.getMessages().get(0).getReversePath());
+    }
+
+    @Test
+    void testSmtpUtf8() throws EmailException, IOException {
+        final Envelope envelope = Envelope.of("from@example.com", "j\u00f6rg@m\u00fcller.example").withSmtpUtf8(true);
+        assertThrows(EmailException.class, () -> client.send(envelope, out -> out.write('x')));
+        try (SmtpStandIn utf8 = new SmtpStandIn("SMTPUTF8")) {
+            client.setPort(utf8.getPort());
+            client.send(envelope, out -> out.write('x'));
+            assertEquals("SMTPUTF8", utf8.getMessages().get(0).getMailParameters());
+            assertEquals(Arrays.asList("j\u00f6rg@m\u00fcller.example"), utf8.getMessages().get(0).getRecipients());
+        }
+    }
+
+    @Test
+    void testUnixSocket(@TempDir final Path directory) throws Exception {
+        try {
+            Class.forName("java.net.UnixDomainSocketAddress");
+        } catch (final ClassNotFoundException e) {
+            assumeTrue(false, "Unix domain sockets require Java 16");
+        }
+        final Path socket = directory.resolve("lmtp.sock");
+        try (SmtpStandIn unix = SmtpStandIn.unix(socket, "PIPELINING").setLmtp(true)) {
+            client.setHost(null).setUnixSocket(socket).setLmtp(true).setStartTlsEnabled(true);
+            client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write('x'));
+            assertEquals(Arrays.asList("to@example.com"), unix.getMessages().get(0).getRecipients());
+        }
+    }
+}
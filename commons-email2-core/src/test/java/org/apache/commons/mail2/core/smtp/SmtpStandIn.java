@@ -0,0 +1,421 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ProtocolFamily;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.ssl.SSLContext;
+
+/**
+ * A minimal SMTP and LMTP server for tests that records the transactions it accepts, listening on TCP or on a Unix domain socket.
+ */
+public class SmtpStandIn implements Closeable {
+
+    /**
+     * A received message.
+     */
+    public static final class Received {
+
+        /** The reverse-path. */
+        private final String reversePath;
+
+        /** The accepted recipients. */
+        private final List<String> recipients;
+
+        /** The MAIL FROM parameters. */
+        private final String mailParameters;
+
+        /** The message data, without dot-stuffing. */
+        private final byte[] data;
+
+        Received(final String reversePath, final List<String> recipients, final String mailParameters, final byte[] data) {
+            this.reversePath = reversePath;
+            this.recipients = recipients;
+            this.mailParameters = mailParameters;
+            this.data = data;
+        }
+
+        /**
+         * Gets the message data, without dot-stuffing.
+         *
+         * @return the data.
+         */
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Gets the message data as UTF-8 text.
+         *
+         * @return the data.
+         */
+        public String getDataAsString() {
+            return new String(data, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Gets the MAIL FROM parameters.
+         *
+         * @return the parameters, empty if there were none.
+         */
+        public String getMailParameters() {
+            return mailParameters;
+        }
+
+        /**
+         * Gets the accepted recipients.
+         *
+         * @return the recipients.
+         */
+        public List<String> getRecipients() {
+            return recipients;
+        }
+
+        /**
+         * Gets the reverse-path.
+         *
+         * @return the reverse-path.
+         */
+        public String getReversePath() {
+            return reversePath;
+        }
+    }
+
+    /**
+     * Starts a server on an ephemeral loopback port that speaks TLS from the start.
+     *
+     * @param sslContext   The SSL context of the server.
+     * @param capabilities The EHLO keywords to announce.
+     * @return the started server.
+     * @throws IOException if the server cannot be started.
+     */
+    public static SmtpStandIn tls(final SSLContext sslContext, final String... capabilities) throws IOException {
+        return new SmtpStandIn(sslContext.getServerSocketFactory().createServerSocket(0, 50, InetAddress.getLoopbackAddress()), capabilities);
+    }
+
+    /**
+     * Starts a server on a Unix domain socket, opened by reflection since the tests are compiled for Java 8.
+     *
+     * @param path         The path of the socket.
+     * @param capabilities The EHLO keywords to announce.
+     * @return the started server.
+     * @throws Exception if Unix domain sockets are not supported or the server cannot be started.
+     */
+    public static SmtpStandIn unix(final Path path, final String... capabilities) throws Exception {
+        final SocketAddress address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class).invoke(null, path);
+        final ServerSocketChannel channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class).invoke(null,
+                StandardProtocolFamily.valueOf("UNIX"));
+        channel.bind(address);
+        return new SmtpStandIn(channel, capabilities);
+    }
+
+    /** The listening socket, null for a Unix domain socket. */
+    private final ServerSocket serverSocket;
+
+    /** The listening Unix domain socket, null for TCP. */
+    private final ServerSocketChannel serverChannel;
+
+    /** Whether to speak LMTP. */
+    private volatile boolean lmtp;
+
+    /** Recipients whose LMTP delivery fails after the data with 550. */
+    private final Set<String> failedDeliveries = Collections.synchronizedSet(new HashSet<>());
+
+    /** The EHLO keywords announced. */
+    private final List<String> capabilities = new CopyOnWriteArrayList<>();
+
+    /** Recipients that are rejected with 550. */
+    private final Set<String> rejectedRecipients = Collections.synchronizedSet(new HashSet<>());
+
+    /** The received messages. */
+    private final List<Received> messages = new CopyOnWriteArrayList<>();
+
+    /** The commands received, without data. */
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+
+    /**
+     * Starts a server on an ephemeral loopback port.
+     *
+     * @param capabilities The EHLO keywords to announce, for example {@code SIZE 1000}.
+     * @throws IOException if the server cannot be started.
+     */
+    public SmtpStandIn(final String... capabilities) throws IOException {
+        this(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()), capabilities);
+    }
+
+    private SmtpStandIn(final ServerSocket serverSocket, final String... capabilities) {
+        this.capabilities.addAll(Arrays.asList(capabilities));
+        this.serverSocket = serverSocket;
+        this.serverChannel = null;
+        final Thread thread = new Thread(this::accept, "SmtpStandIn");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private SmtpStandIn(final ServerSocketChannel serverChannel, final String... capabilities) {
+        this.capabilities.addAll(Arrays.asList(capabilities));
+        this.serverSocket = null;
+        this.serverChannel = serverChannel;
+        final Thread thread = new Thread(this::accept, "SmtpStandIn");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void accept() {
+        while (true) {
+            try {
+                final Closeable connection;
+                final InputStream in;
+                final OutputStream out;
+                if (serverSocket != null) {
+                    final Socket socket = serverSocket.accept();
+                    connection = socket;
+                    in = socket.getInputStream();
+                    out = socket.getOutputStream();
+                } else {
+                    final SocketChannel channel = serverChannel.accept();
+                    connection = channel;
+                    in = Channels.newInputStream(channel);
+                    out = Channels.newOutputStream(channel);
+                }
+                final Thread thread = new Thread(() -> serve(connection, in, out), "SmtpStandIn-session");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (final IOException e) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (serverSocket != null) {
+            serverSocket.close();
+        } else {
+            serverChannel.close();
+        }
+    }
+
+    /**
+     * Fails the LMTP delivery to the given recipient with 550 after the data.
+     *
+     * @param recipient The recipient.
+     * @return {@code this} instance.
+     */
+    public SmtpStandIn failDelivery(final String recipient) {
+        failedDeliveries.add(recipient);
+        return this;
+    }
+
+    /**
+     * Gets the commands received, without data.
+     *
+     * @return the commands.
+     */
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Gets the received messages.
+     *
+     * @return the messages.
+     */
+    public List<Received> getMessages() {
+        return messages;
+    }
+
+    /**
+     * Gets the port.
+     *
+     * @return the port.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    private String readLine(final InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return null;
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Rejects the given recipient with 550.
+     *
+     * @param recipient The recipient.
+     * @return {@code this} instance.
+     */
+    public SmtpStandIn reject(final String recipient) {
+        rejectedRecipients.add(recipient);
+        return this;
+    }
+
+    /**
+     * Sets whether the server speaks LMTP: it expects LHLO instead of EHLO and replies for each recipient after the data.
+     *
+     * @param lmtp whether to speak LMTP.
+     * @return {@code this} instance.
+     */
+    public SmtpStandIn setLmtp(final boolean lmtp) {
+        this.lmtp = lmtp;
+        return this;
+    }
+
+    private byte[] readData(final InputStream in) throws IOException {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new IOException("Connection closed in DATA");
+            }
+            line.write(b);
+            if (b == '\n') {
+                final byte[] bytes = line.toByteArray();
+                line.reset();
+                if (bytes.length == 3 && bytes[0] == '.' && bytes[1] == '\r') {
+                    return data.toByteArray();
+                }
+                final int off = bytes[0] == '.' ? 1 : 0;
+                data.write(bytes, off, bytes.length - off);
+            }
+        }
+    }
+
+    /**
+     * Handles one session.
+     */
+    private void serve(final Closeable connection, final InputStream input, final OutputStream out) {
+        try {
+            final InputStream in = new BufferedInputStream(input);
+            write(out, "220 stand-in ESMTP");
+            String reversePath = null;
+            String mailParameters = "";
+            final List<String> recipients = new ArrayList<>();
+            final ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+            String line;
+            while ((line = readLine(in)) != null) {
+                commands.add(line);
+                final String upper = line.toUpperCase(Locale.ROOT);
+                if (upper.startsWith(lmtp ? "LHLO" : "EHLO")) {
+                    final StringBuilder reply = new StringBuilder("250");
+                    reply.append(capabilities.isEmpty() ? " " : "-").append("stand-in");
+                    for (int i = 0; i < capabilities.size(); i++) {
+                        reply.append("\r\n250").append(i == capabilities.size() - 1 ? " " : "-").append(capabilities.get(i));
+                    }
+                    write(out, reply.toString());
+                } else if (upper.startsWith("HELO") || upper.startsWith("RSET") || upper.startsWith("NOOP")) {
+                    reversePath = null;
+                    recipients.clear();
+                    write(out, "250 OK");
+                } else if (upper.startsWith("AUTH PLAIN")) {
+                    write(out, "235 Authenticated");
+                } else if (upper.startsWith("MAIL FROM:<")) {
+                    final int end = line.indexOf('>');
+                    reversePath = line.substring(11, end);
+                    mailParameters = line.substring(end + 1).trim();
+                    recipients.clear();
+                    write(out, "250 OK");
+                } else if (upper.startsWith("RCPT TO:<")) {
+                    final String recipient = line.substring(9, line.indexOf('>'));
+                    if (rejectedRecipients.contains(recipient)) {
+                        write(out, "550 No such user");
+                    } else {
+                        recipients.add(recipient);
+                        write(out, "250 OK");
+                    }
+                } else if (upper.equals("DATA")) {
+                    write(out, "354 Go ahead");
+                    final byte[] data = readData(in);
+                    messages.add(new Received(reversePath, new ArrayList<>(recipients), mailParameters, data));
+                    if (lmtp) {
+                        for (final String recipient : recipients) {
+                            write(out, failedDeliveries.contains(recipient) ? "550 5.2.1 Mailbox unavailable <" + recipient + ">"
+                                    : "250 2.1.5 Delivered <" + recipient + ">");
+                        }
+                    } else {
+                        write(out, "250 Queued");
+                    }
+                } else if (upper.startsWith("BDAT ")) {
+                    final String[] arguments = upper.split(" ");
+                    final byte[] chunk = new byte[Integer.parseInt(arguments[1])];
+                    new DataInputStream(in).readFully(chunk);
+                    chunks.write(chunk);
+                    if (arguments.length > 2 && arguments[2].equals("LAST")) {
+                        messages.add(new Received(reversePath, new ArrayList<>(recipients), mailParameters, chunks.toByteArray()));
+                        chunks.reset();
+                        write(out, "250 Queued");
+                    } else {
+                        write(out, "250 " + chunk.length + " octets received");
+                    }
+                } else if (upper.equals("QUIT")) {
+                    write(out, "221 Bye");
+                    return;
+                } else {
+                    write(out, "502 Not implemented");
+                }
+            }
+        } catch (final IOException e) {
+            // session ends
+        } finally {
+            try {
+                connection.close();
+            } catch (final IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private void write(final OutputStream out, final String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.smtp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link TlsSessions}.
+ */
+class TlsSessionsTest {
+
+    /** The password of the test key store. */
+    private static final char[] PASSWORD = "changeit".toCharArray();
+
+    /**
+     * Waits for a handshake count, since handshake listeners are notified on another thread.
+     */
+    private static void awaitCount(final long expected, final LongSupplier count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.getAsLong() < expected && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, count.getAsLong());
+    }
+
+    /**
+     * Loads the self-signed certificate of {@code localhost} used by the test server.
+     */
+    private static KeyStore keyStore() throws Exception {
+        final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = TlsSessionsTest.class.getResourceAsStream("/tls/localhost.p12")) {
+            keyStore.load(in, PASSWORD);
+        }
+        return keyStore;
+    }
+
+    /** The server. */
+    private SmtpStandIn server;
+
+    /** The client TLS context, which trusts the server certificate. */
+    private TlsSessions sessions;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        final KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore(), PASSWORD);
+        final SSLContext serverContext = SSLContext.getInstance("TLS");
+        serverContext.init(keyManagers.getKeyManagers(), null, null);
+        server = SmtpStandIn.tls(serverContext);
+        final TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagers.init(keyStore());
+        final SSLContext clientContext = SSLContext.getInstance("TLS");
+        clientContext.init(null, trustManagers.getTrustManagers(), null);
+        sessions = new TlsSessions(clientContext);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void testNioSmtpEngine() throws Exception {
+        final SmtpClient client = new SmtpClient().setHost("127.0.0.1").setPort(server.getPort()).setSslOnConnect(true);
+        try (NioSmtpEngine engine = new NioSmtpEngine(1).setTlsSessions(sessions)) {
+            assertSame(sessions.getSslContext(), engine.getSslContext());
+            for (int i = 0; i < 3; i++) {
+                engine.send(client, Envelope.of("from@example.com", "to@example.com"), out -> out.write('x')).get(10, TimeUnit.SECONDS);
+            }
+        }
+        assertEquals(3, server.getMessages().size());
+        assertEquals(1, sessions.getFullHandshakes());
+        assertEquals(2, sessions.getResumedHandshakes());
+    }
+
+    @Test
+    void testResumption() throws Exception {
+        final SmtpClient client = new SmtpClient().setHost("127.0.0.1").setPort(server.getPort()).setSslOnConnect(true)
+                .setSslSocketFactory(sessions.getSocketFactory());
+        for (int i = 0; i < 3; i++) {
+            client.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write('x'));
+        }
+        assertEquals(3, server.getMessages().size());
+        awaitCount(1, sessions::getFullHandshakes);
+        awaitCount(2, sessions::getResumedHandshakes);
+        assertEquals(1, sessions.getFullHandshakes());
+    }
+
+    @Test
+    void testSessionCache() {
+        assertSame(sessions, sessions.setSessionCacheSize(10).setSessionTimeout(Duration.ofMinutes(5)));
+        assertEquals(10, sessions.getSessionCacheSize());
+        assertEquals(Duration.ofMinutes(5), sessions.getSessionTimeout());
+    }
+}
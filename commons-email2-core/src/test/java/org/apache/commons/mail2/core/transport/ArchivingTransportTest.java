@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.io.ArchiveSink;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link ArchivingTransport}.
+ */
+class ArchivingTransportTest {
+
+    private static final byte[] MESSAGE = "Subject: x\r\n\r\nbody\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static List<Path> list(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".eml")).collect(Collectors.toList());
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testDiscardOnFailure() throws IOException {
+        final ArchivingTransport transport = new ArchivingTransport((envelope, message, size) -> {
+            try {
+                message.writeTo(new ByteArrayOutputStream());
+            } catch (final IOException e) {
+                throw new EmailException(e);
+            }
+            throw new EmailException("rejected");
+        }, ArchiveSink.ofDirectory(directory));
+        assertThrows(EmailException.class, () -> transport.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write(MESSAGE), MESSAGE.length));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void testRetry() throws EmailException, IOException {
+        final ArchivingTransport transport = new ArchivingTransport((envelope, message, size) -> {
+            try {
+                // a failed attempt and the retry
+                message.writeTo(new ByteArrayOutputStream());
+                message.writeTo(new ByteArrayOutputStream());
+            } catch (final IOException e) {
+                throw new EmailException(e);
+            }
+        }, ArchiveSink.ofDirectory(directory));
+        transport.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write(MESSAGE), MESSAGE.length);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testSend() throws EmailException, IOException {
+        final InMemoryTransport delegate = new InMemoryTransport();
+        final ArchivingTransport transport = new ArchivingTransport(delegate, ArchiveSink.ofDirectory(directory));
+        transport.send(Envelope.of("from@example.com", "to@example.com"), out -> out.write(MESSAGE), MESSAGE.length);
+        assertEquals(1, delegate.getMessageCount());
+        final List<Path> files = list(directory);
+        assertEquals(1, files.size());
+        assertTrue(new String(Files.readAllBytes(files.get(0)), StandardCharsets.US_ASCII).endsWith("\r\nbody\r\n"));
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.smtp.ConcurrencyLimiter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ConcurrencyLimitedTransport}.
+ */
+class ConcurrencyLimitedTransportTest {
+
+    @Test
+    void testPermit() throws EmailException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter().setInitialLimit(1).setMaxLimit(1);
+        final Envelope envelope = Envelope.of("from@example.com", "to@example.com");
+        final int[] inFlight = new int[1];
+        final ConcurrencyLimitedTransport transport = new ConcurrencyLimitedTransport((sent, message, size) -> {
+            inFlight[0] = limiter.getLimit("relay:25").getInFlight();
+        }, limiter, "relay:25");
+        transport.send(envelope, out -> out.write('x'), 1);
+        assertEquals(1, inFlight[0]);
+        assertEquals(0, limiter.getLimit("relay:25").getInFlight());
+
+        final ConcurrencyLimitedTransport failing = new ConcurrencyLimitedTransport((sent, message, size) -> {
+            throw new EmailException("rejected");
+        }, limiter, "relay:25");
+        assertThrows(EmailException.class, () -> failing.send(envelope, out -> out.write('x'), 1));
+        assertEquals(0, limiter.getLimit("relay:25").getInFlight());
+    }
+}
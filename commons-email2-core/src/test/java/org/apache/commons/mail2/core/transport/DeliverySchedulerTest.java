@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.SmtpException;
+import org.apache.commons.mail2.core.smtp.SmtpReply;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link DeliveryScheduler}.
+ */
+class DeliverySchedulerTest {
+
+    private static final ContentWriter MESSAGE = out -> out.write("Subject: Later\r\n\r\nBody\r\n".getBytes(StandardCharsets.US_ASCII));
+
+    private Envelope envelope;
+
+    private final InMemoryTransport transport = new InMemoryTransport();
+
+    private DeliveryScheduler scheduler;
+
+    @TempDir
+    private Path spool;
+
+    @AfterEach
+    void afterEach() throws IOException {
+        scheduler.close();
+    }
+
+    @BeforeEach
+    void beforeEach() throws EmailException {
+        envelope = Envelope.of("from@example.com", "to@example.com");
+        scheduler = new DeliveryScheduler(transport, Duration.ofMillis(10));
+    }
+
+    private List<Path> spoolFiles() throws IOException {
+        try (Stream<Path> files = Files.list(spool)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        final DeliveryScheduler.Delivery delivery = scheduler.schedule(envelope, MESSAGE, -1, Instant.now().plusMillis(200));
+        assertTrue(delivery.cancel());
+        assertFalse(delivery.cancel());
+        assertThrows(CancellationException.class, () -> delivery.getFuture().get());
+        Thread.sleep(300);
+        assertEquals(0, transport.getMessageCount());
+        assertEquals(0, scheduler.getPending());
+    }
+
+    @Test
+    void testClose() throws Exception {
+        final DeliveryScheduler.Delivery delivery = scheduler.schedule(envelope, MESSAGE, -1, Instant.now().plusSeconds(60));
+        scheduler.close();
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> delivery.getFuture().get(1, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof EmailException);
+        assertThrows(EmailException.class, () -> scheduler.schedule(envelope, MESSAGE, -1, Instant.now()));
+    }
+
+    @Test
+    void testOwnThreads() throws Exception {
+        final AtomicReference<String> thread = new AtomicReference<>();
+        scheduler.close();
+        scheduler = new DeliveryScheduler((to, message, size) -> thread.set(Thread.currentThread().getName()), Duration.ofMillis(10), 1);
+        scheduler.schedule(envelope, MESSAGE, -1, Instant.now()).getFuture().get(5, TimeUnit.SECONDS);
+        assertEquals("DeliveryScheduler-1", thread.get());
+        assertThrows(IllegalArgumentException.class, () -> new DeliveryScheduler(transport, Duration.ofMillis(10), 0));
+    }
+
+    @Test
+    void testRecoverRunning() throws Exception {
+        scheduler.setSpoolDirectory(spool);
+        final DeliveryScheduler.Delivery delivery = scheduler.schedule(envelope, MESSAGE, -1, Instant.now().plusMillis(200));
+        // the delivery is held already
+        assertTrue(scheduler.recover().isEmpty());
+        assertEquals(1, scheduler.getPending());
+        delivery.getFuture().get(5, TimeUnit.SECONDS);
+        Thread.sleep(50);
+        assertEquals(1, transport.getMessageCount());
+
+        // after a restart each file is recovered once
+        scheduler.schedule(envelope, MESSAGE, -1, Instant.now().plusSeconds(60));
+        scheduler.close();
+        scheduler = new DeliveryScheduler(transport, Duration.ofMillis(10)).setSpoolDirectory(spool);
+        assertEquals(1, scheduler.recover().size());
+        assertTrue(scheduler.recover().isEmpty());
+        assertEquals(1, scheduler.getPending());
+    }
+
+    @Test
+    void testRetryTransientFailure() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        scheduler.close();
+        scheduler = new DeliveryScheduler((to, message, size) -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new SmtpException("Greylisted", new SmtpReply(451, Collections.singletonList("4.7.1 Try again later")));
+            }
+            transport.send(to, message, size);
+        }, Duration.ofMillis(10)).setRetry(3, Duration.ofMillis(50));
+        final DeliveryScheduler.Delivery delivery = scheduler.schedule(envelope, MESSAGE, -1, Instant.now());
+        delivery.getFuture().get(5, TimeUnit.SECONDS);
+        assertEquals(2, delivery.getAttempts());
+        assertEquals(1, transport.getMessageCount());
+    }
+
+    @Test
+    void testPermanentFailureIsNotRetried() throws Exception {
+        scheduler.close();
+        scheduler = new DeliveryScheduler((to, message, size) -> {
+            throw new SmtpException("Rejected", new SmtpReply(550, Collections.singletonList("5.1.1 No such user")));
+        }, Duration.ofMillis(10));
+        final DeliveryScheduler.Delivery delivery = scheduler.schedule(envelope, MESSAGE, -1, Instant.now());
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> delivery.getFuture().get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof SmtpException);
+        assertEquals(1, delivery.getAttempts());
+    }
+
+    @Test
+    void testSchedule() throws Exception {
+        final Instant at = Instant.now().plusMillis(150);
+        final DeliveryScheduler.Delivery early = scheduler.schedule(envelope, MESSAGE, -1, at.plusMillis(100));
+        final DeliveryScheduler.Delivery first = scheduler.schedule(envelope, out -> out.write("first".getBytes(StandardCharsets.US_ASCII)), -1, at);
+        assertEquals(2, scheduler.getPending());
+        first.getFuture().get(5, TimeUnit.SECONDS);
+        assertFalse(Instant.now().isBefore(at));
+        early.getFuture().get(5, TimeUnit.SECONDS);
+        assertEquals("first", transport.getMessages().get(0).getDataAsString());
+        assertEquals(2, transport.getMessageCount());
+        assertEquals(0, scheduler.getPending());
+    }
+
+    @Test
+    void testSpoolAndRecover() throws Exception {
+        scheduler.setSpoolDirectory(spool);
+        final Envelope utf8 = envelope.withSmtpUtf8(true);
+        scheduler.schedule(utf8, MESSAGE, 42, Instant.now().plusSeconds(60));
+        assertEquals(1, spoolFiles().size());
+        scheduler.close();
+        assertEquals(1, spoolFiles().size());
+
+        scheduler = new DeliveryScheduler(transport, Duration.ofMillis(10)).setSpoolDirectory(spool);
+        final List<DeliveryScheduler.Delivery> recovered = scheduler.recover();
+        assertEquals(1, recovered.size());
+        assertEquals(utf8, recovered.get(0).getEnvelope());
+        assertTrue(recovered.get(0).cancel());
+        assertEquals(0, spoolFiles().size());
+    }
+
+    @Test
+    void testSpoolDeliversFile() throws Exception {
+        scheduler.setSpoolDirectory(spool);
+        scheduler.schedule(envelope, MESSAGE, -1, Instant.now()).getFuture().get(5, TimeUnit.SECONDS);
+        assertEquals("Subject: Later\r\n\r\nBody\r\n", transport.getMessages().get(0).getDataAsString());
+        assertEquals(0, spoolFiles().size());
+    }
+}
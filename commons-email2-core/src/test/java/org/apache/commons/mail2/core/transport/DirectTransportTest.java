@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.PartialDeliveryException;
+import org.apache.commons.mail2.core.smtp.ConcurrencyLimiter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.SmtpClient;
+import org.apache.commons.mail2.core.smtp.SmtpException;
+import org.apache.commons.mail2.core.smtp.SmtpStandIn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link DirectTransport}.
+ */
+class DirectTransportTest {
+
+    /**
+     * Points the exchangers named {@code down.*} to an unused loopback address and every other host to the stand-in server.
+     */
+    private static final class StandInResolver implements DnsResolver {
+
+        /** The MX records by domain. */
+        private final Map<String, List<MxRecord>> records = new HashMap<>();
+
+        /** The number of MX lookups. */
+        private final AtomicInteger lookups = new AtomicInteger();
+
+        @Override
+        public List<InetAddress> lookupAddresses(final String host) throws IOException {
+            return Collections.singletonList(InetAddress.getByName(host.startsWith("down.") ? "127.0.0.2" : "127.0.0.1"));
+        }
+
+        @Override
+        public List<MxRecord> lookupMx(final String domain) throws IOException {
+            lookups.incrementAndGet();
+            if (domain.equals("missing.example")) {
+                throw new UnknownHostException(domain);
+            }
+            return records.getOrDefault(domain, Collections.emptyList());
+        }
+    }
+
+    private SmtpStandIn server;
+
+    private final StandInResolver resolver = new StandInResolver();
+
+    private DirectTransport transport;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new SmtpStandIn("PIPELINING");
+        transport = new DirectTransport(new SmtpClient().setLocalHost("client.example.com").setConnectTimeout(Duration.ofSeconds(2)))
+                .setResolver(resolver).setPort(server.getPort());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        transport.close();
+        server.close();
+    }
+
+    @Test
+    void testCachingResolver() throws IOException {
+        resolver.records.put("a.example", Collections.singletonList(new MxRecord(10, "mx.a.example.")));
+        final CachingDnsResolver caching = new CachingDnsResolver(resolver, Duration.ofMinutes(1));
+        assertEquals("mx.a.example", caching.lookupMx("a.example").get(0).getHost());
+        assertSame(caching.lookupMx("A.example"), caching.lookupMx("a.example"));
+        assertEquals(1, resolver.lookups.get());
+        caching.clear();
+        caching.lookupMx("a.example");
+        assertEquals(2, resolver.lookups.get());
+        assertThrows(UnknownHostException.class, () -> caching.lookupMx("missing.example"));
+    }
+
+    @Test
+    void testCachingResolverBound() throws IOException {
+        final CachingDnsResolver caching = new CachingDnsResolver(resolver, Duration.ofMinutes(1), 4);
+        for (int i = 0; i < 10; i++) {
+            caching.lookupMx("d" + i + ".example");
+        }
+        assertEquals(10, resolver.lookups.get());
+        caching.lookupMx("d9.example");
+        assertEquals(10, resolver.lookups.get());
+        caching.lookupMx("d0.example");
+        assertEquals(11, resolver.lookups.get());
+        assertThrows(IllegalArgumentException.class, () -> new CachingDnsResolver(resolver, Duration.ofMinutes(1), 0));
+    }
+
+    @Test
+    void testConcurrencyLimiter() throws EmailException {
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter();
+        transport.close();
+        transport = new DirectTransport(new SmtpClient().setLocalHost("client.example.com").setConcurrencyLimiter(limiter)).setResolver(resolver)
+                .setPort(server.getPort());
+        resolver.records.put("a.example", Collections.singletonList(new MxRecord(10, "mx.a.example")));
+        transport.send(Envelope.of("from@example.com", "x@a.example"), out -> out.write('x'), 1);
+        // the second send uses the kept connection
+        transport.send(Envelope.of("from@example.com", "y@a.example"), out -> out.write('x'), 1);
+
+        assertEquals(2, server.getMessages().size());
+        final ConcurrencyLimiter.Limit limit = limiter.getLimit("mx.a.example:" + server.getPort());
+        assertEquals(0, limit.getInFlight());
+        assertNotEquals(Duration.ZERO, limit.getLatency());
+    }
+
+    @Test
+    void testConnectionReuse() throws EmailException {
+        resolver.records.put("a.example", Collections.singletonList(new MxRecord(10, "mx.shared.example")));
+        resolver.records.put("b.example", Collections.singletonList(new MxRecord(10, "mx.shared.example")));
+        transport.send(Envelope.of("from@example.com", "x@a.example", "y@b.example", "z@a.example"), out -> out.write('x'), 1);
+        transport.send(Envelope.of("from@example.com", "x@b.example"), out -> out.write('x'), 1);
+
+        assertEquals(3, server.getMessages().size());
+        assertEquals(Arrays.asList("x@a.example", "z@a.example"), server.getMessages().get(0).getRecipients());
+        assertEquals(1, server.getCommands().stream().filter(command -> command.startsWith("EHLO")).count());
+
+        transport.setMaxIdleConnections(0).close();
+        transport.send(Envelope.of("from@example.com", "x@a.example"), out -> out.write('x'), 1);
+        assertEquals(2, server.getCommands().stream().filter(command -> command.startsWith("EHLO")).count());
+    }
+
+    @Test
+    void testFailover() throws EmailException {
+        resolver.records.put("a.example", Arrays.asList(new MxRecord(20, "backup.a.example"), new MxRecord(10, "down.a.example")));
+        transport.send(Envelope.of("from@example.com", "x@a.example"), out -> out.write('x'), 1);
+        assertEquals(1, server.getMessages().size());
+
+        // without MX records the domain is its own exchanger
+        transport.send(Envelope.of("from@example.com", "x@implicit.example"), out -> out.write('x'), 1);
+        assertEquals(2, server.getMessages().size());
+    }
+
+    @Test
+    void testIdleTimeout() throws EmailException, InterruptedException {
+        transport.setIdleTimeout(Duration.ofMillis(100));
+        transport.send(Envelope.of("from@example.com", "x@a.example"), out -> out.write('x'), 1);
+        // the sweep ends the session without another send to the exchanger
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!server.getCommands().contains("QUIT") && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertTrue(server.getCommands().contains("QUIT"), server.getCommands().toString());
+    }
+
+    @Test
+    void testMxRecord() {
+        final MxRecord record = MxRecord.parse("10 MX.Example.COM.");
+        assertEquals(10, record.getPreference());
+        assertEquals("mx.example.com", record.getHost());
+        assertEquals(record, new MxRecord(10, "mx.example.com"));
+        assertTrue(MxRecord.parse("0 .").isNull());
+        assertThrows(IllegalArgumentException.class, () -> MxRecord.parse("mx.example.com"));
+    }
+
+    @Test
+    void testUndeliverableDomains() throws EmailException {
+        resolver.records.put("nomail.example", Collections.singletonList(new MxRecord(0, ".")));
+        server.reject("bad@a.example");
+        final Envelope envelope = Envelope.of("from@example.com", "x@nomail.example", "y@missing.example", "bad@a.example", "good@b.example");
+        final PartialDeliveryException e = assertThrows(PartialDeliveryException.class, () -> transport.send(envelope, out -> out.write('x'), 1));
+        assertEquals(Collections.singletonList("good@b.example"), e.getDeliveredRecipients());
+        assertEquals(Arrays.asList("x@nomail.example", "y@missing.example", "bad@a.example"), e.getFailedRecipients());
+        final Throwable failure = e.getCause();
+        assertTrue(failure.getMessage().contains("null MX"), failure.getMessage());
+        assertEquals(2, failure.getSuppressed().length);
+        assertTrue(failure.getSuppressed()[1] instanceof SmtpException);
+        assertEquals(Collections.singletonList("good@b.example"), server.getMessages().get(0).getRecipients());
+
+        // no domain received the message
+        final Envelope undelivered = Envelope.of("from@example.com", "x@nomail.example", "bad@a.example");
+        assertFalse(assertThrows(EmailException.class, () -> transport.send(undelivered, out -> out.write('x'), 1)) instanceof PartialDeliveryException);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.smtp.BodyType;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link InMemoryTransport}.
+ */
+class InMemoryTransportTest {
+
+    private static void send(final EmailTransport transport, final Envelope envelope, final String message) throws EmailException {
+        final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        transport.send(envelope, out -> out.write(data), data.length);
+    }
+
+    @Test
+    void testCountOnly() throws EmailException {
+        final InMemoryTransport transport = new InMemoryTransport(0);
+        send(transport, Envelope.of("from@example.com", "a@example.com", "b@example.com"), "Subject: x\r\n\r\nbody\r\n");
+        assertEquals(1, transport.getMessageCount());
+        assertEquals(2, transport.getRecipientCount());
+        assertEquals(20, transport.getByteCount());
+        assertTrue(transport.getMessages().isEmpty());
+    }
+
+    @Test
+    void testLatency() throws EmailException {
+        final InMemoryTransport transport = new InMemoryTransport().setLatency(Duration.ofMillis(50));
+        final long start = System.nanoTime();
+        send(transport, Envelope.of("from@example.com", "to@example.com"), "x");
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(50).toNanos());
+        assertThrows(IllegalArgumentException.class, () -> transport.setLatency(Duration.ofMillis(-1)));
+    }
+
+    @Test
+    void testRecord() throws EmailException {
+        final InMemoryTransport transport = new InMemoryTransport(3);
+        for (int i = 0; i < 5; i++) {
+            send(transport, Envelope.of("", "to" + i + "@example.com"), "message " + i);
+        }
+        final List<InMemoryTransport.Message> messages = transport.getMessages();
+        assertEquals(Arrays.asList("message 2", "message 3", "message 4"), messages.stream().map(InMemoryTransport.Message::getDataAsString)
+                .collect(Collectors.toList()));
+        assertEquals("to4@example.com", messages.get(2).getEnvelope().getRecipients().get(0));
+        assertEquals(5, transport.getMessageCount());
+        transport.clear();
+        assertTrue(transport.getMessages().isEmpty());
+        assertEquals(0, transport.getByteCount());
+    }
+
+    @Test
+    void testValidation() throws EmailException {
+        final InMemoryTransport transport = new InMemoryTransport();
+        assertThrows(EmailException.class, () -> send(transport, Envelope.of("from@example.com", "postmaster"), "x"));
+        assertThrows(EmailException.class, () -> send(transport, Envelope.of("from@", "to@example.com"), "x"));
+        assertThrows(EmailException.class, () -> send(transport, Envelope.of("from@example.com", "j\u00f6rg@example.com"), "x"));
+        send(transport, Envelope.of("from@example.com", "j\u00f6rg@example.com").withSmtpUtf8(true), "x");
+        final String local = String.join("", Collections.nCopies(65, "a"));
+        assertThrows(EmailException.class, () -> send(transport, Envelope.of("from@example.com", local + "@example.com"), "x"));
+        final String longLine = String.join("", Collections.nCopies(999, "x"));
+        assertThrows(EmailException.class, () -> send(transport, Envelope.of("from@example.com", "to@example.com"), longLine));
+        send(transport, Envelope.of("from@example.com", "to@example.com").withBodyType(BodyType.BINARY_MIME), longLine);
+        assertEquals(2, transport.getMessageCount());
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link OutboundQueue}.
+ */
+class OutboundQueueTest {
+
+    /**
+     * Writes a name padded with spaces to a size.
+     */
+    private static ContentWriter body(final String name, final int size) {
+        final StringBuilder builder = new StringBuilder(name);
+        while (builder.length() < size) {
+            builder.append(' ');
+        }
+        return out -> out.write(builder.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Envelope envelope;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final List<String> delivered = new CopyOnWriteArrayList<>();
+
+    /** Records the messages, holding the first one until released. */
+    private final EmailTransport transport = (to, message, size) -> {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            message.writeTo(out);
+            if (delivered.isEmpty()) {
+                release.await();
+            }
+        } catch (final IOException | InterruptedException e) {
+            throw new EmailException(e);
+        }
+        delivered.add(new String(out.toByteArray(), StandardCharsets.US_ASCII).trim());
+    };
+
+    private OutboundQueue queue;
+
+    private void awaitDelivering() throws InterruptedException {
+        for (int i = 0; i < 100 && queue.getDepth() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, queue.getDepth());
+    }
+
+    @BeforeEach
+    public void setUp() throws EmailException {
+        envelope = Envelope.of("from@example.com", "to@example.com");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        release.countDown();
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Test
+    void testBlock() throws Exception {
+        queue = new OutboundQueue(transport, 100, 1).setMaxWait(Duration.ofMillis(100));
+        queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 60), 60);
+        awaitDelivering();
+        final long start = System.nanoTime();
+        assertThrows(EmailException.class, () -> queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("late", 60), 60));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+        assertEquals(1, queue.getRejectedCount());
+
+        queue.setMaxWait(null);
+        final CompletableFuture<Void> waiting = CompletableFuture.runAsync(() -> {
+            try {
+                queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("second", 60), 60).join();
+            } catch (final EmailException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+        release.countDown();
+        waiting.get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("first", "second"), delivered);
+    }
+
+    @Test
+    void testClose() throws Exception {
+        queue = new OutboundQueue(transport, 1000, 1);
+        final CompletableFuture<Void> first = queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 5), 5);
+        final CompletableFuture<Void> second = queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("second", 6), 6);
+        release.countDown();
+        queue.close();
+        assertTrue(first.isDone() && second.isDone());
+        assertEquals(Arrays.asList("first", "second"), delivered);
+        assertThrows(EmailException.class, () -> queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("closed", 6), 6));
+    }
+
+    @Test
+    void testCloseTimeout() throws Exception {
+        queue = new OutboundQueue(transport, 1000, 1).setCloseTimeout(Duration.ofMillis(100));
+        final CompletableFuture<Void> first = queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 5), 5);
+        awaitDelivering();
+        final CompletableFuture<Void> second = queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("second", 6), 6);
+        final long start = System.nanoTime();
+        final IOException e = assertThrows(IOException.class, queue::close);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertTrue(e.getMessage().contains("1 messages were dropped"), e.getMessage());
+        assertThrows(ExecutionException.class, () -> second.get(1, TimeUnit.SECONDS));
+        // the message being delivered completes in the background
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        assertEquals(0, queue.getMemoryUsed());
+    }
+
+    @Test
+    void testMetrics() throws Exception {
+        queue = new OutboundQueue(transport, 1000, 1);
+        queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 5), 5);
+        awaitDelivering();
+        assertEquals(Duration.ZERO, queue.getOldestAge());
+        queue.enqueue(OutboundQueue.Priority.LOW, envelope, body("second", 6), -1);
+        Thread.sleep(20);
+        assertEquals(1, queue.getDepth());
+        assertEquals(1, queue.getDepth(OutboundQueue.Priority.LOW));
+        assertTrue(queue.getOldestAge().toMillis() >= 20);
+        // the estimate is replaced by the actual size
+        assertEquals(11, queue.getMemoryUsed());
+        release.countDown();
+        queue.close();
+        assertEquals(0, queue.getMemoryUsed());
+    }
+
+    @Test
+    void testPriority() throws Exception {
+        queue = new OutboundQueue(transport, 1000, 1);
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        futures.add(queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 5), 5));
+        awaitDelivering();
+        futures.add(queue.enqueue(OutboundQueue.Priority.LOW, envelope, body("newsletter", 10), 10));
+        futures.add(queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("invoice", 7), 7));
+        futures.add(queue.enqueue(OutboundQueue.Priority.HIGH, envelope, body("reset", 5), 5));
+        futures.add(queue.enqueue(OutboundQueue.Priority.HIGH, envelope, body("verify", 6), 6));
+        release.countDown();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("first", "reset", "verify", "invoice", "newsletter"), delivered);
+    }
+
+    @Test
+    void testReject() throws Exception {
+        queue = new OutboundQueue(transport, 100, 1).setAdmission(OutboundQueue.Admission.REJECT);
+        queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 60), 60);
+        assertThrows(EmailException.class, () -> queue.enqueue(OutboundQueue.Priority.HIGH, envelope, body("second", 60), 60));
+        queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("small", 30), 30);
+        assertEquals(1, queue.getRejectedCount());
+        // a message larger than the budget is admitted alone
+        release.countDown();
+        queue.close();
+        queue = new OutboundQueue(transport, 100, 1).setAdmission(OutboundQueue.Admission.REJECT);
+        queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("huge", 1000), 1000).get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void testUnknownSize() throws Exception {
+        queue = new OutboundQueue(transport, 100, 1).setAdmission(OutboundQueue.Admission.REJECT);
+        queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 60), 60);
+        // admitted with its serialized size rather than none
+        assertThrows(EmailException.class, () -> queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("unknown", 60), -1));
+        assertEquals(60, queue.getMemoryUsed());
+        queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("small", 30), -1);
+        assertEquals(90, queue.getMemoryUsed());
+    }
+
+    @Test
+    void testSpill(@TempDir final Path directory) throws Exception {
+        queue = new OutboundQueue(transport, 100, 1).setAdmission(OutboundQueue.Admission.SPILL).setSpillDirectory(directory);
+        final CompletableFuture<Void> first = queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("first", 60), 60);
+        final CompletableFuture<Void> spilled = queue.enqueue(OutboundQueue.Priority.NORMAL, envelope, body("spilled", 60), 60);
+        assertEquals(1, queue.getSpilledCount());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count());
+        }
+        release.countDown();
+        CompletableFuture.allOf(first, spilled).get(10, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("first", "spilled"), delivered);
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Tests {@link PickupDirectoryTransport}.
+ */
+class PickupDirectoryTransportTest {
+
+    private static final byte[] MESSAGE = "Subject: test\r\n\r\nbody\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static List<Path> list(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            return files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static void send(final PickupDirectoryTransport transport) throws EmailException {
+        transport.send(Envelope.of("from@example.com", "a@example.com", "b@example.com"), out -> out.write(MESSAGE), MESSAGE.length);
+    }
+
+    @Test
+    void testFailure(@TempDir final Path directory) throws IOException {
+        final PickupDirectoryTransport transport = new PickupDirectoryTransport(directory);
+        assertThrows(EmailException.class, () -> transport.send(Envelope.of("from@example.com", "to@example.com"), out -> {
+            out.write(MESSAGE);
+            throw new IOException("failed");
+        }, -1));
+        assertTrue(list(directory).isEmpty());
+    }
+
+    @Test
+    void testHeaders(@TempDir final Path directory) throws IOException, EmailException {
+        send(new PickupDirectoryTransport(directory));
+        final List<Path> files = list(directory);
+        assertEquals(1, files.size());
+        assertTrue(files.get(0).getFileName().toString().endsWith(".eml"));
+        assertEquals("X-Sender: from@example.com\r\nX-Receiver: a@example.com\r\nX-Receiver: b@example.com\r\nSubject: test\r\n\r\nbody\r\n",
+                new String(Files.readAllBytes(files.get(0)), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testShards(@TempDir final Path directory) throws Exception {
+        final PickupDirectoryTransport transport = new PickupDirectoryTransport(directory).setShards(4).setEnvelopeFormat(
+                PickupDirectoryTransport.EnvelopeFormat.NONE);
+        assertEquals(4, transport.getShards());
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() -> {
+                    send(transport);
+                    return null;
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final List<Path> files = list(directory);
+        assertEquals(200, files.size());
+        assertTrue(files.stream().allMatch(file -> file.getParent().getParent().equals(directory) && file.toString().endsWith(".eml")));
+    }
+
+    @Test
+    void testSidecar(@TempDir final Path directory) throws IOException, EmailException {
+        send(new PickupDirectoryTransport(directory).setEnvelopeFormat(PickupDirectoryTransport.EnvelopeFormat.SIDECAR).setSync(false));
+        final List<Path> files = list(directory);
+        assertEquals(2, files.size());
+        final String name = files.get(0).getFileName().toString();
+        assertTrue(name.endsWith(".eml"));
+        assertEquals(name.replace(".eml", ".env"), files.get(1).getFileName().toString());
+        assertEquals("Subject: test\r\n\r\nbody\r\n", new String(Files.readAllBytes(files.get(0)), StandardCharsets.US_ASCII));
+        assertEquals("MAIL FROM:<from@example.com>\r\nRCPT TO:<a@example.com>\r\nRCPT TO:<b@example.com>\r\n",
+                new String(Files.readAllBytes(files.get(1)), StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.RateLimiter;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link RateLimitedTransport}.
+ */
+class RateLimitedTransportTest {
+
+    @Test
+    void testFailFast() throws EmailException {
+        final InMemoryTransport delegate = new InMemoryTransport();
+        final RateLimiter rateLimiter = new RateLimiter(0.5, 1, 0, 0).setMode(RateLimiter.Mode.FAIL_FAST);
+        final Envelope envelope = Envelope.of("from@example.com", "to@example.com");
+        final RateLimitedTransport transport = new RateLimitedTransport(delegate, rateLimiter, "relay:25");
+        transport.send(envelope, out -> out.write('x'), 1);
+        assertThrows(RateLimitExceededException.class, () -> transport.send(envelope, out -> out.write('x'), 1));
+        // other relays have their own buckets
+        new RateLimitedTransport(delegate, rateLimiter, "other:25").send(envelope, out -> out.write('x'), 1);
+        assertEquals(2, delegate.getMessageCount());
+    }
+}
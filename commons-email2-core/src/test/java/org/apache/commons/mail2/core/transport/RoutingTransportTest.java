@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.PartialDeliveryException;
+import org.apache.commons.mail2.core.smtp.BodyType;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link RoutingTransport}.
+ */
+class RoutingTransportTest {
+
+    private final InMemoryTransport dedicated = new InMemoryTransport();
+
+    private final InMemoryTransport subdomains = new InMemoryTransport();
+
+    private final InMemoryTransport shared = new InMemoryTransport();
+
+    private final RoutingTransport routing = new RoutingTransport().addRoute("big.example", dedicated).addRoute("*.corp.example", subdomains);
+
+    @AfterEach
+    void tearDown() {
+        routing.close();
+    }
+
+    @Test
+    void testClose() throws EmailException {
+        routing.addRoute(RoutingTransport.DEFAULT_ROUTE, shared);
+        routing.send(Envelope.of("from@example.com", "a@big.example", "b@other.example"), out -> out.write('x'), 1);
+        routing.close();
+        assertThrows(EmailException.class, () -> routing.send(Envelope.of("from@example.com", "a@big.example"), out -> out.write('x'), 1));
+        assertEquals(1, shared.getMessageCount());
+    }
+
+    @Test
+    void testFailure() throws EmailException {
+        routing.addRoute("down.example", (envelope, message, size) -> {
+            throw new EmailException("Relay down");
+        });
+        final Envelope envelope = Envelope.of("from@example.com", "a@down.example", "b@big.example");
+        final PartialDeliveryException e = assertThrows(PartialDeliveryException.class, () -> routing.send(envelope, out -> out.write('x'), 1));
+        assertEquals("Relay down", e.getCause().getMessage());
+        assertEquals(Collections.singletonList("b@big.example"), e.getDeliveredRecipients());
+        assertEquals(Collections.singletonList("a@down.example"), e.getFailedRecipients());
+        assertEquals(1, dedicated.getMessageCount());
+        // nothing delivered is not a partial delivery
+        final EmailException all = assertThrows(EmailException.class,
+                () -> routing.send(Envelope.of("from@example.com", "a@down.example", "c@down.example"), out -> out.write('x'), 1));
+        assertEquals("Relay down", all.getMessage());
+        assertThrows(EmailException.class, () -> routing.send(Envelope.of("from@example.com", "a@other.example"), out -> out.write('x'), 1));
+    }
+
+    @Test
+    void testGetRoute() {
+        assertSame(dedicated, routing.getRoute("a@BIG.example"));
+        assertSame(subdomains, routing.getRoute("a@mail.corp.example"));
+        assertSame(subdomains, routing.getRoute("a@eu.mail.corp.example"));
+        assertNull(routing.getRoute("a@corp.example"));
+        assertNull(routing.getRoute("a@other.example"));
+        routing.addRoute("*.mail.corp.example", dedicated).addRoute(RoutingTransport.DEFAULT_ROUTE, shared);
+        assertSame(dedicated, routing.getRoute("a@eu.mail.corp.example"));
+        assertSame(shared, routing.getRoute("a@corp.example"));
+        assertSame(shared, routing.removeRoute("big.example").getRoute("a@big.example"));
+    }
+
+    @Test
+    void testRuntimeFailure() throws EmailException {
+        final IllegalStateException bug = new IllegalStateException("Bug");
+        routing.addRoute("broken.example", (envelope, message, size) -> {
+            throw bug;
+        });
+        // the last route is sent in the calling thread, the others by the executor
+        for (final Envelope envelope : Arrays.asList(Envelope.of("from@example.com", "a@broken.example", "b@big.example"),
+                Envelope.of("from@example.com", "b@big.example", "a@broken.example"))) {
+            final PartialDeliveryException e = assertThrows(PartialDeliveryException.class, () -> routing.send(envelope, out -> out.write('x'), 1));
+            assertSame(bug, e.getCause().getCause());
+            assertEquals(Collections.singletonList("b@big.example"), e.getDeliveredRecipients());
+            assertEquals(Collections.singletonList("a@broken.example"), e.getFailedRecipients());
+        }
+        assertEquals(2, dedicated.getMessageCount());
+        final EmailException single = assertThrows(EmailException.class, () -> routing.send(Envelope.of("from@example.com", "a@broken.example"),
+                out -> out.write('x'), 1));
+        assertSame(bug, single.getCause());
+    }
+
+    @Test
+    void testSend() throws EmailException {
+        routing.addRoute(RoutingTransport.DEFAULT_ROUTE, shared);
+        final Envelope envelope = Envelope.of("bounce@example.com", "a@big.example", "b@other.example", "c@mail.corp.example", "d@big.example")
+                .withBodyType(BodyType.EIGHT_BIT_MIME);
+        final byte[] data = "Subject: routed\r\n\r\nbody\r\n".getBytes(StandardCharsets.US_ASCII);
+        final AtomicInteger writes = new AtomicInteger();
+        routing.send(envelope, out -> {
+            writes.incrementAndGet();
+            out.write(data);
+        }, data.length);
+
+        assertEquals(1, writes.get());
+        assertEquals(Arrays.asList("a@big.example", "d@big.example"), dedicated.getMessages().get(0).getEnvelope().getRecipients());
+        assertEquals(Collections.singletonList("b@other.example"), shared.getMessages().get(0).getEnvelope().getRecipients());
+        assertEquals(Collections.singletonList("c@mail.corp.example"), subdomains.getMessages().get(0).getEnvelope().getRecipients());
+        for (final InMemoryTransport transport : Arrays.asList(dedicated, shared, subdomains)) {
+            final InMemoryTransport.Message message = transport.getMessages().get(0);
+            assertArrayEquals(data, message.getData());
+            assertEquals("bounce@example.com", message.getEnvelope().getReversePath());
+            assertEquals(BodyType.EIGHT_BIT_MIME, message.getEnvelope().getBodyType());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.apache.commons.mail2.core.smtp.RateLimiter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link SendLanes}.
+ */
+class SendLanesTest {
+
+    private final SendLanes lanes = new SendLanes();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private String blocked() throws EmailException {
+        try {
+            release.await();
+        } catch (final InterruptedException e) {
+            throw new EmailException(e);
+        }
+        return "blocked";
+    }
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        lanes.close();
+    }
+
+    @Test
+    void testClose() {
+        final SendLane lane = lanes.addLane("bulk", 0, 1, 1);
+        assertThrows(IllegalArgumentException.class, () -> lanes.addLane("bulk", 0, 1, 1));
+        lanes.close();
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> lane.submit(1, () -> "sent").get(10, TimeUnit.SECONDS));
+        assertEquals("The send lane bulk is closed", e.getCause().getMessage());
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        final SendLane bulk = lanes.addLane("bulk", 0, 1, 10);
+        final CompletableFuture<String> running = bulk.submit(1, this::blocked);
+        final AtomicInteger sends = new AtomicInteger();
+        final CompletableFuture<Integer> abandoned = bulk.submit(1, sends::incrementAndGet);
+        assertTrue(abandoned.cancel(true));
+        release.countDown();
+        assertEquals("blocked", running.get(10, TimeUnit.SECONDS));
+        assertEquals("sent", bulk.submit(1, () -> "sent").get(10, TimeUnit.SECONDS));
+        assertEquals(0, sends.get());
+    }
+
+    @Test
+    void testIsolation() throws Exception {
+        final SendLane bulk = lanes.addLane("bulk", 0, 1, 1);
+        final SendLane transactional = lanes.addLane("transactional", 0, 1, 1);
+        final CompletableFuture<String> running = bulk.submit(1, this::blocked);
+        for (int i = 0; i < 100 && bulk.getActive() == 0; i++) {
+            Thread.sleep(10);
+        }
+        final CompletableFuture<String> queued = bulk.submit(1, () -> "queued");
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> bulk.submit(1, () -> "rejected").get(10, TimeUnit.SECONDS));
+        assertInstanceOf(EmailException.class, e.getCause());
+        assertEquals(1, bulk.getRejected());
+        assertEquals(1, bulk.getQueued());
+
+        assertEquals("sent", transactional.submit(1, () -> "sent").get(10, TimeUnit.SECONDS));
+        assertFalse(running.isDone());
+        release.countDown();
+        assertEquals("blocked", running.get(10, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(10, TimeUnit.SECONDS));
+        assertEquals(0, bulk.getQueued());
+    }
+
+    @Test
+    void testPriority() throws Exception {
+        final SendLane transactional = lanes.addLane("transactional", 10, 1, 10);
+        final SendLane bulk = lanes.addLane("bulk", 0, 1, 10);
+        final CompletableFuture<String> running = transactional.submit(1, this::blocked);
+        final CompletableFuture<String> reset = transactional.submit(1, () -> "reset");
+        // the bulk send starts only when no transactional send is queued
+        final CompletableFuture<Integer> campaign = bulk.submit(1, transactional::getQueued);
+        Thread.sleep(100);
+        assertFalse(campaign.isDone());
+        release.countDown();
+        CompletableFuture.allOf(running, reset, campaign).get(10, TimeUnit.SECONDS);
+        assertEquals(0, campaign.get());
+        assertTrue(lanes.getLanes().contains(bulk));
+    }
+
+    @Test
+    void testRateLimit() throws Exception {
+        final SendLane bulk = lanes.addLane("bulk", 0, 1, 10).setRateLimiter(new RateLimiter(0.5, 1, 0, 0).setMode(RateLimiter.Mode.FAIL_FAST));
+        assertEquals("sent", bulk.submit(1, () -> "sent").get(10, TimeUnit.SECONDS));
+        final ExecutionException e = assertThrows(ExecutionException.class, () -> bulk.submit(1, () -> "sent").get(10, TimeUnit.SECONDS));
+        assertInstanceOf(RateLimitExceededException.class, e.getCause());
+        assertEquals("bulk", ((RateLimitExceededException) e.getCause()).getKey());
+    }
+}
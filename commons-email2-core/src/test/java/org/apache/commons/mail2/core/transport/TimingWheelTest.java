@@ -0,0 +1,83 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.core.transport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link TimingWheel}.
+ */
+class TimingWheelTest {
+
+    @Test
+    void testAdvanceCascadesAcrossLevels() {
+        final TimingWheel<Long> wheel = new TimingWheel<>();
+        final long[] deadlines = { 1, 5, TimingWheel.SLOTS - 1, TimingWheel.SLOTS, TimingWheel.SLOTS + 3, 70_000, 70_000, 65_536 };
+        for (final long deadline : deadlines) {
+            wheel.add(deadline, deadline);
+        }
+        final List<Long> expired = new ArrayList<>();
+        while (!wheel.isEmpty()) {
+            final long tick = wheel.getTick() + 1;
+            wheel.advance(value -> {
+                assertEquals(tick, value.longValue());
+                expired.add(value);
+            });
+        }
+        final long[] sorted = deadlines.clone();
+        Arrays.sort(sorted);
+        assertEquals(Arrays.toString(sorted), expired.toString());
+    }
+
+    @Test
+    void testAddDueValueExpiresAtNextTick() {
+        final TimingWheel<String> wheel = new TimingWheel<>();
+        wheel.advance(value -> { });
+        wheel.advance(value -> { });
+        wheel.add("late", 0);
+        final List<String> expired = new ArrayList<>();
+        wheel.advance(expired::add);
+        assertEquals(Arrays.asList("late"), expired);
+        assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    void testRemove() {
+        final TimingWheel<String> wheel = new TimingWheel<>();
+        final TimingWheel.Node<String> a = wheel.add("a", 3);
+        wheel.add("b", 3);
+        final TimingWheel.Node<String> c = wheel.add("c", 3);
+        assertEquals(3, wheel.size());
+        assertTrue(wheel.remove(a));
+        assertTrue(wheel.remove(c));
+        assertFalse(wheel.remove(c));
+        assertEquals(1, wheel.size());
+        final List<String> expired = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            wheel.advance(expired::add);
+        }
+        assertEquals(Arrays.asList("b"), expired);
+    }
+}
@@ -18,6 +18,8 @@ package org.apache.commons.mail2.jakarta;
 
 import java.io.IOException;
 
+import org.apache.commons.mail2.core.Deadline;
+
 import jakarta.activation.DataSource;
 
 /**
@@ -45,4 +47,33 @@ public interface DataSourceResolver {
      * @throws IOException resolving the resource failed
      */
     DataSource resolve(String resourceLocation, boolean isLenient) throws IOException;
+
+    /**
+     * Resolves the given resource location to a {@code DataSource} within the deadline of a send. Resolvers that may block on the network should limit
+     * their timeouts to the remaining time; the default implementation ignores the deadline.
+     *
+     * @param resourceLocation The location of the resource
+     * @param isLenient        shall we ignore resources not found or complain with an exception?
+     * @param deadline         The deadline of the send
+     * @return The data source containing the resource or null if the resource was not found in lenient mode
+     * @throws IOException resolving the resource failed
+     * @since 2.0.0-M2
+     */
+    default DataSource resolve(final String resourceLocation, final boolean isLenient, final Deadline deadline) throws IOException {
+        return resolve(resourceLocation, isLenient);
+    }
+
+    /**
+     * Resolves the given resource location to a {@code DataSource} within the deadline of a send. The default implementation ignores the deadline.
+     *
+     * @param resourceLocation The location of the resource
+     * @param deadline         The deadline of the send
+     * @return The {@code DataSource}
+     * @throws IOException the resource was not found
+     * @see #resolve(String, boolean, Deadline)
+     * @since 2.0.0-M2
+     */
+    default DataSource resolve(final String resourceLocation, final Deadline deadline) throws IOException {
+        return resolve(resourceLocation);
+    }
 }
@@ -16,37 +16,92 @@
  */
 package org.apache.commons.mail2.jakarta;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 
+import org.apache.commons.mail2.core.Deadline;
 import org.apache.commons.mail2.core.EmailConstants;
 import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
 import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.MessageTooLargeException;
+import org.apache.commons.mail2.core.io.ArchiveSink;
+import org.apache.commons.mail2.core.io.BufferPool;
+import org.apache.commons.mail2.core.io.CrlfOutputStream;
+import org.apache.commons.mail2.core.io.TeeOutputStream;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.mime.MimeEntity;
+import org.apache.commons.mail2.core.mime.MimeWriter;
+import org.apache.commons.mail2.core.mime.TransferEncoding;
+import org.apache.commons.mail2.core.smtp.BodyType;
+import org.apache.commons.mail2.core.smtp.CapabilityCache;
+import org.apache.commons.mail2.core.smtp.ConcurrencyLimiter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.NioSmtpEngine;
+import org.apache.commons.mail2.core.smtp.RateLimiter;
+import org.apache.commons.mail2.core.smtp.RelayGroup;
+import org.apache.commons.mail2.core.smtp.SmtpClient;
+import org.apache.commons.mail2.core.smtp.SmtpConnection;
+import org.apache.commons.mail2.core.smtp.SmtpException;
+import org.apache.commons.mail2.core.smtp.SmtpReply;
+import org.apache.commons.mail2.core.smtp.TlsSessions;
+import org.apache.commons.mail2.core.transport.ArchivingTransport;
+import org.apache.commons.mail2.core.transport.ConcurrencyLimitedTransport;
+import org.apache.commons.mail2.core.transport.DeliveryScheduler;
+import org.apache.commons.mail2.core.transport.EmailTransport;
+import org.apache.commons.mail2.core.transport.OutboundQueue;
+import org.apache.commons.mail2.core.transport.RateLimitedTransport;
+import org.apache.commons.mail2.core.transport.SendLane;
+import org.apache.commons.mail2.core.transport.SendLanes;
 import org.apache.commons.mail2.jakarta.util.IDNEmailAddressConverter;
 
+import jakarta.activation.DataHandler;
+import jakarta.mail.Address;
 import jakarta.mail.Authenticator;
 import jakarta.mail.Message;
 import jakarta.mail.MessagingException;
+import jakarta.mail.Multipart;
+import jakarta.mail.Part;
+import jakarta.mail.PasswordAuthentication;
 import jakarta.mail.Session;
 import jakarta.mail.Store;
 import jakarta.mail.Transport;
 import jakarta.mail.internet.AddressException;
 import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MailDateFormat;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.internet.MimeMultipart;
+import jakarta.mail.internet.MimePart;
 import jakarta.mail.internet.MimeUtility;
 
 /**
@@ -64,11 +119,103 @@ public abstract class Email {
      */
     private static final InternetAddress[] EMPTY_INTERNET_ADDRESS_ARRAY = {};
 
+    /**
+     * Session properties of the JavaMail transport that the SMTP client of {@link #createSmtpClient()} does not honor.
+     */
+    private static final String[] UNSUPPORTED_CLIENT_PROPERTIES = { "mail.smtp.auth.mechanisms", "mail.smtp.localaddress", "mail.smtp.proxy.host",
+            "mail.smtp.socks.host", EmailConstants.MAIL_SMTP_SSL_SOCKET_FACTORY_CLASS };
+
+    /**
+     * Discards the bytes written to it, for a message serialized only to feed the archive sink.
+     */
+    private static final OutputStream DISCARD = new OutputStream() {
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            // discarded
+        }
+
+        @Override
+        public void write(final int b) {
+            // discarded
+        }
+    };
+
+    /**
+     * Sets the Content-Transfer-Encoding of parts without one so that their content is not encoded: binary for all leaf parts, or 8bit for inline text parts
+     * whose text allows it.
+     *
+     * @param part     The part, searched recursively if multipart.
+     * @param encoding {@link TransferEncoding#BINARY} or {@link TransferEncoding#EIGHT_BIT}.
+     * @return whether a part was changed.
+     * @throws MessagingException if a header cannot be read or set.
+     * @throws IOException        if the content cannot be read.
+     */
+    private static boolean setTransferEncoding(final Part part, final TransferEncoding encoding) throws MessagingException, IOException {
+        if (part.isMimeType("multipart/*")) {
+            final Object content = part.getContent();
+            boolean changed = false;
+            if (content instanceof Multipart) {
+                final Multipart multipart = (Multipart) content;
+                for (int i = 0; i < multipart.getCount(); i++) {
+                    changed |= setTransferEncoding(multipart.getBodyPart(i), encoding);
+                }
+            }
+            return changed;
+        }
+        if (!(part instanceof MimePart) || part.isMimeType("message/*") || ((MimePart) part).getEncoding() != null) {
+            return false;
+        }
+        if (encoding == TransferEncoding.EIGHT_BIT) {
+            if (!part.isMimeType("text/*") || part.getDisposition() != null) {
+                return false;
+            }
+            final Object content = part.getContent();
+            if (!(content instanceof String) || TransferEncoding.forText((String) content, true) != TransferEncoding.EIGHT_BIT) {
+                return false;
+            }
+        }
+        part.setHeader("Content-Transfer-Encoding", encoding.toString());
+        return true;
+    }
+
+    /**
+     * Replaces the non US-ASCII characters of an address by an atext character. RFC 6531 allows UTF-8 wherever RFC 5322 allows atext, so the result has a
+     * valid syntax if and only if the address is a valid internationalized address.
+     *
+     * @param address The address with an ASCII domain.
+     * @return an US-ASCII address with the same syntax.
+     */
+    private static String replaceNonAscii(final String address) {
+        final StringBuilder builder = new StringBuilder(address.length());
+        address.codePoints().forEach(c -> builder.append(c < 0x80 ? (char) c : 'x'));
+        return builder.toString();
+    }
+
+    /**
+     * Creates the exception thrown when sending with the SMTP client fails.
+     *
+     * @param client The client.
+     * @param cause  The failure.
+     * @return the exception.
+     */
+    private static EmailException sendFailed(final SmtpClient client, final EmailException cause) {
+        if (cause instanceof EmailTimeoutException) {
+            return cause;
+        }
+        return new EmailException("Sending the email to the following server failed : " + client.getHost() + ":" + client.getPort(), cause);
+    }
+
     /**
      * The email message to send.
      */
     private MimeMessage message;
 
+    /**
+     * Whether the email was already serialized by {@link #writeTo(OutputStream)}.
+     */
+    private boolean written;
+
     /**
      * The charset to use for this message.
      */
@@ -232,6 +379,91 @@ public abstract class Email {
      */
     private boolean sendPartial;
 
+    /**
+     * Receives a copy of each sent message, or null for none.
+     */
+    private ArchiveSink archiveSink;
+
+    /**
+     * The maximum message size in octets checked before sending, 0 for none.
+     */
+    private long maxMessageSize;
+
+    /**
+     * Whether to check the message size against the limit the relay announces with the SMTP SIZE extension before sending.
+     */
+    private boolean relaySizeCheck;
+
+    /**
+     * Whether text parts are sent as 8bit instead of quoted-printable or base64 if the relay supports the SMTP 8BITMIME extension.
+     */
+    private boolean allow8BitMime;
+
+    /**
+     * Whether addresses and headers are sent as UTF-8 with the SMTP SMTPUTF8 extension.
+     */
+    private boolean smtpUtf8;
+
+    /**
+     * The size of the chunks sent with BDAT if the relay supports the SMTP CHUNKING extension, 0 to always use DATA.
+     */
+    private int chunkSize;
+
+    /**
+     * The non-blocking engine sending the messages, or null to use the JavaMail transport.
+     */
+    private NioSmtpEngine smtpEngine;
+
+    /**
+     * The transport sending the messages, or null for the default.
+     */
+    private EmailTransport transport;
+
+    /**
+     * Whether messages are delivered with LMTP instead of SMTP.
+     */
+    private boolean lmtp;
+
+    /**
+     * The reply of the server for each recipient of the last LMTP delivery.
+     */
+    private Map<String, SmtpReply> deliveryReplies = Collections.emptyMap();
+
+    /**
+     * The relays the messages are spread over, or null to send to the host name only.
+     */
+    private RelayGroup relayGroup;
+
+    /**
+     * Limits the rate of messages and recipients sent, or null for no limit.
+     */
+    private RateLimiter rateLimiter;
+
+    /**
+     * Limits the sends in flight to the relay, or null for no limit.
+     */
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * The lane that runs the sends, or null to send in the calling thread.
+     */
+    private SendLane sendLane;
+
+    /**
+     * The time by which a send must complete, or null for no limit.
+     */
+    private Duration sendTimeout;
+
+    /**
+     * The TLS context shared with other emails to resume TLS sessions, or null for the default.
+     */
+    private TlsSessions tlsSessions;
+
+    /**
+     * The deadline of the send in progress, started by the first send method called.
+     */
+    private Deadline deadline;
+
     /**
      * The Session to mail with.
      */
@@ -244,6 +476,16 @@ public abstract class Email {
         // empty
     }
 
+    /**
+     * Adds an address list header to the entity if the list is not empty.
+     */
+    private void addAddressHeader(final MimeEntity entity, final String name, final List<InternetAddress> list, final boolean utf8) throws EmailException {
+        if (!EmailUtils.isEmpty(list)) {
+            entity.addHeader(name, utf8 ? InternetAddress.toUnicodeString(toInternetAddressArray(list), name.length() + 2)
+                    : InternetAddress.toString(toAsciiAddressArray(list), name.length() + 2));
+        }
+    }
+
     /**
      * Adds a blind BCC recipient to the email. The email address will also be used as the personal name. The name will be encoded by the charset of
      * {@link #setCharset(String)}. If it is not set, it will be encoded using the Java platform's default charset (UTF-16) if it contains non-ASCII characters;
@@ -509,9 +751,12 @@ public abstract class Email {
 
         try {
             message = createMimeMessage(getMailSession());
+            final boolean utf8 = isSmtpUtf8();
 
             if (EmailUtils.isNotEmpty(subject)) {
-                if (EmailUtils.isNotEmpty(charset)) {
+                if (utf8) {
+                    message.setHeader("Subject", MimeUtility.fold(9, subject));
+                } else if (EmailUtils.isNotEmpty(charset)) {
                     message.setSubject(subject, charset);
                 } else {
                     message.setSubject(subject);
@@ -540,7 +785,7 @@ public abstract class Email {
             }
 
             if (fromAddress != null) {
-                message.setFrom(fromAddress);
+                message.setFrom(utf8 ? fromAddress : toAsciiAddress(fromAddress));
             } else if (session.getProperty(EmailConstants.MAIL_SMTP_FROM) == null && session.getProperty(EmailConstants.MAIL_FROM) == null) {
                 throw new EmailException("From address required");
             }
@@ -550,24 +795,24 @@ public abstract class Email {
             }
 
             if (!EmailUtils.isEmpty(toList)) {
-                message.setRecipients(Message.RecipientType.TO, toInternetAddressArray(toList));
+                message.setRecipients(Message.RecipientType.TO, utf8 ? toInternetAddressArray(toList) : toAsciiAddressArray(toList));
             }
 
             if (!EmailUtils.isEmpty(ccList)) {
-                message.setRecipients(Message.RecipientType.CC, toInternetAddressArray(ccList));
+                message.setRecipients(Message.RecipientType.CC, utf8 ? toInternetAddressArray(ccList) : toAsciiAddressArray(ccList));
             }
 
             if (!EmailUtils.isEmpty(bccList)) {
-                message.setRecipients(Message.RecipientType.BCC, toInternetAddressArray(bccList));
+                message.setRecipients(Message.RecipientType.BCC, utf8 ? toInternetAddressArray(bccList) : toAsciiAddressArray(bccList));
             }
 
             if (!EmailUtils.isEmpty(replyList)) {
-                message.setReplyTo(toInternetAddressArray(replyList));
+                message.setReplyTo(utf8 ? toInternetAddressArray(replyList) : toAsciiAddressArray(replyList));
             }
 
             if (!EmailUtils.isEmpty(headers)) {
                 for (final Map.Entry<String, String> entry : headers.entrySet()) {
-                    final String foldedValue = createFoldedHeaderValue(entry.getKey(), entry.getValue());
+                    final String foldedValue = createFoldedHeaderValue(entry.getKey(), entry.getValue(), utf8);
                     message.addHeader(entry.getKey(), foldedValue);
                 }
             }
@@ -586,6 +831,66 @@ public abstract class Email {
         }
     }
 
+    /**
+     * Checks the estimated message size against the configured maximum and, if enabled, the limit the relay announces.
+     *
+     * @throws MessageTooLargeException if a limit is exceeded.
+     * @throws EmailException           if the size cannot be estimated or the relay cannot be asked.
+     */
+    private void checkMessageSize() throws EmailException {
+        if (maxMessageSize <= 0 && !relaySizeCheck) {
+            return;
+        }
+        final long size = estimateSize();
+        checkMaxMessageSize(size);
+        if (relaySizeCheck) {
+            final SmtpClient client = createSmtpClient();
+            final long limit = client.getSizeLimit();
+            if (limit > 0 && size > limit) {
+                throw new MessageTooLargeException(size, limit, "relay " + client.getHost() + ":" + client.getPort());
+            }
+        }
+    }
+
+    /**
+     * Checks a message size against the configured maximum.
+     */
+    private void checkMaxMessageSize(final long size) throws MessageTooLargeException {
+        if (maxMessageSize > 0 && size > maxMessageSize) {
+            throw new MessageTooLargeException(size, maxMessageSize, "maximum message size");
+        }
+    }
+
+    /**
+     * Checks that the mail session has no settings that the SMTP client of {@link #createSmtpClient()}, which sends with a relay group, LMTP, a send timeout,
+     * an archive sink or an SMTP engine, would ignore: a socket factory other than SSL or the one of the TLS sessions, a proxy, a local address or a choice
+     * of SASL mechanisms.
+     *
+     * @throws EmailException if the session has such a setting.
+     */
+    private void checkSmtpClientSession() throws EmailException {
+        final Properties properties = getMailSession().getProperties();
+        for (final String name : UNSUPPORTED_CLIENT_PROPERTIES) {
+            if (properties.getProperty(name) != null) {
+                throw new EmailException("The session property " + name + " is not supported by the built-in SMTP client");
+            }
+        }
+        if (Boolean.parseBoolean(properties.getProperty("mail.smtp.sasl.enable"))) {
+            throw new EmailException("The session property mail.smtp.sasl.enable is not supported by the built-in SMTP client");
+        }
+        final String socketFactoryClass = properties.getProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_CLASS);
+        if (socketFactoryClass != null && !"javax.net.ssl.SSLSocketFactory".equals(socketFactoryClass)) {
+            throw new EmailException("The socket factory " + socketFactoryClass + " is not supported by the built-in SMTP client");
+        }
+        final Object tlsFactory = tlsSessions != null ? tlsSessions.getSocketFactory() : null;
+        for (final String name : new String[] { EmailConstants.MAIL_SMTP_SOCKET_FACTORY, EmailConstants.MAIL_SMTP_SSL_SOCKET_FACTORY }) {
+            final Object socketFactory = properties.get(name);
+            if (socketFactory != null && socketFactory != tlsFactory) {
+                throw new EmailException("The session property " + name + " is not supported by the built-in SMTP client");
+            }
+        }
+    }
+
     /**
      * When a mail session is already initialized setting the session properties has no effect. In order to flag the problem throw an IllegalStateException.
      *
@@ -597,21 +902,91 @@ public abstract class Email {
         }
     }
 
+    /**
+     * Creates the entity holding the content of the email, without the message headers. Subclasses override this method to describe their body parts in the
+     * same way as they build the MimeMessage.
+     *
+     * @return The content entity.
+     * @throws EmailException if the content cannot be described.
+     * @since 2.0.0-M2
+     */
+    protected MimeEntity createContentEntity() throws EmailException {
+        // update content type (and encoding)
+        updateContentType(contentType);
+        try {
+            if (content != null) {
+                if ((contentType == null || EmailConstants.TEXT_PLAIN.equalsIgnoreCase(contentType)) && content instanceof String) {
+                    return createTextEntity(content.toString());
+                }
+                EmailException.checkNonEmpty(contentType, () -> "Content type required");
+                final MimeEntity entity = MimeEntity.ofContent(contentType, new DataHandler(content, contentType)::writeTo);
+                if (content instanceof String) {
+                    entity.setTransferEncoding(TransferEncoding.forText(content.toString()));
+                }
+                return entity;
+            }
+            if (emailBody != null) {
+                return MimeEntities.toMimeEntity(emailBody);
+            }
+            return createTextEntity("");
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    /**
+     * Creates the SMTP envelope of a built message, the way the JavaMail SMTP transport does: the reverse path is the bounce address, if any, or else the
+     * first "From" address, or else the address of the {@code mail.from} session property; the recipients are all "To", "CC" and "BCC" addresses.
+     *
+     * @param mimeMessage The built message.
+     * @return The envelope.
+     * @throws EmailException if the message has no sender or no recipients.
+     * @since 2.0.0-M2
+     */
+    protected Envelope createEnvelope(final MimeMessage mimeMessage) throws EmailException {
+        try {
+            String reversePath = getMailSession().getProperty(EmailConstants.MAIL_SMTP_FROM);
+            if (EmailUtils.isEmpty(reversePath)) {
+                final Address[] from = mimeMessage.getFrom();
+                if (from != null && from.length > 0) {
+                    reversePath = ((InternetAddress) from[0]).getAddress();
+                } else {
+                    final String mailFrom = getMailSession().getProperty(EmailConstants.MAIL_FROM);
+                    EmailException.checkNonEmpty(mailFrom, () -> "From address required");
+                    reversePath = new InternetAddress(mailFrom).getAddress();
+                }
+            }
+            final Address[] recipients = mimeMessage.getAllRecipients();
+            EmailException.checkNonEmpty(recipients, () -> "At least one receiver address required");
+            final List<String> addresses = new ArrayList<>(recipients.length);
+            for (final Address recipient : recipients) {
+                addresses.add(((InternetAddress) recipient).getAddress());
+            }
+            return new Envelope(reversePath, addresses).withSmtpUtf8(isSmtpUtf8() && !isAscii(reversePath, addresses, mimeMessage));
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
     /**
      * Creates a folded header value containing 76 character chunks.
      *
      * @param name  The name of the header
      * @param value The value of the header
+     * @param utf8  Whether the value is sent as UTF-8 instead of encoded words.
      * @return The folded header value
      * @throws IllegalArgumentException if either the name or value is null or empty
      */
-    private String createFoldedHeaderValue(final String name, final String value) {
+    private String createFoldedHeaderValue(final String name, final String value, final boolean utf8) {
         if (EmailUtils.isEmpty(name)) {
             throw new IllegalArgumentException("name cannot be null or empty");
         }
         if (EmailUtils.isEmpty(value)) {
             throw new IllegalArgumentException("value cannot be null or empty");
         }
+        if (utf8) {
+            return MimeUtility.fold(name.length() + 2, value);
+        }
         try {
             return MimeUtility.fold(name.length() + 2, MimeUtility.encodeText(value, charset, null));
         } catch (final UnsupportedEncodingException e) {
@@ -631,8 +1006,18 @@ public abstract class Email {
     private InternetAddress createInternetAddress(final String email, final String name, final String charsetName) throws EmailException {
         try {
             final InternetAddress address;
+            final boolean unicode;
             try {
-                address = new InternetAddress(new IDNEmailAddressConverter().toASCII(email));
+                final String ascii = new IDNEmailAddressConverter().toASCII(email);
+                unicode = isSmtpUtf8() && !ascii.equals(email);
+                if (unicode) {
+                    // keep the Unicode form for SMTPUTF8, JavaMail only validates it with the mail.mime.allowutf8 system property
+                    new InternetAddress(replaceNonAscii(ascii)).validate();
+                    address = new InternetAddress();
+                    address.setAddress(email);
+                } else {
+                    address = new InternetAddress(ascii);
+                }
             } catch (final IllegalArgumentException e) {
                 throw new EmailException(e);
             }
@@ -650,13 +1035,77 @@ public abstract class Email {
             }
             // run sanity check on new InternetAddress object; if this fails
             // it will throw AddressException.
-            address.validate();
+            if (!unicode) {
+                address.validate();
+            }
             return address;
         } catch (final AddressException | UnsupportedEncodingException e) {
             throw new EmailException(e);
         }
     }
 
+    /**
+     * Creates the MIME entity written by {@link #writeTo(OutputStream)}: the content entity with the message headers that {@link #buildMimeMessage()} and
+     * {@code Transport} would set. BCC recipients are not written.
+     *
+     * @return The message entity.
+     * @throws IllegalStateException if the MimeMessage was already built or the email was already written.
+     * @throws EmailException        if there was an error.
+     * @since 2.0.0-M2
+     */
+    protected MimeEntity createMimeEntity() throws EmailException {
+        if (message != null || written) {
+            // [EMAIL-95] an email is not reused
+            throw new IllegalStateException("The MimeMessage is already built.");
+        }
+        final String from = fromAddress != null ? fromAddress.toString() : session != null ? session.getProperty(EmailConstants.MAIL_FROM) : null;
+        EmailException.checkNonEmpty(from, () -> "From address required");
+        if (toList.size() + ccList.size() + bccList.size() == 0) {
+            throw new EmailException("At least one receiver address required");
+        }
+        final boolean utf8 = isSmtpUtf8();
+        final MimeEntity entity = createContentEntity();
+        entity.addHeader("Date", new MailDateFormat().format(getSentDate()));
+        entity.addHeader("From", fromAddress == null ? from : utf8 ? fromAddress.toUnicodeString() : toAsciiAddress(fromAddress).toString());
+        addAddressHeader(entity, "Reply-To", replyList, utf8);
+        addAddressHeader(entity, "To", toList, utf8);
+        addAddressHeader(entity, "Cc", ccList, utf8);
+        if (headers.keySet().stream().noneMatch("Message-ID"::equalsIgnoreCase)) {
+            final String domain = from.substring(from.lastIndexOf('@') + 1).replace(">", "");
+            entity.addHeader("Message-ID", "<" + UUID.randomUUID() + "." + System.currentTimeMillis() + "@" + domain + ">");
+        }
+        if (EmailUtils.isNotEmpty(subject)) {
+            try {
+                entity.addHeader("Subject", MimeUtility.fold(9, utf8 ? subject : MimeUtility.encodeText(subject, charset, null)));
+            } catch (final UnsupportedEncodingException e) {
+                throw new EmailException(e);
+            }
+        }
+        entity.addHeader("MIME-Version", "1.0");
+        for (final Map.Entry<String, String> entry : headers.entrySet()) {
+            entity.addHeader(entry.getKey(), createFoldedHeaderValue(entry.getKey(), entry.getValue(), utf8));
+        }
+        // only a built entity marks the email as written, so that a failed build can be retried
+        written = true;
+        return entity;
+    }
+
+    /**
+     * Closes an archive entry, discarding its copy unless it was committed.
+     *
+     * @param entry The entry, or null.
+     * @throws EmailException if closing fails.
+     */
+    private void closeArchiveEntry(final ArchiveSink.Entry entry) throws EmailException {
+        if (entry != null) {
+            try {
+                entry.close();
+            } catch (final IOException e) {
+                throw new EmailException(e);
+            }
+        }
+    }
+
     /**
      * Creates a customized MimeMessage which can be implemented by a derived class, e.g. to set the message id.
      *
@@ -667,6 +1116,201 @@ public abstract class Email {
         return new MimeMessage(aSession);
     }
 
+    /**
+     * Creates a writer of the previously created MimeMessage with canonical line endings, without the Bcc and Content-Length headers.
+     *
+     * @param entry The archive entry receiving a copy, or null for none.
+     * @return a new writer.
+     */
+    private ContentWriter createMessageWriter(final ArchiveSink.Entry entry) {
+        return out -> {
+            try {
+                message.writeTo(new CrlfOutputStream(entry != null ? new TeeOutputStream(out, entry.getOutputStream()) : out),
+                        new String[] { "Bcc", "Content-Length" });
+            } catch (final MessagingException e) {
+                throw new IOException(e);
+            }
+        };
+    }
+
+    /**
+     * Creates the writer used by {@link #writeTo(OutputStream)}.
+     *
+     * @return a new writer.
+     */
+    private MimeWriter createMimeWriter() {
+        return new MimeWriter().setAllow8Bit(isAllow8BitMime());
+    }
+
+    /**
+     * Creates the SMTP client used by the raw send methods, configured from the properties of the mail session: host, port, TLS, timeouts and, through the
+     * session authenticator, the credentials.
+     *
+     * @return The SMTP client.
+     * @throws EmailException if the host name was not set.
+     * @since 2.0.0-M2
+     */
+    protected SmtpClient createSmtpClient() throws EmailException {
+        final Session mailSession = getMailSession();
+        final Properties properties = mailSession.getProperties();
+        final String host = properties.getProperty(EmailConstants.MAIL_HOST);
+        EmailException.checkNonEmpty(host, () -> "Cannot find valid hostname for mail session");
+        final int port = Integer.parseInt(properties.getProperty(EmailConstants.MAIL_PORT, Integer.toString(SmtpClient.DEFAULT_PORT)));
+        final SmtpClient client = new SmtpClient().setHost(host).setPort(port).setCapabilityCache(CapabilityCache.getDefault());
+        client.setSslOnConnect(Boolean.parseBoolean(properties.getProperty(EmailConstants.MAIL_SMTP_SSL_ENABLE))
+                || "javax.net.ssl.SSLSocketFactory".equals(properties.getProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_CLASS)));
+        client.setStartTlsEnabled(Boolean.parseBoolean(properties.getProperty(EmailConstants.MAIL_TRANSPORT_STARTTLS_ENABLE)));
+        client.setStartTlsRequired(Boolean.parseBoolean(properties.getProperty(EmailConstants.MAIL_TRANSPORT_STARTTLS_REQUIRED)));
+        client.setSslCheckServerIdentity(Boolean.parseBoolean(properties.getProperty(EmailConstants.MAIL_SMTP_SSL_CHECKSERVERIDENTITY)));
+        if (tlsSessions != null) {
+            client.setSslSocketFactory(tlsSessions.getSocketFactory());
+        }
+        client.setSendPartial(Boolean.parseBoolean(properties.getProperty(EmailConstants.MAIL_SMTP_SEND_PARTIAL)));
+        client.setLocalHost(properties.getProperty("mail.smtp.localhost"));
+        client.setChunkSize(Integer.parseInt(properties.getProperty(EmailConstants.MAIL_SMTP_CHUNKSIZE, "0")));
+        client.setLmtp(lmtp);
+        client.setRateLimiter(rateLimiter);
+        client.setConcurrencyLimiter(concurrencyLimiter);
+        client.setDeadline(deadline);
+        final String connectionTimeout = properties.getProperty(EmailConstants.MAIL_SMTP_CONNECTIONTIMEOUT);
+        if (connectionTimeout != null) {
+            client.setConnectTimeout(Duration.ofMillis(Long.parseLong(connectionTimeout)));
+        }
+        final String timeout = properties.getProperty(EmailConstants.MAIL_SMTP_TIMEOUT);
+        if (timeout != null) {
+            client.setReadTimeout(Duration.ofMillis(Long.parseLong(timeout)));
+        }
+        if (Boolean.parseBoolean(properties.getProperty(EmailConstants.MAIL_SMTP_AUTH))) {
+            final PasswordAuthentication credentials = mailSession.requestPasswordAuthentication(null, port, EmailConstants.SMTP, null,
+                    properties.getProperty(EmailConstants.MAIL_SMTP_USER));
+            if (credentials != null) {
+                client.setAuthentication(credentials.getUserName(), credentials.getPassword());
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Creates a text/plain entity in the email charset, or in US-ASCII or UTF-8 if none is set.
+     */
+    private MimeEntity createTextEntity(final String text) {
+        final Charset textCharset;
+        if (EmailUtils.isNotEmpty(charset)) {
+            textCharset = Charset.forName(charset);
+        } else {
+            textCharset = StandardCharsets.US_ASCII.newEncoder().canEncode(text) ? StandardCharsets.US_ASCII : StandardCharsets.UTF_8;
+        }
+        return MimeEntity.ofText(text, EmailConstants.TEXT_PLAIN, textCharset);
+    }
+
+    /**
+     * Builds the email and enqueues it to an outbound queue, which serializes the message now, so that this email and its data sources need not be kept,
+     * and delivers it later with its own transport, in priority order. The session settings of this email are not used for the delivery.
+     *
+     * @param queue    the outbound queue.
+     * @param priority the priority of the message.
+     * @return The future message id of the underlying MimeMessage, completed when the queue delivered the message or with an {@link EmailException}
+     * @throws IllegalStateException if the MimeMessage was already built, that is, {@link #buildMimeMessage()} was already called
+     * @throws EmailException        building the message failed, or the queue did not admit it
+     * @since 2.0.0-M2
+     */
+    public CompletableFuture<String> enqueue(final OutboundQueue queue, final OutboundQueue.Priority priority) throws EmailException {
+        checkMessageSize();
+        buildMimeMessage();
+        try {
+            message.saveChanges();
+            final String messageId = message.getMessageID();
+            final Envelope envelope = createEnvelope(message);
+            return queue.enqueue(priority, envelope, createMessageWriter(null), SizeEstimator.estimate(message)).thenApply(delivered -> messageId);
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    /**
+     * Estimates the size of an address list header, 0 if the list is empty.
+     */
+    private long estimateAddressHeader(final String name, final List<InternetAddress> list) {
+        return EmailUtils.isEmpty(list) ? 0 : SizeEstimator.header(name, InternetAddress.toString(toInternetAddressArray(list)));
+    }
+
+    /**
+     * Estimates the size of the content and its Content-Type and Content-Transfer-Encoding headers, before the MimeMessage is built.
+     *
+     * @return The estimated size in octets.
+     * @throws EmailException if the content cannot be read.
+     * @since 2.0.0-M2
+     */
+    protected long estimateContentSize() throws EmailException {
+        try {
+            if (emailBody != null) {
+                return SizeEstimator.header("Content-Type", emailBody.getContentType()) + 2 + SizeEstimator.estimate(emailBody);
+            }
+            if (content instanceof MimeMultipart) {
+                return SizeEstimator.header("Content-Type", ((MimeMultipart) content).getContentType()) + 2 + SizeEstimator.estimate((MimeMultipart) content);
+            }
+            final String type = EmailUtils.isNotEmpty(contentType) ? contentType : EmailConstants.TEXT_PLAIN;
+            final long headers = SizeEstimator.header("Content-Type", type) + SizeEstimator.header("Content-Transfer-Encoding", "quoted-printable") + 2;
+            if (content instanceof String) {
+                return headers + SizeEstimator.estimateText((String) content, null, charset);
+            }
+            return headers;
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    /**
+     * Estimates the size of the message on the wire from header lengths, body lengths and data source sizes, without encoding anything. Before the
+     * MimeMessage is built the headers that building adds are estimated; afterwards the built message is measured.
+     * <p>
+     * Content whose size is unknown without reading it, such as remote URLs or input streams, is not counted.
+     * </p>
+     *
+     * @return The estimated size in octets.
+     * @throws EmailException if the content cannot be read.
+     * @since 2.0.0-M2
+     */
+    public long estimateSize() throws EmailException {
+        if (message != null) {
+            try {
+                return SizeEstimator.estimate(message);
+            } catch (final MessagingException e) {
+                throw new EmailException(e);
+            }
+        }
+        long size = SizeEstimator.header("Date", "Thu, 1 Jan 2026 00:00:00 +0000 (UTC)");
+        size += SizeEstimator.header("Message-ID", "<1234567890.1.1234567890123@localhost.localdomain>");
+        size += SizeEstimator.header("MIME-Version", "1.0");
+        if (fromAddress != null) {
+            size += SizeEstimator.header("From", fromAddress.toString());
+        }
+        size += estimateAddressHeader("Reply-To", replyList) + estimateAddressHeader("To", toList) + estimateAddressHeader("Cc", ccList);
+        if (EmailUtils.isNotEmpty(subject)) {
+            size += SizeEstimator.header("Subject", subject);
+            if (!StandardCharsets.US_ASCII.newEncoder().canEncode(subject)) {
+                // encoded words: base64 plus the charset and delimiters of each word
+                final Charset subjectCharset = EmailUtils.isNotEmpty(charset) ? Charset.forName(charset) : StandardCharsets.UTF_8;
+                final long encoded = TransferEncoding.BASE64.estimateSize(subject, subjectCharset);
+                size += encoded - subject.length() + (encoded / 60 + 1) * (subjectCharset.name().length() + 8);
+            }
+        }
+        for (final Map.Entry<String, String> header : headers.entrySet()) {
+            size += SizeEstimator.header(header.getKey(), header.getValue());
+        }
+        return size + estimateContentSize();
+    }
+
+    /**
+     * Gets the sink receiving a copy of each sent message.
+     *
+     * @return the sink or null for none.
+     * @since 2.0.0-M2
+     */
+    public ArchiveSink getArchiveSink() {
+        return archiveSink;
+    }
+
     /**
      * Gets the authenticator.
      *
@@ -715,6 +1359,26 @@ public abstract class Email {
         return charset;
     }
 
+    /**
+     * Gets the size of the chunks sent with BDAT.
+     *
+     * @return the chunk size in octets, 0 if BDAT is not used.
+     * @since 2.0.0-M2
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Gets the limiter of the sends in flight to the relay.
+     *
+     * @return the concurrency limiter, or null for no limit.
+     * @since 2.0.0-M2
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
     /**
      * Gets the content.
      *
@@ -735,6 +1399,26 @@ public abstract class Email {
         return contentType;
     }
 
+    /**
+     * Gets the deadline of the send in progress, which also bounds the resolution of resources while the message is built.
+     *
+     * @return the deadline, null if no send timeout is set or no send started.
+     */
+    Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Gets the reply of the server for each recipient of the last message sent with {@link #setLmtp(boolean) LMTP}. The replies are known even if sending
+     * failed for some recipients: a rejection of the recipient, or its own reply after the message data.
+     *
+     * @return an unmodifiable map of each envelope recipient to its reply, in envelope order, empty if the last message was not sent with LMTP.
+     * @since 2.0.0-M2
+     */
+    public Map<String, SmtpReply> getDeliveryReplies() {
+        return deliveryReplies;
+    }
+
     /**
      * Gets the email body.
      *
@@ -803,6 +1487,10 @@ public abstract class Email {
             final Properties properties = new Properties(System.getProperties());
             properties.setProperty(EmailConstants.MAIL_TRANSPORT_PROTOCOL, EmailConstants.SMTP);
 
+            if (EmailUtils.isEmpty(hostName) && relayGroup != null && !relayGroup.getRelays().isEmpty()) {
+                hostName = relayGroup.getRelays().get(0).getHost();
+            }
+
             if (EmailUtils.isEmpty(hostName)) {
                 hostName = properties.getProperty(EmailConstants.MAIL_HOST);
             }
@@ -819,6 +1507,19 @@ public abstract class Email {
             properties.setProperty(EmailConstants.MAIL_SMTP_SEND_PARTIAL, Boolean.toString(isSendPartial()));
             properties.setProperty(EmailConstants.MAIL_SMTPS_SEND_PARTIAL, Boolean.toString(isSendPartial()));
 
+            if (isAllow8BitMime()) {
+                properties.setProperty(EmailConstants.MAIL_SMTP_ALLOW_8BITMIME, "true");
+            }
+
+            if (chunkSize > 0) {
+                properties.setProperty(EmailConstants.MAIL_SMTP_CHUNKSIZE, Integer.toString(chunkSize));
+            }
+
+            if (isSmtpUtf8()) {
+                // only takes effect for messages with UTF-8 headers, which are built whenever SMTPUTF8 mode is on
+                properties.setProperty(EmailConstants.MAIL_MIME_ALLOW_UTF8, "true");
+            }
+
             if (authenticator != null) {
                 properties.setProperty(EmailConstants.MAIL_SMTP_AUTH, "true");
             }
@@ -830,6 +1531,14 @@ public abstract class Email {
                 properties.setProperty(EmailConstants.MAIL_SMTP_SOCKET_FACTORY_FALLBACK, "false");
             }
 
+            if (tlsSessions != null) {
+                // the factory instances take precedence over the factory class set above
+                if (isSSLOnConnect()) {
+                    properties.put(EmailConstants.MAIL_SMTP_SOCKET_FACTORY, tlsSessions.getSocketFactory());
+                }
+                properties.put(EmailConstants.MAIL_SMTP_SSL_SOCKET_FACTORY, tlsSessions.getSocketFactory());
+            }
+
             if ((isSSLOnConnect() || isStartTLSEnabled()) && isSSLCheckServerIdentity()) {
                 properties.setProperty(EmailConstants.MAIL_SMTP_SSL_CHECKSERVERIDENTITY, "true");
             }
@@ -853,6 +1562,16 @@ public abstract class Email {
         return session;
     }
 
+    /**
+     * Gets the maximum message size checked before sending.
+     *
+     * @return the maximum size in octets, 0 for none.
+     * @since 2.0.0-M2
+     */
+    public long getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
     /**
      * Gets the message.
      *
@@ -902,6 +1621,26 @@ public abstract class Email {
         return popUsername;
     }
 
+    /**
+     * Gets the rate limiter of the messages and recipients sent.
+     *
+     * @return the rate limiter, or null for no limit.
+     * @since 2.0.0-M2
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Gets the relays the messages are spread over.
+     *
+     * @return the relay group, or null to send to the host name only.
+     * @since 2.0.0-M2
+     */
+    public RelayGroup getRelayGroup() {
+        return relayGroup;
+    }
+
     /**
      * Gets the list of "Reply-To" addresses.
      *
@@ -911,6 +1650,41 @@ public abstract class Email {
         return replyList;
     }
 
+    /**
+     * Gets the number of envelope recipients of the previously created MimeMessage.
+     *
+     * @return the number of recipients.
+     * @throws EmailException if the recipients cannot be read.
+     */
+    private int getRecipientCount() throws EmailException {
+        try {
+            final Address[] recipients = message.getAllRecipients();
+            return recipients != null ? recipients.length : 0;
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    /**
+     * Gets the lane that runs the sends.
+     *
+     * @return the send lane, or null to send in the calling thread.
+     * @since 2.0.0-M2
+     */
+    public SendLane getSendLane() {
+        return sendLane;
+    }
+
+    /**
+     * Gets the time by which a send must complete.
+     *
+     * @return the send timeout, or null for no limit.
+     * @since 2.0.0-M2
+     */
+    public Duration getSendTimeout() {
+        return sendTimeout;
+    }
+
     /**
      * Gets the sent date for the email.
      *
@@ -939,6 +1713,36 @@ public abstract class Email {
         return null;
     }
 
+    /**
+     * Gets the TLS context shared with other emails.
+     *
+     * @return the TLS context, null for the default.
+     * @since 2.0.0-M2
+     */
+    public TlsSessions getTlsSessions() {
+        return tlsSessions;
+    }
+
+    /**
+     * Gets the transport set for this email.
+     *
+     * @return the transport, null if the default is used.
+     * @since 2.0.0-M2
+     */
+    public EmailTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Gets the non-blocking engine sending the messages.
+     *
+     * @return the engine, null if the JavaMail transport is used.
+     * @since 2.0.0-M2
+     */
+    public NioSmtpEngine getSmtpEngine() {
+        return smtpEngine;
+    }
+
     /**
      * Gets the socket connection timeout value in milliseconds.
      *
@@ -993,102 +1797,607 @@ public abstract class Email {
     }
 
     /**
-     * Tests whether debug is on.
+     * Tests whether text parts are sent as 8bit if the relay supports the SMTP 8BITMIME extension.
+     *
+     * @return whether 8bit text is allowed.
+     * @since 2.0.0-M2
+     */
+    public boolean isAllow8BitMime() {
+        return allow8BitMime;
+    }
+
+    /**
+     * Tests whether the envelope addresses and all header lines of the given message are US-ASCII, so that the message needs no SMTPUTF8.
+     *
+     * @param reversePath The reverse path.
+     * @param recipients  The recipient addresses.
+     * @param mimeMessage The message.
+     * @return whether everything is US-ASCII.
+     * @throws MessagingException if the header lines cannot be read.
+     */
+    private static boolean isAscii(final String reversePath, final List<String> recipients, final MimeMessage mimeMessage) throws MessagingException {
+        final CharsetEncoder ascii = StandardCharsets.US_ASCII.newEncoder();
+        if (!ascii.canEncode(reversePath) || !recipients.stream().allMatch(ascii::canEncode)) {
+            return false;
+        }
+        for (final Enumeration<String> lines = mimeMessage.getAllHeaderLines(); lines.hasMoreElements();) {
+            if (!ascii.canEncode(lines.nextElement())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests whether debug is on.
+     *
+     * @return whether debug is on.
+     * @since 1.6.0
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Tests whether messages are delivered with LMTP instead of SMTP.
+     *
+     * @return whether LMTP is used.
+     * @since 2.0.0-M2
+     */
+    public boolean isLmtp() {
+        return lmtp;
+    }
+
+    /**
+     * Tests whether to use POP3 before SMTP, and if so the settings.
+     *
+     * @return whether to use POP3 before SMTP, and if so the settings.
+     * @since 1.6.0
+     */
+    public boolean isPopBeforeSmtp() {
+        return popBeforeSmtp;
+    }
+
+    /**
+     * Tests whether the message size is checked against the limit the relay announces with the SMTP SIZE extension before sending.
+     *
+     * @return whether the relay limit is checked.
+     * @since 2.0.0-M2
+     */
+    public boolean isRelaySizeCheck() {
+        return relaySizeCheck;
+    }
+
+    /**
+     * Tests whether partial sending of email is enabled.
+     *
+     * @return true if sending partial email is enabled.
+     * @since 1.3.2
+     */
+    public boolean isSendPartial() {
+        return sendPartial;
+    }
+
+    /**
+     * Tests whether addresses and headers are sent as UTF-8 with the SMTP SMTPUTF8 extension.
+     *
+     * @return whether SMTPUTF8 is used.
+     * @since 2.0.0-M2
+     */
+    public boolean isSmtpUtf8() {
+        return smtpUtf8;
+    }
+
+    /**
+     * Tests whether the server identity checked as specified by RFC 2595
+     *
+     * @return true if the server identity is checked.
+     * @since 1.3
+     */
+    public boolean isSSLCheckServerIdentity() {
+        return sslCheckServerIdentity;
+    }
+
+    /**
+     * Tests whether SSL/TLS encryption for the transport is currently enabled (SMTPS/POPS).
+     *
+     * @return true if SSL enabled for the transport.
+     * @since 1.3
+     */
+    public boolean isSSLOnConnect() {
+        return sslOnConnect || ssl;
+    }
+
+    /**
+     * Tests whether the client is configured to try to enable STARTTLS.
+     *
+     * @return true if using STARTTLS for authentication, false otherwise.
+     * @since 1.3
+     */
+    public boolean isStartTLSEnabled() {
+        return startTlsEnabled || tls;
+    }
+
+    /**
+     * Tests whether the client is configured to require STARTTLS.
+     *
+     * @return true if using STARTTLS for authentication, false otherwise.
+     * @since 1.3
+     */
+    public boolean isStartTLSRequired() {
+        return startTlsRequired;
+    }
+
+    /**
+     * Builds the email and schedules it for delivery at a later time, serializing the message now, so that this email and its data sources need not be
+     * kept. The scheduler delivers it with its own transport and retries transient failures; the session settings of this email are not used.
+     *
+     * @param scheduler    the delivery scheduler.
+     * @param deliveryTime when to deliver the message.
+     * @return The delivery, to await or cancel it.
+     * @throws IllegalStateException if the MimeMessage was already built, that is, {@link #buildMimeMessage()} was already called
+     * @throws EmailException        building the message failed, or the scheduler is closed
+     * @since 2.0.0-M2
+     */
+    public DeliveryScheduler.Delivery schedule(final DeliveryScheduler scheduler, final Instant deliveryTime) throws EmailException {
+        checkMessageSize();
+        buildMimeMessage();
+        try {
+            message.saveChanges();
+            final Envelope envelope = createEnvelope(message);
+            return scheduler.schedule(envelope, createMessageWriter(null), SizeEstimator.estimate(message), deliveryTime);
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    /**
+     * Sends the email. Internally we build a MimeMessage which is afterwards sent to the SMTP server.
+     *
+     * @return The message id of the underlying MimeMessage
+     * @throws IllegalStateException if the MimeMessage was already built, that is, {@link #buildMimeMessage()} was already called
+     * @throws EmailException        the sending failed
+     */
+    public String send() throws EmailException {
+        startDeadline();
+        checkMessageSize();
+        buildMimeMessage();
+        if (sendLane != null) {
+            final CompletableFuture<String> future = sendInLane();
+            try {
+                return deadline != null ? future.get(deadline.getRemaining().toNanos(), TimeUnit.NANOSECONDS) : future.get();
+            } catch (final InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new EmailException("Interrupted while sending the email", e);
+            } catch (final ExecutionException e) {
+                throw e.getCause() instanceof EmailException ? (EmailException) e.getCause() : new EmailException(e.getCause());
+            } catch (final TimeoutException e) {
+                // the lane skips the send if it did not start, a started one stops at the deadline
+                future.cancel(true);
+                throw deadline.timeout(e);
+            }
+        }
+        return sendMimeMessage();
+    }
+
+    /**
+     * Sends the email without blocking on network I/O if an {@link #setSmtpEngine(NioSmtpEngine) SMTP engine} is set. The message is built and serialized
+     * in the calling thread; the returned future completes with the message id when the server accepted the message, or with an {@link EmailException}.
+     * With a {@link #setSendLane(SendLane) send lane}, the message is built in the calling thread and sent by the lane. Otherwise, without an engine, the
+     * email is sent with {@link #send()} before this method returns.
+     *
+     * @return The future message id of the underlying MimeMessage
+     * @throws IllegalStateException if the MimeMessage was already built, that is, {@link #buildMimeMessage()} was already called
+     * @throws EmailException        building the message or, without an engine, sending it failed
+     * @since 2.0.0-M2
+     */
+    public CompletableFuture<String> sendAsync() throws EmailException {
+        startDeadline();
+        checkMessageSize();
+        buildMimeMessage();
+        if (sendLane != null) {
+            return sendInLane();
+        }
+        if (SendPath.select(this) != SendPath.ENGINE) {
+            return CompletableFuture.completedFuture(sendMimeMessage());
+        }
+        return sendWithEngine();
+    }
+
+    /**
+     * Submits the previously created MimeMessage to the send lane.
+     *
+     * @return The future message id of the underlying MimeMessage
+     * @throws EmailException if the recipients cannot be read
+     */
+    private CompletableFuture<String> sendInLane() throws EmailException {
+        return sendLane.submit(getRecipientCount(), this::sendMimeMessage);
+    }
+
+    /**
+     * Sends the previously created MimeMessage with the SMTP client of {@link #createSmtpClient()}, through the relay group if one is set, on a new
+     * connection of {@link SmtpClient#execute(int, SmtpClient.Transaction)}: the tokens of the rate limiter, if any, are taken before a permit of the
+     * concurrency limiter, if any, and the permit before the connection, so that senders waiting for the rate hold neither. The archive copy is committed
+     * after the server accepted the message and discarded otherwise; with LMTP, it is committed if any recipient received the message.
+     *
+     * @return The message id of the underlying MimeMessage
+     * @throws EmailException the session has settings the SMTP client cannot honor, or the sending or archiving failed
+     */
+    private String sendWithClient() throws EmailException {
+        checkSmtpClientSession();
+        final SmtpClient client = createSmtpClient();
+        // the tokens are taken when the connection is opened, not again for the message
+        final SmtpClient sender = new SmtpClient(client).setRateLimiter(null);
+        final AtomicReference<ArchiveSink.Entry> entry = new AtomicReference<>();
+        final SmtpClient.Transaction<Map<String, SmtpReply>> transaction = connection -> sendWithClient(sender, connection, entry);
+        deliveryReplies = Collections.emptyMap();
+        try {
+            try {
+                deliveryReplies = relayGroup != null ? relayGroup.execute(client, getRecipientCount(), transaction)
+                        : client.execute(getRecipientCount(), transaction);
+            } catch (final MessageTooLargeException e) {
+                throw e;
+            } catch (final EmailException e) {
+                throw sendFailed(client, e);
+            }
+            final SmtpReply failure = deliveryReplies.values().stream().filter(reply -> !reply.isPositive()).findFirst().orElse(null);
+            final boolean delivered = failure == null || deliveryReplies.values().stream().anyMatch(SmtpReply::isPositive);
+            if (entry.get() != null && delivered) {
+                try {
+                    entry.get().commit();
+                } catch (final IOException e) {
+                    throw new EmailException("The email was sent but archiving it failed", e);
+                }
+            }
+            if (failure != null && (!sendPartial || !delivered)) {
+                throw sendFailed(client, new SmtpException("Delivery failed", failure));
+            }
+            return message.getMessageID();
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        } finally {
+            closeArchiveEntry(entry.get());
+        }
+    }
+
+    /**
+     * Sends the previously created MimeMessage on a connection, serializing it once and teeing the bytes to a new archive entry if an archive sink is set.
+     * Line endings are made canonical before the tee so that the archive holds what the server receives. The EHLO reply of the sending connection decides
+     * whether parts are sent as binary or text parts as 8bit, if enabled; binary data is not converted to canonical line endings.
+     *
+     * @param client     the SMTP client sending on the connection.
+     * @param connection the open connection.
+     * @param entry      receives the archive entry of this attempt; the entry of an earlier attempt, on a relay that failed, is discarded.
+     * @return with LMTP, the reply for each recipient, otherwise an empty map.
+     * @throws EmailException the sending failed
+     */
+    private Map<String, SmtpReply> sendWithClient(final SmtpClient client, final SmtpConnection connection, final AtomicReference<ArchiveSink.Entry> entry)
+            throws EmailException {
+        try {
+            final BodyType bodyType;
+            if (client.getChunkSize() > 0 && connection.supports("CHUNKING") && connection.supports("BINARYMIME")
+                    && setTransferEncoding(message, TransferEncoding.BINARY)) {
+                bodyType = BodyType.BINARY_MIME;
+            } else if (isAllow8BitMime() && connection.supports("8BITMIME") && setTransferEncoding(message, TransferEncoding.EIGHT_BIT)) {
+                bodyType = BodyType.EIGHT_BIT_MIME;
+            } else {
+                bodyType = BodyType.SEVEN_BIT;
+            }
+            message.saveChanges();
+            final Envelope envelope = createEnvelope(message).withBodyType(bodyType);
+            final long size = SizeEstimator.estimate(message);
+            closeArchiveEntry(entry.getAndSet(archiveSink != null ? archiveSink.open() : null));
+            final ArchiveSink.Entry archive = entry.get();
+            final ContentWriter writer = out -> {
+                try {
+                    final OutputStream tee = archive != null ? new TeeOutputStream(out, archive.getOutputStream()) : out;
+                    message.writeTo(bodyType == BodyType.BINARY_MIME ? tee : new CrlfOutputStream(tee), new String[] { "Bcc", "Content-Length" });
+                } catch (final MessagingException e) {
+                    throw new IOException(e);
+                }
+            };
+            if (lmtp) {
+                return client.deliver(connection, envelope, writer, size);
+            }
+            client.send(connection, envelope, writer, size);
+            return Collections.emptyMap();
+        } catch (final IOException | MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    /**
+     * Sends the previously created MimeMessage to the SMTP server, on the path chosen by {@link SendPath#select(Email)}.
+     *
+     * @return The message id of the underlying MimeMessage
+     * @throws IllegalArgumentException if the MimeMessage has not been created
+     * @throws EmailException           the sending failed
+     */
+    public String sendMimeMessage() throws EmailException {
+        Objects.requireNonNull(message, "MimeMessage has not been created yet");
+        startDeadline();
+        if (deadline != null) {
+            deadline.check();
+        }
+        switch (SendPath.select(this)) {
+        case TRANSPORT:
+            return sendWithTransport(transport);
+        case ENGINE:
+            try {
+                return sendWithEngine().get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EmailException("Interrupted while sending the email", e);
+            } catch (final ExecutionException e) {
+                throw e.getCause() instanceof EmailException ? (EmailException) e.getCause() : new EmailException(e.getCause());
+            }
+        case SMTP_CLIENT:
+            return sendWithClient();
+        case REGISTERED_TRANSPORT:
+            return sendWithTransport(EmailTransport.getDefault());
+        default:
+            return sendWithTransport(null);
+        }
+    }
+
+    /**
+     * Sends a serialized message as it is, without parsing it, to the SMTP server. Apart from dot-stuffing and line ending normalization the bytes go on the
+     * wire unchanged, so a message written once with {@link #writeTo(OutputStream)} can be sent again without being rebuilt.
+     * <p>
+     * Only the server settings of this email are used: host, port, TLS, timeouts and authentication. Its addresses, headers and content are ignored; the
+     * envelope gives the sender and recipients.
+     * </p>
      *
-     * @return whether debug is on.
-     * @since 1.6.0
+     * @param message  The serialized message.
+     * @param envelope The SMTP envelope.
+     * @throws EmailException the sending failed.
+     * @since 2.0.0-M2
      */
-    public boolean isDebug() {
-        return debug;
+    public void sendRaw(final byte[] message, final Envelope envelope) throws EmailException {
+        Objects.requireNonNull(message, "message");
+        sendRaw(out -> out.write(message), message.length, envelope);
     }
 
     /**
-     * Tests whether to use POP3 before SMTP, and if so the settings.
+     * Sends the remaining bytes of a buffer, a serialized message, as it is to the SMTP server. The position of the buffer is not changed.
      *
-     * @return whether to use POP3 before SMTP, and if so the settings.
-     * @since 1.6.0
+     * @param message  The serialized message.
+     * @param envelope The SMTP envelope.
+     * @throws EmailException the sending failed.
+     * @see #sendRaw(byte[], Envelope)
+     * @since 2.0.0-M2
      */
-    public boolean isPopBeforeSmtp() {
-        return popBeforeSmtp;
+    public void sendRaw(final ByteBuffer message, final Envelope envelope) throws EmailException {
+        Objects.requireNonNull(message, "message");
+        sendRaw(out -> {
+            final ByteBuffer source = message.duplicate();
+            if (source.hasArray()) {
+                out.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            } else {
+                final byte[] chunk = BufferPool.getDefault().acquire(Math.min(source.remaining(), BufferPool.DEFAULT_BUFFER_SIZE));
+                try {
+                    while (source.hasRemaining()) {
+                        final int length = Math.min(chunk.length, source.remaining());
+                        source.get(chunk, 0, length);
+                        out.write(chunk, 0, length);
+                    }
+                } finally {
+                    BufferPool.getDefault().release(chunk);
+                }
+            }
+        }, message.remaining(), envelope);
     }
 
     /**
-     * Tests whether partial sending of email is enabled.
+     * Sends an RFC 5322 file, a serialized message, as it is to the SMTP server. The file is streamed, not read into memory.
      *
-     * @return true if sending partial email is enabled.
-     * @since 1.3.2
+     * @param message  The serialized message.
+     * @param envelope The SMTP envelope.
+     * @throws EmailException the sending failed.
+     * @see #sendRaw(byte[], Envelope)
+     * @since 2.0.0-M2
      */
-    public boolean isSendPartial() {
-        return sendPartial;
+    public void sendRaw(final Path message, final Envelope envelope) throws EmailException {
+        Objects.requireNonNull(message, "message");
+        final long size;
+        try {
+            size = Files.size(message);
+        } catch (final IOException e) {
+            throw new EmailException("Reading the size of " + message + " failed", e);
+        }
+        sendRaw(out -> Files.copy(message, out), size, envelope);
     }
 
     /**
-     * Tests whether the server identity checked as specified by RFC 2595
+     * Sends a serialized message written by the given writer.
      *
-     * @return true if the server identity is checked.
-     * @since 1.3
+     * @param message  Writes the serialized message.
+     * @param envelope The SMTP envelope.
+     * @throws EmailException the sending failed.
      */
-    public boolean isSSLCheckServerIdentity() {
-        return sslCheckServerIdentity;
+    private void sendRaw(final ContentWriter message, final long size, final Envelope envelope) throws EmailException {
+        Objects.requireNonNull(envelope, "envelope");
+        checkMaxMessageSize(size);
+        final SmtpClient client = createSmtpClient();
+        try {
+            client.send(envelope, message, size);
+        } catch (final MessageTooLargeException e) {
+            throw e;
+        } catch (final EmailException e) {
+            throw sendFailed(client, e);
+        }
     }
 
     /**
-     * Tests whether SSL/TLS encryption for the transport is currently enabled (SMTPS/POPS).
+     * Sends the previously created MimeMessage with JavaMail, with the mail session of this email.
      *
-     * @return true if SSL enabled for the transport.
-     * @since 1.3
+     * @param javaMailTransport The JavaMail transport set on this email, or null for the static {@link Transport#send(jakarta.mail.Message)}.
+     * @throws EmailException the sending failed
      */
-    public boolean isSSLOnConnect() {
-        return sslOnConnect || ssl;
+    private void sendWithJavaMail(final JavaMailTransport javaMailTransport) throws EmailException {
+        if (javaMailTransport != null) {
+            javaMailTransport.send(message);
+            return;
+        }
+        try {
+            Transport.send(message);
+        } catch (final Throwable t) {
+            throw new EmailException("Sending the email to the following server failed : " + this.getHostName() + ":" + getSmtpPort(), t);
+        }
     }
 
     /**
-     * Tests whether the client is configured to try to enable STARTTLS.
+     * Sends the previously created MimeMessage with the given transport, decorated with an {@link ArchivingTransport}, a
+     * {@link ConcurrencyLimitedTransport} and a {@link RateLimitedTransport} for the archive sink and limiters that are set, the limiters keyed by the relay
+     * of the mail session.
+     * <p>
+     * JavaMail, that is a {@link JavaMailTransport} or no transport, sends the MimeMessage itself with the mail session of this email; the message is only
+     * serialized again for the archive copy, after JavaMail sent it, and the envelope is only built for the rate limiter. Without an archive sink and
+     * limiters, the message goes to JavaMail directly.
+     * </p>
      *
-     * @return true if using STARTTLS for authentication, false otherwise.
-     * @since 1.3
+     * @param emailTransport The transport, or null for JavaMail.
+     * @return The message id of the underlying MimeMessage
+     * @throws EmailException the sending or archiving failed
      */
-    public boolean isStartTLSEnabled() {
-        return startTlsEnabled || tls;
+    private String sendWithTransport(final EmailTransport emailTransport) throws EmailException {
+        final boolean javaMail = emailTransport == null || emailTransport instanceof JavaMailTransport;
+        final JavaMailTransport javaMailTransport = emailTransport instanceof JavaMailTransport ? (JavaMailTransport) emailTransport : null;
+        if (javaMail && archiveSink == null && rateLimiter == null && concurrencyLimiter == null) {
+            sendWithJavaMail(javaMailTransport);
+            try {
+                return message.getMessageID();
+            } catch (final MessagingException e) {
+                throw new EmailException(e);
+            }
+        }
+        EmailTransport decorated = javaMail ? (envelope, writer, size) -> {
+            sendWithJavaMail(javaMailTransport);
+            if (archiveSink != null) {
+                // feeds the archive copy with the message as JavaMail sent it
+                try {
+                    writer.writeTo(DISCARD);
+                } catch (final IOException e) {
+                    throw new EmailException("The email was sent but archiving it failed", e);
+                }
+            }
+        } : emailTransport;
+        if (archiveSink != null) {
+            decorated = new ArchivingTransport(decorated, archiveSink);
+        }
+        final SmtpClient client = rateLimiter != null || concurrencyLimiter != null ? createSmtpClient() : null;
+        if (concurrencyLimiter != null) {
+            decorated = new ConcurrencyLimitedTransport(decorated, concurrencyLimiter, concurrencyLimiter.getKey(client));
+        }
+        if (rateLimiter != null) {
+            decorated = new RateLimitedTransport(decorated, rateLimiter, rateLimiter.getKey(client));
+        }
+        try {
+            final Envelope envelope;
+            final long size;
+            if (javaMail) {
+                // JavaMail saves the changes and takes the envelope from the message itself
+                envelope = rateLimiter != null ? createEnvelope(message) : null;
+                size = -1;
+            } else {
+                message.saveChanges();
+                envelope = createEnvelope(message);
+                size = SizeEstimator.estimate(message);
+            }
+            decorated.send(envelope, createMessageWriter(null), size);
+            return message.getMessageID();
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
     }
 
     /**
-     * Tests whether the client is configured to require STARTTLS.
+     * Sends the previously created MimeMessage with the SMTP engine, teeing the bytes to the archive sink if one is set. The archive copy is committed after
+     * the server accepted the message and discarded otherwise.
      *
-     * @return true if using STARTTLS for authentication, false otherwise.
-     * @since 1.3
+     * @return The future message id of the underlying MimeMessage, completed exceptionally with an {@link EmailException}
+     * @throws EmailException if the session has settings the SMTP client cannot honor, the message cannot be prepared or the archive entry cannot be opened
      */
-    public boolean isStartTLSRequired() {
-        return startTlsRequired;
+    private CompletableFuture<String> sendWithEngine() throws EmailException {
+        checkSmtpClientSession();
+        final SmtpClient client = createSmtpClient();
+        final CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            // the engine serializes the message before connecting, so the cached capabilities of the relay decide
+            final boolean eightBit = isAllow8BitMime() && client.getCapabilities().containsKey("8BITMIME");
+            final BodyType bodyType = eightBit && setTransferEncoding(message, TransferEncoding.EIGHT_BIT)
+                    ? BodyType.EIGHT_BIT_MIME
+                    : BodyType.SEVEN_BIT;
+            message.saveChanges();
+            final Envelope envelope = createEnvelope(message).withBodyType(bodyType);
+            final String messageId = message.getMessageID();
+            final ArchiveSink.Entry entry = archiveSink != null ? archiveSink.open() : null;
+            smtpEngine.send(client, envelope, createMessageWriter(entry)).whenComplete((reply, failure) -> {
+                try {
+                    if (failure != null) {
+                        result.completeExceptionally(failure instanceof MessageTooLargeException ? failure
+                                : sendFailed(client, failure instanceof EmailException ? (EmailException) failure : new EmailException(failure)));
+                    } else {
+                        if (entry != null) {
+                            entry.commit();
+                        }
+                        result.complete(messageId);
+                    }
+                } catch (final IOException e) {
+                    result.completeExceptionally(new EmailException("The email was sent but archiving it failed", e));
+                } finally {
+                    if (entry != null) {
+                        try {
+                            entry.close();
+                        } catch (final IOException e) {
+                            // the copy is discarded
+                        }
+                    }
+                }
+            });
+        } catch (final IOException | MessagingException e) {
+            throw new EmailException(e);
+        }
+        return result;
     }
 
     /**
-     * Sends the email. Internally we build a MimeMessage which is afterwards sent to the SMTP server.
+     * Sets whether text parts are sent with the 8bit Content-Transfer-Encoding instead of quoted-printable or base64, skipping the encode step, if the relay
+     * supports the SMTP 8BITMIME extension (RFC 6152). Parts whose lines could exceed 998 octets or which contain NUL characters are still encoded.
+     * <p>
+     * When sending, the decision is made for each relay from the EHLO reply of the sending connection, and relays without 8BITMIME receive encoded text as
+     * before. {@link #writeTo(OutputStream)} has no relay and writes 8bit text whenever this is enabled.
+     * </p>
      *
-     * @return The message id of the underlying MimeMessage
-     * @throws IllegalStateException if the MimeMessage was already built, that is, {@link #buildMimeMessage()} was already called
-     * @throws EmailException        the sending failed
+     * @param allow8BitMime whether 8bit text is allowed.
+     * @return An Email.
+     * @throws IllegalStateException if the mail session is already initialized
+     * @since 2.0.0-M2
      */
-    public String send() throws EmailException {
-        buildMimeMessage();
-        return sendMimeMessage();
+    public Email setAllow8BitMime(final boolean allow8BitMime) {
+        checkSessionAlreadyInitialized();
+        this.allow8BitMime = allow8BitMime;
+        return this;
     }
 
     /**
-     * Sends the previously created MimeMessage to the SMTP server.
+     * Sets a sink receiving a copy of each sent message, for example for compliance archiving.
+     * <p>
+     * When a sink is set, the message is serialized once and the bytes are written both to the SMTP server and to the sink, instead of being serialized again
+     * for the archive. The copy is only committed to the sink when the server accepted the message. Without a transport or an engine, sending then uses the
+     * SMTP client of {@link #createSmtpClient()} with the session settings instead of the JavaMail transport, see {@link SendPath}; session properties the
+     * client cannot honor, such as a custom socket factory or a proxy, make sending fail with an {@link EmailException}. A {@link JavaMailTransport} set
+     * with {@link #setTransport(EmailTransport)} sends the MimeMessage itself, and the copy is serialized after it was sent.
+     * </p>
      *
-     * @return The message id of the underlying MimeMessage
-     * @throws IllegalArgumentException if the MimeMessage has not been created
-     * @throws EmailException           the sending failed
+     * @param archiveSink the sink or null for none.
+     * @return An Email.
+     * @since 2.0.0-M2
      */
-    public String sendMimeMessage() throws EmailException {
-        Objects.requireNonNull(message, "MimeMessage has not been created yet");
-        try {
-            Transport.send(message);
-            return message.getMessageID();
-        } catch (final Throwable t) {
-            throw new EmailException("Sending the email to the following server failed : " + this.getHostName() + ":" + getSmtpPort(), t);
-        }
+    public Email setArchiveSink(final ArchiveSink archiveSink) {
+        this.archiveSink = archiveSink;
+        return this;
     }
 
     /**
@@ -1189,6 +2498,44 @@ public abstract class Email {
         this.charset = set.name();
     }
 
+    /**
+     * Sets the size of the chunks sent with the BDAT command if the relay supports the SMTP CHUNKING extension (RFC 3030), instead of DATA with its per
+     * line dot-stuffing. The setting applies to the JavaMail transport as well. When an {@link #setArchiveSink(ArchiveSink) archive sink} is set and the
+     * relay also supports BINARYMIME, body parts without a Content-Transfer-Encoding are sent as binary, skipping the base64 and quoted-printable encoding.
+     *
+     * @param chunkSize the chunk size in octets, 0 to always use DATA.
+     * @return An Email.
+     * @throws IllegalArgumentException if the chunk size is negative.
+     * @throws IllegalStateException    if the mail session is already initialized
+     * @since 2.0.0-M2
+     */
+    public Email setChunkSize(final int chunkSize) {
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("Chunk size must not be negative: " + chunkSize);
+        }
+        checkSessionAlreadyInitialized();
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the limiter of the sends in flight to the relay, which adapts its limit to the latency and transient failures of the relay; see
+     * {@link ConcurrencyLimiter}. Sending waits for a permit before connecting. The limiter applies to the JavaMail transport, the SMTP client of
+     * {@link #createSmtpClient()}, relay groups, the engine of {@link #setSmtpEngine(NioSmtpEngine)} and transports, for which the relay of the mail session
+     * is the key; setting it does not change how the email is sent, see {@link SendPath}.
+     * <p>
+     * Share the limiter between emails so that the sends to each relay are counted together.
+     * </p>
+     *
+     * @param concurrencyLimiter the concurrency limiter, or null for no limit.
+     * @return An Email.
+     * @since 2.0.0-M2
+     */
+    public Email setConcurrencyLimiter(final ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        return this;
+    }
+
     /**
      * Sets the emailBody to a MimeMultiPart
      *
@@ -1330,6 +2677,29 @@ public abstract class Email {
         this.hostName = hostName;
     }
 
+    /**
+     * Sets whether messages are delivered with LMTP (RFC 2033) instead of SMTP, for handing them to the final delivery agent of a mail store. JavaMail does
+     * not speak LMTP, so sending then uses the SMTP client of {@link #createSmtpClient()} with the session settings instead of the JavaMail transport.
+     * Session properties the client cannot honor, a custom socket factory, a proxy, a local address or a choice of SASL mechanisms, make sending fail with an
+     * {@link EmailException} instead of being ignored. LMTP cannot be used with a {@link #setTransport(EmailTransport) transport} or an
+     * {@link #setSmtpEngine(NioSmtpEngine) SMTP engine}.
+     * <p>
+     * The server reports the outcome of the delivery for each recipient after the message data; {@link #getDeliveryReplies()} gives the replies. The message
+     * is delivered to every accepted recipient. If some recipients fail, {@link #send()} still throws an {@link EmailException}, unless partial sending is
+     * enabled and the message reached at least one recipient.
+     * </p>
+     *
+     * @param lmtp whether LMTP is used.
+     * @return An Email.
+     * @throws IllegalStateException if LMTP is enabled while a transport or an SMTP engine is set
+     * @since 2.0.0-M2
+     */
+    public Email setLmtp(final boolean lmtp) {
+        SendPath.check(this.transport, this.smtpEngine, this.relayGroup, lmtp, this.sendTimeout);
+        this.lmtp = lmtp;
+        return this;
+    }
+
     /**
      * Sets a mail Session object to use. Please note that passing a user name and password (in the case of mail authentication) will create a new mail session
      * with a DefaultAuthenticator. This is a convenience but might come unexpected.
@@ -1387,6 +2757,22 @@ public abstract class Email {
         setMailSession((Session) ctx.lookup(jndiName));
     }
 
+    /**
+     * Sets the maximum message size. {@link #send()} estimates the size with {@link #estimateSize()} and fails with a {@link MessageTooLargeException}
+     * before connecting if the estimate exceeds it; raw sends check their exact size.
+     *
+     * @param maxMessageSize the maximum size in octets, 0 for none.
+     * @return An Email.
+     * @since 2.0.0-M2
+     */
+    public Email setMaxMessageSize(final long maxMessageSize) {
+        if (maxMessageSize < 0) {
+            throw new IllegalArgumentException("Maximum message size must not be negative: " + maxMessageSize);
+        }
+        this.maxMessageSize = maxMessageSize;
+        return this;
+    }
+
     /**
      * Sets the MIME message.
      *
@@ -1474,6 +2860,60 @@ public abstract class Email {
 
     }
 
+    /**
+     * Sets the rate limiter of the messages and recipients sent, waiting or failing with a {@link org.apache.commons.mail2.core.RateLimitExceededException}
+     * before connecting when a limit is reached; see {@link RateLimiter}. The limiter applies to the JavaMail transport, the SMTP client of
+     * {@link #createSmtpClient()}, relay groups, the engine of {@link #setSmtpEngine(NioSmtpEngine)} and transports, for which the relay of the mail
+     * session is the key.
+     * <p>
+     * Share the limiter between emails, and with other clients of the same relay, so that the limits hold across sends.
+     * </p>
+     *
+     * @param rateLimiter the rate limiter, or null for no limit.
+     * @return An Email.
+     * @since 2.0.0-M2
+     */
+    public Email setRateLimiter(final RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Sets several relays to spread the messages over, instead of the one relay of the host name. Each send picks a relay of the group and fails over to
+     * another one if the connection fails; see {@link RelayGroup}. The other session settings, such as TLS, timeouts and authentication, apply to every relay.
+     * Sending then uses the SMTP client of {@link #createSmtpClient()} instead of the JavaMail transport. Sending fails with an {@link EmailException} if the
+     * mail session sets a custom socket factory, a proxy, a local address or SASL mechanisms, which the client does not support. If no host name is set, the
+     * first relay of the group names the relay of the mail session, which is also asked for its capabilities. A relay group cannot be used with a
+     * {@link #setTransport(EmailTransport) transport} or an {@link #setSmtpEngine(NioSmtpEngine) SMTP engine}.
+     * <p>
+     * Share the group between emails so that the health and load of the relays are tracked across sends.
+     * </p>
+     *
+     * @param relayGroup the relay group, or null to send to the host name only.
+     * @return An Email.
+     * @throws IllegalStateException if a relay group is set while a transport or an SMTP engine is set
+     * @since 2.0.0-M2
+     */
+    public Email setRelayGroup(final RelayGroup relayGroup) {
+        SendPath.check(this.transport, this.smtpEngine, relayGroup, this.lmtp, this.sendTimeout);
+        this.relayGroup = relayGroup;
+        return this;
+    }
+
+    /**
+     * Sets whether {@link #send()} checks the estimated message size against the limit the relay announces with the SMTP SIZE extension, failing with a
+     * {@link MessageTooLargeException} before the message is sent. The relay is asked once with {@code EHLO} and its answer is cached, see
+     * {@link CapabilityCache#getDefault()}.
+     *
+     * @param relaySizeCheck whether to check the relay limit.
+     * @return An Email.
+     * @since 2.0.0-M2
+     */
+    public Email setRelaySizeCheck(final boolean relaySizeCheck) {
+        this.relaySizeCheck = relaySizeCheck;
+        return this;
+    }
+
     /**
      * Sets a list of reply to addresses. All elements in the specified {@code Collection} are expected to be of type
      * {@code java.mail.internet.InternetAddress}.
@@ -1490,6 +2930,20 @@ public abstract class Email {
         return this;
     }
 
+    /**
+     * Sets the lane that runs the sends of this email, isolating its class of traffic from the others; see {@link SendLanes}. The message is built in the
+     * calling thread and sent by a thread of the lane: {@link #sendAsync()} returns at once and {@link #send()} waits for the result. The email must not be
+     * changed until the send completed.
+     *
+     * @param sendLane the send lane, or null to send in the calling thread.
+     * @return An Email.
+     * @since 2.0.0-M2
+     */
+    public Email setSendLane(final SendLane sendLane) {
+        this.sendLane = sendLane;
+        return this;
+    }
+
     /**
      * Sets whether the email is partially send in case of invalid addresses.
      * <p>
@@ -1509,6 +2963,28 @@ public abstract class Email {
         return this;
     }
 
+    /**
+     * Sets the time by which a send must complete, from the call of {@link #send()}, {@link #sendAsync()} or {@link #sendMimeMessage()} to the reply of the
+     * server to the message data: building the message and resolving its resources, waiting in a send lane, connecting, TLS, authentication and the message
+     * data. Unlike the {@link #setSocketTimeout(Duration) socket timeout}, which bounds each read, it stops a relay that answers slowly but steadily. When it
+     * passes, the connection is closed and the send fails with an {@link EmailTimeoutException}.
+     * <p>
+     * The deadline is enforced by the built-in SMTP client, which is used instead of JavaMail when a send timeout is set, and by the
+     * {@link #setSmtpEngine(NioSmtpEngine) SMTP engine}. As with LMTP, session properties the client cannot honor make sending fail instead of being ignored,
+     * see {@link #setLmtp(boolean)}. A {@link #setTransport(EmailTransport) transport} cannot enforce the deadline and cannot be used with a send timeout.
+     * </p>
+     *
+     * @param sendTimeout the send timeout, or null for no limit.
+     * @return An Email.
+     * @throws IllegalStateException if a send timeout is set while a transport is set
+     * @since 2.0.0-M2
+     */
+    public Email setSendTimeout(final Duration sendTimeout) {
+        SendPath.check(this.transport, this.smtpEngine, this.relayGroup, this.lmtp, sendTimeout);
+        this.sendTimeout = sendTimeout;
+        return this;
+    }
+
     /**
      * Sets the sent date for the email. The sent date will default to the current date if not explicitly set.
      *
@@ -1539,6 +3015,81 @@ public abstract class Email {
         this.smtpPort = Integer.toString(portNumber);
     }
 
+    /**
+     * Sets a TLS context to share with the other emails to the same relay. Each send opens a new connection; with a shared context, the TLS handshake
+     * resumes the session of an earlier connection instead of verifying the certificate and exchanging keys again, on both ends. The context counts the
+     * full and resumed handshakes. Used with {@link #setSSLOnConnect(boolean) SSL on connect} and {@link #setStartTLSEnabled(boolean) STARTTLS}, by JavaMail
+     * and the built-in SMTP client; set it on an {@link #setSmtpEngine(NioSmtpEngine) SMTP engine} separately.
+     *
+     * @param tlsSessions the TLS context, or null for the default.
+     * @return An Email.
+     * @throws IllegalStateException if the mail session is already initialized.
+     * @since 2.0.0-M2
+     */
+    public Email setTlsSessions(final TlsSessions tlsSessions) {
+        checkSessionAlreadyInitialized();
+        this.tlsSessions = tlsSessions;
+        return this;
+    }
+
+    /**
+     * Sets the transport sending the messages of this email, for example a pooling, batching or test transport, instead of the default: the transport
+     * registered with the {@link java.util.ServiceLoader}, see {@link EmailTransport#getDefault()}, and otherwise the JavaMail transport. A transport set here
+     * takes precedence over an {@link #setSmtpEngine(NioSmtpEngine) SMTP engine}, a registered one does not. The transport receives the serialized message,
+     * except for a {@link JavaMailTransport} which sends the MimeMessage itself with the mail session of this email. The rate and concurrency limiters and
+     * the archive sink apply to the transport, which is decorated with a {@link RateLimitedTransport}, a {@link ConcurrencyLimitedTransport} and an
+     * {@link ArchivingTransport} as needed. LMTP, a send timeout and a relay group need the built-in SMTP client and cannot be used with a transport; see
+     * {@link SendPath}.
+     *
+     * @param transport the transport or null for the default.
+     * @return An Email.
+     * @throws IllegalStateException if a transport is set while LMTP, a send timeout or a relay group is set
+     * @since 2.0.0-M2
+     */
+    public Email setTransport(final EmailTransport transport) {
+        SendPath.check(transport, this.smtpEngine, this.relayGroup, this.lmtp, this.sendTimeout);
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * Sets a non-blocking engine sending the messages instead of the JavaMail transport, so that many emails can be in flight on a few threads, see {@link
+     * #sendAsync()}. The engine is configured with the SMTP client of {@link #createSmtpClient()} and is not closed by this email; share one engine between
+     * emails. The engine does not support a custom socket factory, a proxy, a local address or SASL mechanisms in the mail session; sending then fails with an
+     * {@link EmailException}. An engine cannot be used with LMTP or a relay group.
+     *
+     * @param smtpEngine the engine or null to use the JavaMail transport.
+     * @return An Email.
+     * @throws IllegalStateException if an engine is set while LMTP or a relay group is set
+     * @since 2.0.0-M2
+     */
+    public Email setSmtpEngine(final NioSmtpEngine smtpEngine) {
+        SendPath.check(this.transport, smtpEngine, this.relayGroup, this.lmtp, this.sendTimeout);
+        this.smtpEngine = smtpEngine;
+        return this;
+    }
+
+    /**
+     * Sets whether addresses and headers are sent as raw UTF-8 with the SMTPUTF8 extension (RFC 6531).
+     * <p>
+     * Addresses added while enabled keep their Unicode form instead of being converted to IDN punycode, and the subject, personal names and custom headers
+     * are not converted to RFC 2047 encoded words. The message is built this way from the setting alone, the relay is not asked for its capabilities.
+     * When the SMTP client or an engine sends a message whose addresses or header lines are not all US-ASCII, it adds the SMTPUTF8 parameter and fails
+     * with an {@link EmailException} on a relay without the extension, so every relay of a {@link RelayGroup} must support it. JavaMail adds the parameter
+     * if the relay announces it.
+     * </p>
+     *
+     * @param smtpUtf8 whether to use SMTPUTF8.
+     * @return An Email.
+     * @throws IllegalStateException if the mail session is already initialized
+     * @since 2.0.0-M2
+     */
+    public Email setSmtpUtf8(final boolean smtpUtf8) {
+        checkSessionAlreadyInitialized();
+        this.smtpUtf8 = smtpUtf8;
+        return this;
+    }
+
     /**
      * Sets the socket connection timeout value in milliseconds. Default is a 60 second timeout.
      *
@@ -1667,6 +3218,52 @@ public abstract class Email {
         return this;
     }
 
+    /**
+     * Starts the deadline of the send if a send timeout is set and the deadline was not started by an enclosing send method.
+     */
+    private void startDeadline() {
+        if (deadline == null && sendTimeout != null) {
+            deadline = Deadline.after(sendTimeout);
+        }
+    }
+
+    /**
+     * Converts an address kept in Unicode form for SMTPUTF8 to its IDN form.
+     *
+     * @param address The address.
+     * @return the address with an US-ASCII domain.
+     * @throws EmailException if the local part is not US-ASCII.
+     */
+    private InternetAddress toAsciiAddress(final InternetAddress address) throws EmailException {
+        final String ascii = new IDNEmailAddressConverter().toASCII(address.getAddress());
+        if (!StandardCharsets.US_ASCII.newEncoder().canEncode(ascii)) {
+            throw new EmailException("The address " + address.getAddress() + " can only be sent to a relay supporting SMTPUTF8");
+        }
+        if (ascii.equals(address.getAddress())) {
+            return address;
+        }
+        try {
+            return new InternetAddress(ascii, address.getPersonal(), charset);
+        } catch (final UnsupportedEncodingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    /**
+     * Converts a list of addresses to an array of addresses in IDN form.
+     *
+     * @param list A List.
+     * @return An InternetAddress[].
+     * @throws EmailException if a local part is not US-ASCII.
+     */
+    private InternetAddress[] toAsciiAddressArray(final List<InternetAddress> list) throws EmailException {
+        final InternetAddress[] addresses = new InternetAddress[list.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = toAsciiAddress(list.get(i));
+        }
+        return addresses;
+    }
+
     /**
      * Converts to copy List of known InternetAddress objects into an array.
      *
@@ -1712,4 +3309,52 @@ public abstract class Email {
             }
         }
     }
+
+    /**
+     * Serializes the email as a MIME document to the given stream without building a MimeMessage.
+     * <p>
+     * Headers and body parts are taken from the state of this email, and the content of text, attachments and embedded data sources is encoded while it is
+     * copied through a bounded buffer, so the message is never held in memory as a whole. The resulting document can be archived, spooled or sent later. As
+     * with {@link #buildMimeMessage()}, an email is serialized once.
+     * </p>
+     * <p>
+     * If {@link #setAllow8BitMime(boolean) 8bit text is allowed} and the relay supports 8BITMIME, text is written as 8bit; send such a document with an
+     * envelope declaring {@link BodyType#EIGHT_BIT_MIME}.
+     * </p>
+     *
+     * @param outputStream The stream to write to, flushed but not closed.
+     * @return The number of bytes written.
+     * @throws IllegalStateException if the MimeMessage was already built or the email was already written.
+     * @throws EmailException        if there was an error building or writing the email.
+     * @since 2.0.0-M2
+     */
+    public long writeTo(final OutputStream outputStream) throws EmailException {
+        Objects.requireNonNull(outputStream, "outputStream");
+        final MimeEntity entity = createMimeEntity();
+        try {
+            return createMimeWriter().write(entity, outputStream);
+        } catch (final IOException e) {
+            throw new EmailException("Writing the email failed", e);
+        }
+    }
+
+    /**
+     * Serializes the email as a MIME document to the given channel without building a MimeMessage.
+     *
+     * @param channel The channel to write to, not closed.
+     * @return The number of bytes written.
+     * @throws IllegalStateException if the MimeMessage was already built or the email was already written.
+     * @throws EmailException        if there was an error building or writing the email.
+     * @see #writeTo(OutputStream)
+     * @since 2.0.0-M2
+     */
+    public long writeTo(final WritableByteChannel channel) throws EmailException {
+        Objects.requireNonNull(channel, "channel");
+        final MimeEntity entity = createMimeEntity();
+        try {
+            return createMimeWriter().write(entity, channel);
+        } catch (final IOException e) {
+            throw new EmailException("Writing the email failed", e);
+        }
+    }
 }
@@ -22,8 +22,10 @@ import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.apache.commons.mail2.core.Deadline;
 import org.apache.commons.mail2.core.EmailException;
 import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.mime.MimeEntity;
 
 import jakarta.activation.DataSource;
 
@@ -81,13 +83,38 @@ public class ImageHtmlEmail extends HtmlEmail {
      */
     @Override
     public void buildMimeMessage() throws EmailException {
+        embedResources();
+        super.buildMimeMessage();
+    }
+
+    /**
+     * Embeds the resources referenced by the HTML before the content entity is created.
+     *
+     * @return The content entity.
+     * @throws EmailException building the content failed
+     * @since 2.0.0-M2
+     */
+    @Override
+    protected MimeEntity createContentEntity() throws EmailException {
+        embedResources();
+        return super.createContentEntity();
+    }
+
+    /**
+     * Embeds all the matching image and script resources within the email.
+     *
+     * @throws EmailException resolving or embedding a resource failed
+     */
+    private void embedResources() throws EmailException {
         try {
-            // embed all the matching image and script resources within the email
             String temp = replacePattern(getHtml(), IMG_PATTERN);
             temp = replacePattern(temp, SCRIPT_PATTERN);
             setHtmlMsg(temp);
-            super.buildMimeMessage();
         } catch (final IOException e) {
+            final Deadline deadline = getDeadline();
+            if (deadline != null && deadline.isExpired()) {
+                throw deadline.timeout(e);
+            }
             throw new EmailException("Building the MimeMessage failed", e);
         }
     }
@@ -111,6 +138,7 @@ public class ImageHtmlEmail extends HtmlEmail {
      * @throws IOException    resolving the resources failed
      */
     private String replacePattern(final String htmlMessage, final Pattern pattern) throws EmailException, IOException {
+        final Deadline deadline = getDeadline();
         DataSource dataSource;
         final StringBuffer stringBuffer = new StringBuffer();
 
@@ -132,7 +160,12 @@ public class ImageHtmlEmail extends HtmlEmail {
             // avoid loading the same data source more than once
             if (dataSourceCache.get(resourceLocation) == null) {
                 // in lenient mode we might get a 'null' data source if the resource was not found
-                dataSource = getDataSourceResolver().resolve(resourceLocation);
+                if (deadline != null) {
+                    deadline.check();
+                    dataSource = getDataSourceResolver().resolve(resourceLocation, deadline);
+                } else {
+                    dataSource = getDataSourceResolver().resolve(resourceLocation);
+                }
 
                 if (dataSource != null) {
                     dataSourceCache.put(resourceLocation, dataSource);
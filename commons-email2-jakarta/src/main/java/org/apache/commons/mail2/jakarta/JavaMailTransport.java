@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.jakarta;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.transport.EmailTransport;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Adapts the JavaMail {@link Transport} to the {@link EmailTransport} service provider interface.
+ * <p>
+ * Set on an {@link Email}, messages are sent with {@link Transport#send(jakarta.mail.Message)} and the mail session of the email, as without a transport.
+ * Serialized messages given to {@link #send(Envelope, ContentWriter, long)} are parsed and sent with the session of this transport; JavaMail takes the
+ * reverse path from the {@code mail.smtp.from} property or the sender of the message, not from the envelope.
+ * </p>
+ *
+ * @since 2.0.0-M2
+ */
+public class JavaMailTransport implements EmailTransport {
+
+    /**
+     * The session sending serialized messages.
+     */
+    private final Session session;
+
+    /**
+     * Constructs a new instance sending serialized messages with a session of the default properties, that is to an SMTP server on the local host.
+     */
+    public JavaMailTransport() {
+        this(Session.getInstance(new Properties()));
+    }
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param session The session sending serialized messages.
+     */
+    public JavaMailTransport(final Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Gets the session sending serialized messages.
+     *
+     * @return the session.
+     */
+    public Session getSession() {
+        return session;
+    }
+
+    /**
+     * Sends a message with the session it was created with.
+     *
+     * @param message The message.
+     * @return the message id.
+     * @throws EmailException if sending failed.
+     */
+    public String send(final MimeMessage message) throws EmailException {
+        try {
+            Transport.send(message);
+            return message.getMessageID();
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+    }
+
+    @Override
+    public void send(final Envelope envelope, final ContentWriter message, final long size) throws EmailException {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream(size > 0 && size < Integer.MAX_VALUE ? (int) size : 32);
+        try {
+            message.writeTo(buffer);
+            final MimeMessage mimeMessage = new MimeMessage(session, new ByteArrayInputStream(buffer.toByteArray()));
+            final List<String> recipients = envelope.getRecipients();
+            final Address[] addresses = new Address[recipients.size()];
+            for (int i = 0; i < addresses.length; i++) {
+                addresses[i] = new InternetAddress(recipients.get(i));
+            }
+            // sendMessage does not call saveChanges, which would replace the Message-ID
+            try (Transport transport = session.getTransport(addresses[0])) {
+                transport.connect();
+                transport.sendMessage(mimeMessage, addresses);
+            }
+        } catch (final IOException | MessagingException e) {
+            throw new EmailException("Sending the email with JavaMail failed", e);
+        }
+    }
+}
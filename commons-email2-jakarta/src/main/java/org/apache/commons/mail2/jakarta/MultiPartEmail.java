@@ -27,6 +27,7 @@ import java.util.Objects;
 
 import org.apache.commons.mail2.core.EmailException;
 import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.mime.MimeEntity;
 import org.apache.commons.mail2.jakarta.activation.PathDataSource;
 
 import jakarta.activation.DataHandler;
@@ -329,6 +330,25 @@ public class MultiPartEmail extends Email {
         return new MimeBodyPart();
     }
 
+    /**
+     * Creates the entity of the container with the configured subtype.
+     *
+     * @return The content entity.
+     * @throws EmailException if the content cannot be described.
+     * @since 2.0.0-M2
+     */
+    @Override
+    protected MimeEntity createContentEntity() throws EmailException {
+        if (subType != null) {
+            try {
+                getContainer().setSubType(subType);
+            } catch (final MessagingException e) {
+                throw new EmailException(e);
+            }
+        }
+        return super.createContentEntity();
+    }
+
     /**
      * Creates a mime multipart object.
      *
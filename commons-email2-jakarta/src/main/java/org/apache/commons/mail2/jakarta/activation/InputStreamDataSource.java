@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 
+import org.apache.commons.mail2.core.io.BufferPool;
+
 import jakarta.activation.DataSource;
 
 /**
@@ -102,4 +104,18 @@ public final class InputStreamDataSource implements DataSource {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * Writes the remaining content of the stream to a stream through a buffer borrowed from the shared {@link BufferPool}.
+     *
+     * @param outputStream The stream to write to, not closed.
+     * @return the number of bytes written.
+     * @throws IOException if the content cannot be read or written.
+     * @since 2.0.0-M2
+     */
+    public long writeTo(final OutputStream outputStream) throws IOException {
+        try (InputStream in = inputStream) {
+            return BufferPool.getDefault().copy(in, outputStream);
+        }
+    }
+
 }
@@ -25,6 +25,8 @@ import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.util.Objects;
 
+import org.apache.commons.mail2.core.io.BufferPool;
+
 import jakarta.activation.DataSource;
 import jakarta.activation.FileTypeMap;
 import jakarta.activation.MimetypesFileTypeMap;
@@ -141,4 +143,18 @@ public final class PathDataSource implements DataSource {
         return path;
     }
 
+    /**
+     * Writes the content to a stream through a buffer borrowed from the shared {@link BufferPool}.
+     *
+     * @param outputStream The stream to write to, not closed.
+     * @return the number of bytes written.
+     * @throws IOException if the content cannot be read or written.
+     * @since 2.0.0-M2
+     */
+    public long writeTo(final OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = getInputStream()) {
+            return BufferPool.getDefault().copy(inputStream, outputStream);
+        }
+    }
+
 }
@@ -17,9 +17,12 @@
 package org.apache.commons.mail2.jakarta.resolver;
 
 import java.io.IOException;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.URL;
 
+import org.apache.commons.mail2.core.io.BufferPool;
+
 import jakarta.activation.DataSource;
 import jakarta.activation.FileTypeMap;
 import jakarta.mail.util.ByteArrayDataSource;
@@ -101,7 +104,9 @@ public class DataSourceClassPathResolver extends DataSourceBaseResolver {
                         }
                         throw new IOException("The following class path resource was not found : " + resourceLocation);
                     }
-                    final ByteArrayDataSource ds = new ByteArrayDataSource(inputStream, mimeType);
+                    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+                    BufferPool.getDefault().copy(inputStream, content);
+                    final ByteArrayDataSource ds = new ByteArrayDataSource(content.toByteArray(), mimeType);
                     // EMAIL-125: set the name of the DataSource to the normalized resource URL
                     // similar to other DataSource implementations, e.g. FileDataSource, URLDataSource
                     final URL resource = DataSourceClassPathResolver.class.getResource(resourceName);
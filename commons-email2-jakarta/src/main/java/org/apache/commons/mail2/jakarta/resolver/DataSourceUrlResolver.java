@@ -20,7 +20,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.Future;
 
+import org.apache.commons.mail2.core.Deadline;
 import org.apache.commons.mail2.core.EmailUtils;
 
 import jakarta.activation.DataSource;
@@ -33,6 +36,22 @@ import jakarta.activation.URLDataSource;
  */
 public class DataSourceUrlResolver extends DataSourceBaseResolver {
 
+    /**
+     * Opens a URL with connect and read timeouts limited to the time left before a deadline.
+     *
+     * @param url      The URL.
+     * @param deadline The deadline.
+     * @return the stream of the resource.
+     * @throws IOException if the resource cannot be opened.
+     */
+    private static InputStream open(final URL url, final Deadline deadline) throws IOException {
+        final URLConnection connection = url.openConnection();
+        final int timeout = (int) Math.min(Integer.MAX_VALUE, deadline.limit(null).toMillis());
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        return connection.getInputStream();
+    }
+
     /** The base url of the resource when resolving relative paths */
     private final URL baseUrl;
 
@@ -115,4 +134,60 @@ public class DataSourceUrlResolver extends DataSourceBaseResolver {
             throw e;
         }
     }
+
+    /**
+     * Resolves the given resource location with connect and read timeouts limited to the time left before the deadline. The resource is also read with
+     * these timeouts when the message is sent.
+     *
+     * @param resourceLocation The location of the resource
+     * @param isLenient        shall we ignore resources not found or complain with an exception?
+     * @param deadline         The deadline of the send
+     * @return The data source containing the resource or null if the resource was not found in lenient mode
+     * @throws IOException resolving the resource failed
+     * @since 2.0.0-M2
+     */
+    @Override
+    public DataSource resolve(final String resourceLocation, final boolean isLenient, final Deadline deadline) throws IOException {
+        try {
+            if (isCid(resourceLocation)) {
+                return null;
+            }
+            final URL url = createUrl(resourceLocation);
+            final DataSource result = new URLDataSource(url) {
+                @Override
+                public InputStream getInputStream() throws IOException {
+                    return open(url, deadline);
+                }
+            };
+            // validate we can read, closing the stream if the deadline passes while waiting for data
+            try (InputStream inputStream = result.getInputStream()) {
+                final Future<?> watch = deadline.watch(inputStream);
+                try {
+                    inputStream.read();
+                } finally {
+                    watch.cancel(false);
+                }
+            }
+            return result;
+        } catch (final IOException e) {
+            if (isLenient) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Resolves the given resource location with connect and read timeouts limited to the time left before the deadline.
+     *
+     * @param resourceLocation The location of the resource
+     * @param deadline         The deadline of the send
+     * @return The {@code DataSource}
+     * @throws IOException the resource was not found
+     * @since 2.0.0-M2
+     */
+    @Override
+    public DataSource resolve(final String resourceLocation, final Deadline deadline) throws IOException {
+        return resolve(resourceLocation, isLenient(), deadline);
+    }
 }
@@ -20,6 +20,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -40,6 +41,7 @@ import java.util.Properties;
 
 import org.apache.commons.mail2.core.EmailConstants;
 import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.smtp.TlsSessions;
 import org.apache.commons.mail2.jakarta.mocks.MockEmailConcrete;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -1075,6 +1077,20 @@ class EmailTest extends AbstractEmailTest {
         assertEquals("bcc@xn--dmin-moa0i.example", msg.getRecipients(Message.RecipientType.BCC)[0].toString());
     }
 
+    @Test
+    void testTlsSessions() throws Exception {
+        final TlsSessions tlsSessions = new TlsSessions();
+        email.setHostName(strTestMailServer);
+        email.setSSLOnConnect(true);
+        email.setTlsSessions(tlsSessions);
+        assertSame(tlsSessions, email.getTlsSessions());
+        final Properties properties = email.getMailSession().getProperties();
+        assertSame(tlsSessions.getSocketFactory(), properties.get(EmailConstants.MAIL_SMTP_SOCKET_FACTORY));
+        assertSame(tlsSessions.getSocketFactory(), properties.get(EmailConstants.MAIL_SMTP_SSL_SOCKET_FACTORY));
+        assertSame(tlsSessions.getSocketFactory(), email.createSmtpClient().getSslSocketFactory());
+        assertThrows(IllegalStateException.class, () -> email.setTlsSessions(null));
+    }
+
     @Test
     void testToInternetAddressArray() throws Exception {
         final List<InternetAddress> testInetEmailValid = new ArrayList<>();
@@ -23,23 +23,29 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.channels.Channels;
 import java.util.List;
+import java.util.Properties;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.mail2.core.EmailConstants;
 import org.apache.commons.mail2.core.EmailException;
 import org.apache.commons.mail2.core.EmailUtils;
 import org.apache.commons.mail2.jakarta.mocks.MockHtmlEmailConcrete;
 import org.apache.commons.mail2.jakarta.settings.EmailConfiguration;
 import org.apache.commons.mail2.jakarta.util.MimeMessageParser;
+import org.apache.commons.mail2.jakarta.util.MimeMessageUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
 import jakarta.activation.DataSource;
 import jakarta.activation.FileDataSource;
+import jakarta.mail.Session;
 import jakarta.mail.internet.MimeMessage;
 
 /**
@@ -519,4 +525,33 @@ class HtmlEmailTest extends AbstractEmailTest {
         validateSend(fakeMailServer, strSubject, email.getText(), email.getFromAddress(), email.getToAddresses(), email.getCcAddresses(),
                 email.getBccAddresses(), true);
     }
+
+    @Test
+    void testWriteTo() throws Exception {
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testWriteTo");
+        final File image = new File("./src/test/resources/images/asf_logo_wide.gif");
+        final String cid = email.embed(image);
+        email.setHtmlMsg("<html><img src=\"cid:" + cid + "\"></html>");
+        email.setTextMsg("Your email client does not support HTML messages");
+        final EmailAttachment attachment = new EmailAttachment();
+        attachment.setPath("./src/test/resources/attachments/logo.pdf");
+        attachment.setDisposition(EmailAttachment.ATTACHMENT);
+        email.attach(attachment);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long count = email.writeTo(Channels.newChannel(out));
+        assertEquals(out.size(), count);
+
+        final MimeMessage message = MimeMessageUtils.createMimeMessage(Session.getInstance(new Properties()), out.toByteArray());
+        assertTrue(message.isMimeType("multipart/mixed"));
+        final MimeMessageParser parser = new MimeMessageParser(message).parse();
+        assertEquals("testWriteTo", parser.getSubject());
+        assertEquals(email.getHtml(), parser.getHtmlContent());
+        assertEquals(email.getText(), parser.getPlainContent());
+        assertEquals(2, parser.getAttachmentList().size());
+        assertEquals(image.length(), IOUtils.toByteArray(parser.findAttachmentByCid(cid).getInputStream()).length);
+        assertNotNull(parser.findAttachmentByName("logo.pdf"));
+    }
 }
@@ -20,20 +20,26 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import org.apache.commons.mail2.core.EmailConstants;
 import org.apache.commons.mail2.core.EmailException;
 import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.io.ArchiveSink;
 import org.apache.commons.mail2.jakarta.mocks.MockMultiPartEmailConcrete;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import jakarta.activation.FileDataSource;
 import jakarta.activation.URLDataSource;
@@ -190,6 +196,23 @@ class MultiPartEmailTest extends AbstractEmailTest {
     }
 
     /** TODO implement test for GetContainer */
+    @Test
+    void testEstimateSize() throws Exception {
+        email.setHostName(strTestMailServer);
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testEstimateSize");
+        email.setMsg("The primary body part of a message with a PDF attachment.");
+        email.attach(new File("./src/test/resources/attachments/logo.pdf"));
+        final long estimate = email.estimateSize();
+
+        email.buildMimeMessage();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        email.getMimeMessage().writeTo(out);
+        assertEquals(out.size(), estimate, out.size() * 0.05);
+        assertEquals(out.size(), email.estimateSize(), out.size() * 0.05);
+    }
+
     @Test
     void testGetContainer() {
         assertTrue(true);
@@ -267,6 +290,32 @@ class MultiPartEmailTest extends AbstractEmailTest {
         assertThrows(EmailException.class, email::send);
     }
 
+    @Test
+    void testSendChunked(@TempDir final Path archive) throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendChunked");
+        email.setMsg("Sent with BDAT if the server supports CHUNKING.\n.This line starts with a dot.");
+        email.attach(new File("./src/test/resources/attachments/logo.pdf"));
+        email.setChunkSize(1024);
+        email.setArchiveSink(ArchiveSink.ofDirectory(archive));
+
+        email.send();
+        stopServer();
+
+        assertEquals("1024", email.getMailSession().getProperty(EmailConstants.MAIL_SMTP_CHUNKSIZE));
+        final Path[] files;
+        try (Stream<Path> list = Files.list(archive)) {
+            files = list.toArray(Path[]::new);
+        }
+        final String archived = new String(Files.readAllBytes(files[0]), StandardCharsets.ISO_8859_1);
+        assertTrue(archived.contains("\r\n.This line starts with a dot."));
+        assertTrue(new String(fakeMailServer.getMessages().get(0).getData(), StandardCharsets.ISO_8859_1).contains(archived));
+    }
+
     @Test
     void testSetMsg() throws EmailException {
         // Test Success
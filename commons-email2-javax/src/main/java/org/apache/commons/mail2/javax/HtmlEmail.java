@@ -37,6 +37,7 @@ import javax.mail.internet.MimeMultipart;
 import org.apache.commons.mail2.core.EmailConstants;
 import org.apache.commons.mail2.core.EmailException;
 import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.mime.MimeEntity;
 
 /**
  * An HTML multipart email.
@@ -291,6 +292,23 @@ public class HtmlEmail extends MultiPartEmail {
         super.buildMimeMessage();
     }
 
+    /**
+     * Arranges the text, HTML, embedded and attached parts in the container as {@link #buildMimeMessage()} does.
+     *
+     * @return The content entity.
+     * @throws EmailException if the content cannot be described.
+     * @since 2.0.0-M2
+     */
+    @Override
+    protected MimeEntity createContentEntity() throws EmailException {
+        try {
+            build();
+        } catch (final MessagingException e) {
+            throw new EmailException(e);
+        }
+        return super.createContentEntity();
+    }
+
     /**
      * Embeds the specified {@code DataSource} in the HTML using a randomly generated Content-ID. Returns the generated Content-ID string.
      *
@@ -497,6 +515,40 @@ public class HtmlEmail extends MultiPartEmail {
         return embed(new URLDataSource(url), name);
     }
 
+    /**
+     * Adds the text, HTML and embedded parts, which are only arranged in the container when the message is built, to the estimate.
+     *
+     * @return The estimated size in octets.
+     * @throws EmailException if the content cannot be read.
+     * @since 2.0.0-M2
+     */
+    @Override
+    protected long estimateContentSize() throws EmailException {
+        long size = super.estimateContentSize();
+        final boolean hasHtml = EmailUtils.isNotEmpty(html);
+        final boolean hasText = EmailUtils.isNotEmpty(text);
+        if (hasHtml) {
+            size += SizeEstimator.estimateTextPart(html, EmailConstants.TEXT_HTML, getCharsetName());
+            if (!EmailUtils.isEmpty(inlineEmbeds)) {
+                size += SizeEstimator.estimateMultipartOverhead("related");
+                try {
+                    for (final InlineImage image : inlineEmbeds.values()) {
+                        size += SizeEstimator.estimatePart(image.getMimeBodyPart());
+                    }
+                } catch (final MessagingException e) {
+                    throw new EmailException(e);
+                }
+            }
+        }
+        if (hasText) {
+            size += SizeEstimator.estimateTextPart(text, EmailConstants.TEXT_PLAIN, getCharsetName());
+            if (hasHtml && (!EmailUtils.isEmpty(inlineEmbeds) || isBoolHasAttachments())) {
+                size += SizeEstimator.estimateMultipartOverhead("alternative");
+            }
+        }
+        return size;
+    }
+
     /**
      * Gets the HTML content.
      *
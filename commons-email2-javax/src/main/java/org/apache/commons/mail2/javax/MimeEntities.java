@@ -0,0 +1,161 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.javax;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+import javax.activation.URLDataSource;
+import javax.mail.Header;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.ContentDisposition;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.ParameterList;
+import javax.mail.util.ByteArrayDataSource;
+
+import org.apache.commons.mail2.core.io.BufferPool;
+import org.apache.commons.mail2.core.mime.ContentWriter;
+import org.apache.commons.mail2.core.mime.MimeEntity;
+import org.apache.commons.mail2.core.mime.TransferEncoding;
+import org.apache.commons.mail2.javax.activation.InputStreamDataSource;
+import org.apache.commons.mail2.javax.activation.PathDataSource;
+
+/**
+ * Converts JavaMail parts into {@link MimeEntity} instances whose content is read from the original data handlers while they are written.
+ */
+final class MimeEntities {
+
+    /**
+     * Tests whether the header is written by the {@code MimeWriter} and must not be copied.
+     */
+    private static boolean isGenerated(final String name) {
+        return "Content-Type".equalsIgnoreCase(name) || "Content-Transfer-Encoding".equalsIgnoreCase(name) || "MIME-Version".equalsIgnoreCase(name);
+    }
+
+    /**
+     * Converts a multipart.
+     *
+     * @param multipart The multipart to convert.
+     * @return The entity.
+     * @throws MessagingException if the multipart cannot be read.
+     */
+    static MimeEntity toMimeEntity(final Multipart multipart) throws MessagingException {
+        final ContentType contentType = new ContentType(multipart.getContentType());
+        final ParameterList parameters = contentType.getParameterList();
+        final MimeEntity entity = MimeEntity.ofMultipart(contentType.getSubType());
+        if (parameters != null) {
+            parameters.remove("boundary");
+            entity.setContentType(contentType.getBaseType() + parameters);
+        }
+        for (int i = 0; i < multipart.getCount(); i++) {
+            entity.addPart(toMimeEntity(multipart.getBodyPart(i)));
+        }
+        return entity;
+    }
+
+    /**
+     * Creates the writer of a data handler's content. Stream based data sources are copied through a pooled buffer instead of the buffer the activation
+     * framework allocates for each copy; other content is written by the data handler.
+     *
+     * @param dataHandler The data handler.
+     * @return The writer.
+     */
+    private static ContentWriter toContentWriter(final DataHandler dataHandler) {
+        final DataSource dataSource = dataHandler.getDataSource();
+        if (dataSource instanceof PathDataSource) {
+            return ((PathDataSource) dataSource)::writeTo;
+        }
+        if (dataSource instanceof InputStreamDataSource) {
+            return ((InputStreamDataSource) dataSource)::writeTo;
+        }
+        if (dataSource instanceof ByteArrayDataSource || dataSource instanceof FileDataSource || dataSource instanceof URLDataSource) {
+            return out -> {
+                try (InputStream inputStream = dataSource.getInputStream()) {
+                    BufferPool.getDefault().copy(inputStream, out);
+                }
+            };
+        }
+        return dataHandler::writeTo;
+    }
+
+    /**
+     * Converts a part, reading its content only when the entity is written.
+     *
+     * @param part The part to convert.
+     * @return The entity.
+     * @throws MessagingException if the part cannot be read.
+     */
+    static MimeEntity toMimeEntity(final Part part) throws MessagingException {
+        final DataHandler dataHandler = part.getDataHandler();
+        final ContentType contentType = new ContentType(dataHandler.getContentType());
+        final MimeEntity entity;
+        if ("multipart".equalsIgnoreCase(contentType.getPrimaryType())) {
+            try {
+                entity = toMimeEntity((Multipart) part.getContent());
+            } catch (final IOException e) {
+                throw new MessagingException("Reading the multipart failed", e);
+            }
+        } else {
+            final String disposition = part.getHeader("Content-Disposition") == null ? null : part.getHeader("Content-Disposition")[0];
+            if (disposition != null && contentType.getParameter("name") == null) {
+                // as MimeBodyPart.updateHeaders does, repeat the file name in the Content-Type
+                final String fileName = new ContentDisposition(disposition).getParameter("filename");
+                if (fileName != null) {
+                    contentType.setParameter("name", fileName);
+                }
+            }
+            entity = MimeEntity.ofContent(contentType.toString(), toContentWriter(dataHandler));
+            if (disposition == null && contentType.match("text/*")) {
+                // inline text held in memory anyway, select the encoding as JavaMail does
+                try {
+                    final Object content = part.getContent();
+                    if (content instanceof String) {
+                        entity.setTransferEncoding(TransferEncoding.forText((String) content));
+                    }
+                } catch (final IOException e) {
+                    throw new MessagingException("Reading the text failed", e);
+                }
+            }
+        }
+        final Enumeration<Header> headers = part.getAllHeaders();
+        while (headers.hasMoreElements()) {
+            final Header header = headers.nextElement();
+            if (!isGenerated(header.getName())) {
+                entity.addHeader(header.getName(), header.getValue());
+            } else if ("Content-Transfer-Encoding".equalsIgnoreCase(header.getName())) {
+                try {
+                    entity.setTransferEncoding(TransferEncoding.forName(header.getValue()));
+                } catch (final IllegalArgumentException e) {
+                    // unknown encoding, let the writer select one
+                }
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Disallow instantiation.
+     */
+    private MimeEntities() {
+    }
+}
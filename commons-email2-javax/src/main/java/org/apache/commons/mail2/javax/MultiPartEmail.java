@@ -39,6 +39,7 @@ import javax.mail.internet.MimeUtility;
 
 import org.apache.commons.mail2.core.EmailException;
 import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.mime.MimeEntity;
 import org.apache.commons.mail2.javax.activation.PathDataSource;
 
 /**
@@ -328,6 +329,25 @@ public class MultiPartEmail extends Email {
         return new MimeBodyPart();
     }
 
+    /**
+     * Creates the entity of the container with the configured subtype.
+     *
+     * @return The content entity.
+     * @throws EmailException if the content cannot be described.
+     * @since 2.0.0-M2
+     */
+    @Override
+    protected MimeEntity createContentEntity() throws EmailException {
+        if (subType != null) {
+            try {
+                getContainer().setSubType(subType);
+            } catch (final MessagingException e) {
+                throw new EmailException(e);
+            }
+        }
+        return super.createContentEntity();
+    }
+
     /**
      * Creates a mime multipart object.
      *
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.javax;
+
+import java.time.Duration;
+
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.smtp.NioSmtpEngine;
+import org.apache.commons.mail2.core.smtp.RelayGroup;
+import org.apache.commons.mail2.core.transport.EmailTransport;
+
+/**
+ * The ways an {@link Email} is sent, and the strategy choosing between them. The first path that applies is used:
+ * <ol>
+ * <li>{@link #TRANSPORT} if a transport is set with {@link Email#setTransport(EmailTransport)};</li>
+ * <li>{@link #ENGINE} if an SMTP engine is set with {@link Email#setSmtpEngine(NioSmtpEngine)};</li>
+ * <li>{@link #SMTP_CLIENT} if a relay group, LMTP or a send timeout is set, which JavaMail cannot honor;</li>
+ * <li>{@link #REGISTERED_TRANSPORT} if a transport is registered with the {@link java.util.ServiceLoader};</li>
+ * <li>{@link #SMTP_CLIENT} if an archive sink is set, so that the archive holds the bytes the server received rather than a second serialization;</li>
+ * <li>{@link #JAVA_MAIL} otherwise.</li>
+ * </ol>
+ * <p>
+ * The archive sink and the rate and concurrency limiters apply to every path. Settings that the selected path could not honor are rejected when they are
+ * set, see {@link #check(EmailTransport, NioSmtpEngine, RelayGroup, boolean, Duration)}, rather than silently changing the path.
+ * </p>
+ */
+enum SendPath {
+
+    /**
+     * The transport set on the email, decorated for the archive sink and the limiters.
+     */
+    TRANSPORT,
+
+    /**
+     * The non-blocking SMTP engine, configured with the SMTP client of {@link Email#createSmtpClient()}.
+     */
+    ENGINE,
+
+    /**
+     * The built-in SMTP client of {@link Email#createSmtpClient()}, through the relay group if one is set. The client fails on session properties it cannot
+     * honor rather than ignoring them.
+     */
+    SMTP_CLIENT,
+
+    /**
+     * The transport registered with the {@link java.util.ServiceLoader}, see {@link EmailTransport#getDefault()}, decorated for the archive sink and the
+     * limiters.
+     */
+    REGISTERED_TRANSPORT,
+
+    /**
+     * The JavaMail transport of the mail session, decorated for the limiters.
+     */
+    JAVA_MAIL;
+
+    /**
+     * Checks that a combination of settings can be honored by one path.
+     *
+     * @param transport   the transport, or null.
+     * @param smtpEngine  the SMTP engine, or null.
+     * @param relayGroup  the relay group, or null.
+     * @param lmtp        whether LMTP is used.
+     * @param sendTimeout the send timeout, or null.
+     * @throws IllegalStateException if a transport is combined with a relay group, LMTP or a send timeout, or an SMTP engine with a relay group or LMTP.
+     */
+    static void check(final EmailTransport transport, final NioSmtpEngine smtpEngine, final RelayGroup relayGroup, final boolean lmtp,
+            final Duration sendTimeout) {
+        if (transport != null && (relayGroup != null || lmtp || sendTimeout != null)) {
+            throw new IllegalStateException("A transport cannot be used with a relay group, LMTP or a send timeout");
+        }
+        if (smtpEngine != null && (relayGroup != null || lmtp)) {
+            throw new IllegalStateException("An SMTP engine cannot be used with a relay group or LMTP");
+        }
+    }
+
+    /**
+     * Selects the path sending an email.
+     *
+     * @param email the email.
+     * @return the send path.
+     * @throws EmailException if the registered transport cannot be loaded.
+     */
+    static SendPath select(final Email email) throws EmailException {
+        if (email.getTransport() != null) {
+            return TRANSPORT;
+        }
+        if (email.getSmtpEngine() != null) {
+            return ENGINE;
+        }
+        if (email.getRelayGroup() != null || email.isLmtp() || email.getSendTimeout() != null) {
+            return SMTP_CLIENT;
+        }
+        if (EmailTransport.getDefault() != null) {
+            return REGISTERED_TRANSPORT;
+        }
+        return email.getArchiveSink() != null ? SMTP_CLIENT : JAVA_MAIL;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.javax;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Enumeration;
+
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+import javax.activation.URLDataSource;
+import javax.mail.BodyPart;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.Part;
+import javax.mail.internet.ContentType;
+import javax.mail.internet.MimePart;
+import javax.mail.util.ByteArrayDataSource;
+
+import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.mime.TransferEncoding;
+import org.apache.commons.mail2.javax.activation.InputStreamDataSource;
+import org.apache.commons.mail2.javax.activation.PathDataSource;
+
+/**
+ * Estimates the wire size of messages and parts from header lengths, text lengths and data source sizes, without encoding anything.
+ * <p>
+ * Content whose size is unknown without reading it, such as remote URLs or input streams, is not counted.
+ * </p>
+ */
+final class SizeEstimator {
+
+    /** The length of a boundary as JavaMail generates it. */
+    private static final int BOUNDARY_LENGTH = 44;
+
+    /** The length of a boundary line, {@code "--"}, the boundary and CRLF, with the CRLF preceding it. */
+    private static final int BOUNDARY_LINE_LENGTH = 2 + 2 + BOUNDARY_LENGTH + 2;
+
+    /**
+     * Estimates the size of a multipart.
+     *
+     * @param multipart The multipart.
+     * @return The estimated size in octets.
+     * @throws MessagingException if the multipart cannot be read.
+     */
+    static long estimate(final Multipart multipart) throws MessagingException {
+        long size = BOUNDARY_LINE_LENGTH + 2;
+        for (int i = 0; i < multipart.getCount(); i++) {
+            final BodyPart part = multipart.getBodyPart(i);
+            size += BOUNDARY_LINE_LENGTH + estimate(part);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size of a part, including its headers and those JavaMail adds when it updates them.
+     *
+     * @param part The part.
+     * @return The estimated size in octets.
+     * @throws MessagingException if the part cannot be read.
+     */
+    static long estimate(final Part part) throws MessagingException {
+        long size = 2;
+        if (part instanceof MimePart) {
+            for (final Enumeration<String> lines = ((MimePart) part).getAllHeaderLines(); lines.hasMoreElements();) {
+                size += lines.nextElement().length() + 2;
+            }
+        }
+        final DataHandler dataHandler = part.getDataHandler();
+        final String contentType = dataHandler.getContentType();
+        if (part.getHeader("Content-Type") == null) {
+            size += header("Content-Type", contentType);
+        }
+        final ContentType type = new ContentType(contentType);
+        if ("multipart".equalsIgnoreCase(type.getPrimaryType())) {
+            try {
+                return size + estimate((Multipart) part.getContent());
+            } catch (final IOException e) {
+                throw new MessagingException("Reading the multipart failed", e);
+            }
+        }
+        final TransferEncoding declared = getTransferEncoding(part);
+        if (declared == null) {
+            size += header("Content-Transfer-Encoding", "quoted-printable");
+        }
+        final DataSource dataSource = dataHandler.getDataSource();
+        final long length = size(dataSource);
+        if (length >= 0) {
+            return size + (declared != null ? declared : TransferEncoding.forType(contentType)).estimateSize(length);
+        }
+        if (dataSource instanceof URLDataSource || dataSource instanceof InputStreamDataSource) {
+            return size;
+        }
+        final Object content;
+        try {
+            content = part.getContent();
+        } catch (final IOException e) {
+            throw new MessagingException("Reading the content failed", e);
+        }
+        if (content instanceof String) {
+            final String charsetName = type.getParameter("charset");
+            return size + estimateText((String) content, declared, charsetName);
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the size of a nested multipart without its parts: its boundary line in the parent, headers and closing boundary line.
+     *
+     * @param subType The multipart subtype.
+     * @return The estimated size in octets.
+     */
+    static long estimateMultipartOverhead(final String subType) {
+        return BOUNDARY_LINE_LENGTH + header("Content-Type", "multipart/" + subType + "; boundary=\"\"") + BOUNDARY_LENGTH + 2 + BOUNDARY_LINE_LENGTH + 2;
+    }
+
+    /**
+     * Estimates the size of a body part in a multipart, including its boundary line.
+     *
+     * @param part The part.
+     * @return The estimated size in octets.
+     * @throws MessagingException if the part cannot be read.
+     */
+    static long estimatePart(final Part part) throws MessagingException {
+        return BOUNDARY_LINE_LENGTH + estimate(part);
+    }
+
+    /**
+     * Estimates the size of a text body part in a multipart, including its boundary line and headers.
+     *
+     * @param text        The text.
+     * @param mimeType    The MIME type, for example {@code text/html}.
+     * @param charsetName The charset name or null for UTF-8.
+     * @return The estimated size in octets.
+     */
+    static long estimateTextPart(final String text, final String mimeType, final String charsetName) {
+        final String contentType = EmailUtils.isEmpty(charsetName) ? mimeType : mimeType + "; charset=" + charsetName;
+        return BOUNDARY_LINE_LENGTH + header("Content-Type", contentType) + header("Content-Transfer-Encoding", "quoted-printable") + 2
+                + estimateText(text, null, charsetName);
+    }
+
+    /**
+     * Estimates the size of a text body.
+     *
+     * @param text        The text.
+     * @param encoding    The transfer encoding or null to select it from the text.
+     * @param charsetName The charset name or null for UTF-8.
+     * @return The estimated size in octets.
+     */
+    static long estimateText(final String text, final TransferEncoding encoding, final String charsetName) {
+        final Charset charset = EmailUtils.isEmpty(charsetName) ? StandardCharsets.UTF_8 : Charset.forName(charsetName);
+        return (encoding != null ? encoding : TransferEncoding.forText(text)).estimateSize(text, charset);
+    }
+
+    /**
+     * Gets the declared transfer encoding of a part.
+     *
+     * @param part The part.
+     * @return The encoding or null if none or an unknown one is declared.
+     * @throws MessagingException if the header cannot be read.
+     */
+    private static TransferEncoding getTransferEncoding(final Part part) throws MessagingException {
+        final String[] header = part.getHeader("Content-Transfer-Encoding");
+        if (header == null) {
+            return null;
+        }
+        try {
+            return TransferEncoding.forName(header[0]);
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Estimates the size of a header line, including folding.
+     *
+     * @param name  The header name.
+     * @param value The header value.
+     * @return The estimated size in octets.
+     */
+    static long header(final String name, final String value) {
+        final int length = name.length() + 2 + value.length();
+        return length + 2 + length / 76 * 2;
+    }
+
+    /**
+     * Gets the size of the data of a data source if it is known without reading it.
+     *
+     * @param dataSource The data source.
+     * @return The size in octets or -1 if unknown.
+     */
+    static long size(final DataSource dataSource) {
+        try {
+            if (dataSource instanceof PathDataSource) {
+                return Files.size(((PathDataSource) dataSource).getPath());
+            }
+            if (dataSource instanceof FileDataSource) {
+                return ((FileDataSource) dataSource).getFile().length();
+            }
+            if (dataSource instanceof ByteArrayDataSource) {
+                try (InputStream inputStream = dataSource.getInputStream()) {
+                    return inputStream.available();
+                }
+            }
+            if (dataSource instanceof URLDataSource) {
+                final URL url = ((URLDataSource) dataSource).getURL();
+                if ("file".equals(url.getProtocol())) {
+                    return new File(url.toURI()).length();
+                }
+            }
+        } catch (final IOException | URISyntaxException | IllegalArgumentException e) {
+            // unknown
+        }
+        return -1;
+    }
+
+    private SizeEstimator() {
+        // no instances
+    }
+}
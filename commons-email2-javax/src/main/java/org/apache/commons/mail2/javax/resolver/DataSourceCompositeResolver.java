@@ -20,6 +20,7 @@ import java.io.IOException;
 
 import javax.activation.DataSource;
 
+import org.apache.commons.mail2.core.Deadline;
 import org.apache.commons.mail2.javax.DataSourceResolver;
 
 /**
@@ -76,8 +77,24 @@ public class DataSourceCompositeResolver extends DataSourceBaseResolver {
     /** {@inheritDoc} */
     @Override
     public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException {
+        return resolve(resourceLocation, isLenient, null);
+    }
+
+    /**
+     * Resolves the given resource location with the first resolver that finds it, passing the deadline on.
+     *
+     * @param resourceLocation The location of the resource
+     * @param isLenient        shall we ignore resources not found or complain with an exception?
+     * @param deadline         The deadline of the send, or null for none
+     * @return The data source containing the resource or null if the resource was not found in lenient mode
+     * @throws IOException resolving the resource failed
+     * @since 2.0.0-M2
+     */
+    @Override
+    public DataSource resolve(final String resourceLocation, final boolean isLenient, final Deadline deadline) throws IOException {
         for (final DataSourceResolver dataSourceResolver : dataSourceResolvers) {
-            final DataSource dataSource = dataSourceResolver.resolve(resourceLocation, isLenient);
+            final DataSource dataSource = deadline != null ? dataSourceResolver.resolve(resourceLocation, isLenient, deadline)
+                    : dataSourceResolver.resolve(resourceLocation, isLenient);
             if (dataSource != null) {
                 return dataSource;
             }
@@ -87,4 +104,22 @@ public class DataSourceCompositeResolver extends DataSourceBaseResolver {
         }
         throw new IOException("The following resource was not found : " + resourceLocation);
     }
+
+    /**
+     * Resolves the given resource location with the first resolver that finds it, passing the deadline on.
+     *
+     * @param resourceLocation The location of the resource
+     * @param deadline         The deadline of the send
+     * @return The {@code DataSource}
+     * @throws IOException the resource was not found
+     * @since 2.0.0-M2
+     */
+    @Override
+    public DataSource resolve(final String resourceLocation, final Deadline deadline) throws IOException {
+        final DataSource result = resolve(resourceLocation, true, deadline);
+        if (isLenient() || result != null) {
+            return result;
+        }
+        throw new IOException("The following resource was not found : " + resourceLocation);
+    }
 }
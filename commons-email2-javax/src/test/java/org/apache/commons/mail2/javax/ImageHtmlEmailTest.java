@@ -25,6 +25,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -33,10 +35,13 @@ import java.util.regex.Pattern;
 
 import javax.activation.DataSource;
 import javax.mail.internet.MimeMessage;
+import javax.mail.util.ByteArrayDataSource;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.mail2.core.Deadline;
 import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
 import org.apache.commons.mail2.javax.mocks.MockImageHtmlEmailConcrete;
 import org.apache.commons.mail2.javax.resolver.DataSourceClassPathResolver;
 import org.apache.commons.mail2.javax.resolver.DataSourceCompositeResolver;
@@ -237,6 +242,43 @@ class ImageHtmlEmailTest extends HtmlEmailTest {
         assertEquals(1, mimeMessageParser.getAttachmentList().size());
     }
 
+    @Test
+    void testSendTimeoutStopsResolving() throws Exception {
+        final List<Deadline> deadlines = new ArrayList<>();
+        final ImageHtmlEmail email = new ImageHtmlEmail();
+        email.setHostName(strTestMailServer);
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendTimeoutStopsResolving");
+        email.setHtmlMsg("<html><body><img src=\"a.png\"><img src=\"b.png\"><img src=\"c.png\"></body></html>");
+        email.setDataSourceResolver(new DataSourceResolver() {
+            @Override
+            public DataSource resolve(final String resourceLocation) throws IOException {
+                throw new IOException("The deadline was not passed");
+            }
+
+            @Override
+            public DataSource resolve(final String resourceLocation, final boolean isLenient) throws IOException {
+                throw new IOException("The deadline was not passed");
+            }
+
+            @Override
+            public DataSource resolve(final String resourceLocation, final Deadline deadline) throws IOException {
+                deadlines.add(deadline);
+                try {
+                    Thread.sleep(200);
+                } catch (final InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return new ByteArrayDataSource(new byte[1], "image/png");
+            }
+        });
+        email.setSendTimeout(Duration.ofMillis(300));
+        assertThrows(EmailTimeoutException.class, email::send);
+        assertTrue(deadlines.size() < 3, deadlines::toString);
+        assertEquals(Duration.ofMillis(300), deadlines.get(0).getTimeout());
+    }
+
     @Test
     void testSendEmptyHTML() throws Exception {
         Logger.getLogger(ImageHtmlEmail.class.getName()).setLevel(Level.FINEST);
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.commons.mail2.javax;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+
+import javax.mail.Session;
+
+import org.apache.commons.mail2.core.EmailConstants;
+import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.junit.jupiter.api.Test;
+import org.subethamail.wiser.WiserMessage;
+
+/**
+ * Tests {@link JavaMailTransport} and sending with a transport.
+ */
+class JavaMailTransportTest extends AbstractEmailTest {
+
+    @Test
+    void testSendMimeMessage() throws Exception {
+        getMailServer();
+        final SimpleEmail email = new SimpleEmail();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendMimeMessage");
+        email.setMsg("Sent with the JavaMail transport");
+        email.setTransport(new JavaMailTransport());
+
+        final String messageId = email.send();
+        fakeMailServer.stop();
+
+        assertEquals(1, fakeMailServer.getMessages().size());
+        assertEquals(messageId, fakeMailServer.getMessages().get(0).getMimeMessage().getMessageID());
+    }
+
+    @Test
+    void testSendSerialized() throws Exception {
+        getMailServer();
+        final Properties properties = new Properties();
+        properties.setProperty(EmailConstants.MAIL_HOST, strTestMailServer);
+        properties.setProperty(EmailConstants.MAIL_PORT, Integer.toString(getMailServerPort()));
+        final JavaMailTransport transport = new JavaMailTransport(Session.getInstance(properties));
+        final byte[] message = ("Message-ID: <fixed@example.com>\r\nFrom: " + strTestMailFrom + "\r\nSubject: raw\r\n\r\nbody\r\n")
+                .getBytes(StandardCharsets.US_ASCII);
+
+        transport.send(Envelope.of(strTestMailFrom, "a@example.com", "b@example.com"), out -> out.write(message), message.length);
+        fakeMailServer.stop();
+
+        assertEquals(2, fakeMailServer.getMessages().size());
+        final WiserMessage received = fakeMailServer.getMessages().get(0);
+        assertEquals("<fixed@example.com>", received.getMimeMessage().getMessageID());
+        assertTrue(new String(received.getData(), StandardCharsets.US_ASCII).endsWith("\r\nbody\r\n"));
+    }
+
+    @Test
+    void testSendWithTransport() throws Exception {
+        final SimpleEmail email = new SimpleEmail();
+        email.setHostName(strTestMailServer);
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.addBcc("hidden@example.com");
+        email.setSubject("testSendWithTransport");
+        email.setMsg("Sent with a transport");
+        final Envelope[] envelope = new Envelope[1];
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        email.setTransport((sent, writer, size) -> {
+            envelope[0] = sent;
+            try {
+                writer.writeTo(data);
+            } catch (final IOException e) {
+                throw new EmailException(e);
+            }
+            assertTrue(size > 0);
+        });
+
+        final String messageId = email.send();
+
+        assertEquals(strTestMailFrom, envelope[0].getReversePath());
+        assertEquals(Arrays.asList(strTestMailTo, "hidden@example.com"), envelope[0].getRecipients());
+        final String serialized = new String(data.toByteArray(), StandardCharsets.US_ASCII);
+        assertTrue(serialized.contains("Message-ID: " + messageId + "\r\n"), serialized);
+        assertTrue(serialized.contains("Sent with a transport"), serialized);
+        assertFalse(serialized.contains("hidden@example.com"), serialized);
+    }
+}
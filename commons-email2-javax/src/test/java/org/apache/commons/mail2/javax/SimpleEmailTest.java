@@ -17,19 +17,58 @@
 package org.apache.commons.mail2.javax;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
 
 import org.apache.commons.mail2.core.EmailConstants;
 import org.apache.commons.mail2.core.EmailException;
+import org.apache.commons.mail2.core.EmailTimeoutException;
 import org.apache.commons.mail2.core.EmailUtils;
+import org.apache.commons.mail2.core.MessageTooLargeException;
+import org.apache.commons.mail2.core.RateLimitExceededException;
+import org.apache.commons.mail2.core.io.ArchiveSink;
+import org.apache.commons.mail2.core.smtp.ConcurrencyLimiter;
+import org.apache.commons.mail2.core.smtp.Envelope;
+import org.apache.commons.mail2.core.smtp.NioSmtpEngine;
+import org.apache.commons.mail2.core.smtp.RateLimiter;
+import org.apache.commons.mail2.core.smtp.RelayGroup;
+import org.apache.commons.mail2.core.transport.DeliveryScheduler;
+import org.apache.commons.mail2.core.transport.InMemoryTransport;
+import org.apache.commons.mail2.core.transport.OutboundQueue;
+import org.apache.commons.mail2.core.transport.SendLane;
+import org.apache.commons.mail2.core.transport.SendLanes;
 import org.apache.commons.mail2.javax.mocks.MockSimpleEmail;
+import org.apache.commons.mail2.javax.util.MimeMessageUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.subethamail.wiser.WiserMessage;
 
 /**
  * JUnit test case for SimpleEmailTest
@@ -85,6 +124,23 @@ class SimpleEmailTest extends AbstractEmailTest {
         System.clearProperty(EmailConstants.MAIL_MIME_CHARSET);
     }
 
+    @Test
+    void testEnqueue() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        try (OutboundQueue queue = new OutboundQueue(transport, OutboundQueue.DEFAULT_MEMORY_BUDGET, 1)) {
+            email.setHostName(strTestMailServer);
+            email.setFrom(strTestMailFrom);
+            email.addTo(strTestMailTo);
+            email.setSubject("testEnqueue");
+            email.setMsg("Serialized when enqueued");
+            final String messageId = email.enqueue(queue, OutboundQueue.Priority.HIGH).get(10, TimeUnit.SECONDS);
+            assertEquals(email.getMimeMessage().getMessageID(), messageId);
+        }
+        assertEquals(1, transport.getMessageCount());
+        assertEquals(Collections.singletonList(strTestMailTo), transport.getMessages().get(0).getEnvelope().getRecipients());
+        assertTrue(transport.getMessages().get(0).getDataAsString().contains("Serialized when enqueued"));
+    }
+
     @Test
     void testGetSetMsg() throws EmailException {
         // Test Success
@@ -103,6 +159,26 @@ class SimpleEmailTest extends AbstractEmailTest {
      * @throws EmailException when a bad address is set.
      * @throws IOException    when sending fails TODO Add code to test the popBeforeSmtp() settings
      */
+    @Test
+    void testSchedule() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        try (DeliveryScheduler scheduler = new DeliveryScheduler(transport, Duration.ofMillis(10))) {
+            email.setHostName(strTestMailServer);
+            email.setFrom(strTestMailFrom);
+            email.addTo(strTestMailTo);
+            email.setSubject("testSchedule");
+            email.setMsg("Serialized when scheduled");
+            final Instant deliveryTime = Instant.now().plusMillis(100);
+            final DeliveryScheduler.Delivery delivery = email.schedule(scheduler, deliveryTime);
+            assertEquals(deliveryTime, delivery.getDeliveryTime());
+            delivery.getFuture().get(10, TimeUnit.SECONDS);
+            assertFalse(Instant.now().isBefore(deliveryTime));
+        }
+        assertEquals(1, transport.getMessageCount());
+        assertEquals(Collections.singletonList(strTestMailTo), transport.getMessages().get(0).getEnvelope().getRecipients());
+        assertTrue(transport.getMessages().get(0).getDataAsString().contains("Serialized when scheduled"));
+    }
+
     @Test
     void testSend() throws EmailException, IOException {
         // Test Success
@@ -132,4 +208,456 @@ class SimpleEmailTest extends AbstractEmailTest {
         validateSend(fakeMailServer, strSubject, email.getContentAsString(), email.getFromAddress(), email.getToAddresses(), email.getCcAddresses(),
                 email.getBccAddresses(), true);
     }
+
+    @Test
+    void testSendMaxMessageSize() throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendMaxMessageSize");
+        email.setMsg(String.join("", Collections.nCopies(100, "0123456789")));
+        email.setMaxMessageSize(1000);
+
+        final MessageTooLargeException e = assertThrows(MessageTooLargeException.class, email::send);
+        assertTrue(e.getSize() > 1000);
+        assertEquals(1000, e.getLimit());
+        assertNull(email.getMimeMessage());
+        assertThrows(MessageTooLargeException.class, () -> email.sendRaw(new byte[1001], Envelope.of(strTestMailFrom, strTestMailTo)));
+        fakeMailServer.stop();
+        assertTrue(fakeMailServer.getMessages().isEmpty());
+    }
+
+    @Test
+    void testSendRaw() throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendRaw");
+        email.setMsg("Line one\n.Line two starts with a dot");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        email.writeTo(out);
+        final byte[] bytes = out.toByteArray();
+        final Envelope envelope = Envelope.of("bounce@apache.org", "other@apache.org");
+
+        email.sendRaw(bytes, envelope);
+        email.sendRaw(ByteBuffer.wrap(bytes), envelope);
+        final File file = File.createTempFile("raw", ".eml");
+        try {
+            final Path path = file.toPath();
+            Files.write(path, bytes);
+            email.sendRaw(path, envelope);
+        } finally {
+            assertTrue(file.delete());
+        }
+        fakeMailServer.stop();
+
+        assertEquals(3, fakeMailServer.getMessages().size());
+        for (final WiserMessage message : fakeMailServer.getMessages()) {
+            assertEquals("bounce@apache.org", message.getEnvelopeSender());
+            assertEquals("other@apache.org", message.getEnvelopeReceiver());
+            // the server prepends a Received header, the DATA command ends the last line
+            assertTrue(new String(message.getData(), StandardCharsets.US_ASCII).endsWith(new String(bytes, StandardCharsets.US_ASCII) + "\r\n"));
+            assertEquals("Line one\r\n.Line two starts with a dot\r\n", message.getMimeMessage().getContent());
+        }
+    }
+
+    @Test
+    void testSendArchived(@TempDir final Path archive) throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.addBcc("bcc@example.com");
+        email.setSubject("testSendArchived");
+        email.setMsg("Line one\n.Line two starts with a dot");
+        email.setArchiveSink(ArchiveSink.ofDirectory(archive));
+
+        final String messageId = email.send();
+        fakeMailServer.stop();
+
+        assertEquals(2, fakeMailServer.getMessages().size());
+        final Path[] files;
+        try (Stream<Path> list = Files.list(archive)) {
+            files = list.toArray(Path[]::new);
+        }
+        assertEquals(1, files.length);
+        assertTrue(files[0].getFileName().toString().endsWith(".eml"));
+        final String archived = new String(Files.readAllBytes(files[0]), StandardCharsets.US_ASCII);
+        assertTrue(archived.contains(messageId));
+        assertFalse(archived.contains("bcc@example.com"));
+        for (final WiserMessage message : fakeMailServer.getMessages()) {
+            assertEquals(strTestMailFrom, message.getEnvelopeSender());
+            // the server prepends a Received header, the DATA command ends the last line
+            assertTrue(new String(message.getData(), StandardCharsets.US_ASCII).endsWith(archived + "\r\n"));
+        }
+    }
+
+    @Test
+    void testSendArchived8BitMime(@TempDir final Path archive) throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendArchived8BitMime");
+        email.setCharset(StandardCharsets.UTF_8.name());
+        email.setMsg("Caf\u00e9 cr\u00e8me");
+        email.setAllow8BitMime(true);
+        email.setArchiveSink(ArchiveSink.ofDirectory(archive));
+
+        email.send();
+        fakeMailServer.stop();
+
+        final Path[] files;
+        try (Stream<Path> list = Files.list(archive)) {
+            files = list.toArray(Path[]::new);
+        }
+        final String archived = new String(Files.readAllBytes(files[0]), StandardCharsets.UTF_8);
+        assertTrue(archived.contains("Content-Transfer-Encoding: 8bit"), archived);
+        assertTrue(archived.endsWith("\r\n\r\nCaf\u00e9 cr\u00e8me"), archived);
+        final String received = new String(fakeMailServer.getMessages().get(0).getData(), StandardCharsets.UTF_8);
+        assertTrue(received.endsWith(archived + "\r\n"));
+    }
+
+    @Test
+    void testSendAsync(@TempDir final Path archive) throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendAsync");
+        email.setMsg("Sent with the NIO engine");
+        email.setArchiveSink(ArchiveSink.ofDirectory(archive));
+
+        final String messageId;
+        try (NioSmtpEngine engine = new NioSmtpEngine(1)) {
+            email.setSmtpEngine(engine);
+            messageId = email.sendAsync().get(30, TimeUnit.SECONDS);
+        }
+        fakeMailServer.stop();
+
+        assertEquals(email.getMimeMessage().getMessageID(), messageId);
+        final String received = new String(fakeMailServer.getMessages().get(0).getData(), StandardCharsets.UTF_8);
+        assertTrue(received.contains("Sent with the NIO engine"), received);
+        final Path[] files;
+        try (Stream<Path> list = Files.list(archive)) {
+            files = list.toArray(Path[]::new);
+        }
+        assertTrue(received.endsWith(new String(Files.readAllBytes(files[0]), StandardCharsets.UTF_8) + "\r\n"));
+    }
+
+    @Test
+    void testSendConcurrencyLimit() throws Exception {
+        getMailServer();
+        final ConcurrencyLimiter concurrencyLimiter = new ConcurrencyLimiter();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setConcurrencyLimiter(concurrencyLimiter);
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendConcurrencyLimit");
+        email.setMsg("Sent while holding a permit");
+
+        email.send();
+        fakeMailServer.stop();
+
+        assertEquals(1, fakeMailServer.getMessages().size());
+        final ConcurrencyLimiter.Limit limit = concurrencyLimiter.getLimit(strTestMailServer + ":" + getMailServerPort());
+        assertEquals(0, limit.getInFlight());
+        assertTrue(limit.getLatency().toNanos() > 0);
+    }
+
+    @Test
+    void testSendLane() throws Exception {
+        getMailServer();
+        try (SendLanes lanes = new SendLanes()) {
+            final SendLane lane = lanes.addLane("transactional", 10, 1, 10);
+            for (int i = 0; i < 2; i++) {
+                email = new MockSimpleEmail();
+                email.setHostName(strTestMailServer);
+                email.setSmtpPort(getMailServerPort());
+                email.setSendLane(lane);
+                email.setFrom(strTestMailFrom);
+                email.addTo(strTestMailTo);
+                email.setSubject("testSendLane");
+                email.setMsg("Sent by a thread of the lane");
+                if (i == 0) {
+                    assertNotNull(email.send());
+                } else {
+                    assertNotNull(email.sendAsync().get(10, TimeUnit.SECONDS));
+                }
+            }
+        }
+        fakeMailServer.stop();
+
+        assertEquals(2, fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    void testSendLmtp() throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendLmtp");
+        email.setMsg("Delivered with LMTP");
+        email.setLmtp(true);
+
+        // the test server speaks SMTP only and rejects LHLO, so the JavaMail transport was not used
+        assertThrows(EmailException.class, email::send);
+        fakeMailServer.stop();
+        assertTrue(fakeMailServer.getMessages().isEmpty());
+        assertTrue(email.getDeliveryReplies().isEmpty());
+    }
+
+    @Test
+    void testSendTimeout() throws Exception {
+        try (ServerSocket slow = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            // a relay that sends its greeting one byte every 50 milliseconds
+            final Thread relay = new Thread(() -> {
+                try (Socket socket = slow.accept(); OutputStream out = socket.getOutputStream()) {
+                    for (final byte b : "220 slow.example.com ESMTP ready, eventually, after a while\r\n".getBytes(StandardCharsets.US_ASCII)) {
+                        out.write(b);
+                        out.flush();
+                        Thread.sleep(50);
+                    }
+                } catch (final IOException | InterruptedException e) {
+                    // the client gave up
+                }
+            });
+            relay.setDaemon(true);
+            relay.start();
+            email.setHostName("127.0.0.1");
+            email.setSmtpPort(slow.getLocalPort());
+            email.setFrom(strTestMailFrom);
+            email.addTo(strTestMailTo);
+            email.setSubject("testSendTimeout");
+            email.setMsg("Never sent");
+            email.setSendTimeout(Duration.ofMillis(300));
+            final long start = System.nanoTime();
+            final EmailTimeoutException e = assertThrows(EmailTimeoutException.class, email::send);
+            assertEquals(Duration.ofMillis(300), e.getTimeout());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        }
+    }
+
+    @Test
+    void testSendRateLimit() throws Exception {
+        getMailServer();
+        final RateLimiter rateLimiter = new RateLimiter(0.5, 1, 0, 0).setMode(RateLimiter.Mode.FAIL_FAST);
+        for (int i = 0; i < 2; i++) {
+            email = new MockSimpleEmail();
+            email.setHostName(strTestMailServer);
+            email.setSmtpPort(getMailServerPort());
+            email.setRateLimiter(rateLimiter);
+            email.setFrom(strTestMailFrom);
+            email.addTo(strTestMailTo);
+            email.setSubject("testSendRateLimit");
+            email.setMsg("One message every two seconds");
+            if (i == 0) {
+                email.send();
+            } else {
+                assertThrows(RateLimitExceededException.class, email::send);
+            }
+        }
+        fakeMailServer.stop();
+
+        assertEquals(1, fakeMailServer.getMessages().size());
+    }
+
+    @Test
+    void testSendRelayGroup() throws Exception {
+        getMailServer();
+        final int unusedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            unusedPort = socket.getLocalPort();
+        }
+        final RelayGroup relayGroup = new RelayGroup().addRelay(strTestMailServer, unusedPort).addRelay(strTestMailServer, getMailServerPort());
+        email.setRelayGroup(relayGroup);
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendRelayGroup");
+        email.setMsg("Failed over to the second relay");
+
+        email.send();
+        fakeMailServer.stop();
+
+        assertEquals(1, fakeMailServer.getMessages().size());
+        assertEquals(strTestMailServer, email.getHostName());
+        assertEquals(0, relayGroup.getRelays().get(1).getOutstanding());
+    }
+
+    @Test
+    void testSendTransportArchived(@TempDir final Path archive) throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        // the transport's own session points elsewhere, the email's session is used
+        email.setTransport(new JavaMailTransport());
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendTransportArchived");
+        email.setMsg("Archived after JavaMail sent it");
+        email.setArchiveSink(ArchiveSink.ofDirectory(archive));
+
+        final String messageId = email.send();
+        fakeMailServer.stop();
+
+        assertEquals(1, fakeMailServer.getMessages().size());
+        final Path[] files;
+        try (Stream<Path> list = Files.list(archive)) {
+            files = list.toArray(Path[]::new);
+        }
+        assertEquals(1, files.length);
+        final String archived = new String(Files.readAllBytes(files[0]), StandardCharsets.US_ASCII);
+        assertTrue(archived.contains(messageId));
+        assertTrue(new String(fakeMailServer.getMessages().get(0).getData(), StandardCharsets.US_ASCII).contains(messageId));
+    }
+
+    @Test
+    void testSendTransportLimits() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        final RateLimiter rateLimiter = new RateLimiter(0.5, 1, 0, 0).setMode(RateLimiter.Mode.FAIL_FAST);
+        for (int i = 0; i < 2; i++) {
+            email = new MockSimpleEmail();
+            email.setHostName(strTestMailServer);
+            email.setTransport(transport);
+            email.setRateLimiter(rateLimiter);
+            email.setFrom(strTestMailFrom);
+            email.addTo(strTestMailTo);
+            email.setSubject("testSendTransportLimits");
+            email.setMsg("One message every two seconds");
+            if (i == 0) {
+                email.send();
+            } else {
+                assertThrows(RateLimitExceededException.class, email::send);
+            }
+        }
+        assertEquals(1, transport.getMessageCount());
+    }
+
+    @Test
+    void testSendTransportUnsupported() throws Exception {
+        final InMemoryTransport transport = new InMemoryTransport();
+        email.setTransport(transport);
+        assertThrows(IllegalStateException.class, () -> email.setLmtp(true));
+        assertThrows(IllegalStateException.class, () -> email.setSendTimeout(Duration.ofSeconds(10)));
+        assertThrows(IllegalStateException.class, () -> email.setRelayGroup(new RelayGroup().addRelay(strTestMailServer, 25)));
+        email.setTransport(null);
+        email.setLmtp(true);
+        assertThrows(IllegalStateException.class, () -> email.setTransport(transport));
+        try (NioSmtpEngine engine = new NioSmtpEngine(1)) {
+            assertThrows(IllegalStateException.class, () -> email.setSmtpEngine(engine));
+        }
+        assertTrue(email.isLmtp());
+        assertNull(email.getTransport());
+        assertNull(email.getSmtpEngine());
+    }
+
+    @Test
+    void testSendUnsupportedSession() throws Exception {
+        email.setHostName(strTestMailServer);
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.setSubject("testSendUnsupportedSession");
+        email.setMsg("Never sent");
+        email.setSendTimeout(Duration.ofSeconds(10));
+        email.getMailSession().getProperties().setProperty("mail.smtp.proxy.host", "proxy.example.com");
+        final EmailException e = assertThrows(EmailException.class, email::send);
+        assertTrue(e.getMessage().contains("mail.smtp.proxy.host"), e.getMessage());
+    }
+
+    @Test
+    void testSendSmtpUtf8() throws Exception {
+        getMailServer();
+        email.setHostName(strTestMailServer);
+        email.setSmtpPort(getMailServerPort());
+        email.setSendTimeout(Duration.ofSeconds(10));
+        email.setSmtpUtf8(true);
+        email.setFrom(strTestMailFrom);
+        email.addTo("joerg@m\u00fcller.example", "J\u00f6rg M\u00fcller");
+        email.setSubject("Gr\u00fc\u00dfe");
+        email.setMsg("Hallo");
+        assertEquals("joerg@m\u00fcller.example", email.getToAddresses().get(0).getAddress());
+
+        // the server does not announce SMTPUTF8, so the UTF-8 message is refused instead of being sent without the parameter
+        final EmailException e = assertThrows(EmailException.class, email::send);
+        assertTrue(e.getCause().getMessage().contains("SMTPUTF8"), e.getCause().getMessage());
+
+        // a message that is all US-ASCII needs no SMTPUTF8
+        final Email ascii = new SimpleEmail().setSmtpUtf8(true);
+        ascii.setHostName(strTestMailServer);
+        ascii.setSmtpPort(getMailServerPort());
+        ascii.setSendTimeout(Duration.ofSeconds(10));
+        ascii.setFrom(strTestMailFrom);
+        ascii.addTo(strTestMailTo);
+        ascii.setSubject("Greetings");
+        ascii.setMsg("Hallo");
+        ascii.send();
+        fakeMailServer.stop();
+
+        final WiserMessage received = fakeMailServer.getMessages().get(0);
+        assertEquals(strTestMailTo, received.getEnvelopeReceiver());
+    }
+
+    @Test
+    void testWriteTo() throws Exception {
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        email.addBcc("bcc@example.com");
+        email.setCharset(EmailConstants.UTF_8);
+        email.setSubject("Gr\u00fc\u00dfe");
+        email.setMsg("Hello\nWorld \u20ac");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long count = email.writeTo(out);
+        assertEquals(out.size(), count);
+        assertThrows(IllegalStateException.class, () -> email.writeTo(new ByteArrayOutputStream()));
+
+        final MimeMessage message = MimeMessageUtils.createMimeMessage(Session.getInstance(new Properties()), out.toByteArray());
+        assertEquals("Gr\u00fc\u00dfe", message.getSubject());
+        assertEquals(strTestMailFrom, message.getFrom()[0].toString());
+        assertEquals(strTestMailTo, message.getRecipients(Message.RecipientType.TO)[0].toString());
+        assertNull(message.getRecipients(Message.RecipientType.BCC));
+        assertNotNull(message.getMessageID());
+        assertEquals("Hello\r\nWorld \u20ac", message.getContent());
+    }
+
+    @Test
+    void testWriteToSmtpUtf8() throws Exception {
+        // no relay is asked for its capabilities, the setting alone decides
+        email.setHostName("relay.invalid");
+        email.setSmtpUtf8(true);
+        email.setFrom(strTestMailFrom);
+        email.addTo("j\u00f6rg@m\u00fcller.example");
+        email.setSubject("Gr\u00fc\u00dfe");
+        email.setMsg("Hallo");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        email.writeTo(out);
+        final String data = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(data.contains("Subject: Gr\u00fc\u00dfe\r\n"), data);
+        assertTrue(data.contains("To: j\u00f6rg@m\u00fcller.example\r\n"), data);
+    }
+
+    @Test
+    void testWriteToAfterFailedBuild() throws Exception {
+        email.setFrom(strTestMailFrom);
+        email.addTo(strTestMailTo);
+        // content other than text needs a content type
+        email.setContent(Integer.valueOf(42));
+        assertThrows(EmailException.class, () -> email.writeTo(new ByteArrayOutputStream()));
+
+        email.setMsg("Hello");
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(email.writeTo(out) > 0);
+        assertTrue(out.toString("US-ASCII").contains("Hello"));
+    }
 }